@@ -27,10 +27,13 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import opendial.arch.DialException;
@@ -40,9 +43,12 @@ import opendial.bn.BNetwork;
 import opendial.bn.distribs.IndependentProbDistribution;
 import opendial.bn.distribs.CategoricalTable;
 import opendial.bn.distribs.MultivariateDistribution;
+import opendial.bn.nodes.ChanceNode;
 import opendial.datastructs.Assignment;
 import opendial.domains.Domain;
+import opendial.domains.DomainAnalysis;
 import opendial.domains.Model;
+import opendial.domains.rules.Rule;
 import opendial.gui.GUIFrame;
 import opendial.gui.TextOnlyInterface;
 import opendial.modules.Module;
@@ -51,9 +57,10 @@ import opendial.modules.core.DialogueRecorder;
 import opendial.modules.core.ForwardPlanner;
 import opendial.modules.core.RemoteConnector;
 import opendial.modules.simulation.Simulator;
-import opendial.readers.XMLDomainReader;
+import opendial.readers.BinaryDomainReader;
 import opendial.readers.XMLInteractionReader;
 import opendial.readers.XMLSettingsReader;
+import opendial.state.AnchoredRule;
 import opendial.state.DialogueState;
 
 /**
@@ -90,6 +97,9 @@ public class DialogueSystem {
 	// whether the system is paused or active
 	protected boolean paused = true;
 
+	// analysis of the domain, to skip the dead rules (null if it must be recomputed)
+	DomainAnalysis analysis;
+
 
 
 	// ===================================
@@ -163,6 +173,7 @@ public class DialogueSystem {
 	 */
 	public void changeDomain(Domain domain) throws DialException {
 		this.domain = domain;
+		analysis = null;
 		changeSettings(domain.getSettings());
 		curState = domain.getInitialState().copy();
 		curState.setParameters(domain.getParameters());
@@ -246,7 +257,7 @@ public class DialogueSystem {
 		for (Module module : modules) {
 			module.pause(toPause);
 		}
-		if (!toPause && !curState.getNewVariables().isEmpty()) {
+		if (!toPause && curState.hasNewVariables()) {
 			synchronized (curState) {
 				update();
 			}
@@ -277,6 +288,7 @@ public class DialogueSystem {
 	public void changeSettings(Settings settings) {
 
 		this.settings.fillSettings(settings.getSpecifiedMapping());
+		analysis = null;
 
 		for (Class<Module> toAttach : settings.modules) {
 			if (getModule(toAttach) == null) {
@@ -535,7 +547,7 @@ public class DialogueSystem {
 			return updatedVars;
 		}
 
-		while (!curState.getNewVariables().isEmpty()) {
+		while (curState.hasNewVariables()) {
 			
 			// finding the new variables that must be processed
 			Set<String> toProcess = curState.getNewVariables();
@@ -544,20 +556,93 @@ public class DialogueSystem {
 			curState.reduce();	
 			
 			// applying the domain models 
-			for (Model model : domain.getModels()) {
-				model.trigger(curState, toProcess);
+			List<Model> triggeredModels = domain.getTriggeredModels(toProcess);
+			Set<Rule> deadRules = getDeadRules();
+			if (settings.parallelModels && triggeredModels.size() > 1) {
+				applyModelsInParallel(triggeredModels, deadRules);
+			}
+			else {
+				for (Model model : triggeredModels) {
+					model.applyRules(curState, deadRules);
+				}
 			}
 			
 			// applying the external modules
 			for (Module module : modules) {
+				curState.setUpdateOrigin(module.getClass().getSimpleName());
 				module.trigger(curState, toProcess);
 			}
+			curState.setUpdateOrigin(null);
 			
 			updatedVars.addAll(toProcess);
 		}
 
 		return updatedVars;
 	}
+	
+	
+	/**
+	 * Applies the triggered models to the current dialogue state, anchoring their
+	 * rules in parallel on the (unmodified) state, and then applying the anchored 
+	 * rules one model at a time, in the order of the models.  The rules whose 
+	 * anchoring is affected by the nodes created or modified by preceding rules 
+	 * are anchored again before their application, such that the resulting state 
+	 * is identical to the one obtained by applying the models sequentially.  
+	 * 
+	 * <p>The rules with slots in their input variables are always anchored when 
+	 * they are applied, since their anchoring requires inference on the state.
+	 * The value sets of the input nodes (and the caches of their distributions) 
+	 * are computed before the parallel stage, such that the anchoring tasks only 
+	 * read them.
+	 * 
+	 * @param triggeredModels the triggered models
+	 * @param skippedRules the rules to skip
+	 */
+	private void applyModelsInParallel(List<Model> triggeredModels, Set<Rule> skippedRules) {
+		List<Rule> rules = triggeredModels.stream()
+				.flatMap(m -> m.getRules().stream())
+				.filter(r -> !skippedRules.contains(r))
+				.filter(r -> r.getInputVariables().stream().allMatch(t -> t.getSlots().isEmpty()))
+				.distinct().collect(Collectors.toList());
+		for (Rule r : rules) {
+			for (ChanceNode inputNode : curState.getMatchingNodes(r.getInputVariables())) {
+				inputNode.getValuesView();
+			}
+		}
+		List<AnchoredRule> anchoredRules = rules.parallelStream()
+				.map(r -> new AnchoredRule(r, curState))
+				.collect(Collectors.toList());
+		
+		Map<Rule,AnchoredRule> anchors = new IdentityHashMap<Rule,AnchoredRule>();
+		for (int i = 0 ; i < rules.size() ; i++) {
+			anchors.put(rules.get(i), anchoredRules.get(i));
+		}
+		Set<String> changedNodes = new HashSet<String>();
+		for (Model model : triggeredModels) {
+			model.applyRules(curState, anchors, changedNodes, skippedRules);
+		}
+	}
+
+	/**
+	 * Returns the dead rules of the domain (i.e. the rules whose outputs are never
+	 * consumed, see DomainAnalysis) if the "skipdeadrules" setting is activated, 
+	 * and an empty set otherwise.  The domain analysis is performed again whenever 
+	 * the domain models are modified.
+	 * 
+	 * @return the rules to skip
+	 */
+	private Set<Rule> getDeadRules() {
+		if (!settings.skipDeadRules) {
+			return Collections.emptySet();
+		}
+		DomainAnalysis curAnalysis = analysis;
+		if (curAnalysis == null || !curAnalysis.isValidFor(domain.getModels())) {
+			curAnalysis = new DomainAnalysis(domain, settings);
+			log.info("domain analysis: " + curAnalysis);
+			analysis = curAnalysis;
+		}
+		return curAnalysis.getDeadRules();
+	}
 
 
 	/**
@@ -689,7 +774,10 @@ public class DialogueSystem {
 	 * parameters are optional.
 	 * 
 	 * <p>Possible properties are:<ul>
-	 * <li>-Ddomain=path/to/domain/file: dialogue domain file
+	 * <li>-Ddomain=path/to/domain/file: dialogue domain file (either an XML file or
+	 * a precompiled artifact, see BinaryDomainReader)
+	 * <li>-Dartifact=true: use the precompiled artifacts of the XML domain files
+	 * if they exist and are up-to-date
 	 * <li>-Dsettings=path/to/settings/file: settings file
 	 * <li>-Ddialogue=path/to/recorded/dialogue: dialogue file to import
 	 * <li>-Dsimulator=path/to/simulator/domain/file: dialogue domain file for the simulator
@@ -704,10 +792,11 @@ public class DialogueSystem {
 			String settingsFile = System.getProperty("settings");
 			String dialogueFile = System.getProperty("dialogue");
 			String simulatorFile = System.getProperty("simulator");
+			boolean useArtifact = Boolean.parseBoolean(System.getProperty("artifact", "false"));
 
 			system.getSettings().fillSettings(System.getProperties());
 			if (domainFile != null) {
-				system.changeDomain(XMLDomainReader.extractDomain(domainFile));
+				system.changeDomain(BinaryDomainReader.extractDomain(domainFile, useArtifact));
 				log.info("Domain from " + domainFile + " successfully extracted");
 			}
 			if (settingsFile != null) {
@@ -720,7 +809,8 @@ public class DialogueSystem {
 				(new DialogueImporter(system, dialogue)).start();
 			}
 			if (simulatorFile != null) {
-				Simulator simulator = new Simulator(system, XMLDomainReader.extractDomain(simulatorFile));
+				Simulator simulator = new Simulator(system, 
+						BinaryDomainReader.extractDomain(simulatorFile, useArtifact));
 				log.info("Simulator with domain " + simulatorFile + " successfully extracted");		
 				system.attachModule(simulator);
 			}
@@ -24,6 +24,9 @@
 package opendial.arch;
 
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -50,7 +53,9 @@ import org.w3c.dom.Element;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public class Settings {
+public class Settings implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	// logger
 	public static Logger log = new Logger("Settings", Logger.Level.DEBUG);
@@ -66,6 +71,9 @@ public class Settings {
 	 
 	/** Number of discretisation buckets to convert continuous distributions */
 	public static int discretisationBuckets = 50;
+	
+	/** Maximum number of cached outputs for each rule (for rules created afterwards) */
+	public static int ruleCacheCapacity = 1000;
 
 	/** Whether to show the GUI */
 	public boolean showGUI;
@@ -95,10 +103,10 @@ public class Settings {
 	public Recording recording = Recording.LAST_INPUT;
 	
 	/** (When relevant) Which audio mixer to use for speech recognition */
-	public Mixer.Info inputMixer;
+	public transient Mixer.Info inputMixer;
 	
 	/** (When relevant) Which audio mixer to use for speech synthesis */
-	public Mixer.Info outputMixer;
+	public transient Mixer.Info outputMixer;
 	
 	/** Other parameters */
 	public Properties params = new Properties();
@@ -115,6 +123,15 @@ public class Settings {
 	/** whether the role of user and system are inverted */
 	public boolean invertedRole = false;
 	
+	/** whether to anchor the rules of the triggered models in parallel */
+	public boolean parallelModels = false;
+	
+	/** maximum number of candidate actions evaluated in parallel by the planner (1 for a serial evaluation) */
+	public int parallelActions = Runtime.getRuntime().availableProcessors();
+	
+	/** whether to skip the rules whose outputs are never consumed (see DomainAnalysis) */
+	public boolean skipDeadRules = false;
+	
 	/**
 	 * Creates new settings with the default values
 	 */
@@ -126,6 +143,20 @@ public class Settings {
 	}
 	
 
+	/**
+	 * Reads the settings from the stream, and selects the default audio mixers
+	 * (which are specific to the machine and are therefore not serialised).
+	 * 
+	 * @param in the object input stream
+	 * @throws IOException if the settings could not be read
+	 * @throws ClassNotFoundException if a class of the settings is unknown
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		selectAudioMixers();
+	}
+	
+
 	private void selectAudioMixers() {
 		List<Mixer.Info> inputMixers = AudioUtils.getInputMixers();
 		inputMixer = (!inputMixers.isEmpty())? inputMixers.get(0) : null;
@@ -196,6 +227,18 @@ public class Settings {
 			else if (key.equalsIgnoreCase("discretisation")) {
 				discretisationBuckets = Integer.parseInt(mapping.getProperty(key));
 			}
+			else if (key.equalsIgnoreCase("parallelmodels")) {
+				parallelModels = Boolean.parseBoolean(mapping.getProperty(key));
+			}
+			else if (key.equalsIgnoreCase("parallelactions")) {
+				parallelActions = Integer.parseInt(mapping.getProperty(key));
+			}
+			else if (key.equalsIgnoreCase("skipdeadrules")) {
+				skipDeadRules = Boolean.parseBoolean(mapping.getProperty(key));
+			}
+			else if (key.equalsIgnoreCase("rulecache")) {
+				ruleCacheCapacity = Integer.parseInt(mapping.getProperty(key));
+			}
 			
 			else if (key.equalsIgnoreCase("recording")) {
 				if (mapping.getProperty(key).trim().equalsIgnoreCase("last") ) {
@@ -272,6 +315,10 @@ public class Settings {
 		mapping.setProperty("samples", ""+nbSamples);
 		mapping.setProperty("timeout", ""+maxSamplingTime);
 		mapping.setProperty("discretisation", ""+discretisationBuckets);
+		mapping.setProperty("rulecache", ""+ruleCacheCapacity);
+		mapping.setProperty("parallelmodels", ""+parallelModels);
+		mapping.setProperty("parallelactions", ""+parallelActions);
+		mapping.setProperty("skipdeadrules", ""+skipDeadRules);
 		mapping.setProperty("modules", ""+modules.stream()
 				.map(m -> m.getCanonicalName()).collect(Collectors.joining(",")));
 		mapping.setProperty("connect", ""+remoteConnections.keySet().stream()
@@ -22,16 +22,20 @@
 
 package opendial.bn;
 
+import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.Stack;
 
 import opendial.arch.DialException;
 import opendial.arch.Logger;
@@ -39,6 +43,8 @@ import opendial.bn.nodes.ActionNode;
 import opendial.bn.nodes.BNode;
 import opendial.bn.nodes.ChanceNode;
 import opendial.bn.nodes.UtilityNode;
+import opendial.datastructs.Template;
+import opendial.utils.StringUtils;
 
 
 /**
@@ -48,7 +54,9 @@ import opendial.bn.nodes.UtilityNode;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public class BNetwork {
+public class BNetwork implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	// logger
 	public static Logger log = new Logger("BNetwork", Logger.Level.DEBUG);
@@ -64,6 +72,31 @@ public class BNetwork {
 	
 	// the action nodes
 	Map<String, ActionNode> actionNodes;
+	
+	// cached topological ordering of the nodes (null if it must be recomputed)
+	transient volatile List<BNode> sortedNodes;
+	
+	// cached identifiers for the topological ordering (null if it must be recomputed)
+	transient volatile List<String> sortedNodesIds;
+	
+	// cached reachability index for the nodes (null if it must be recomputed)
+	transient volatile ReachabilityIndex reachabilityIndex;
+	
+	// index of the chance node identifiers (null until first needed). Once built,
+	// the index is maintained incrementally.
+	transient volatile NodeIdIndex chanceNodeIndex;
+	
+	// connected components of the network, indexed by node identifier (null if 
+	// they must be recomputed). The components are maintained incrementally.
+	Map<String,Set<String>> components;
+	
+	// the distinct connected components of the network (compared by identity)
+	Set<Set<String>> componentSets;
+	
+	// whether the network is notified of all structural changes to its nodes, 
+	// which is no longer the case once one of its nodes is included in another 
+	// network.  Structural caches are only used for tracked networks.
+	boolean tracked = true;
 
 	// ===================================
 	//  NETWORK CONSTRUCTION
@@ -92,15 +125,27 @@ public class BNetwork {
 	 * @param node the node to add
 	 */
 	public void addNode(BNode node) {
-		if (nodes.containsKey(node.getId())) {
+		boolean replacement = nodes.containsKey(node.getId());
+		if (replacement) {
 			log.warning("network already contains a node with identifier " + node.getId());
 		}
 		nodes.put(node.getId(), node);
 		node.setNetwork(this);
+		clearStructuralCaches();
+		if (replacement) {
+			clearComponents();
+		}
+		else if (components != null && !components.containsKey(node.getId())) {
+			addToComponents(node);
+		}
 
 		// adding the node in the type-specific collections
 		if (node instanceof ChanceNode) {
 			chanceNodes.put(node.getId(), (ChanceNode)node);
+			NodeIdIndex index = chanceNodeIndex;
+			if (index != null) {
+				index.add(node.getId());
+			}
 		}
 		else if (node instanceof UtilityNode) {
 			utilityNodes.put(node.getId(), (UtilityNode)node);
@@ -171,12 +216,13 @@ public class BNetwork {
 	 * @return the value for the node, if it exists
 	 */
 	public BNode removeNode(String nodeId) {
-		if (!nodes.containsKey(nodeId)) {
+		BNode node = nodes.remove(nodeId);
+		if (node == null) {
 		//	log.warning("network does not contain a node with identifier " + nodeId);
 		}
 		else {
-			BNode node = nodes.get(nodeId);
-
+			// NB: the node is removed from the network before its edges, in order 
+			// to update the connected components in a single operation
 			for (BNode inputNode : node.getInputNodes()) {
 				node.removeInputNode(inputNode.getId());
 			}
@@ -187,6 +233,10 @@ public class BNetwork {
 			// remove the node from the type-specific collections
 			if (node instanceof ChanceNode) {
 				chanceNodes.remove(nodeId);
+				NodeIdIndex index = chanceNodeIndex;
+				if (index != null) {
+					index.remove(nodeId);
+				}
 			}
 			else if (node instanceof UtilityNode) {
 				utilityNodes.remove(nodeId);
@@ -194,9 +244,11 @@ public class BNetwork {
 			else if (node instanceof ActionNode) {
 				actionNodes.remove(nodeId);
 			}
+			clearStructuralCaches();
+			removeFromComponents(nodeId);
 		}
 
-		return nodes.remove(nodeId);
+		return node;
 	}
 
 
@@ -225,10 +277,15 @@ public class BNetwork {
 	 */
 	public void modifyVariableId(String oldNodeId, String newNodeId) {
 		BNode node = nodes.remove(oldNodeId);
-		chanceNodes.remove(oldNodeId);
+		NodeIdIndex index = chanceNodeIndex;
+		if (chanceNodes.remove(oldNodeId) != null && index != null) {
+			index.remove(oldNodeId);
+		}
 		utilityNodes.remove(oldNodeId);
 		actionNodes.remove(oldNodeId);
+		clearStructuralCaches();
 		if (node != null) {
+			renameInComponents(oldNodeId, newNodeId);
 			addNode(node);
 		}
 		else {
@@ -247,8 +304,12 @@ public class BNetwork {
 		if (System.identityHashCode(this) != System.identityHashCode(network)) {
 		nodes.clear();
 		chanceNodes.clear();
+		chanceNodeIndex = null;
 		utilityNodes.clear();
 		actionNodes.clear();
+		clearStructuralCaches();
+		clearComponents();
+		tracked = true;
 			for (BNode node : network.getNodes()) {
 				addNode(node);
 			}
@@ -257,6 +318,53 @@ public class BNetwork {
 	}
 	
 	
+	/**
+	 * Notifies the network that a directed edge has been added between two nodes.
+	 * This method is called by the nodes themselves and should not be called
+	 * directly.
+	 * 
+	 * @param inputNode the source of the edge
+	 * @param outputNode the target of the edge
+	 */
+	public void edgeAdded(BNode inputNode, BNode outputNode) {
+		clearStructuralCaches();
+		if (components != null && contains(inputNode) && contains(outputNode)) {
+			mergeComponents(inputNode.getId(), outputNode.getId());
+		}
+	}
+	
+	
+	/**
+	 * Notifies the network that a directed edge has been removed between two nodes.
+	 * This method is called by the nodes themselves and should not be called
+	 * directly.
+	 * 
+	 * @param inputNode the source of the edge
+	 * @param outputNode the target of the edge
+	 */
+	public void edgeRemoved(BNode inputNode, BNode outputNode) {
+		clearStructuralCaches();
+		if (components != null && contains(inputNode) && contains(outputNode)) {
+			splitComponent(inputNode.getId(), outputNode.getId());
+		}
+	}
+	
+	
+	/**
+	 * Notifies the network that the node has been included in another network.  If 
+	 * the node is still part of the current network, the network will not be notified
+	 * of its subsequent changes, and its structural caches are therefore disabled.
+	 * 
+	 * @param node the node included in another network
+	 */
+	public void nodeReleased(BNode node) {
+		if (contains(node)) {
+			tracked = false;
+			clearStructuralCaches();
+			clearComponents();
+		}
+	}
+	
 	
 	// ===================================
 	//  GETTERS
@@ -396,6 +504,25 @@ public class BNetwork {
 	public Set<String> getChanceNodeIds() {
 		return chanceNodes.keySet();
 	}
+	
+	
+	/**
+	 * Returns the identifiers of the chance nodes that fully match the template.
+	 * The identifiers are retrieved from a sorted index (built on first use and
+	 * then maintained as nodes are added, removed or renamed) instead of matching 
+	 * the template against every chance node.
+	 * 
+	 * @param template the template
+	 * @return the identifiers of the matching chance nodes
+	 */
+	public List<String> getChanceNodeIds(Template template) {
+		NodeIdIndex index = chanceNodeIndex;
+		if (index == null) {
+			index = new NodeIdIndex(chanceNodes.keySet());
+			chanceNodeIndex = index;
+		}
+		return index.getMatchingIds(template);
+	}
 
 	/**
 	 * Returns true if the network contains an action node with the given
@@ -499,20 +626,27 @@ public class BNetwork {
 
 
 	/**
-	 * Returns an ordered list of nodes, where the ordering is defined in the 
-	 * compareTo method implemented in BNode.  The ordering will place end nodes 
-	 * (i.e. nodes with no outward edges) at the beginning of the list, and start 
-	 * nodes  (nodes with no inward edges) at the end of the list. 
+	 * Returns an ordered list of nodes, where the ordering is a topological ordering
+	 * of the network in reverse: end nodes (i.e. nodes with no outward edges) are 
+	 * placed at the beginning of the list, and start nodes (nodes with no inward 
+	 * edges) at the end of the list.  Ties are broken as in the compareTo method 
+	 * implemented in BNode.
 	 * 
 	 * <p>This ordering is used in particular for various inference algorithms relying
-	 * on a topological ordering of the nodes (e.g. variable elimination).
+	 * on a topological ordering of the nodes (e.g. variable elimination).  The ordering
+	 * is cached and only recomputed after a change in the network structure.
 	 * 
 	 * @return the ordered list of nodes
 	 */
 	public List<BNode> getSortedNodes() {
-		List<BNode> nodesList = new ArrayList<BNode>(nodes.values());
-		Collections.sort(nodesList);
-		return nodesList;
+		List<BNode> sorted = sortedNodes;
+		if (sorted == null) {
+			sorted = Collections.unmodifiableList(sortNodes());
+			if (tracked) {
+				sortedNodes = sorted;
+			}
+		}
+		return new ArrayList<BNode>(sorted);
 	}
 	
 	
@@ -522,52 +656,93 @@ public class BNetwork {
 	 * @return the ordered list of node identifiers.
 	 */
 	public List<String> getSortedNodesIds() {
-		List<String> sorted = new ArrayList<String>();
-		for (BNode n : getSortedNodes()) {
-			sorted.add(n.getId());
+		List<String> sorted = sortedNodesIds;
+		if (sorted == null) {
+			sorted = new ArrayList<String>(nodes.size());
+			for (BNode n : getSortedNodes()) {
+				sorted.add(n.getId());
+			}
+			sorted = Collections.unmodifiableList(sorted);
+			if (tracked) {
+				sortedNodesIds = sorted;
+			}
 		}
-		return sorted;
+		return new ArrayList<String>(sorted);
 	}
 	
 
+	/**
+	 * Returns the reachability index for the network, which encodes the ancestors and
+	 * descendants of each node as bitsets.  The index is built on demand and cached until
+	 * the next change in the network structure.  If the network is not notified of all
+	 * structural changes to its nodes (which is the case when its nodes are shared with
+	 * another network), the method returns null.
+	 * 
+	 * @return the reachability index, or null if the network structure is not tracked
+	 */
+	public ReachabilityIndex getReachabilityIndex() {
+		if (!tracked) {
+			return null;
+		}
+		ReachabilityIndex index = reachabilityIndex;
+		if (index == null) {
+			index = new ReachabilityIndex(nodes.values());
+			reachabilityIndex = index;
+		}
+		return index;
+	}
+	
+
+	/**
+	 * Returns the connected component of the network that contains the node.  The
+	 * components are maintained incrementally as nodes and edges are added or removed,
+	 * and the returned set is an unmodifiable view of the component.
+	 * 
+	 * @param nodeId the node identifier
+	 * @return the connected component including the node (empty if the node does 
+	 *         not exist)
+	 */
+	public Set<String> getComponentOf(String nodeId) {
+		Set<String> component = getComponentsMap().get(nodeId);
+		if (component == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(component);
+	}
+	
+	
+	/**
+	 * Returns the connected components of the network, as unmodifiable views.  Two 
+	 * nodes belong to the same component if they are connected by a path of (inward 
+	 * or outward) edges.
+	 * 
+	 * @return the connected components of the network
+	 */
+	public List<Set<String>> getComponents() {
+		Map<String,Set<String>> componentsMap = getComponentsMap();
+		Set<Set<String>> distinctSets = (componentsMap == components)? componentSets 
+				: getDistinctComponents(componentsMap);
+		List<Set<String>> result = new ArrayList<Set<String>>(distinctSets.size());
+		for (Set<String> component : distinctSets) {
+			result.add(Collections.unmodifiableSet(component));
+		}
+		return result;
+	}
+	
 	
 	/**
 	 * Returns the set of maximal cliques that compose this network.  The cliques are collections
 	 * of nodes such that each node in the clique is connect to all the other nodes in the clique 
-	 * but to no nodes outside the clique.
+	 * but to no nodes outside the clique (i.e. the connected components of the network).
 	 * 
 	 * @return the collection of cliques for the network.
 	 */
 	public List<Set<String>> getCliques() {
-		
 		List<Set<String>> cliques = new ArrayList<Set<String>>();
-		
-		Stack<String> nodesToProcess = new Stack<String>();
-		nodesToProcess.addAll(nodes.keySet());
-		while (!nodesToProcess.isEmpty()) {
-			String node = nodesToProcess.pop();
-			Set<String> newClique = nodes.get(node).getClique();
-			cliques.add(newClique);
-			nodesToProcess.removeAll(newClique);
-		}
-		
-		
-		// sanity check
-		for (Set<String> cluster1 : cliques) {
-			for (Set<String> cluster2 : cliques) {
-				if (!cluster1.equals(cluster2)) {
-					for (String elInCluster1 : cluster1) {
-						if (cluster2.contains(elInCluster1)) {
-							log.warning("cluster 1:" + cluster1 + ", cluster 2:" + cluster2);
-							log.warning("network to cluster: " + getNodeIds());
-							log.warning("network to cluster2: " + nodes.keySet());
-						}
-					}
-				}
-			}
+		for (Set<String> component : getComponents()) {
+			cliques.add(new HashSet<String>(component));
 		}
 		Collections.sort(cliques, (s1,s2) -> s1.hashCode() - s2.hashCode());
-				
 		return cliques;
 	}
 	
@@ -598,26 +773,28 @@ public class BNetwork {
 	public List<BNetwork> createCliques() throws DialException {
 
 		List<BNetwork> result = new ArrayList<BNetwork>();
-		
+		Map<String,BNetwork> subnetworks = new HashMap<String,BNetwork>();
 		for (Set<String> clique  : getCliques()) {
 			BNetwork subnetwork = new BNetwork();
-			List<BNode> sorted = getSortedNodes();
-			Collections.reverse(sorted);
-			for (BNode n : sorted) {
-				if (clique.contains(n.getId())) {
-					BNode copy = n.copy();
-
-					for (String input : n.getInputNodeIds()) {
-						if (!subnetwork.hasNode(input)) {
-							log.warning("problem in the topological ordering of the nodes");
-						}
-						copy.addInputNode(subnetwork.getNode(input));
-					}
-					subnetwork.addNode(copy);
-				}
+			for (String nodeId : clique) {
+				subnetworks.put(nodeId, subnetwork);
 			}
 			result.add(subnetwork);
 		}
+		
+		List<BNode> sorted = getSortedNodes();
+		Collections.reverse(sorted);
+		for (BNode n : sorted) {
+			BNetwork subnetwork = subnetworks.get(n.getId());
+			BNode copy = n.copy();
+			for (String input : n.getInputNodeIdsView()) {
+				if (!subnetwork.hasNode(input)) {
+					log.warning("problem in the topological ordering of the nodes");
+				}
+				copy.addInputNode(subnetwork.getNode(input));
+			}
+			subnetwork.addNode(copy);
+		}
 		return result;
 	}
 	
@@ -653,7 +830,7 @@ public class BNetwork {
 
 		for (BNode node : sortedNodes) {
 			BNode nodeCopy = node.copy();
-			for (BNode inputNode : node.getInputNodes()) {
+			for (BNode inputNode : node.getInputNodesView()) {
 				if (!copyNetwork.hasNode(inputNode.getId())) {
 					throw new DialException("cannot copy the network: structure " +
 							"is corrupt (" + inputNode.getId() + " is not present, but "
@@ -708,6 +885,323 @@ public class BNetwork {
 	}
 
 
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+	
+	/**
+	 * Clears the cached information derived from the network structure.
+	 */
+	private void clearStructuralCaches() {
+		sortedNodes = null;
+		sortedNodesIds = null;
+		reachabilityIndex = null;
+	}
+	
+	
+	/**
+	 * Returns true if the node is part of the network.
+	 * 
+	 * @param node the node
+	 * @return true if the node is included in the network, false otherwise
+	 */
+	private boolean contains(BNode node) {
+		return nodes.get(node.getId()) == node;
+	}
+	
+	
+	/**
+	 * Returns the connected components of the network, indexed by node identifier.
+	 * The components are recomputed if necessary (and are not stored if the network
+	 * is not tracked).
+	 * 
+	 * @return the connected components for each node
+	 */
+	private synchronized Map<String,Set<String>> getComponentsMap() {
+		if (components != null) {
+			return components;
+		}
+		Map<String,Set<String>> componentsMap = new HashMap<String,Set<String>>(2*nodes.size());
+		Set<String> remaining = new HashSet<String>(nodes.keySet());
+		while (!remaining.isEmpty()) {
+			Set<String> component = getConnectedNodes(remaining.iterator().next(), null);
+			for (String nodeId : component) {
+				componentsMap.put(nodeId, component);
+			}
+			remaining.removeAll(component);
+		}
+		if (tracked) {
+			componentSets = getDistinctComponents(componentsMap);
+			components = componentsMap;
+		}
+		return componentsMap;
+	}
+	
+	
+	/**
+	 * Returns the distinct components in the map of connected components.
+	 * 
+	 * @param componentsMap the connected components for each node
+	 * @return the distinct components (compared by identity)
+	 */
+	private static Set<Set<String>> getDistinctComponents(Map<String,Set<String>> componentsMap) {
+		Set<Set<String>> distinctSets = Collections.newSetFromMap(
+				new IdentityHashMap<Set<String>,Boolean>());
+		distinctSets.addAll(componentsMap.values());
+		return distinctSets;
+	}
+	
+	
+	/**
+	 * Clears the connected components (which will be recomputed when needed).
+	 */
+	private synchronized void clearComponents() {
+		components = null;
+		componentSets = null;
+	}
+	
+
+	/**
+	 * Returns the set of nodes of the network that are connected to the start node. 
+	 * The search stops as soon as the target node is found (if the target is non-null).
+	 * 
+	 * @param startId the identifier for the start node
+	 * @param targetId the identifier for the target node (can be null)
+	 * @return the set of nodes connected to the start node (or reached before the target)
+	 */
+	private Set<String> getConnectedNodes(String startId, String targetId) {
+		Set<String> connected = new HashSet<String>();
+		connected.add(startId);
+		Deque<BNode> toProcess = new ArrayDeque<BNode>();
+		toProcess.add(nodes.get(startId));
+		while (!toProcess.isEmpty()) {
+			BNode node = toProcess.poll();
+			for (Collection<BNode> neighbours : Arrays.asList(node.getInputNodesView(), 
+					node.getOutputNodesView())) {
+				for (BNode neighbour : neighbours) {
+					if (contains(neighbour) && connected.add(neighbour.getId())) {
+						if (neighbour.getId().equals(targetId)) {
+							return connected;
+						}
+						toProcess.add(neighbour);
+					}
+				}
+			}
+		}
+		return connected;
+	}
+	
+	
+	/**
+	 * Adds a new node to the connected components, and merges it with the 
+	 * components of its neighbours in the network.
+	 * 
+	 * @param node the node to add
+	 */
+	private void addToComponents(BNode node) {
+		Set<String> component = new HashSet<String>();
+		component.add(node.getId());
+		components.put(node.getId(), component);
+		componentSets.add(component);
+		for (Collection<BNode> neighbours : Arrays.asList(node.getInputNodesView(), 
+				node.getOutputNodesView())) {
+			for (BNode neighbour : neighbours) {
+				if (contains(neighbour)) {
+					mergeComponents(node.getId(), neighbour.getId());
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Merges the connected components of the two nodes (union by size).
+	 * 
+	 * @param nodeId1 the first node identifier
+	 * @param nodeId2 the second node identifier
+	 */
+	private void mergeComponents(String nodeId1, String nodeId2) {
+		Set<String> component1 = components.get(nodeId1);
+		Set<String> component2 = components.get(nodeId2);
+		if (component1 == component2) {
+			return;
+		}
+		else if (component1.size() < component2.size()) {
+			Set<String> tmp = component1;
+			component1 = component2;
+			component2 = tmp;
+		}
+		component1.addAll(component2);
+		for (String nodeId : component2) {
+			components.put(nodeId, component1);
+		}
+		componentSets.remove(component2);
+	}
+	
+	
+	/**
+	 * Updates the connected components after the removal of the edge between
+	 * the two nodes.  The component is split in two if the nodes are no longer
+	 * connected.
+	 * 
+	 * @param nodeId1 the first node identifier
+	 * @param nodeId2 the second node identifier
+	 */
+	private void splitComponent(String nodeId1, String nodeId2) {
+		Set<String> connected = getConnectedNodes(nodeId1, nodeId2);
+		if (!connected.contains(nodeId2)) {
+			components.get(nodeId1).removeAll(connected);
+			for (String nodeId : connected) {
+				components.put(nodeId, connected);
+			}
+			componentSets.add(connected);
+		}
+	}
+	
+	
+	/**
+	 * Removes the node from the connected components, and recomputes the 
+	 * components for the remaining nodes of its former component.
+	 * 
+	 * @param nodeId the identifier for the removed node
+	 */
+	private void removeFromComponents(String nodeId) {
+		if (components == null || !components.containsKey(nodeId)) {
+			return;
+		}
+		Set<String> component = components.remove(nodeId);
+		componentSets.remove(component);
+		component.remove(nodeId);
+		while (!component.isEmpty()) {
+			Set<String> connected = getConnectedNodes(component.iterator().next(), null);
+			for (String connectedId : connected) {
+				components.put(connectedId, connected);
+			}
+			componentSets.add(connected);
+			component.removeAll(connected);
+		}
+	}
+	
+	
+	/**
+	 * Replaces the identifier of a node in the connected components.
+	 * 
+	 * @param oldNodeId the old node identifier
+	 * @param newNodeId the new node identifier
+	 */
+	private void renameInComponents(String oldNodeId, String newNodeId) {
+		if (components == null || !components.containsKey(oldNodeId)) {
+			return;
+		}
+		if (components.containsKey(newNodeId)) {
+			clearComponents();
+			return;
+		}
+		Set<String> component = components.remove(oldNodeId);
+		component.remove(oldNodeId);
+		component.add(newNodeId);
+		components.put(newNodeId, component);
+	}
+	
+	
+	/**
+	 * Computes the (reverse) topological ordering of the nodes with Kahn's algorithm.  
+	 * A first pass from the start nodes derives the ancestors of each node, and a 
+	 * second pass from the end nodes selects, among the nodes whose descendants have 
+	 * already been ordered, the next node according to the following criteria: <ul>
+	 * <li>nodes with inward edges come before nodes without inward edges;
+	 * <li>among nodes with inward edges, the nodes with the largest number of 
+	 * ancestors come first;
+	 * <li>among nodes without inward edges, action nodes come last;
+	 * <li>remaining ties are resolved with StringUtils.compare on the identifiers.
+	 * </ul>
+	 * 
+	 * @return the ordered list of nodes
+	 */
+	private List<BNode> sortNodes() {
+		
+		ReachabilityIndex index = getReachabilityIndex();
+		if (index == null) {
+			index = new ReachabilityIndex(nodes.values());
+		}
+		BNode[] nodesList = index.nodes;
+		int[][] inputs = index.inputs;
+		int[][] outputs = index.outputs;
+		int nbNodes = nodesList.length;
+		boolean[] isStartNode = new boolean[nbNodes];
+		int[] nbAncestors = new int[nbNodes];
+		for (int i = 0 ; i < nbNodes ; i++) {
+			isStartNode[i] = nodesList[i].getInputNodeIdsView().isEmpty();
+			nbAncestors[i] = index.ancestors[i].cardinality();
+		}
+		
+		// second pass (from the end nodes), selecting the nodes in order
+		PriorityQueue<Integer> readyNodes = new PriorityQueue<Integer>(Math.max(1, nbNodes), 
+				(i, j) -> compareReadyNodes(nodesList[i], isStartNode[i], nbAncestors[i], 
+						nodesList[j], isStartNode[j], nbAncestors[j]));
+		int[] remainingOutputs = new int[nbNodes];
+		for (int i = 0 ; i < nbNodes ; i++) {
+			remainingOutputs[i] = outputs[i].length;
+			if (remainingOutputs[i] == 0) {
+				readyNodes.add(i);
+			}
+		}
+		List<BNode> sorted = new ArrayList<BNode>(nbNodes);
+		boolean[] added = new boolean[nbNodes];
+		while (!readyNodes.isEmpty()) {
+			int i = readyNodes.poll();
+			sorted.add(nodesList[i]);
+			added[i] = true;
+			for (int input : inputs[i]) {
+				if (--remainingOutputs[input] == 0) {
+					readyNodes.add(input);
+				}
+			}
+		}
+		
+		// safety check
+		if (sorted.size() < nbNodes) {
+			log.warning("network contains cycles, topological ordering is incomplete");
+			for (int i = 0 ; i < nbNodes ; i++) {
+				if (!added[i]) {
+					sorted.add(nodesList[i]);
+				}
+			}
+		}
+		return sorted;
+	}
+	
+	
+	/**
+	 * Compares two nodes that are both candidates for the next position in the 
+	 * topological ordering, following the criteria of BNode.compareTo.
+	 * 
+	 * @param node1 the first node
+	 * @param isStartNode1 whether the first node has no inward edges
+	 * @param nbAncestors1 the number of ancestors for the first node
+	 * @param node2 the second node
+	 * @param isStartNode2 whether the second node has no inward edges
+	 * @param nbAncestors2 the number of ancestors for the second node
+	 * @return the comparison result
+	 */
+	private static int compareReadyNodes(BNode node1, boolean isStartNode1, int nbAncestors1,
+			BNode node2, boolean isStartNode2, int nbAncestors2) {
+		if (isStartNode1 != isStartNode2) {
+			return (isStartNode1)? +100 : -100;
+		}
+		else if (isStartNode1) {
+			boolean isAction1 = node1 instanceof ActionNode;
+			boolean isAction2 = node2 instanceof ActionNode;
+			if (isAction1 != isAction2) {
+				return (isAction1)? +10 : -10;
+			}
+		}
+		else if (nbAncestors1 != nbAncestors2) {
+			return nbAncestors2 - nbAncestors1;
+		}
+		return StringUtils.compare(node1.getId(), node2.getId());
+	}
 	
 
 }
@@ -0,0 +1,190 @@
+// =================================================================
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person
+// obtaining a copy of this software and associated documentation
+// files (the "Software"), to deal in the Software without restriction,
+// including without limitation the rights to use, copy, modify, merge,
+// publish, distribute, sublicense, and/or sell copies of the Software,
+// and to permit persons to whom the Software is furnished to do so,
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================
+
+package opendial.bn;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import opendial.arch.Logger;
+import opendial.datastructs.Template;
+
+/**
+ * Sorted index of node identifiers, used to find the identifiers matching a
+ * template without matching the template against every identifier.  Fully 
+ * specified templates are resolved with a direct lookup, and underspecified 
+ * templates with a range scan over the identifiers starting with the literal 
+ * prefix of the template (see Template.getLiteralPrefix()).
+ *
+ * <p>The identifiers are indexed by their lowercase form, since templates are
+ * matched regardless of case.  Identifiers with non-ASCII characters are kept
+ * apart and always matched one by one, as case-insensitive matching of such 
+ * characters cannot be reduced to a comparison of lowercase strings.
+ *
+ * <p>The index is maintained by the network (see BNetwork.getChanceNodeIds(Template))
+ * as nodes are added, removed or renamed.
+ *
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ */
+final class NodeIdIndex {
+
+	// logger
+	static Logger log = new Logger("NodeIdIndex", Logger.Level.DEBUG);
+
+	// identifiers with ASCII characters only, indexed by their lowercase form
+	final TreeMap<String,Set<String>> asciiIds;
+
+	// identifiers with non-ASCII characters
+	final Set<String> otherIds;
+
+
+	/**
+	 * Creates the index for the identifiers.
+	 *
+	 * @param ids the identifiers to index
+	 */
+	NodeIdIndex(Collection<String> ids) {
+		asciiIds = new TreeMap<String,Set<String>>();
+		otherIds = new HashSet<String>();
+		for (String id : ids) {
+			add(id);
+		}
+	}
+
+
+	/**
+	 * Adds the identifier to the index.
+	 *
+	 * @param id the identifier
+	 */
+	void add(String id) {
+		String key = id.trim();
+		if (!isAscii(key)) {
+			otherIds.add(id);
+			return;
+		}
+		key = key.toLowerCase();
+		Set<String> ids = asciiIds.get(key);
+		if (ids == null) {
+			ids = new HashSet<String>(2);
+			asciiIds.put(key, ids);
+		}
+		ids.add(id);
+	}
+
+
+	/**
+	 * Removes the identifier from the index.
+	 *
+	 * @param id the identifier
+	 */
+	void remove(String id) {
+		String key = id.trim();
+		if (!isAscii(key)) {
+			otherIds.remove(id);
+			return;
+		}
+		key = key.toLowerCase();
+		Set<String> ids = asciiIds.get(key);
+		if (ids != null) {
+			ids.remove(id);
+			if (ids.isEmpty()) {
+				asciiIds.remove(key);
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the indexed identifiers that fully match the template.
+	 *
+	 * @param template the template
+	 * @return the matching identifiers
+	 */
+	List<String> getMatchingIds(Template template) {
+		List<String> matching = new ArrayList<String>();
+		String rawString = template.getRawString();
+
+		// fully specified templates are matched by case-insensitive equality
+		if (!template.isUnderspecified() && isAscii(rawString)) {
+			Set<String> ids = asciiIds.get(rawString.toLowerCase());
+			if (ids != null) {
+				matching.addAll(ids);
+			}
+		}
+		else {
+			String prefix = template.getLiteralPrefix();
+			Map<String,Set<String>> candidates = (prefix.isEmpty())? asciiIds 
+					: asciiIds.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+			for (Set<String> ids : candidates.values()) {
+				addMatchingIds(template, ids, matching);
+			}
+		}
+		addMatchingIds(template, otherIds, matching);
+		return matching;
+	}
+
+
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Adds to the list the identifiers that fully match the template.
+	 *
+	 * @param template the template
+	 * @param ids the candidate identifiers
+	 * @param matching the list of matching identifiers
+	 */
+	private static void addMatchingIds(Template template, Collection<String> ids, 
+			List<String> matching) {
+		for (String id : ids) {
+			if (template.match(id, true).isMatching()) {
+				matching.add(id);
+			}
+		}
+	}
+
+
+	/**
+	 * Returns true if the string only contains ASCII characters.
+	 *
+	 * @param str the string
+	 * @return true if all characters are ASCII, false otherwise
+	 */
+	private static boolean isAscii(String str) {
+		for (int i = 0 ; i < str.length() ; i++) {
+			if (str.charAt(i) > 0x7F) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
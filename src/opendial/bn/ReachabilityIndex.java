@@ -0,0 +1,584 @@
+// =================================================================
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person
+// obtaining a copy of this software and associated documentation
+// files (the "Software"), to deal in the Software without restriction,
+// including without limitation the rights to use, copy, modify, merge,
+// publish, distribute, sublicense, and/or sell copies of the Software,
+// and to permit persons to whom the Software is furnished to do so,
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================
+
+package opendial.bn;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import opendial.arch.Logger;
+import opendial.bn.nodes.BNode;
+import opendial.bn.nodes.UtilityNode;
+
+/**
+ * Reachability index over the nodes of a Bayesian network.  The index assigns a dense
+ * index to each node and encodes the transitive closure of the relations between nodes
+ * (i.e. the ancestors and descendants of each node) as bitsets.  Ancestor and descendant
+ * queries can then be answered with simple bitset operations.  The index also
+ * determines (and caches) the requisite nodes for inference queries on the network.
+ *
+ * <p>The index is built by the network (see BNetwork.getReachabilityIndex()) and
+ * reflects the structure of the network at the time of construction.  It is discarded
+ * by the network after each structural change.
+ *
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ */
+public final class ReachabilityIndex {
+
+	// logger
+	public static Logger log = new Logger("ReachabilityIndex", Logger.Level.DEBUG);
+
+	// the indexed nodes
+	final BNode[] nodes;
+
+	// the index for each node identifier
+	final Map<String,Integer> indices;
+
+	// the input nodes of each node (restricted to the indexed nodes)
+	final int[][] inputs;
+
+	// the output nodes of each node (restricted to the indexed nodes)
+	final int[][] outputs;
+
+	// the ancestors of each node
+	final BitSet[] ancestors;
+
+	// the descendants of each node
+	final BitSet[] descendants;
+
+	// whether all the relations of the nodes are included in the index
+	final boolean closed;
+
+	// the utility nodes
+	final BitSet utilityNodes;
+
+	// cached requisite nodes for the queries on the network
+	final Map<List<Object>,RequisiteNodes> requisiteNodes;
+
+	// maximum number of cached requisite nodes
+	public static final int MAX_CACHED_QUERIES = 500;
+
+
+	/**
+	 * Creates the reachability index for the collection of nodes.  The index is
+	 * normally obtained via BNetwork.getReachabilityIndex(), which caches it until
+	 * the next structural change.
+	 *
+	 * @param networkNodes the nodes to index
+	 */
+	public ReachabilityIndex(Collection<BNode> networkNodes) {
+
+		int nbNodes = networkNodes.size();
+		nodes = networkNodes.toArray(new BNode[nbNodes]);
+		indices = new HashMap<String,Integer>(2*nbNodes);
+		utilityNodes = new BitSet(nbNodes);
+		for (int i = 0 ; i < nbNodes ; i++) {
+			indices.put(nodes[i].getId(), i);
+			if (nodes[i] instanceof UtilityNode) {
+				utilityNodes.set(i);
+			}
+		}
+		requisiteNodes = new ConcurrentHashMap<List<Object>,RequisiteNodes>();
+
+		// extracting the relations between the nodes
+		inputs = new int[nbNodes][];
+		outputs = new int[nbNodes][];
+		boolean allIncluded = true;
+		for (int i = 0 ; i < nbNodes ; i++) {
+			inputs[i] = getIndices(nodes[i].getInputNodesView());
+			outputs[i] = getIndices(nodes[i].getOutputNodesView());
+			allIncluded = allIncluded && inputs[i].length == nodes[i].getInputNodesView().size()
+					&& outputs[i].length == nodes[i].getOutputNodesView().size();
+		}
+		closed = allIncluded;
+
+		// topological ordering of the nodes (Kahn's algorithm)
+		int[] order = new int[nbNodes];
+		int nbOrdered = 0;
+		int[] remainingInputs = new int[nbNodes];
+		Deque<Integer> toProcess = new ArrayDeque<Integer>();
+		for (int i = 0 ; i < nbNodes ; i++) {
+			remainingInputs[i] = inputs[i].length;
+			if (remainingInputs[i] == 0) {
+				toProcess.add(i);
+			}
+		}
+		while (!toProcess.isEmpty()) {
+			int i = toProcess.poll();
+			order[nbOrdered++] = i;
+			for (int output : outputs[i]) {
+				if (--remainingInputs[output] == 0) {
+					toProcess.add(output);
+				}
+			}
+		}
+		if (nbOrdered < nbNodes) {
+			log.warning("network contains cycles, reachability index is incomplete");
+		}
+
+		// ancestors (from the start nodes) and descendants (from the end nodes)
+		ancestors = new BitSet[nbNodes];
+		descendants = new BitSet[nbNodes];
+		for (int i = 0 ; i < nbNodes ; i++) {
+			ancestors[i] = new BitSet(nbNodes);
+			descendants[i] = new BitSet(nbNodes);
+		}
+		for (int k = 0 ; k < nbOrdered ; k++) {
+			int i = order[k];
+			for (int input : inputs[i]) {
+				ancestors[i].or(ancestors[input]);
+				ancestors[i].set(input);
+			}
+		}
+		for (int k = nbOrdered - 1 ; k >= 0 ; k--) {
+			int i = order[k];
+			for (int output : outputs[i]) {
+				descendants[i].or(descendants[output]);
+				descendants[i].set(output);
+			}
+		}
+	}
+
+
+	/**
+	 * Returns true if the node is part of the index, and if the index includes
+	 * all the relations between the nodes (in which case the results of the index
+	 * are identical to a traversal of the node relations).
+	 *
+	 * @param node the node
+	 * @return true if the index can be used for the node, false otherwise
+	 */
+	public boolean covers(BNode node) {
+		Integer index = indices.get(node.getId());
+		return closed && index != null && nodes[index] == node;
+	}
+
+
+	/**
+	 * Returns true if the first node is an ancestor of the second node
+	 *
+	 * @param ancestorId the identifier for the possible ancestor
+	 * @param nodeId the node identifier
+	 * @return true if the first node is an ancestor of the second, false otherwise
+	 */
+	public boolean isAncestor(String ancestorId, String nodeId) {
+		Integer ancestor = indices.get(ancestorId);
+		return ancestor != null && ancestors[indices.get(nodeId)].get(ancestor);
+	}
+
+
+	/**
+	 * Returns the number of ancestors of the node
+	 *
+	 * @param nodeId the node identifier
+	 * @return the number of ancestors
+	 */
+	public int getNbAncestors(String nodeId) {
+		return ancestors[indices.get(nodeId)].cardinality();
+	}
+
+
+	/**
+	 * Returns the identifiers of the ancestors of the node
+	 *
+	 * @param nodeId the node identifier
+	 * @return the ancestor identifiers
+	 */
+	public Set<String> getAncestorIds(String nodeId) {
+		return getIds(ancestors[indices.get(nodeId)]);
+	}
+
+
+	/**
+	 * Returns the identifiers of the descendants of the node
+	 *
+	 * @param nodeId the node identifier
+	 * @return the descendant identifiers
+	 */
+	public Set<String> getDescendantIds(String nodeId) {
+		return getIds(descendants[indices.get(nodeId)]);
+	}
+
+
+	/**
+	 * Returns true if at least one of the variables is an ancestor of the node
+	 *
+	 * @param nodeId the node identifier
+	 * @param variables the identifiers of potential ancestors
+	 * @return true if an ancestor is found, false otherwise
+	 */
+	public boolean hasAncestor(String nodeId, Collection<String> variables) {
+		return intersects(ancestors[indices.get(nodeId)], variables);
+	}
+
+
+	/**
+	 * Returns true if at least one of the variables is a descendant of the node
+	 *
+	 * @param nodeId the node identifier
+	 * @param variables the identifiers of potential descendants
+	 * @return true if a descendant is found, false otherwise
+	 */
+	public boolean hasDescendant(String nodeId, Collection<String> variables) {
+		return intersects(descendants[indices.get(nodeId)], variables);
+	}
+
+
+	/**
+	 * Returns true if at least one descendant of the node has an identifier matching
+	 * the regular expression pattern
+	 *
+	 * @param nodeId the node identifier
+	 * @param pattern the regular expression pattern
+	 * @return true if a descendant is found, false otherwise
+	 */
+	public boolean hasDescendant(String nodeId, Pattern pattern) {
+		BitSet nodeDescendants = descendants[indices.get(nodeId)];
+		for (int i = nodeDescendants.nextSetBit(0); i >= 0; i = nodeDescendants.nextSetBit(i+1)) {
+			if (pattern.matcher(nodes[i].getId()).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Returns the closest ancestors of the node among a set of variables, that is,
+	 * the variables that are connected to the node by a path that does not traverse
+	 * any other variable in the set.
+	 *
+	 * @param nodeId the node identifier
+	 * @param variablesToRetain the set of variables from which to seek ancestors
+	 * @return the closest ancestors among the variables
+	 */
+	public Set<String> getClosestAncestorIds(String nodeId, Collection<String> variablesToRetain) {
+		return getClosest(indices.get(nodeId), inputs, ancestors, variablesToRetain);
+	}
+
+
+	/**
+	 * Returns the closest descendants of the node among a set of variables, that is,
+	 * the variables that are connected to the node by a path that does not traverse
+	 * any other variable in the set.
+	 *
+	 * @param nodeId the node identifier
+	 * @param variablesToRetain the set of variables from which to seek descendants
+	 * @return the closest descendants among the variables
+	 */
+	public Set<String> getClosestDescendantIds(String nodeId, Collection<String> variablesToRetain) {
+		return getClosest(indices.get(nodeId), outputs, descendants, variablesToRetain);
+	}
+
+
+	/**
+	 * Returns the requisite nodes for a query P(queryVars|evidence) or, if utilities
+	 * are included, U(queryVars|evidence).  The requisite nodes are determined with
+	 * the Bayes-ball algorithm (Shachter, 1998), which runs in time linear in the size 
+	 * of the network.  The requisite probability nodes are the nodes whose distributions
+	 * are needed to answer the query, and the requisite observations are the evidence
+	 * variables whose values are needed.  All other nodes can be ignored during inference.
+	 * 
+	 * <p>The results are cached for each combination of query and evidence variables.
+	 *
+	 * @param queryVars the query variables
+	 * @param evidenceVars the evidence variables
+	 * @param withUtilities whether the query is a utility query (in which case all
+	 *        utility nodes are also queried)
+	 * @return the requisite nodes for the query
+	 */
+	public RequisiteNodes getRequisiteNodes(Collection<String> queryVars, 
+			Collection<String> evidenceVars, boolean withUtilities) {
+		BitSet queried = getBits(queryVars);
+		BitSet observed = getBits(evidenceVars);
+		if (withUtilities) {
+			queried.or(utilityNodes);
+		}
+		List<Object> key = Arrays.asList(queried, observed);
+		RequisiteNodes result = requisiteNodes.get(key);
+		if (result == null) {
+			result = runBayesBall(queried, observed);
+			if (requisiteNodes.size() >= MAX_CACHED_QUERIES) {
+				requisiteNodes.clear();
+			}
+			requisiteNodes.put(key, result);
+		}
+		return result;
+	}
+
+
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Returns the indices of the nodes (restricted to the indexed nodes).
+	 *
+	 * @param relatedNodes the nodes
+	 * @return the corresponding indices
+	 */
+	private int[] getIndices(Collection<BNode> relatedNodes) {
+		int[] result = new int[relatedNodes.size()];
+		int nbIndices = 0;
+		for (BNode node : relatedNodes) {
+			Integer index = indices.get(node.getId());
+			if (index != null && nodes[index] == node) {
+				result[nbIndices++] = index;
+			}
+		}
+		return (nbIndices == result.length)? result : Arrays.copyOf(result, nbIndices);
+	}
+
+
+	/**
+	 * Returns the identifiers of the nodes in the bitset
+	 *
+	 * @param bits the bitset
+	 * @return the corresponding identifiers
+	 */
+	private Set<String> getIds(BitSet bits) {
+		Set<String> ids = new HashSet<String>(2*bits.cardinality());
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i+1)) {
+			ids.add(nodes[i].getId());
+		}
+		return ids;
+	}
+
+
+	/**
+	 * Returns true if at least one of the variables is included in the bitset.
+	 *
+	 * @param bits the bitset
+	 * @param variables the variable identifiers
+	 * @return true if the bitset includes one of the variables, false otherwise
+	 */
+	private boolean intersects(BitSet bits, Collection<String> variables) {
+		if (variables.size() <= bits.cardinality()) {
+			for (String variable : variables) {
+				Integer index = indices.get(variable);
+				if (index != null && bits.get(index)) {
+					return true;
+				}
+			}
+		}
+		else {
+			for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i+1)) {
+				if (variables.contains(nodes[i].getId())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Searches for the closest nodes among the variables to retain, starting from the
+	 * given node and following the relations provided as argument.  The search is
+	 * restricted to the nodes reachable from the start node.
+	 *
+	 * @param start the start node
+	 * @param relations the relations to follow (inputs or outputs)
+	 * @param reachable the nodes reachable from each node via these relations
+	 * @param variablesToRetain the variables to retain
+	 * @return the closest variables to retain
+	 */
+	private Set<String> getClosest(int start, int[][] relations, BitSet[] reachable,
+			Collection<String> variablesToRetain) {
+		Set<String> closest = new HashSet<String>();
+		if (!intersects(reachable[start], variablesToRetain)) {
+			return closest;
+		}
+		BitSet visited = new BitSet(nodes.length);
+		List<Integer> toProcess = new ArrayList<Integer>();
+		for (int related : relations[start]) {
+			visited.set(related);
+			toProcess.add(related);
+		}
+		while (!toProcess.isEmpty()) {
+			int i = toProcess.remove(toProcess.size()-1);
+			if (variablesToRetain.contains(nodes[i].getId())) {
+				closest.add(nodes[i].getId());
+			}
+			else {
+				for (int related : relations[i]) {
+					if (!visited.get(related)) {
+						visited.set(related);
+						toProcess.add(related);
+					}
+				}
+			}
+		}
+		return closest;
+	}
+
+
+	/**
+	 * Returns the bitset for the node identifiers (ignoring the identifiers that are
+	 * not indexed).
+	 *
+	 * @param nodeIds the node identifiers
+	 * @return the corresponding bitset
+	 */
+	private BitSet getBits(Collection<String> nodeIds) {
+		BitSet bits = new BitSet(nodes.length);
+		for (String nodeId : nodeIds) {
+			Integer index = indices.get(nodeId);
+			if (index != null) {
+				bits.set(index);
+			}
+		}
+		return bits;
+	}
+
+
+	/**
+	 * Runs the Bayes-ball algorithm from the queried nodes.  The balls are passed
+	 * from node to node according to the following rules: <ul>
+	 * <li>an unobserved node visited from a child passes the ball to its parents
+	 * and children;
+	 * <li>an unobserved node visited from a parent passes the ball to its children;
+	 * <li>an observed node visited from a parent bounces the ball back to its parents;
+	 * <li>an observed node visited from a child blocks the ball.
+	 * </ul>
+	 * The nodes marked on top (i.e. which passed the ball to their parents) are the
+	 * requisite probability nodes, and the visited observed nodes are the requisite
+	 * observations.
+	 *
+	 * @param queried the queried nodes
+	 * @param observed the observed nodes
+	 * @return the requisite nodes
+	 */
+	private RequisiteNodes runBayesBall(BitSet queried, BitSet observed) {
+		BitSet visited = new BitSet(nodes.length);
+		BitSet top = new BitSet(nodes.length);
+		BitSet bottom = new BitSet(nodes.length);
+
+		// each scheduled visit is encoded as 2*node + (1 if visited from a child)
+		Deque<Integer> schedule = new ArrayDeque<Integer>();
+		for (int i = queried.nextSetBit(0); i >= 0; i = queried.nextSetBit(i+1)) {
+			schedule.add(2*i + 1);
+		}
+		while (!schedule.isEmpty()) {
+			int visit = schedule.poll();
+			int j = visit / 2;
+			boolean fromChild = (visit % 2 == 1);
+			visited.set(j);
+			if (!observed.get(j) && fromChild) {
+				if (!top.get(j)) {
+					top.set(j);
+					for (int input : inputs[j]) {
+						schedule.add(2*input + 1);
+					}
+				}
+				if (!bottom.get(j)) {
+					bottom.set(j);
+					for (int output : outputs[j]) {
+						schedule.add(2*output);
+					}
+				}
+			}
+			else if (!fromChild) {
+				if (observed.get(j) && !top.get(j)) {
+					top.set(j);
+					for (int input : inputs[j]) {
+						schedule.add(2*input + 1);
+					}
+				}
+				else if (!observed.get(j) && !bottom.get(j)) {
+					bottom.set(j);
+					for (int output : outputs[j]) {
+						schedule.add(2*output);
+					}
+				}
+			}
+		}
+		visited.and(observed);
+		return new RequisiteNodes(getIds(top), getIds(visited));
+	}
+
+
+	/**
+	 * Requisite nodes for a query on the network, as determined by the Bayes-ball 
+	 * algorithm.
+	 */
+	public static final class RequisiteNodes {
+
+		// the nodes whose distributions are needed for the query
+		final Set<String> probabilityNodes;
+
+		// the evidence variables whose values are needed for the query
+		final Set<String> observationNodes;
+
+		/**
+		 * Creates a new set of requisite nodes
+		 * 
+		 * @param probabilityNodes the requisite probability nodes
+		 * @param observationNodes the requisite observations
+		 */
+		RequisiteNodes(Set<String> probabilityNodes, Set<String> observationNodes) {
+			this.probabilityNodes = Collections.unmodifiableSet(probabilityNodes);
+			this.observationNodes = Collections.unmodifiableSet(observationNodes);
+		}
+
+		/**
+		 * Returns the nodes whose distributions are needed for the query
+		 * 
+		 * @return the requisite probability nodes
+		 */
+		public Set<String> getProbabilityNodes() {
+			return probabilityNodes;
+		}
+
+		/**
+		 * Returns the evidence variables whose values are needed for the query
+		 * 
+		 * @return the requisite observations
+		 */
+		public Set<String> getObservationNodes() {
+			return observationNodes;
+		}
+
+		/**
+		 * Returns a string representation of the requisite nodes
+		 */
+		@Override
+		public String toString() {
+			return "probability nodes: " + probabilityNodes + ", observations: " + observationNodes;
+		}
+	}
+
+}
@@ -58,6 +58,8 @@ import opendial.utils.StringUtils;
  */
 public class CategoricalTable implements IndependentProbDistribution {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("CategoricalTable", Logger.Level.DEBUG);
 
@@ -68,7 +70,7 @@ public class CategoricalTable implements IndependentProbDistribution {
 	Map<Value,Double> table;
 
 	// probability intervals (used for binary search in sampling)
-	Intervals<Value> intervals;
+	transient Intervals<Value> intervals;
 
 	// sampler
 	Random sampler;
@@ -52,6 +52,8 @@ import opendial.utils.CombinatoricsUtils;
 public class ConditionalDistribution<T extends IndependentProbDistribution> 
 	implements ProbDistribution {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("ConditionalDistribution", Logger.Level.DEBUG);
 
@@ -50,6 +50,8 @@ import opendial.utils.StringUtils;
  */
 public class ConditionalTable extends ConditionalDistribution<CategoricalTable> {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("ConditionalTable", Logger.Level.DEBUG);
 
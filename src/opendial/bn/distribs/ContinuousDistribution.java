@@ -51,6 +51,8 @@ import org.w3c.dom.Node;
  */
 public class ContinuousDistribution implements  IndependentProbDistribution {
 
+	private static final long serialVersionUID = 1L;
+
 	public static Logger log = new Logger("ContinuousDistribution", Logger.Level.DEBUG);
 
 	// the variable for the distribution
@@ -59,8 +61,8 @@ public class ContinuousDistribution implements  IndependentProbDistribution {
 	// density function for the distribution
 	DensityFunction function;
 
-	// discrete equivalent of the distribution
-	CategoricalTable discreteCache;
+	// discrete equivalent of the distribution (only published once complete)
+	volatile CategoricalTable discreteCache;
 		
 
 	// ===================================
@@ -132,15 +134,17 @@ public class ContinuousDistribution implements  IndependentProbDistribution {
 	@Override
 	public CategoricalTable toDiscrete() {
 
-		if (discreteCache == null) {
+		CategoricalTable table = discreteCache;
+		if (table == null) {
 			Map<double[],Double> discretisation = function.discretise(Settings.discretisationBuckets);
-			discreteCache = new CategoricalTable(variable);
+			table = new CategoricalTable(variable);
 			for (double[] value : discretisation.keySet()) {
 				Value val = (value.length > 1)? new ArrayVal(value) : ValueFactory.create(value[0]);
-				discreteCache.addRow(val, discretisation.get(value));
+				table.addRow(val, discretisation.get(value));
 			}
+			discreteCache = table;
 		}
-		return discreteCache;
+		return table;
 	}
 	
 	
@@ -333,8 +337,9 @@ public class ContinuousDistribution implements  IndependentProbDistribution {
 		if (variable.equals(oldId)) {
 			variable = newId;
 		}
-		if (discreteCache != null) {
-			discreteCache.modifyVariableId(oldId, newId);
+		CategoricalTable table = discreteCache;
+		if (table != null) {
+			table.modifyVariableId(oldId, newId);
 		}
 	}
 	
@@ -54,6 +54,8 @@ import opendial.datastructs.Assignment;
  */
 public class EmpiricalDistribution implements MultivariateDistribution {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("EmpiricalDistribution", Logger.Level.DEBUG);
 
@@ -63,9 +65,9 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	// random sampler
 	Random sampler;
 
-	// cache for the discrete and continuous distributions
-	MultivariateTable discreteCache;
-	ContinuousDistribution continuousCache;
+	// cache for the discrete and continuous distributions (only published once complete)
+	volatile MultivariateTable discreteCache;
+	volatile ContinuousDistribution continuousCache;
 
 	// the names of the random variables
 	Set<String> variables;
@@ -240,10 +242,12 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 */
 	@Override
 	public MultivariateTable toDiscrete() {
-		if (discreteCache == null) {
-			discreteCache = createMultivariateTable(variables);		
+		MultivariateTable table = discreteCache;
+		if (table == null) {
+			table = createMultivariateTable(variables);
+			discreteCache = table;
 		}
-		return discreteCache;
+		return table;
 
 	}
 
@@ -256,14 +260,16 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 * @throws DialException if the distribution content is discrete.
 	 */
 	public ContinuousDistribution toContinuous() throws DialException {
-		if (continuousCache == null) {
+		ContinuousDistribution distrib = continuousCache;
+		if (distrib == null) {
 			if (variables.size() != 1) {
 				throw new DialException ("cannot convert distribution to continuous for P(" + variables +  ")");
 			}
 			String headVar = variables.iterator().next();
-			continuousCache = createContinuousDistribution(headVar);
+			distrib = createContinuousDistribution(headVar);
+			continuousCache = distrib;
 		}
-		return continuousCache;
+		return distrib;
 	}
 
 
@@ -521,11 +527,13 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 			}
 		}
 
-		if (discreteCache != null) {
-			discreteCache.modifyVariableId(oldId, newId);
+		MultivariateTable table = discreteCache;
+		if (table != null) {
+			table.modifyVariableId(oldId, newId);
 		}
-		if (continuousCache != null) {
-			continuousCache.modifyVariableId(oldId, newId);
+		ContinuousDistribution distrib = continuousCache;
+		if (distrib != null) {
+			distrib.modifyVariableId(oldId, newId);
 		}
 	}
 
@@ -45,6 +45,8 @@ import opendial.datastructs.ValueRange;
  */
 public class MarginalDistribution implements ProbDistribution {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("MarginalDistribution", Logger.Level.DEBUG);
 
@@ -23,6 +23,7 @@
 
 package opendial.bn.distribs;
 
+import java.io.Serializable;
 import java.util.Set;
 
 import opendial.arch.DialException;
@@ -35,7 +36,7 @@ import opendial.datastructs.Assignment;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public interface MultivariateDistribution {
+public interface MultivariateDistribution extends Serializable {
 
 	/**
 	 * Returns the names of the random variables in the distribution
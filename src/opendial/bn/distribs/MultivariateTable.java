@@ -47,6 +47,8 @@ import opendial.utils.StringUtils;
  */
 public class MultivariateTable implements MultivariateDistribution {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("MultivariateTable", Logger.Level.DEBUG);
 
@@ -57,7 +59,7 @@ public class MultivariateTable implements MultivariateDistribution {
 	Map<Assignment,Double> table;
 
 	// probability intervals (used for binary search in sampling)
-	Intervals<Assignment> intervals;
+	transient Intervals<Assignment> intervals;
 
 	// sampler
 	Random sampler;
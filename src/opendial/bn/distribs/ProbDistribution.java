@@ -23,6 +23,7 @@
 
 package opendial.bn.distribs;
 
+import java.io.Serializable;
 import java.util.Set;
 
 import opendial.arch.DialException;
@@ -38,7 +39,7 @@ import opendial.datastructs.ValueRange;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public interface ProbDistribution  {
+public interface ProbDistribution extends Serializable {
 
 	
 	/**
@@ -23,6 +23,7 @@
 
 package opendial.bn.distribs;
 
+import java.io.Serializable;
 
 import opendial.datastructs.Assignment;
 
@@ -35,7 +36,7 @@ import opendial.datastructs.Assignment;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public interface UtilityFunction {
+public interface UtilityFunction extends Serializable {
 
 	/**
 	 * Returns the utility associated with the specific assignment of values for
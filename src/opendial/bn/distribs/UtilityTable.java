@@ -47,6 +47,8 @@ import opendial.utils.StringUtils;
  */
 public class UtilityTable implements UtilityFunction {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("UtilityTable", Logger.Level.DEBUG);
 
@@ -23,6 +23,7 @@
 
 package opendial.bn.distribs.densityfunctions;
 
+import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
 
@@ -39,7 +40,7 @@ import org.w3c.dom.Element;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */ 
-public interface DensityFunction {
+public interface DensityFunction extends Serializable {
 
 	/**
 	 * Returns the density value of the function at a given point
@@ -48,6 +48,8 @@ import org.w3c.dom.Element;
  */
 public class DirichletDensityFunction implements DensityFunction {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("DirichletDensityFunction",
 			Logger.Level.DEBUG);
@@ -49,6 +49,8 @@ import org.w3c.dom.Element;
  */
 public class DiscreteDensityFunction implements DensityFunction {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("DiscreteDensityFunction", Logger.Level.DEBUG);
 
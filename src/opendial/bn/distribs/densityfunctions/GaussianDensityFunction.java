@@ -47,6 +47,8 @@ import org.w3c.dom.Element;
  */
 public class GaussianDensityFunction implements DensityFunction {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("GaussianDensityFunction", Logger.Level.DEBUG);
 
@@ -51,6 +51,8 @@ import org.w3c.dom.Element;
  */
 public class KernelDensityFunction implements DensityFunction {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("KernelDensityFunction", Logger.Level.DEBUG);
 
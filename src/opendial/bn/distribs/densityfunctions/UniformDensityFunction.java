@@ -45,6 +45,8 @@ import org.w3c.dom.Element;
  */
 public class UniformDensityFunction implements DensityFunction {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("UniformDensityFunction", Logger.Level.NORMAL);
 	
@@ -24,6 +24,7 @@
 package opendial.bn.nodes;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -44,6 +45,8 @@ import opendial.datastructs.Assignment;
  */
 public class ActionNode extends BNode {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("ActionNode", Logger.Level.DEBUG);
 
@@ -169,6 +172,17 @@ public class ActionNode extends BNode {
 	}
 	
 	
+	/**
+	 * Returns a read-only view on the values currently listed in the node
+	 * 
+	 * @return a view on the values
+	 */
+	@Override
+	public Set<Value> getValuesView() {
+		return Collections.unmodifiableSet(actionValues);
+	}
+	
+	
 	/**
 	 * Returns a sample point for the action, assuming a uniform distribution
 	 * over the action values
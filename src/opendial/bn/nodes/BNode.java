@@ -23,14 +23,18 @@
 
 package opendial.bn.nodes;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 import java.util.Stack;
 import java.util.regex.Matcher;
@@ -39,6 +43,7 @@ import java.util.regex.Pattern;
 import opendial.arch.DialException;
 import opendial.arch.Logger;
 import opendial.bn.BNetwork;
+import opendial.bn.ReachabilityIndex;
 import opendial.bn.values.Value;
 import opendial.datastructs.Assignment;
 import opendial.datastructs.ValueRange;
@@ -54,7 +59,9 @@ import opendial.utils.StringUtils;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public abstract class BNode implements Comparable<BNode> {
+public abstract class BNode implements Comparable<BNode>, Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	// logger
 	public static Logger log = new Logger("BNode", Logger.Level.DEBUG);
@@ -68,6 +75,14 @@ public abstract class BNode implements Comparable<BNode> {
 	// set of nodes with outgoing relations to the node
 	protected Map<String,BNode> outputNodes;
 
+	// read-only views on the input nodes and their identifiers
+	private transient Collection<BNode> inputNodesView;
+	private transient Set<String> inputNodeIdsView;
+
+	// read-only views on the output nodes and their identifiers
+	private transient Collection<BNode> outputNodesView;
+	private transient Set<String> outputNodesIdsView;
+
 	// Graphical model in which the node is included (can be null)
 	BNetwork network;
 
@@ -86,6 +101,7 @@ public abstract class BNode implements Comparable<BNode> {
 		this.nodeId = nodeId;
 		inputNodes = new HashMap<String,BNode>();
 		outputNodes = new HashMap<String,BNode>();
+		createViews();
 	}
 
 	/**
@@ -114,6 +130,7 @@ public abstract class BNode implements Comparable<BNode> {
 
 		addInputNode_internal(inputNode);
 		inputNode.addOutputNode_internal(this);
+		notifyEdgeAddition(inputNode, this);
 	}
 
 
@@ -142,12 +159,15 @@ public abstract class BNode implements Comparable<BNode> {
 		if (!inputNodes.containsKey(inputNodeId)) {
 			log.warning("node " + inputNodeId + " is not an input node for " + nodeId);
 		}
-		boolean removal1 = inputNodes.containsKey(inputNodeId) && 
-				inputNodes.get(inputNodeId).removeOutputNode_internal(nodeId);
+		BNode inputNode = inputNodes.get(inputNodeId);
+		boolean removal1 = inputNode != null && inputNode.removeOutputNode_internal(nodeId);
 		boolean removal2 = removeInputNode_internal(inputNodeId);
 		if (removal1!=removal2) {
 			log.warning("inconsistency between input and output links for " + inputNodeId + " and " + nodeId);
 		}
+		if (inputNode != null) {
+			notifyEdgeRemoval(inputNode, this);
+		}
 
 		return removal2;
 	}
@@ -175,12 +195,15 @@ public abstract class BNode implements Comparable<BNode> {
 		if (!outputNodes.containsKey(outputNodeId)) {
 			log.warning("node " + outputNodeId + " is not an input node for " + nodeId);
 		}
-		boolean removal1 = outputNodes.containsKey(outputNodeId) && 
-				outputNodes.get(outputNodeId).removeInputNode_internal(nodeId);
+		BNode outputNode = outputNodes.get(outputNodeId);
+		boolean removal1 = outputNode != null && outputNode.removeInputNode_internal(nodeId);
 		boolean removal2 = removeOutputNode_internal(outputNodeId);
 		if (removal1!=removal2) {
 			log.warning("inconsistency between input and output links for " + outputNodeId + " and " + nodeId);
 		}
+		if (outputNode != null) {
+			notifyEdgeRemoval(this, outputNode);
+		}
 
 		return removal2;
 	}
@@ -223,11 +246,16 @@ public abstract class BNode implements Comparable<BNode> {
 
 	/**
 	 * Sets the Bayesian network associated with the node (useful to inform
-	 * the network of change of identifiers).
+	 * the network of change of identifiers and structural changes).  If the 
+	 * node was previously associated with another network, this network is 
+	 * informed of the change.
 	 * 
 	 * @param network the Bayesian network to associate to the node.
 	 */
 	public void setNetwork(BNetwork network) {
+		if (this.network != null && this.network != network) {
+			this.network.nodeReleased(this);
+		}
 		this.network = network;
 	}
 	
@@ -278,6 +306,18 @@ public abstract class BNode implements Comparable<BNode> {
 		return new HashSet<BNode>(inputNodes.values());
 	}
 	
+	
+	/**
+	 * Returns a read-only view on the input nodes.  Contrary to getInputNodes(), 
+	 * the collection is not copied and reflects the subsequent changes to the node 
+	 * relations (it should therefore not be iterated while modifying them).
+	 * 
+	 * @return a view on the input nodes
+	 */
+	public Collection<BNode> getInputNodesView() {
+		return inputNodesView;
+	}
+	
 
 	/**
 	 * Returns the set of input nodes of a certain class
@@ -306,6 +346,17 @@ public abstract class BNode implements Comparable<BNode> {
 	public Set<String> getInputNodeIds() {
 		return new HashSet<String>(inputNodes.keySet());
 	}
+	
+	
+	/**
+	 * Returns a read-only view on the identifiers for the input nodes (see 
+	 * getInputNodesView()).
+	 * 
+	 * @return a view on the ids for the input nodes
+	 */
+	public Set<String> getInputNodeIdsView() {
+		return inputNodeIdsView;
+	}
 
 
 
@@ -320,6 +371,18 @@ public abstract class BNode implements Comparable<BNode> {
 		return result;
 	}
 	
+	
+	/**
+	 * Returns a read-only view on the output nodes.  Contrary to getOutputNodes(), 
+	 * the collection is not copied and reflects the subsequent changes to the node 
+	 * relations (it should therefore not be iterated while modifying them).
+	 * 
+	 * @return a view on the output nodes
+	 */
+	public Collection<BNode> getOutputNodesView() {
+		return outputNodesView;
+	}
+	
 
 	/**
 	 * Returns the set of output nodes of a certain class
@@ -364,6 +427,17 @@ public abstract class BNode implements Comparable<BNode> {
 	public Set<String> getOutputNodesIds() {
 		return new HashSet<String>(outputNodes.keySet());
 	}
+	
+	
+	/**
+	 * Returns a read-only view on the identifiers for the output nodes (see 
+	 * getOutputNodesView()).
+	 * 
+	 * @return a view on the ids for the output nodes
+	 */
+	public Set<String> getOutputNodesIdsView() {
+		return outputNodesIdsView;
+	}
 
 
 
@@ -392,25 +466,7 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return an ordered list of ancestors for the node
 	 */
 	public List<BNode> getAncestors() {
-		List<BNode> ancestors = new ArrayList<BNode>();
-
-		Queue<BNode> nodesToProcess = new LinkedList<BNode>();
-		nodesToProcess.add(this);
-
-		// NB: we try to avoid recursion for efficiency reasons, and
-		// use a while loop instead
-		while (!nodesToProcess.isEmpty()) {
-			BNode currentNode = nodesToProcess.poll();
-			for (BNode ancestorNode : currentNode.getInputNodes()) {
-				if (!ancestors.contains(ancestorNode)) {
-					ancestors.add(ancestorNode);
-				}
-				if (!nodesToProcess.contains(ancestorNode)) {
-					nodesToProcess.add(ancestorNode);
-				}
-			}
-		}
-		return ancestors;
+		return getRelatedNodes(true);
 	}
 
 	/**
@@ -440,20 +496,11 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return the set of dependencies for the given variable
 	 */
 	public Set<String> getAncestorsIds(Collection<String> variablesToRetain) {
-		Set<String> ancestors = new HashSet<String>();
-
-		Stack<BNode> nodesToProcess = new Stack<BNode>();
-		nodesToProcess.addAll(getInputNodes());
-		while (!nodesToProcess.isEmpty()) {
-			BNode inputNode = nodesToProcess.pop();
-			if (variablesToRetain.contains(inputNode.getId())) {
-				ancestors.add(inputNode.getId());
-			}
-			else {
-				nodesToProcess.addAll(inputNode.getInputNodes());
-			}
+		ReachabilityIndex index = getReachabilityIndex();
+		if (index != null) {
+			return index.getClosestAncestorIds(nodeId, variablesToRetain);
 		}
-		return ancestors;
+		return getClosestRelatedIds(true, variablesToRetain);
 	}
 	
 	
@@ -466,20 +513,11 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return the set of relevant descendatns for the given variable
 	 */
 	public Set<String> getDescendantsIds(Collection<String> variablesToRetain) {
-		Set<String> descendants = new HashSet<String>();
-
-		Stack<BNode> nodesToProcess = new Stack<BNode>();
-		nodesToProcess.addAll(getOutputNodes());
-		while (!nodesToProcess.isEmpty()) {
-			BNode outputNode = nodesToProcess.pop();
-			if (variablesToRetain.contains(outputNode.getId())) {
-				descendants.add(outputNode.getId());
-			}
-			else {
-				nodesToProcess.addAll(outputNode.getOutputNodes());
-			}
+		ReachabilityIndex index = getReachabilityIndex();
+		if (index != null) {
+			return index.getClosestDescendantIds(nodeId, variablesToRetain);
 		}
-		return descendants;
+		return getClosestRelatedIds(false, variablesToRetain);
 	}
 		
 	
@@ -493,25 +531,7 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return an ordered list of descendants for the node
 	 */
 	public List<BNode> getDescendants() {
-		List<BNode> descendants = new ArrayList<BNode>();
-
-		Queue<BNode> nodesToProcess = new LinkedList<BNode>();
-		nodesToProcess.add(this);
-
-		// NB: we try to avoid recursion for efficiency reasons, and
-		// use a while loop instead
-		while (!nodesToProcess.isEmpty()) {
-			BNode currentNode = nodesToProcess.poll();
-			for (BNode descendantNode : currentNode.getOutputNodes()) {
-				if (!descendants.contains(descendantNode)) {
-					descendants.add(descendantNode);
-				}
-				if (!nodesToProcess.contains(descendantNode)) {
-					nodesToProcess.add(descendantNode);
-				}
-			}
-		}
-		return descendants;
+		return getRelatedNodes(false);
 	}
 
 
@@ -539,24 +559,15 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return true if a descendant is found, false otherwise
 	 */
 	public boolean hasDescendant(Set<String> variables) {
-
-		Queue<BNode> nodesToProcess = new LinkedList<BNode>();
-		nodesToProcess.add(this);
-
-		// NB: we try to avoid recursion for efficiency reasons, and
-		// use a while loop instead
-		while (!nodesToProcess.isEmpty()) {
-			BNode currentNode = nodesToProcess.poll();
-			for (BNode descendantNode : currentNode.getOutputNodes()) {
-				if (variables.contains(descendantNode.getId())) {
-					return true;
-				}
-				if (!nodesToProcess.contains(descendantNode)) {
-					nodesToProcess.add(descendantNode);
-				}
+		ReachabilityIndex index = getReachabilityIndex();
+		if (index != null) {
+			return index.hasDescendant(nodeId, variables);
+		}
+		for (BNode descendantNode : getDescendants()) {
+			if (variables.contains(descendantNode.getId())) {
+				return true;
 			}
 		}
-		
 		return false;
 	}
 	
@@ -568,24 +579,15 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return true if a descendant is found, false otherwise
 	 */
 	public boolean hasAncestor(Set<String> variables) {
-
-		Queue<BNode> nodesToProcess = new LinkedList<BNode>();
-		nodesToProcess.add(this);
-
-		// NB: we try to avoid recursion for efficiency reasons, and
-		// use a while loop instead
-		while (!nodesToProcess.isEmpty()) {
-			BNode currentNode = nodesToProcess.poll();
-			for (BNode ancestorNode : currentNode.getInputNodes()) {
-				if (variables.contains(ancestorNode.getId())) {
-					return true;
-				}
-				if (!nodesToProcess.contains(ancestorNode)) {
-					nodesToProcess.add(ancestorNode);
-				}
+		ReachabilityIndex index = getReachabilityIndex();
+		if (index != null) {
+			return index.hasAncestor(nodeId, variables);
+		}
+		for (BNode ancestorNode : getAncestors()) {
+			if (variables.contains(ancestorNode.getId())) {
+				return true;
 			}
 		}
-		
 		return false;
 	}
 	
@@ -597,25 +599,16 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return true if a descendant is found, false otherwise
 	 */
 	public boolean hasDescendant(Pattern pattern) {
-
-		Queue<BNode> nodesToProcess = new LinkedList<BNode>();
-		nodesToProcess.add(this);
-
-		// NB: we try to avoid recursion for efficiency reasons, and
-		// use a while loop instead
-		while (!nodesToProcess.isEmpty()) {
-			BNode currentNode = nodesToProcess.poll();
-			for (BNode descendantNode : currentNode.getOutputNodes()) {
-				Matcher matcher = pattern.matcher(descendantNode.getId());
-				if (matcher.matches()){
-					return true;
-				}
-				if (!nodesToProcess.contains(descendantNode)) {
-					nodesToProcess.add(descendantNode);
-				}
+		ReachabilityIndex index = getReachabilityIndex();
+		if (index != null) {
+			return index.hasDescendant(nodeId, pattern);
+		}
+		for (BNode descendantNode : getDescendants()) {
+			Matcher matcher = pattern.matcher(descendantNode.getId());
+			if (matcher.matches()){
+				return true;
 			}
 		}
-		
 		return false;
 	}
 	
@@ -628,7 +621,7 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return true if at least one variable is an output node, false otherwise
 	 */
 	public boolean hasOutputNode(Set<String> variables) {
-		for (String outputNode : getOutputNodesIds()) {
+		for (String outputNode : outputNodes.keySet()) {
 			if (variables.contains(outputNode)) {
 				return true;
 			}
@@ -644,6 +637,18 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return the set of distinct values
 	 */
 	public abstract Set<Value> getValues();
+	
+	
+	/**
+	 * Returns a read-only view on the set of distinct values that the node can take.
+	 * By default, the view is built on a copy of the values, but subclasses may avoid
+	 * the copy by returning a view on their (cached) values.  
+	 * 
+	 * @return a view on the set of distinct values
+	 */
+	public Set<Value> getValuesView() {
+		return Collections.unmodifiableSet(getValues());
+	}
 
 
 	/**
@@ -669,12 +674,12 @@ public abstract class BNode implements Comparable<BNode> {
 		while (!toProcess.isEmpty()) {
 			BNode node = toProcess.pop();
 			clique.add(node.getId());
-			for (BNode i : node.getInputNodes()) {
+			for (BNode i : node.inputNodes.values()) {
 				if (!clique.contains(i.getId())) {
 					toProcess.add(i);
 				}
 			}
-			for (BNode o : node.getOutputNodes()) {
+			for (BNode o : node.outputNodes.values()) {
 				if (!clique.contains(o.getId())) {
 					toProcess.add(o);
 				}
@@ -696,7 +701,7 @@ public abstract class BNode implements Comparable<BNode> {
 	public Set<Assignment> getPossibleConditions() {
 		ValueRange possibleInputValues = new ValueRange();
 		for (BNode inputNode : inputNodes.values()) {
-			possibleInputValues.addValues(inputNode.getId(), inputNode.getValues());
+			possibleInputValues.addValues(inputNode.getId(), inputNode.getValuesView());
 		}
 		try {
 			return possibleInputValues.linearise();
@@ -743,16 +748,16 @@ public abstract class BNode implements Comparable<BNode> {
 	public int compareTo(BNode otherNode) {
 
 		// if one node has no incoming nodes, the answer is straightforward
-		if (!otherNode.getInputNodeIds().isEmpty() && getInputNodeIds().isEmpty()) {
+		if (!otherNode.inputNodes.isEmpty() && inputNodes.isEmpty()) {
 			return +100;
 		}
-		else if (otherNode.getInputNodeIds().isEmpty() && !getInputNodeIds().isEmpty()) {
+		else if (otherNode.inputNodes.isEmpty() && !inputNodes.isEmpty()) {
 			return -100;
 		}
 
 		// if both nodes have no ancestors, rely on lexicographic ordering
 		// (and put action nodes first)
-		else if (otherNode.getInputNodeIds().isEmpty() && getInputNodeIds().isEmpty()) {
+		else if (otherNode.inputNodes.isEmpty() && inputNodes.isEmpty()) {
 			if (this instanceof ActionNode && !(otherNode instanceof ActionNode)) {
 				return +10;
 			}
@@ -765,6 +770,17 @@ public abstract class BNode implements Comparable<BNode> {
 		} 
 
 		// if both nodes have ancestors, we check whether one is contained in the other
+		ReachabilityIndex index = getReachabilityIndex();
+		if (index != null && index.covers(otherNode)) {
+			if (index.isAncestor(otherNode.getId(), nodeId)) {
+				return -10;
+			}
+			else if (index.isAncestor(nodeId, otherNode.getId())) {
+				return 10;
+			}
+			int sizeDiff = index.getNbAncestors(otherNode.getId()) - index.getNbAncestors(nodeId);
+			return (sizeDiff != 0)? sizeDiff : StringUtils.compare(nodeId, otherNode.getId());
+		}
 		List<BNode> ownAncestors = getAncestors();
 		if (ownAncestors.contains(otherNode)) {
 			return -10;
@@ -907,6 +923,40 @@ public abstract class BNode implements Comparable<BNode> {
 	}
 
 
+	/**
+	 * Informs the networks associated with the two nodes that a new edge has 
+	 * been added between them.
+	 * 
+	 * @param inputNode the source of the edge
+	 * @param outputNode the target of the edge
+	 */
+	private static void notifyEdgeAddition(BNode inputNode, BNode outputNode) {
+		if (outputNode.network != null) {
+			outputNode.network.edgeAdded(inputNode, outputNode);
+		}
+		if (inputNode.network != null && inputNode.network != outputNode.network) {
+			inputNode.network.edgeAdded(inputNode, outputNode);
+		}
+	}
+	
+	
+	/**
+	 * Informs the networks associated with the two nodes that the edge between 
+	 * them has been removed.
+	 * 
+	 * @param inputNode the source of the edge
+	 * @param outputNode the target of the edge
+	 */
+	private static void notifyEdgeRemoval(BNode inputNode, BNode outputNode) {
+		if (outputNode.network != null) {
+			outputNode.network.edgeRemoved(inputNode, outputNode);
+		}
+		if (inputNode.network != null && inputNode.network != outputNode.network) {
+			inputNode.network.edgeRemoved(inputNode, outputNode);
+		}
+	}
+	
+
 	/**
 	 * Checks whether a cycle exists between the given node and the present one
 	 * 
@@ -914,13 +964,112 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return true if such a cycle exists, false otherwise
 	 */
 	private boolean containsCycles(BNode inputNode) {
-		if (getDescendants().contains(inputNode)) {
-			return true;
+		for (BNode descendantNode : getDescendants()) {
+			if (descendantNode.getId().equals(inputNode.getId()) 
+					&& descendantNode.equals(inputNode)) {
+				return true;
+			}
 		}
 		return false;
 	}
+	
+	
+	/**
+	 * Returns the reachability index of the network that includes the node, provided
+	 * the index covers all the relations of the node.  Else, returns null.
+	 * 
+	 * @return the reachability index for the node, or null if none is available
+	 */
+	private ReachabilityIndex getReachabilityIndex() {
+		if (network != null) {
+			ReachabilityIndex index = network.getReachabilityIndex();
+			if (index != null && index.covers(this)) {
+				return index;
+			}
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Returns the ancestors or descendants of the node, from the closest to the most
+	 * remote ones (breadth-first traversal).
+	 * 
+	 * @param ancestors true to follow the inward relations, false for the outward ones
+	 * @return the ordered list of related nodes
+	 */
+	private List<BNode> getRelatedNodes(boolean ancestors) {
+		List<BNode> related = new ArrayList<BNode>();
+		Set<BNode> visited = Collections.newSetFromMap(new IdentityHashMap<BNode,Boolean>());
+		visited.add(this);
+		for (int i = -1 ; i < related.size() ; i++) {
+			BNode currentNode = (i < 0)? this : related.get(i);
+			Map<String,BNode> relations = (ancestors)? currentNode.inputNodes : currentNode.outputNodes;
+			for (BNode relatedNode : relations.values()) {
+				if (visited.add(relatedNode)) {
+					related.add(relatedNode);
+				}
+			}
+		}
+		return related;
+	}
+	
+	
+	/**
+	 * Returns the closest ancestors or descendants of the node among the variables
+	 * to retain, following the relations until a variable to retain is found.
+	 * 
+	 * @param ancestors true to follow the inward relations, false for the outward ones
+	 * @param variablesToRetain the variables to retain
+	 * @return the closest related variables among the ones to retain
+	 */
+	private Set<String> getClosestRelatedIds(boolean ancestors, 
+			Collection<String> variablesToRetain) {
+		Set<String> closest = new HashSet<String>();
+		Set<BNode> visited = Collections.newSetFromMap(new IdentityHashMap<BNode,Boolean>());
+		Stack<BNode> nodesToProcess = new Stack<BNode>();
+		nodesToProcess.addAll((ancestors)? inputNodes.values() : outputNodes.values());
+		visited.addAll(nodesToProcess);
+		while (!nodesToProcess.isEmpty()) {
+			BNode relatedNode = nodesToProcess.pop();
+			if (variablesToRetain.contains(relatedNode.getId())) {
+				closest.add(relatedNode.getId());
+			}
+			else {
+				Map<String,BNode> relations = (ancestors)? 
+						relatedNode.inputNodes : relatedNode.outputNodes;
+				for (BNode nextNode : relations.values()) {
+					if (visited.add(nextNode)) {
+						nodesToProcess.push(nextNode);
+					}
+				}
+			}
+		}
+		return closest;
+	}
+
 
+	/**
+	 * Creates the read-only views on the input and output nodes.
+	 */
+	private void createViews() {
+		inputNodesView = Collections.unmodifiableCollection(inputNodes.values());
+		inputNodeIdsView = Collections.unmodifiableSet(inputNodes.keySet());
+		outputNodesView = Collections.unmodifiableCollection(outputNodes.values());
+		outputNodesIdsView = Collections.unmodifiableSet(outputNodes.keySet());
+	}
 
 
+	/**
+	 * Reads the node from the stream, and recreates its read-only views.
+	 * 
+	 * @param in the object input stream
+	 * @throws IOException if the node could not be read
+	 * @throws ClassNotFoundException if a class of the node is unknown
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		createViews();
+	}
 
 }
@@ -23,6 +23,7 @@
 
 package opendial.bn.nodes;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -50,6 +51,8 @@ import opendial.datastructs.ValueRange;
  */
 public class ChanceNode extends BNode {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("ChanceNode", Logger.Level.DEBUG);
 
@@ -59,7 +62,7 @@ public class ChanceNode extends BNode {
 	// the set of cached values for the node
 	// NB: if the node has a continuous range, these values are based on 
 	// a discretisation procedure defined by the distribution
-	protected Set<Value> cachedValues;
+	protected volatile Set<Value> cachedValues;
 
 	// ===================================
 	//  NODE CONSTRUCTION
@@ -325,22 +328,38 @@ public class ChanceNode extends BNode {
 	 */
 	@Override
 	public Set<Value> getValues() {
-		if (cachedValues == null) {
-			cachedValues = new HashSet<Value>();
+		return new HashSet<Value>(getValuesView());
+	}
+	
+	
+	/**
+	 * Returns a read-only view on the discrete set of values for the node. The 
+	 * view is based on the cached values, which are recomputed after each change 
+	 * of distribution or input nodes.
+	 *
+	 * @return a view on the discrete set of values
+	 */
+	@Override
+	public Set<Value> getValuesView() {
+		Set<Value> values = cachedValues;
+		if (values == null) {
+			values = new HashSet<Value>();
 			ValueRange inputValues = new ValueRange();
 			for (BNode inputNode: inputNodes.values()) {
-				inputValues.addValues(inputNode.getId(), inputNode.getValues());
+				inputValues.addValues(inputNode.getId(), inputNode.getValuesView());
 			}
 			try {
 				Set<Value> outputs = distrib.getValues(inputValues);
-				cachedValues.addAll(outputs);
+				values.addAll(outputs);
 			}
 			catch (DialException e) {
 				log.warning("could not extract values for " + nodeId);
-				cachedValues = new HashSet<Value>();
+				values = new HashSet<Value>();
 			}
+			values = Collections.unmodifiableSet(values);
+			cachedValues = values;
 		}
-		return new HashSet<Value>(cachedValues);
+		return values;
 	}
 
 
@@ -354,7 +373,7 @@ public class ChanceNode extends BNode {
 			return Settings.discretisationBuckets;
 		}
 		else {
-			return getValues().size();
+			return getValuesView().size();
 		}
 	}
 
@@ -43,6 +43,8 @@ import opendial.datastructs.Assignment;
  */
 public class UtilityNode extends BNode {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("UtilityNode", Logger.Level.DEBUG);
 
@@ -36,6 +36,8 @@ import opendial.utils.StringUtils;
  */
 public final class ArrayVal implements Value {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("ArrayVal", Logger.Level.DEBUG);
 	
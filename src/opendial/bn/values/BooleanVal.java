@@ -34,6 +34,8 @@ import opendial.arch.Logger;
  *
  */
  public final class BooleanVal implements Value {
+
+ 	private static final long serialVersionUID = 1L;
 	
 	 // logger
 	 public static Logger log = new Logger("BooleanVal", Logger.Level.DEBUG);
@@ -37,6 +37,8 @@ import opendial.utils.StringUtils;
 
 public final class DoubleVal implements Value {
 
+	private static final long serialVersionUID = 1L;
+
 	 // logger
 	 public static Logger log = new Logger("DoubleVal", Logger.Level.DEBUG);
 
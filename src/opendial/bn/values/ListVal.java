@@ -29,23 +29,28 @@ import java.util.Collection;
 import java.util.List;
 
 import opendial.arch.Logger;
+import opendial.datastructs.PersistentList;
 
 
 /**
- * Value that is defined as an ordered list of values.
- * 
+ * Value that is defined as an ordered list of values.  The values are stored in 
+ * a persistent list (see PersistentList), such that adding or removing values 
+ * shares the structure of the existing list instead of copying it, and the hashcode
+ * of the list is cached.
  *
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
 public final class ListVal implements Value {
+
+	private static final long serialVersionUID = 1L;
 	
 	 // logger
 	 public static Logger log = new Logger("ListVal", Logger.Level.DEBUG);
 
 	 
 	// the list of values
-	final List<Value> list;
+	PersistentList<Value> list;
 	
 	/**
 	 * Creates the list of values
@@ -54,15 +59,19 @@ public final class ListVal implements Value {
 	 * @param values the values
 	 */
 	protected ListVal(Collection<Value> values) {
-		this.list = new ArrayList<Value>(); 
+		PersistentList<Value> result = PersistentList.empty();
+		List<Value> plainValues = new ArrayList<Value>();
 		for (Value v : values) {
 			if (v instanceof ListVal) {
-				this.list.addAll(((ListVal)v).getList());
+				result = result.plusAll(PersistentList.of(plainValues))
+						.plusAll(((ListVal)v).list);
+				plainValues.clear();
 			}
 			else {
-				this.list.add(v);
+				plainValues.add(v);
 			}
 		}
+		this.list = result.plusAll(PersistentList.of(plainValues));
 		};
 
 	/**
@@ -73,6 +82,13 @@ public final class ListVal implements Value {
 	 */
 	protected ListVal(Value...values) { this(Arrays.asList(values)) ;};
 	
+	/**
+	 * Creates the list value with the persistent list (which is shared, not copied)
+	 * 
+	 * @param list the persistent list
+	 */
+	private ListVal(PersistentList<Value> list) { this.list = list; }
+	
 	
 	/**
 	 * Returns the hashcode for the list
@@ -91,19 +107,19 @@ public final class ListVal implements Value {
 	 */
 	@Override
 	public boolean equals (Object o) {
-		return ((o instanceof ListVal && ((ListVal)o).getList().equals(getList())));
+		return ((o instanceof ListVal && ((ListVal)o).list.equals(list)));
 	}
 	
 	
 	/**
-	 * Returns the list of values
+	 * Returns the list of values (as an unmodifiable list)
 	 *  
 	 * @return the list
 	 */
 	public List<Value> getList() {return list; }
 	
 	/**
-	 * Returns a copy of the list
+	 * Returns a copy of the list (sharing the same persistent list)
 	 *
 	 * @return the copy
 	 */
@@ -126,9 +142,7 @@ public final class ListVal implements Value {
 	@Override
 	public Value concatenate (Value v) {
 		if (v instanceof ListVal) {
-			List<Value> newList = new ArrayList<Value>(list);
-			newList.addAll(((ListVal)v).getList());
-			return new ListVal(newList);
+			return new ListVal(list.plusAll(((ListVal)v).list));
 		}
 		else if (v instanceof NoneVal) {
 			return this;
@@ -145,11 +159,16 @@ public final class ListVal implements Value {
 	 * @param values the ListVal with the values to add
 	 */
 	public void addAll(ListVal values) {
-		list.addAll(values.getList());
+		list = list.plusAll(values.list);
 	}
 	
+	/**
+	 * Removes all the occurrences of the given values from this value
+	 * 
+	 * @param discardValues the values to remove
+	 */
 	public void removeAll(Collection<Value> discardValues) {
-		list.removeAll(discardValues);
+		list = list.minusAll(discardValues);
 	}
 	
 	/**
@@ -162,12 +181,25 @@ public final class ListVal implements Value {
 		return hashCode() - o.hashCode();
 	}
 
+	/**
+	 * Removes the first occurrence of the value from this value
+	 * 
+	 * @param object the value to remove
+	 */
 	public void remove(Value object) {
-		list.remove(object);
+		int index = indexOf(object);
+		if (index >= 0) {
+			list = list.minusAt(index);
+		}
 	}
 
+	/**
+	 * Adds the value at the end of this value
+	 * 
+	 * @param object the value to add
+	 */
 	public void add(Value object) {
-		list.add(object);
+		list = list.plus(object);
 	}
 
 	/**
@@ -177,13 +209,24 @@ public final class ListVal implements Value {
 	 */
 	@Override
 	public boolean contains(Value subvalue) {
-		return list.contains(subvalue);
+		return indexOf(subvalue) >= 0;
 	}
 
 	public boolean isEmpty() {
 		return list.isEmpty();
 	}
-
+	
+	
+	/**
+	 * Returns the position of the first occurrence of the value in the list, or -1
+	 * if the value does not occur.
+	 * 
+	 * @param value the value
+	 * @return the position of the value, or -1
+	 */
+	private int indexOf(Value value) {
+		return list.indexOf(value);
+	}
 
 	
-}
\ No newline at end of file
+}
@@ -32,6 +32,8 @@ package opendial.bn.values;
  *
  */
 public final class NoneVal implements Value {
+
+	private static final long serialVersionUID = 1L;
 	 
 	/**
 	 * Creates the none value 
@@ -109,4 +111,14 @@ public final class NoneVal implements Value {
 		return false;
 	}
 	
-}
\ No newline at end of file
+	
+	/**
+	 * Returns the unique none value after deserialisation
+	 * 
+	 * @return the none value
+	 */
+	private Object readResolve() {
+		return ValueFactory.none();
+	}
+	
+}
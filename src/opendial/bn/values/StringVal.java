@@ -34,6 +34,8 @@ import opendial.datastructs.Template;
  */
 
 public final class StringVal implements Value {
+
+	private static final long serialVersionUID = 1L;
 	
 	public static Logger log = new Logger("StringVal", Logger.Level.DEBUG);
 
@@ -152,7 +154,7 @@ public final class StringVal implements Value {
 		if (subvalue instanceof StringVal) {
 			StringVal stringval = (StringVal)subvalue;
 			if (stringval.template == null) {
-				stringval.template = new Template(stringval.str);
+				stringval.template = Template.create(stringval.str);
 			}
 			return stringval.template.match(str,false).isMatching();
 		}
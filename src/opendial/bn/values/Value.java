@@ -23,6 +23,8 @@
 
 package opendial.bn.values;
 
+import java.io.Serializable;
+
 import opendial.arch.DialException;
 
 /**
@@ -38,7 +40,7 @@ import opendial.arch.DialException;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public interface Value extends Comparable<Value> {
+public interface Value extends Comparable<Value>, Serializable {
 	
 	/**
 	 * Copies the value
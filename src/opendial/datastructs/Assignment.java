@@ -23,9 +23,11 @@
 
 package opendial.datastructs;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -55,7 +57,9 @@ import org.w3c.dom.Element;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public class Assignment {
+public class Assignment implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	// logger
 	static Logger log = new Logger("Assignment", Logger.Level.DEBUG);
@@ -193,6 +197,17 @@ public class Assignment {
 		this();
 		map.putAll(pairs);
 	}
+	
+	
+	/**
+	 * Creates an assignment directly backed by the given map (without copy).
+	 * 
+	 * @param map the map encoding the assignment
+	 * @param backed (unused) marker for the backed constructor
+	 */
+	private Assignment(Map<String,Value> map, boolean backed) {
+		this.map = map;
+	}
 
 	/**
 	 * Creates an assignment from an existing one (which is copied),
@@ -664,6 +679,18 @@ public class Assignment {
 	public Assignment copy() {
 		return new Assignment(this);
 	}
+	
+	
+	/**
+	 * Returns a read-only view of the assignment.  The view is not a copy: it 
+	 * reflects the subsequent changes to the assignment, and any attempt to 
+	 * modify it throws an UnsupportedOperationException.
+	 * 
+	 * @return the read-only view of the assignment
+	 */
+	public Assignment getUnmodifiableView() {
+		return new Assignment(Collections.unmodifiableMap(map), true);
+	}
 
 
 	/**
@@ -0,0 +1,244 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+                                                                            
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.datastructs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import opendial.arch.Logger;
+
+
+/**
+ * Thread-safe cache of bounded size, with a least-recently-used eviction policy.
+ * The cache is split into segments (each with their own lock and their own share
+ * of the capacity) to limit the contention between concurrent threads, and keeps
+ * track of the number of hits and misses.
+ * 
+ * <p>Since the eviction is done within each segment, the evicted entry is the 
+ * least recently used entry of its segment, which is not necessarily the least 
+ * recently used entry of the full cache.
+ *
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public final class LRUCache<K,V> {
+
+	// logger
+	public static Logger log = new Logger("LRUCache", Logger.Level.DEBUG);
+
+	// maximum number of segments
+	public static final int MAX_SEGMENTS = 16;
+
+	// the segments of the cache
+	final Segment<K,V>[] segments;
+
+	// the capacity of the cache
+	final int capacity;
+
+	// number of hits and misses
+	final LongAdder hits = new LongAdder();
+	final LongAdder misses = new LongAdder();
+
+
+	/**
+	 * Creates a new cache with the given capacity.  A capacity of zero (or lower)
+	 * disables the cache.
+	 * 
+	 * @param capacity the maximum number of entries in the cache
+	 */
+	@SuppressWarnings("unchecked")
+	public LRUCache(int capacity) {
+		this.capacity = Math.max(0, capacity);
+		int nbSegments = Math.max(1, Math.min(MAX_SEGMENTS, this.capacity / 16));
+		segments = (Segment<K,V>[]) new Segment<?,?>[nbSegments];
+		for (int i = 0 ; i < nbSegments ; i++) {
+			int segmentCapacity = this.capacity / nbSegments + ((i < this.capacity % nbSegments)? 1 : 0);
+			segments[i] = new Segment<K,V>(segmentCapacity);
+		}
+	}
+
+
+	/**
+	 * Returns the value associated with the key, or null if the key is not in the
+	 * cache.
+	 * 
+	 * @param key the key
+	 * @return the cached value, or null if none is found
+	 */
+	public V get(K key) {
+		Segment<K,V> segment = getSegment(key);
+		V value;
+		synchronized (segment) {
+			value = segment.get(key);
+		}
+		if (value != null) {
+			hits.increment();
+		}
+		else {
+			misses.increment();
+		}
+		return value;
+	}
+
+
+	/**
+	 * Adds the value associated with the key to the cache, evicting the least 
+	 * recently used entry of its segment if the segment is full.
+	 * 
+	 * @param key the key
+	 * @param value the value
+	 */
+	public void put(K key, V value) {
+		if (capacity > 0) {
+			Segment<K,V> segment = getSegment(key);
+			synchronized (segment) {
+				segment.put(key, value);
+			}
+		}
+	}
+
+
+	/**
+	 * Removes all entries from the cache (the statistics are preserved).
+	 */
+	public void clear() {
+		for (Segment<K,V> segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the number of entries in the cache.
+	 * 
+	 * @return the number of entries
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment<K,V> segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+
+	/**
+	 * Returns the capacity of the cache
+	 * 
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+
+	/**
+	 * Returns the number of lookups that found their value in the cache.
+	 * 
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+
+	/**
+	 * Returns the number of lookups that did not find their value in the cache.
+	 * 
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+
+	/**
+	 * Returns the proportion of lookups that found their value in the cache (0 if
+	 * no lookup has been made yet).
+	 * 
+	 * @return the hit rate
+	 */
+	public double getHitRate() {
+		long nbHits = hits.sum();
+		long total = nbHits + misses.sum();
+		return (total > 0)? ((double)nbHits) / total : 0.0;
+	}
+
+
+	/**
+	 * Returns a string representation of the cache, with its size and statistics.
+	 */
+	@Override
+	public String toString() {
+		return "cache (" + size() + "/" + capacity + " entries, " 
+				+ getHits() + " hits, " + getMisses() + " misses)";
+	}
+
+
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Returns the segment for the key.
+	 * 
+	 * @param key the key
+	 * @return the corresponding segment
+	 */
+	private Segment<K,V> getSegment(K key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return segments[(hash & 0x7fffffff) % segments.length];
+	}
+
+
+	/**
+	 * Segment of the cache, implemented as a linked hash map in access order.
+	 */
+	@SuppressWarnings("serial")
+	static final class Segment<K,V> extends LinkedHashMap<K,V> {
+
+		// maximum number of entries in the segment
+		final int segmentCapacity;
+
+		Segment(int segmentCapacity) {
+			super(16, 0.75f, true);
+			this.segmentCapacity = segmentCapacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+			return size() > segmentCapacity;
+		}
+	}
+
+}
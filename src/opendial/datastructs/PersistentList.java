@@ -0,0 +1,643 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+                                                                            
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.datastructs;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import opendial.arch.Logger;
+import opendial.bn.values.ArrayVal;
+import opendial.bn.values.DoubleVal;
+import opendial.bn.values.ListVal;
+
+
+/**
+ * Immutable list with structural sharing, implemented as a balanced (AVL) tree 
+ * indexed by position.  The operations returning a modified list (appending or 
+ * concatenating elements, removing an element or all occurrences of a collection of
+ * elements) leave the current list unchanged and share most of its nodes with the
+ * new list, in O(log n) time instead of the linear time required to copy the list.
+ * 
+ * <p>Each node caches the size and hashcode of its subtree (the hashcode of the list
+ * is the one defined in java.util.List), as well as a 64-bit mask of the hashcodes of 
+ * its elements.  The mask is used to skip the subtrees that cannot contain a given
+ * element when searching for or removing elements.
+ * 
+ * <p>The masks (and the hashcode comparison in equals(...)) assume that the equality
+ * of the elements is consistent with their hashcodes.  This is not the case for 
+ * some values (double values are compared with a tolerance, and arrays are hashed 
+ * by identity), and the searches fall back on a linear scan for such values (see
+ * isHashConsistent(...)).  The list is a read-only implementation of java.util.List: 
+ * the standard mutating methods throw an UnsupportedOperationException.
+ *
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ *
+ * @param <E> the type of the elements
+ */
+public final class PersistentList<E> extends AbstractList<E> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	// logger
+	public static Logger log = new Logger("PersistentList", Logger.Level.DEBUG);
+
+	// the empty list
+	@SuppressWarnings("rawtypes")
+	static final PersistentList EMPTY = new PersistentList<Object>(null);
+
+	// the root of the tree (null if the list is empty)
+	transient Node<E> root;
+
+
+	/**
+	 * Creates a list with the given root.
+	 * 
+	 * @param root the root of the tree
+	 */
+	private PersistentList(Node<E> root) {
+		this.root = root;
+	}
+
+
+	/**
+	 * Returns the empty list.
+	 * 
+	 * @return the empty list
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> PersistentList<E> empty() {
+		return EMPTY;
+	}
+
+
+	/**
+	 * Returns the list with the elements of the collection (in their iteration
+	 * order).  The collection is returned as such if it is already a persistent list.
+	 * 
+	 * @param elements the elements
+	 * @return the corresponding list
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> PersistentList<E> of(Collection<? extends E> elements) {
+		if (elements instanceof PersistentList) {
+			return (PersistentList<E>)elements;
+		}
+		Object[] array = elements.toArray();
+		return (array.length == 0)? empty() : new PersistentList<E>(build(array, 0, array.length));
+	}
+
+
+	// ===================================
+	//  PERSISTENT OPERATIONS
+	// ===================================
+
+
+	/**
+	 * Returns a new list with the element appended at the end of the list.
+	 * 
+	 * @param element the element to append
+	 * @return the new list
+	 */
+	public PersistentList<E> plus(E element) {
+		return new PersistentList<E>(join(root, element, null));
+	}
+
+
+	/**
+	 * Returns a new list with the elements of the other list appended at the end
+	 * of the list.
+	 * 
+	 * @param other the list to append
+	 * @return the new list
+	 */
+	public PersistentList<E> plusAll(PersistentList<? extends E> other) {
+		@SuppressWarnings("unchecked")
+		Node<E> otherRoot = (Node<E>)other.root;
+		if (otherRoot == null) {
+			return this;
+		}
+		return (root == null)? new PersistentList<E>(otherRoot) 
+				: new PersistentList<E>(concat(root, otherRoot));
+	}
+
+
+	/**
+	 * Returns a new list without the first occurrence of the element (or the list 
+	 * itself if the element does not occur in the list).
+	 * 
+	 * @param element the element to remove
+	 * @return the new list
+	 */
+	public PersistentList<E> minus(Object element) {
+		int index = indexOf(element);
+		return (index < 0)? this : new PersistentList<E>(removeAt(root, index));
+	}
+
+
+	/**
+	 * Returns a new list without all the occurrences of the elements in the 
+	 * collection (or the list itself if none of them occurs in the list).
+	 * 
+	 * @param elements the elements to remove
+	 * @return the new list
+	 */
+	public PersistentList<E> minusAll(Collection<?> elements) {
+		if (root == null || elements.isEmpty()) {
+			return this;
+		}
+		long mask = 0;
+		for (Object element : elements) {
+			mask |= isHashConsistent(element)? bit(Objects.hashCode(element)) : -1L;
+		}
+		Node<E> newRoot = removeAll(root, elements, mask);
+		return (newRoot == root)? this : new PersistentList<E>(newRoot);
+	}
+
+
+	/**
+	 * Returns a new list without the element at the given position.
+	 * 
+	 * @param index the position of the element to remove
+	 * @return the new list
+	 */
+	public PersistentList<E> minusAt(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+		}
+		return new PersistentList<E>(removeAt(root, index));
+	}
+
+
+	// ===================================
+	//  GETTERS
+	// ===================================
+
+
+	/**
+	 * Returns the element at the given position
+	 * 
+	 * @param index the position
+	 * @return the element
+	 */
+	@Override
+	public E get(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+		}
+		Node<E> node = root;
+		while (true) {
+			int leftSize = size(node.left);
+			if (index < leftSize) {
+				node = node.left;
+			}
+			else if (index == leftSize) {
+				return node.element;
+			}
+			else {
+				index -= leftSize + 1;
+				node = node.right;
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the size of the list
+	 * 
+	 * @return the size
+	 */
+	@Override
+	public int size() {
+		return size(root);
+	}
+
+
+	/**
+	 * Returns the position of the first occurrence of the element, or -1 if the
+	 * element does not occur in the list.
+	 * 
+	 * @param element the element
+	 * @return the position of the element, or -1
+	 */
+	@Override
+	public int indexOf(Object element) {
+		long bit = isHashConsistent(element)? bit(Objects.hashCode(element)) : -1L;
+		return indexOf(root, element, bit);
+	}
+
+
+	/**
+	 * Returns true if the element occurs in the list, and false otherwise.
+	 * 
+	 * @param element the element
+	 * @return true if the element is in the list, false otherwise
+	 */
+	@Override
+	public boolean contains(Object element) {
+		return indexOf(element) >= 0;
+	}
+
+
+	/**
+	 * Returns an iterator over the elements of the list
+	 * 
+	 * @return the iterator
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+			Deque<Node<E>> stack = new ArrayDeque<Node<E>>();
+			{ pushLeft(root); }
+
+			@Override
+			public boolean hasNext() {
+				return !stack.isEmpty();
+			}
+
+			@Override
+			public E next() {
+				if (stack.isEmpty()) {
+					throw new NoSuchElementException();
+				}
+				Node<E> node = stack.pop();
+				pushLeft(node.right);
+				return node.element;
+			}
+
+			private void pushLeft(Node<E> node) {
+				for ( ; node != null ; node = node.left) {
+					stack.push(node);
+				}
+			}
+		};
+	}
+
+
+	/**
+	 * Returns true if the equality of all elements in the list is consistent with
+	 * their hashcodes, and false otherwise.
+	 * 
+	 * @return true if the elements have consistent hashcodes, false otherwise
+	 */
+	public boolean isHashConsistent() {
+		return root == null || root.consistent;
+	}
+
+
+	// ===================================
+	//  UTILITY METHODS
+	// ===================================
+
+
+	/**
+	 * Returns the hashcode of the list (as defined in java.util.List), which is
+	 * cached in the tree.
+	 * 
+	 * @return the hashcode
+	 */
+	@Override
+	public int hashCode() {
+		return (root == null)? 1 : root.pow + root.hash;
+	}
+
+
+	/**
+	 * Returns true if the object is a list with the same elements (in the same
+	 * order), and false otherwise.
+	 * 
+	 * @param o the object to compare
+	 * @return true if the lists are equal, false otherwise
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		else if (o instanceof PersistentList) {
+			PersistentList<?> other = (PersistentList<?>)o;
+			if (other.root == root) {
+				return true;
+			}
+			else if (other.size() != size()) {
+				return false;
+			}
+			else if ((isHashConsistent() || other.isHashConsistent()) 
+					&& other.hashCode() != hashCode()) {
+				return false;
+			}
+		}
+		return super.equals(o);
+	}
+
+
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Node of the tree, with its element, subtrees and cached information.
+	 */
+	static final class Node<E> {
+
+		final E element;
+		final Node<E> left;
+		final Node<E> right;
+
+		// height and size of the subtree
+		final int height;
+		final int size;
+
+		// polynomial hash of the subtree elements (sum of hash(e_i)*31^(n-1-i)), 
+		// and 31^n, such that the list hashcode is pow + hash
+		final int hash;
+		final int pow;
+
+		// mask of the element hashcodes in the subtree
+		final long mask;
+
+		// whether all elements in the subtree have consistent hashcodes
+		final boolean consistent;
+
+		Node(Node<E> left, E element, Node<E> right) {
+			this.element = element;
+			this.left = left;
+			this.right = right;
+			height = Math.max(height(left), height(right)) + 1;
+			size = size(left) + size(right) + 1;
+			int elementHash = Objects.hashCode(element);
+			int leftPow = (left == null)? 1 : left.pow;
+			int rightPow = (right == null)? 1 : right.pow;
+			int leftHash = (left == null)? 0 : left.hash;
+			int rightHash = (right == null)? 0 : right.hash;
+			hash = (leftHash * 31 + elementHash) * rightPow + rightHash;
+			pow = leftPow * 31 * rightPow;
+			mask = ((left == null)? 0 : left.mask) | ((right == null)? 0 : right.mask) 
+					| bit(elementHash);
+			consistent = (left == null || left.consistent) && (right == null || right.consistent)
+					&& isHashConsistent(element);
+		}
+	}
+
+
+	/**
+	 * Returns the bit of the element hashcode in the masks.
+	 * 
+	 * @param hash the element hashcode
+	 * @return the bit for the hashcode
+	 */
+	private static long bit(int hash) {
+		return 1L << ((hash ^ (hash >>> 16)) & 63);
+	}
+
+
+	/**
+	 * Returns true if all objects equal to the element are known to have the same
+	 * hashcode, and false otherwise.  This is not the case for double values (which 
+	 * are compared with a tolerance), arrays (which are hashed by identity), and 
+	 * lists containing such values.
+	 * 
+	 * @param element the element
+	 * @return true if the equality of the element is consistent with its hashcode
+	 */
+	private static boolean isHashConsistent(Object element) {
+		if (element instanceof DoubleVal || element instanceof ArrayVal) {
+			return false;
+		}
+		else if (element instanceof ListVal) {
+			return isHashConsistent(((ListVal)element).getList());
+		}
+		else if (element instanceof PersistentList) {
+			return ((PersistentList<?>)element).isHashConsistent();
+		}
+		return true;
+	}
+
+
+	private static int height(Node<?> node) {
+		return (node == null)? 0 : node.height;
+	}
+
+
+	private static int size(Node<?> node) {
+		return (node == null)? 0 : node.size;
+	}
+
+
+	/**
+	 * Builds a balanced tree from the elements of the array between start 
+	 * (inclusive) and end (exclusive).
+	 * 
+	 * @param array the array of elements
+	 * @param start the start position
+	 * @param end the end position
+	 * @return the root of the tree
+	 */
+	@SuppressWarnings("unchecked")
+	private static <E> Node<E> build(Object[] array, int start, int end) {
+		if (start >= end) {
+			return null;
+		}
+		int middle = (start + end) >>> 1;
+		return new Node<E>(build(array, start, middle), (E)array[middle], 
+				build(array, middle+1, end));
+	}
+
+
+	/**
+	 * Returns the balanced tree made of the left subtree, the element and the 
+	 * right subtree (in this order), whatever the heights of the two subtrees.
+	 * 
+	 * @param left the left subtree
+	 * @param element the element
+	 * @param right the right subtree
+	 * @return the joined tree
+	 */
+	private static <E> Node<E> join(Node<E> left, E element, Node<E> right) {
+		if (height(left) > height(right) + 1) {
+			return balance(left.left, left.element, join(left.right, element, right));
+		}
+		else if (height(right) > height(left) + 1) {
+			return balance(join(left, element, right.left), right.element, right.right);
+		}
+		return new Node<E>(left, element, right);
+	}
+
+
+	/**
+	 * Creates the node, with a single or double rotation if the heights of its 
+	 * subtrees differ by more than one.
+	 * 
+	 * @param left the left subtree
+	 * @param element the element
+	 * @param right the right subtree
+	 * @return the balanced node
+	 */
+	private static <E> Node<E> balance(Node<E> left, E element, Node<E> right) {
+		if (height(left) > height(right) + 1) {
+			if (height(left.left) >= height(left.right)) {
+				return new Node<E>(left.left, left.element, new Node<E>(left.right, element, right));
+			}
+			return new Node<E>(new Node<E>(left.left, left.element, left.right.left), 
+					left.right.element, new Node<E>(left.right.right, element, right));
+		}
+		else if (height(right) > height(left) + 1) {
+			if (height(right.right) >= height(right.left)) {
+				return new Node<E>(new Node<E>(left, element, right.left), right.element, right.right);
+			}
+			return new Node<E>(new Node<E>(left, element, right.left.left), 
+					right.left.element, new Node<E>(right.left.right, right.element, right.right));
+		}
+		return new Node<E>(left, element, right);
+	}
+
+
+	/**
+	 * Concatenates the two trees.
+	 * 
+	 * @param left the first tree
+	 * @param right the second tree
+	 * @return the concatenated tree
+	 */
+	private static <E> Node<E> concat(Node<E> left, Node<E> right) {
+		if (left == null) {
+			return right;
+		}
+		else if (right == null) {
+			return left;
+		}
+		Node<E> last = left;
+		while (last.right != null) {
+			last = last.right;
+		}
+		return join(removeAt(left, left.size - 1), last.element, right);
+	}
+
+
+	/**
+	 * Returns the tree without the element at the given position.
+	 * 
+	 * @param node the tree
+	 * @param index the position
+	 * @return the tree without the element
+	 */
+	private static <E> Node<E> removeAt(Node<E> node, int index) {
+		int leftSize = size(node.left);
+		if (index < leftSize) {
+			return join(removeAt(node.left, index), node.element, node.right);
+		}
+		else if (index == leftSize) {
+			return concat(node.left, node.right);
+		}
+		return join(node.left, node.element, removeAt(node.right, index - leftSize - 1));
+	}
+
+
+	/**
+	 * Returns the tree without all the occurrences of the elements, skipping the 
+	 * subtrees whose mask does not intersect the mask of the elements.
+	 * 
+	 * @param node the tree
+	 * @param elements the elements to remove
+	 * @param mask the mask for the elements to remove
+	 * @return the tree without the elements (the same tree if unchanged)
+	 */
+	private static <E> Node<E> removeAll(Node<E> node, Collection<?> elements, long mask) {
+		if (node == null || (node.mask & mask) == 0) {
+			return node;
+		}
+		Node<E> left = removeAll(node.left, elements, mask);
+		Node<E> right = removeAll(node.right, elements, mask);
+		if (elements.contains(node.element)) {
+			return concat(left, right);
+		}
+		else if (left == node.left && right == node.right) {
+			return node;
+		}
+		return join(left, node.element, right);
+	}
+
+
+	/**
+	 * Returns the position of the first occurrence of the element in the tree, or
+	 * -1 if the element does not occur, skipping the subtrees whose mask does not
+	 * include the bit of the element.
+	 * 
+	 * @param node the tree
+	 * @param element the element
+	 * @param bit the bit for the element
+	 * @return the position of the element, or -1
+	 */
+	private static int indexOf(Node<?> node, Object element, long bit) {
+		if (node == null || (node.mask & bit) == 0) {
+			return -1;
+		}
+		int index = indexOf(node.left, element, bit);
+		if (index >= 0) {
+			return index;
+		}
+		if (Objects.equals(element, node.element)) {
+			return size(node.left);
+		}
+		index = indexOf(node.right, element, bit);
+		return (index >= 0)? size(node.left) + 1 + index : -1;
+	}
+
+
+	/**
+	 * Writes the elements of the list to the stream.
+	 * 
+	 * @param out the output stream
+	 * @throws IOException if the list could not be written
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeObject(toArray());
+	}
+
+
+	/**
+	 * Reads the elements of the list from the stream and rebuilds the tree (whose
+	 * cached hashcodes must be computed in the current virtual machine).
+	 * 
+	 * @param in the input stream
+	 * @throws IOException if the list could not be read
+	 * @throws ClassNotFoundException if the class of an element is not found
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		Object[] array = (Object[])in.readObject();
+		root = build(array, 0, array.length);
+	}
+
+}
@@ -50,6 +50,8 @@ import opendial.utils.AudioUtils;
  */
 public class SpeechStream extends InputStream implements Value {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("SpeechStream", Logger.Level.NORMAL);
 
@@ -23,10 +23,13 @@
 
 package opendial.datastructs;
 
+import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -49,20 +52,22 @@ import opendial.utils.StringUtils;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public class Template {
+public class Template implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	// logger
 	public static Logger log = new Logger("Template", Logger.Level.DEBUG);
 
 	// the initial string, containing the slots in raw form
-	String rawString;
+	private final String rawString;
 
 	// the regular expression pattern corresponding to the template
-	Pattern pattern;
+	private final Pattern pattern;
 
 	// the slots, as a mapping between slot labels and their 
 	// group number in the pattern
-	Map<String,Integer> slots;
+	private final Map<String,Integer> slots;
 
 	// regular expression to detect algebraic expressions
 	static Pattern mathExpression = Pattern.compile("[0-9|\\-\\.\\s]+[+\\-*/][0-9|\\-\\.\\s]+");
@@ -70,6 +75,22 @@ public class Template {
 	// regular expression for complex regex (alternatives, optional elements)
 	static Pattern complexRegex = Pattern.compile("\\\\\\((.+?)\\\\\\)(\\\\\\?)?");
 
+	// cache of templates, indexed by their string
+	static Map<String,Template> cache = new ConcurrentHashMap<String,Template>();
+
+	// maximum number of templates in the cache
+	public static final int MAX_CACHED_TEMPLATES = 20000;
+
+	// for templates that can be matched without regular expressions: the literal 
+	// string (if the template has no slot), or the literal strings before and after 
+	// the slot (if the template has a single slot).  Null if not applicable.
+	private final String literal;
+	private final String prefix;
+	private final String suffix;
+
+	// whether the template is a single wildcard *
+	private final boolean wildcard;
+
 	// ===================================
 	//  TEMPLATE CONSTRUCTION
 	// ===================================
@@ -84,32 +105,70 @@ public class Template {
 	 */
 	public Template(String value) {
 
-		rawString = value.trim();
+		String raw = value.trim();
 
-		StringUtils.checkForm(rawString);
+		StringUtils.checkForm(raw);
 
-		slots = constructSlots(rawString);
+		slots = Collections.unmodifiableMap(constructSlots(raw));
 
 		// string processing to avoid special characters for the pattern
-		String regex = constructRegex(rawString);
+		String regex = constructRegex(raw);
 
 		for (String slot : slots.keySet()) {
 			regex = regex.replace("{"+constructRegex(slot)+"}", "(.*)");
 		}
 
 		// compiling the associated pattern
-		try {
-			pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+		pattern = compilePattern(regex);
+
+		// detecting the templates that can be matched without regular expressions
+		String literalString = null;
+		String prefixString = null;
+		String suffixString = null;
+		if (slots.isEmpty() && !raw.equals("*") && isLiteral(raw)) {
+			literalString = raw;
 		}
-		catch (PatternSyntaxException e) {
-			log.warning("illegal pattern syntax: " + regex);
-			pattern = Pattern.compile("bogus pattern");
+		else if (slots.size() == 1) {
+			String slot = "{" + slots.keySet().iterator().next() + "}";
+			int slotIndex = raw.indexOf(slot);
+			String before = raw.substring(0, slotIndex);
+			String after = raw.substring(slotIndex + slot.length());
+			if (isLiteral(before) && isLiteral(after) && isLiteral(slot.substring(1, slot.length()-1))) {
+				prefixString = before;
+				suffixString = after;
+			}
 		}
+		wildcard = raw.equals("*");
+		literal = literalString;
+		prefix = prefixString;
+		suffix = suffixString;
 
-		if (slots.isEmpty() && mathExpression.matcher(rawString).matches()) {
-			rawString = "" + MathUtils.evaluateExpression(rawString);
+		if (slots.isEmpty() && mathExpression.matcher(raw).matches()) {
+			raw = "" + MathUtils.evaluateExpression(raw);
 		}
-
+		rawString = raw;
+	}
+	
+	
+	/**
+	 * Returns the template for the string.  Contrary to the constructor, the method
+	 * reuses the templates already created for the same string (templates being 
+	 * immutable), thereby avoiding the cost of compiling the same regular expressions
+	 * over and over again.
+	 * 
+	 * @param value the string value
+	 * @return the corresponding template
+	 */
+	public static Template create(String value) {
+		Template template = cache.get(value);
+		if (template == null) {
+			template = new Template(value);
+			if (cache.size() >= MAX_CACHED_TEMPLATES) {
+				cache.clear();
+			}
+			cache.put(value, template);
+		}
+		return template;
 	}
 
 
@@ -119,20 +178,18 @@ public class Template {
 
 	public Template(Collection<Template> alternatives) {
 		rawString = alternatives.toString().trim();
-		slots = new HashMap<String, Integer>();
+		slots = Collections.emptyMap();
 		String regex = "";
 		for (Template t : alternatives) {
 			regex += "(" + t.getPattern().pattern() + ")|";
 		}
 		regex = (!alternatives.isEmpty())? regex.substring(0, regex.length()-1) : regex;
 		// compiling the associated pattern
-		try {
-			pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
-		}
-		catch (PatternSyntaxException e) {
-			log.warning("illegal pattern syntax: " + regex);
-			pattern = Pattern.compile("bogus pattern");
-		}	
+		pattern = compilePattern(regex);
+		literal = null;
+		prefix = null;
+		suffix = null;
+		wildcard = false;
 	}
 
 
@@ -171,6 +228,42 @@ public class Template {
 		return pattern.toString().contains(".*") || pattern.toString().contains("(?:") 
 				|| pattern.toString().contains("|");
 	}
+	
+	
+	/**
+	 * Returns true if the template is a plain string (without slots, wildcards or
+	 * alternatives) that is matched without regular expressions, and false otherwise.
+	 * 
+	 * @return true if the template is a plain string, false otherwise
+	 */
+	public boolean isPlain() {
+		return literal != null;
+	}
+
+
+	/**
+	 * Returns the (lowercase) literal prefix that all strings fully matching the
+	 * template must begin with, ignoring case.  The prefix is restricted to ASCII
+	 * letters, digits and the characters _-' and is empty if the template begins
+	 * with a slot, wildcard or alternative.
+	 *
+	 * @return the literal prefix of the template (possibly empty)
+	 */
+	public String getLiteralPrefix() {
+		String regex = pattern.pattern();
+		if (regex.contains("|")) {
+			return "";
+		}
+		int end = 0;
+		while (end < regex.length() && isPrefixChar(regex.charAt(end))) {
+			end++;
+		}
+		// a quantifier makes the preceding character optional or repeatable
+		if (end > 0 && end < regex.length() && "?*+{".indexOf(regex.charAt(end)) >= 0) {
+			end--;
+		}
+		return regex.substring(0, end);
+	}
 
 
 
@@ -188,6 +281,10 @@ public class Template {
 		if (!isUnderspecified() && fullMatch) {
 			return new MatchResult(input.equalsIgnoreCase(rawString));
 		}
+		MatchResult fastMatch = matchWithoutRegex(input, fullMatch);
+		if (fastMatch != null) {
+			return fastMatch;
+		}
 		Matcher matcher = pattern.matcher(input);
 		if ((fullMatch && matcher.matches()) || (!fullMatch && matcher.find())) {
 			int start = input.indexOf(matcher.group(0));
@@ -223,11 +320,11 @@ public class Template {
 	 */
 	public static boolean match(String str1, String str2) {
 		if (str1.contains("*") || str1.contains(")?") || str1.contains("|")) {
-			Template t1 = new Template(str1);
+			Template t1 = create(str1);
 			return t1.match(str2, true).isMatching();
 		}
 		else if (str2.contains("*") || str2.contains(")?") || str2.contains("|")) {
-			Template t2 = new Template(str2);
+			Template t2 = create(str2);
 			return t2.match(str1, true).isMatching();
 		}
 		return str1.equalsIgnoreCase(str2);
@@ -279,7 +376,7 @@ public class Template {
 				filledTemplate = filledTemplate.replace("{"+slot+"}", fillers.getValue(slot).toString());
 			}
 		}
-		return new Template(filledTemplate);
+		return create(filledTemplate);
 
 	}
 
@@ -343,6 +440,24 @@ public class Template {
 	// ===================================
 
 
+	/**
+	 * Compiles the regular expression into a (case-insensitive) pattern.  If the 
+	 * expression is not valid, returns a pattern that matches nothing useful.
+	 * 
+	 * @param regex the regular expression
+	 * @return the compiled pattern
+	 */
+	private static Pattern compilePattern(String regex) {
+		try {
+			return Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+		}
+		catch (PatternSyntaxException e) {
+			log.warning("illegal pattern syntax: " + regex);
+			return Pattern.compile("bogus pattern");
+		}
+	}
+
+
 	/**
 	 * Returns the slots defined in the string
 	 * 
@@ -368,6 +483,135 @@ public class Template {
 	}
 
 
+	/**
+	 * Matches the (trimmed) input against the template without relying on regular 
+	 * expressions, for the templates that are literal strings (in which case only
+	 * partial matching is concerned), single wildcards, or contain a single slot 
+	 * surrounded by literal strings (full matching only).  The results are identical
+	 * to the matching with regular expressions.  If the template or input does not 
+	 * fall into these cases, returns null.
+	 * 
+	 * @param input the (trimmed) input string
+	 * @param fullMatch whether to use full or partial matching
+	 * @return the matching result, or null if no fast matching is available
+	 */
+	private MatchResult matchWithoutRegex(String input, boolean fullMatch) {
+		
+		if (wildcard && !hasLineTerminator(input, 0, input.length())) {
+			MatchResult match = new MatchResult(true);
+			match.setBoundaries(0, input.length());
+			return match;
+		}
+		else if (literal != null && !fullMatch) {
+			int start = indexOfIgnoreCase(input, literal);
+			if (start < 0) {
+				return new MatchResult(false);
+			}
+			int end = start + literal.length();
+			if ((start!=0 && !isWhitespaceOrPunctuation(input.charAt(start-1)))
+					|| (end < input.length() && !isWhitespaceOrPunctuation(input.charAt(end)))) {
+				return new MatchResult(false);
+			}
+			MatchResult match = new MatchResult(true);
+			match.setBoundaries(start, end);
+			return match;
+		}
+		else if (prefix != null && fullMatch) {
+			int slotEnd = input.length() - suffix.length();
+			if (slotEnd < prefix.length() 
+					|| !input.regionMatches(true, 0, prefix, 0, prefix.length())
+					|| !input.regionMatches(true, slotEnd, suffix, 0, suffix.length())) {
+				return new MatchResult(false);
+			}
+			if (hasLineTerminator(input, prefix.length(), slotEnd)) {
+				return null;
+			}
+			String filledValue = input.substring(prefix.length(), slotEnd).trim();
+			if (filledValue.indexOf(')') < filledValue.indexOf('(')) {
+				return new MatchResult(false);
+			}
+			MatchResult match = new MatchResult(true);
+			match.setBoundaries(0, input.length());
+			match.addFilledSlot(slots.keySet().iterator().next(), filledValue);
+			return match;
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Returns true if the string only contains characters that are interpreted
+	 * literally in the regular expression of the template.
+	 * 
+	 * @param str the string
+	 * @return true if the string is literal, false otherwise
+	 */
+	private static boolean isLiteral(String str) {
+		if (str.contains(")?") || str.toLowerCase().length() != str.length()) {
+			return false;
+		}
+		for (int i = 0 ; i < str.length() ; i++) {
+			char c = str.charAt(i);
+			if (!Character.isLetterOrDigit(c) && !Character.isWhitespace(c) 
+					&& "_-'\",;:=/@#%&<>~()[]?.!^".indexOf(c) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Returns true if the substring contains a line terminator (which cannot be 
+	 * matched by the wildcards in the regular expressions).
+	 * 
+	 * @param str the string
+	 * @param start the start of the substring
+	 * @param end the end of the substring
+	 * @return true if a line terminator is found, false otherwise
+	 */
+	private static boolean hasLineTerminator(String str, int start, int end) {
+		for (int i = start ; i < end ; i++) {
+			char c = str.charAt(i);
+			if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Returns the index of the first occurrence of the substring in the string 
+	 * (ignoring case), or -1 if the substring does not occur.
+	 * 
+	 * @param str the string
+	 * @param substring the substring to find
+	 * @return the index of the first occurrence, or -1 if none
+	 */
+	private static int indexOfIgnoreCase(String str, String substring) {
+		for (int i = 0 ; i <= str.length() - substring.length() ; i++) {
+			if (str.regionMatches(true, i, substring, 0, substring.length())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Returns true if the character can be part of the literal prefix of a template
+	 * (i.e. a lowercase ASCII letter, a digit or one of _-').
+	 *
+	 * @param c the character
+	 * @return true if the character can be part of a literal prefix
+	 */
+	private static boolean isPrefixChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_'
+				|| c == '-' || c == '\'';
+	}
+
+
 	public boolean isRawSlot() {
 		return slots.size()==1 && rawString.equals("{"+slots.keySet().iterator().next()+"}");
 	}
@@ -24,6 +24,7 @@
 package opendial.datastructs;
 
 
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -40,7 +41,9 @@ import opendial.utils.CombinatoricsUtils;
  * 
  * @author  Pierre Lison (plison@ifi.uio.no)
  */
-public class ValueRange {
+public class ValueRange implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	// logger
 	public static Logger log = new Logger("ValueRange", Logger.Level.NORMAL);
@@ -23,8 +23,14 @@
 
 package opendial.domains;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import opendial.arch.Logger;
 import opendial.arch.Settings;
@@ -39,7 +45,9 @@ import opendial.state.DialogueState;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public class Domain {
+public class Domain implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	static Logger log = new Logger("Domain", Logger.Level.NORMAL);
 	
@@ -51,8 +59,17 @@ public class Domain {
 	
 	BNetwork parameters;
 	
-	// list of models
-	List<Model> models;
+	// list of models (replaced as a whole when models are reloaded)
+	volatile List<Model> models;
+	
+	// XML files from which the domain was extracted (top file first)
+	List<String> sourceFiles;
+	
+	// XML file in which each model is defined
+	Map<Model,String> modelSources;
+	
+	// index from the model triggers to the models (null if it must be rebuilt)
+	transient volatile TriggerIndex triggerIndex;
 	
 	// settings
 	Settings settings;
@@ -64,6 +81,8 @@ public class Domain {
 	public Domain() {
 		settings = new Settings();
 		models = new LinkedList<Model>();
+		sourceFiles = new ArrayList<String>();
+		modelSources = new IdentityHashMap<Model,String>();
 		initState = new DialogueState();
 		parameters = new BNetwork();
 	}
@@ -93,6 +112,78 @@ public class Domain {
 	 */
 	public void addModel(Model model) {
 		models.add(model);
+		triggerIndex = new TriggerIndex(models);
+	}
+	
+	/**
+	 * Adds a model to the domain, defined in the given XML file
+	 * 
+	 * @param model the model to add
+	 * @param sourceFile the XML file in which the model is defined
+	 */
+	public void addModel(Model model, String sourceFile) {
+		addModel(model);
+		modelSources.put(model, sourceFile);
+	}
+	
+	/**
+	 * Adds an XML file to the list of files from which the domain is extracted
+	 * 
+	 * @param sourceFile the XML file
+	 */
+	public void addSourceFile(String sourceFile) {
+		if (!sourceFiles.contains(sourceFile)) {
+			sourceFiles.add(sourceFile);
+		}
+	}
+	
+	/**
+	 * Replaces the models defined in the XML file by new ones.  The new models 
+	 * take the position of the first model previously defined in the file (or are 
+	 * appended at the end of the model list, if the file did not define any model).
+	 * The list of models is replaced as a whole, such that concurrent readers see
+	 * either the old or the new models.
+	 * 
+	 * @param sourceFile the XML file
+	 * @param newModels the new models defined in the file
+	 */
+	public synchronized void replaceModels(String sourceFile, List<Model> newModels) {
+		List<Model> updated = new LinkedList<Model>();
+		boolean inserted = false;
+		for (Model model : models) {
+			if (!sourceFile.equals(modelSources.get(model))) {
+				updated.add(model);
+			}
+			else if (!inserted) {
+				updated.addAll(newModels);
+				inserted = true;
+			}
+		}
+		if (!inserted) {
+			updated.addAll(newModels);
+		}
+		modelSources.values().removeIf(f -> f.equals(sourceFile));
+		for (Model model : newModels) {
+			modelSources.put(model, sourceFile);
+		}
+		addSourceFile(sourceFile);
+		models = updated;
+		triggerIndex = new TriggerIndex(updated);
+	}
+	
+	/**
+	 * Removes the XML file from the source files of the domain, together with 
+	 * the models defined in it.
+	 * 
+	 * @param sourceFile the XML file
+	 */
+	public synchronized void removeSourceFile(String sourceFile) {
+		List<Model> updated = new LinkedList<Model>(models);
+		updated.removeIf(m -> sourceFile.equals(modelSources.get(m)));
+		modelSources.values().removeIf(f -> f.equals(sourceFile));
+		sourceFiles.remove(sourceFile);
+		models = updated;
+		triggerIndex = new TriggerIndex(updated);
 	}
 	
 	/**
@@ -113,6 +204,59 @@ public class Domain {
 		return models;
 	}
 	
+	/**
+	 * Returns the models defined in the XML file
+	 * 
+	 * @param sourceFile the XML file
+	 * @return the models defined in the file
+	 */
+	public List<Model> getModels(String sourceFile) {
+		return models.stream().filter(m -> sourceFile.equals(modelSources.get(m)))
+				.collect(Collectors.toList());
+	}
+	
+	/**
+	 * Returns the XML file in which the model is defined (or null if the model
+	 * was not extracted from a file)
+	 * 
+	 * @param model the model
+	 * @return the XML file for the model, or null
+	 */
+	public String getSourceFile(Model model) {
+		return modelSources.get(model);
+	}
+	
+	/**
+	 * Returns the XML files from which the domain was extracted, starting with 
+	 * the top domain file.
+	 * 
+	 * @return the XML source files
+	 */
+	public List<String> getSourceFiles() {
+		return sourceFiles;
+	}
+	
+	
+	/**
+	 * Returns the models that are triggered by at least one of the updated variables,
+	 * in the order in which they are defined in the domain.  The models are retrieved
+	 * via an index from triggers to models, which is built when the models are added
+	 * or replaced, and rebuilt on demand after the triggers or rules of a model have
+	 * been modified (or after the list of models has been modified in place).
+	 * 
+	 * @param updatedVars the updated variables
+	 * @return the triggered models
+	 */
+	public List<Model> getTriggeredModels(Collection<String> updatedVars) {
+		List<Model> curModels = models;
+		TriggerIndex index = triggerIndex;
+		if (index == null || !index.isValidFor(curModels)) {
+			index = new TriggerIndex(curModels);
+			triggerIndex = index;
+		}
+		return index.getTriggeredModels(updatedVars);
+	}
+	
 	
 	/**
 	 * Replaces the domain-specific settings
@@ -0,0 +1,384 @@
+// =================================================================
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person
+// obtaining a copy of this software and associated documentation
+// files (the "Software"), to deal in the Software without restriction,
+// including without limitation the rights to use, copy, modify, merge,
+// publish, distribute, sublicense, and/or sell copies of the Software,
+// and to permit persons to whom the Software is furnished to do so,
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================
+
+package opendial.domains;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import opendial.arch.DialException;
+import opendial.arch.Logger;
+import opendial.arch.Settings;
+import opendial.datastructs.Template;
+import opendial.domains.rules.Rule;
+import opendial.domains.rules.Rule.RuleType;
+import opendial.readers.XMLDomainReader;
+
+/**
+ * Static analysis of a dialogue domain, performed at load time to detect the parts 
+ * of the domain that can never influence the interaction: <ul>
+ * <li>the models that can never be triggered, since none of their triggers matches
+ * a variable of the initial state, a parameter, the user input or system output
+ * variables, or an output of the models that can be triggered;
+ * <li>the output variables that are never consumed, i.e. that match neither the
+ * triggers and input variables of the (live) rules, nor the variables specified in 
+ * the settings (user input, system output and monitored variables);
+ * <li>the dead rules, i.e. the probability rules whose output variables are never 
+ * consumed.  Utility rules are always considered live, since their outputs are 
+ * decisions selected by the planner.
+ * </ul>
+ * 
+ * <p>The analysis is conservative: output variables with a prediction (^p) or 
+ * observation (^o) suffix are considered consumed (by the planner and simulator), 
+ * as well as the variables for which predictions are made, and two underspecified
+ * templates are assumed to match whenever their literal prefixes are compatible.  
+ * The analysis does however not cover the variables read by external modules or 
+ * by the simulator domain, which is why dead rules are only skipped at runtime when 
+ * the "skipdeadrules" setting is activated (see Settings).
+ *
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ */
+public final class DomainAnalysis {
+
+	// logger
+	static Logger log = new Logger("DomainAnalysis", Logger.Level.DEBUG);
+
+	// the analysed models, in their order of application
+	final Model[] models;
+
+	// number of rules for each model (when the analysis was performed)
+	final int[] nbRules;
+
+	// models that can never be triggered
+	final List<Model> untriggerableModels;
+
+	// rules whose outputs are never consumed (compared by identity)
+	final Set<Rule> deadRules;
+
+	// output variables that are never consumed
+	final Set<String> unconsumedVariables;
+
+
+	/**
+	 * Performs the analysis of the domain, using its own settings for the user
+	 * input, system output and monitored variables.
+	 * 
+	 * @param domain the dialogue domain
+	 */
+	public DomainAnalysis(Domain domain) {
+		this(domain, domain.getSettings());
+	}
+
+
+	/**
+	 * Performs the analysis of the domain, using the provided settings for the user
+	 * input, system output and monitored variables.
+	 * 
+	 * @param domain the dialogue domain
+	 * @param settings the system settings
+	 */
+	public DomainAnalysis(Domain domain, Settings settings) {
+		List<Model> domainModels = domain.getModels();
+		models = domainModels.toArray(new Model[domainModels.size()]);
+		nbRules = new int[models.length];
+		for (int i = 0 ; i < models.length ; i++) {
+			nbRules[i] = models[i].rules.size();
+		}
+
+		List<String> ioVars = new ArrayList<String>();
+		for (String var : Arrays.asList(settings.userInput, settings.userSpeech, 
+				settings.systemOutput)) {
+			if (var != null) {
+				ioVars.add(var);
+			}
+		}
+
+		// determines the models that can be triggered
+		List<Template> produced = new ArrayList<Template>();
+		ioVars.stream().forEach(v -> produced.add(Template.create(v)));
+		domain.getInitialState().getChanceNodeIds().stream()
+			.forEach(v -> produced.add(Template.create(v)));
+		if (domain.getParameters() != null) {
+			domain.getParameters().getChanceNodeIds().stream()
+			.forEach(v -> produced.add(Template.create(v)));
+		}
+		List<Model> triggerable = new ArrayList<Model>();
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Model model : models) {
+				if (!model.rules.isEmpty() && !triggerable.contains(model)
+						&& matchesAny(model.getTriggers(), produced)) {
+					triggerable.add(model);
+					model.rules.stream().flatMap(r -> r.getOutputVariables().stream())
+						.forEach(v -> produced.add(Template.create(v)));
+					changed = true;
+				}
+			}
+		}
+		untriggerableModels = new ArrayList<Model>();
+		for (Model model : models) {
+			if (!model.rules.isEmpty() && !triggerable.contains(model)) {
+				untriggerableModels.add(model);
+			}
+		}
+
+		// determines the dead rules, until reaching a fixed point
+		List<Rule> liveRules = triggerable.stream().flatMap(m -> m.rules.stream())
+				.collect(Collectors.toList());
+		deadRules = Collections.newSetFromMap(new IdentityHashMap<Rule,Boolean>());
+		List<Template> consumers = getConsumers(triggerable, liveRules, ioVars, settings);
+		changed = true;
+		while (changed) {
+			changed = false;
+			for (Rule rule : new ArrayList<Rule>(liveRules)) {
+				if (rule.getRuleType() == RuleType.PROB && rule.getOutputVariables().stream()
+						.noneMatch(v -> isConsumed(v, consumers))) {
+					liveRules.remove(rule);
+					deadRules.add(rule);
+					changed = true;
+				}
+			}
+			if (changed) {
+				consumers.clear();
+				consumers.addAll(getConsumers(triggerable, liveRules, ioVars, settings));
+			}
+		}
+
+		unconsumedVariables = new LinkedHashSet<String>();
+		triggerable.stream().flatMap(m -> m.rules.stream())
+			.flatMap(r -> r.getOutputVariables().stream())
+			.filter(v -> !isConsumed(v, consumers))
+			.sorted().forEach(v -> unconsumedVariables.add(v));
+	}
+
+
+	/**
+	 * Returns true if the analysis is still valid for the provided models, that is,
+	 * if the models are the same (and in the same order) as the analysed ones, and
+	 * their number of rules is unchanged.
+	 *
+	 * @param domainModels the models
+	 * @return true if the analysis is still valid, false otherwise
+	 */
+	public boolean isValidFor(Collection<Model> domainModels) {
+		if (domainModels.size() != models.length) {
+			return false;
+		}
+		int i = 0;
+		for (Model model : domainModels) {
+			if (model != models[i] || model.rules.size() != nbRules[i]) {
+				return false;
+			}
+			i++;
+		}
+		return true;
+	}
+
+
+	/**
+	 * Returns the models (with at least one rule) that can never be triggered.
+	 * 
+	 * @return the untriggerable models
+	 */
+	public List<Model> getUntriggerableModels() {
+		return Collections.unmodifiableList(untriggerableModels);
+	}
+
+
+	/**
+	 * Returns the rules of the triggerable models whose outputs are never consumed.
+	 * The rules are compared by identity.
+	 * 
+	 * @return the dead rules
+	 */
+	public Set<Rule> getDeadRules() {
+		return Collections.unmodifiableSet(deadRules);
+	}
+
+
+	/**
+	 * Returns the output variables (possibly with slots) of the triggerable models
+	 * that are never consumed.
+	 * 
+	 * @return the unconsumed output variables
+	 */
+	public Set<String> getUnconsumedVariables() {
+		return Collections.unmodifiableSet(unconsumedVariables);
+	}
+
+
+	/**
+	 * Returns true if the analysis did not find any unconsumed variable, dead rule
+	 * or untriggerable model.
+	 * 
+	 * @return true if nothing was found, false otherwise
+	 */
+	public boolean isEmpty() {
+		return untriggerableModels.isEmpty() && deadRules.isEmpty() 
+				&& unconsumedVariables.isEmpty();
+	}
+
+
+	/**
+	 * Returns the report of the analysis.
+	 * 
+	 * @return the report
+	 */
+	@Override
+	public String toString() {
+		if (isEmpty()) {
+			return "no unconsumed variable, dead rule or untriggerable model";
+		}
+		return "unconsumed variables: " + unconsumedVariables 
+				+ "\ndead rules: " + deadRules.stream().map(r -> r.getRuleId())
+				.sorted().collect(Collectors.toList())
+				+ "\nuntriggerable models: " + untriggerableModels.stream()
+				.map(m -> m.getId()).collect(Collectors.toList());
+	}
+
+
+	/**
+	 * Extracts the dialogue domain and prints the report of its analysis. 
+	 * 
+	 * @param args the filename of the domain
+	 */
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			log.severe("usage: DomainAnalysis domain.xml");
+			return;
+		}
+		try {
+			log.info("analysis of " + args[0] + ":\n" 
+					+ new DomainAnalysis(XMLDomainReader.extractDomain(args[0])));
+		}
+		catch (DialException e) {
+			log.severe("could not extract domain: " + e);
+		}
+	}
+
+
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Returns the templates for the variables consumed by the triggerable models 
+	 * and live rules, the variables specified in the settings, and the variables
+	 * for which the live rules make predictions.
+	 * 
+	 * @param triggerable the triggerable models
+	 * @param liveRules the live rules
+	 * @param ioVars the user input and system output variables
+	 * @param settings the settings
+	 * @return the templates for the consumed variables
+	 */
+	private static List<Template> getConsumers(List<Model> triggerable, 
+			List<Rule> liveRules, List<String> ioVars, Settings settings) {
+		Set<Template> consumers = new HashSet<Template>();
+		ioVars.stream().forEach(v -> consumers.add(Template.create(v)));
+		settings.varsToMonitor.stream().forEach(v -> consumers.add(Template.create(v)));
+		Set<Rule> live = Collections.newSetFromMap(new IdentityHashMap<Rule,Boolean>());
+		live.addAll(liveRules);
+		for (Model model : triggerable) {
+			if (model.rules.stream().anyMatch(r -> live.contains(r))) {
+				consumers.addAll(model.getTriggers());
+			}
+		}
+		for (Rule rule : liveRules) {
+			consumers.addAll(rule.getInputVariables());
+			rule.getOutputVariables().stream().filter(v -> v.contains("^p"))
+				.forEach(v -> consumers.add(Template.create(v.replace("^p", ""))));
+		}
+		return new ArrayList<Template>(consumers);
+	}
+
+
+	/**
+	 * Returns true if the output variable is consumed, that is, if it is a prediction
+	 * or observation variable, or if it matches one of the consumers.
+	 * 
+	 * @param outputVar the output variable
+	 * @param consumers the templates for the consumed variables
+	 * @return true if the variable is consumed, false otherwise
+	 */
+	private static boolean isConsumed(String outputVar, List<Template> consumers) {
+		if (outputVar.contains("^p") || outputVar.contains("^o")) {
+			return true;
+		}
+		return matchesAny(Arrays.asList(Template.create(outputVar)), consumers);
+	}
+
+
+	/**
+	 * Returns true if at least one template of the first collection can match a 
+	 * template of the second collection.
+	 * 
+	 * @param templates1 the first collection of templates
+	 * @param templates2 the second collection of templates
+	 * @return true if two templates can match, false otherwise
+	 */
+	private static boolean matchesAny(Collection<Template> templates1, 
+			Collection<Template> templates2) {
+		for (Template t1 : templates1) {
+			for (Template t2 : templates2) {
+				if (canMatch(t1, t2)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Returns true if the two templates can match the same variable.  When both
+	 * templates are underspecified, the method only checks that their literal 
+	 * prefixes are compatible.
+	 * 
+	 * @param t1 the first template
+	 * @param t2 the second template
+	 * @return true if the templates can match the same variable, false otherwise
+	 */
+	private static boolean canMatch(Template t1, Template t2) {
+		if (t1.isUnderspecified() && t2.isUnderspecified()) {
+			String prefix1 = t1.getLiteralPrefix();
+			String prefix2 = t2.getLiteralPrefix();
+			return prefix1.startsWith(prefix2) || prefix2.startsWith(prefix1);
+		}
+		else if (t1.isUnderspecified()) {
+			return t1.match(t2.getRawString(), true).isMatching();
+		}
+		return t2.match(t1.getRawString(), true).isMatching();
+	}
+
+}
@@ -23,16 +23,22 @@
 
 package opendial.domains;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import opendial.arch.DialException;
 import opendial.arch.Logger;
 import opendial.datastructs.Template;
 import opendial.domains.rules.Rule;
+import opendial.domains.rules.conditions.ConditionNetwork;
+import opendial.state.AnchoredRule;
 import opendial.state.DialogueState;
 
 /**
@@ -43,7 +49,9 @@ import opendial.state.DialogueState;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public class Model {
+public class Model implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	static Logger log = new Logger("Model", Logger.Level.DEBUG);
 
@@ -53,11 +61,18 @@ public class Model {
 	// counter for the model identifier, if not explicitly given
 	public static int idCounter = 0;
 
+	// version of the model triggers and rules, incremented after each modification
+	// of any model (used to invalidate the trigger indices of the domains)
+	static final AtomicInteger version = new AtomicInteger();
+
 	// triggers associated with the model
 	List<Template> triggers;
 
 	// collection of rules for the model
 	Collection<Rule> rules;
+
+	// network of the (shared) conditions of the rules
+	ConditionNetwork network;
 		
 
 	// ===================================
@@ -71,6 +86,7 @@ public class Model {
 	public Model() {
 		triggers = new LinkedList<Template>();
 		rules = new LinkedList<Rule>();
+		network = new ConditionNetwork();
 		id = "model" + idCounter;
 		idCounter++;
 	}
@@ -96,7 +112,19 @@ public class Model {
 	 * @param trigger the variable
 	 */
 	public void addTrigger(String trigger) {
-		triggers.add(new Template(trigger));
+		triggers.add(Template.create(trigger));
+		version.incrementAndGet();
+	}
+
+
+	/**
+	 * Removes a trigger from the model, defined by the variable label
+	 * 
+	 * @param trigger the variable
+	 */
+	public void removeTrigger(String trigger) {
+		triggers.remove(Template.create(trigger));
+		version.incrementAndGet();
 	}
 
 
@@ -120,6 +148,8 @@ public class Model {
 	 */
 	public void addRule(Rule rule) {
 		rules.add(rule);
+		rule.setConditionNetwork(network);
+		version.incrementAndGet();
 	}
 
 
@@ -159,15 +189,84 @@ public class Model {
 	 */
 	public void trigger(DialogueState state, Set<String> updatedVars) {
 		if (isTriggered(state, updatedVars)) {
-			for (Rule r : rules) {
-				try {
-					state.applyRule(r); 
+			applyRules(state);
+		}
+	}
+	
+	
+	/**
+	 * Applies the rules of the model to the dialogue state, without checking the
+	 * model triggers (which is useful when the triggered models are already known,
+	 * see Domain.getTriggeredModels(...)).  The updates resulting from the rule 
+	 * applications are recorded with the model identifier as origin in the update 
+	 * log of the dialogue state.
+	 * 
+	 * @param state the current dialogue state
+	 */
+	public void applyRules(DialogueState state) {
+		applyRules(state, Collections.emptySet());
+	}
+	
+	
+	/**
+	 * Applies the rules of the model to the dialogue state, as in applyRules(state),
+	 * except for the rules to skip (for instance the dead rules found by the domain
+	 * analysis, see DomainAnalysis).
+	 * 
+	 * @param state the current dialogue state
+	 * @param skippedRules the rules to skip
+	 */
+	public void applyRules(DialogueState state, Set<Rule> skippedRules) {
+		String previousOrigin = state.getUpdateOrigin();
+		state.setUpdateOrigin(id);
+		for (Rule r : rules) {
+			if (skippedRules.contains(r)) {
+				continue;
+			}
+			try {
+				state.applyRule(r); 
+			}
+			catch (DialException e) {
+				log.warning("rule " + r.getRuleId() + " could not be applied: " + e.toString()); 
+			}				
+		}
+		state.setUpdateOrigin(previousOrigin);
+	}
+	
+	
+	/**
+	 * Applies the rules of the model to the dialogue state, as in applyRules(state),
+	 * but reusing the rules that were anchored on an earlier version of the state 
+	 * (within the same update round) when they are not affected by the changes made
+	 * to the state since then.  The other rules are anchored again.  The identifiers 
+	 * of the nodes changed by the rule applications are added to the set of changed 
+	 * nodes.
+	 * 
+	 * @param state the current dialogue state
+	 * @param anchors the rules anchored on the earlier version of the state
+	 * @param changedNodes the nodes changed since the anchoring (updated by the method)
+	 * @param skippedRules the rules to skip
+	 */
+	public void applyRules(DialogueState state, Map<Rule,AnchoredRule> anchors,
+			Set<String> changedNodes, Set<Rule> skippedRules) {
+		String previousOrigin = state.getUpdateOrigin();
+		state.setUpdateOrigin(id);
+		for (Rule r : rules) {
+			if (skippedRules.contains(r)) {
+				continue;
+			}
+			try {
+				AnchoredRule arule = anchors.get(r);
+				if (arule == null || arule.isAffectedBy(changedNodes)) {
+					arule = new AnchoredRule(r, state);
 				}
-				catch (DialException e) {
-					log.warning("rule " + r.getRuleId() + " could not be applied: " + e.toString()); 
-				}				
+				changedNodes.addAll(state.applyRule(arule)); 
 			}
+			catch (DialException e) {
+				log.warning("rule " + r.getRuleId() + " could not be applied: " + e.toString()); 
+			}				
 		}
+		state.setUpdateOrigin(previousOrigin);
 	}
 
 	
@@ -224,7 +323,7 @@ public class Model {
 	 * @return the model triggers
 	 */
 	public Collection<Template> getTriggers() {
-		return triggers;
+		return Collections.unmodifiableList(triggers);
 	}
 
 	
@@ -0,0 +1,195 @@
+// =================================================================
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person
+// obtaining a copy of this software and associated documentation
+// files (the "Software"), to deal in the Software without restriction,
+// including without limitation the rights to use, copy, modify, merge,
+// publish, distribute, sublicense, and/or sell copies of the Software,
+// and to permit persons to whom the Software is furnished to do so,
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================
+
+package opendial.domains;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import opendial.arch.Logger;
+import opendial.datastructs.Template;
+
+/**
+ * Index from the triggers of the domain models to the models themselves, used
+ * to determine which models are triggered by a set of updated variables without
+ * matching every trigger against every variable.  The index contains: <ul>
+ * <li>a hash table for the fully specified triggers (i.e. plain variable labels);
+ * <li>a single pattern covering all underspecified triggers (with slots, wildcards
+ * or alternatives), used to discard in one pass the variables that do not match
+ * any of these triggers;
+ * <li>a cache of the models triggered by each variable label, since the same
+ * variables are updated over and over again during the interaction.
+ * </ul>
+ *
+ * <p>The index reflects the models and triggers at the time of its construction,
+ * and must be rebuilt when models or triggers are added or removed.  Its validity
+ * is checked in constant time (see isValidFor(...)), based on the version of the
+ * models (incremented after each modification of their triggers or rules).
+ *
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ */
+final class TriggerIndex {
+
+	// logger
+	static Logger log = new Logger("TriggerIndex", Logger.Level.DEBUG);
+
+	// maximum number of variables in the cache
+	public static final int MAX_CACHED_VARIABLES = 10000;
+
+	// the list of models (and its size) when the index was built
+	final List<Model> modelList;
+	final int nbModels;
+
+	// version of the models when the index was built
+	final int modelVersion;
+
+	// the indexed models, in their order of application
+	final Model[] models;
+
+	// positions of the models associated with each fully specified trigger
+	final Map<String,BitSet> exactTriggers;
+
+	// underspecified triggers, with the positions of their models
+	final List<Template> underspecifiedTriggers;
+	final List<Integer> underspecifiedModels;
+
+	// union of all underspecified triggers (null if there is none)
+	final Template underspecifiedUnion;
+
+	// cached positions of the models triggered by each variable
+	final Map<String,BitSet> cache;
+
+
+	/**
+	 * Creates the trigger index for the models.
+	 *
+	 * @param domainModels the models
+	 */
+	TriggerIndex(List<Model> domainModels) {
+		modelVersion = Model.version.get();
+		modelList = domainModels;
+		models = domainModels.toArray(new Model[domainModels.size()]);
+		nbModels = models.length;
+		exactTriggers = new HashMap<String,BitSet>();
+		underspecifiedTriggers = new ArrayList<Template>();
+		underspecifiedModels = new ArrayList<Integer>();
+		for (int i = 0 ; i < models.length ; i++) {
+			for (Template trigger : models[i].getTriggers()) {
+				if (trigger.isUnderspecified()) {
+					underspecifiedTriggers.add(trigger);
+					underspecifiedModels.add(i);
+				}
+				else {
+					String key = trigger.getRawString().toLowerCase();
+					if (!exactTriggers.containsKey(key)) {
+						exactTriggers.put(key, new BitSet(models.length));
+					}
+					exactTriggers.get(key).set(i);
+				}
+			}
+		}
+		underspecifiedUnion = (underspecifiedTriggers.isEmpty())? null
+				: new Template(underspecifiedTriggers);
+		cache = new ConcurrentHashMap<String,BitSet>();
+	}
+
+
+	/**
+	 * Returns true if the index is still valid for the provided list of models, 
+	 * that is, if the list and its size are unchanged, and no model has been 
+	 * modified since the index was built.
+	 *
+	 * @param domainModels the models
+	 * @return true if the index is still valid, false otherwise
+	 */
+	boolean isValidFor(List<Model> domainModels) {
+		return domainModels == modelList && domainModels.size() == nbModels
+				&& Model.version.get() == modelVersion;
+	}
+
+
+	/**
+	 * Returns the models triggered by at least one of the updated variables, in
+	 * their order of application.  As in Model.isTriggered(...), models without
+	 * rules are never triggered.
+	 *
+	 * @param updatedVars the updated variables
+	 * @return the triggered models
+	 */
+	List<Model> getTriggeredModels(Collection<String> updatedVars) {
+		BitSet triggered = new BitSet(models.length);
+		for (String updatedVar : updatedVars) {
+			triggered.or(getTriggeredPositions(updatedVar));
+		}
+		List<Model> triggeredModels = new ArrayList<Model>(triggered.cardinality());
+		for (int i = triggered.nextSetBit(0); i >= 0; i = triggered.nextSetBit(i+1)) {
+			if (!models[i].rules.isEmpty()) {
+				triggeredModels.add(models[i]);
+			}
+		}
+		return triggeredModels;
+	}
+
+
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Returns the positions of the models triggered by the variable.
+	 *
+	 * @param variable the variable label
+	 * @return the positions of the triggered models
+	 */
+	private BitSet getTriggeredPositions(String variable) {
+		BitSet positions = cache.get(variable);
+		if (positions == null) {
+			positions = new BitSet(models.length);
+			BitSet exact = exactTriggers.get(variable.trim().toLowerCase());
+			if (exact != null) {
+				positions.or(exact);
+			}
+			if (underspecifiedUnion != null
+					&& underspecifiedUnion.match(variable, true).isMatching()) {
+				for (int i = 0 ; i < underspecifiedTriggers.size() ; i++) {
+					if (!positions.get(underspecifiedModels.get(i)) &&
+							underspecifiedTriggers.get(i).match(variable, true).isMatching()) {
+						positions.set(underspecifiedModels.get(i));
+					}
+				}
+			}
+			if (cache.size() >= MAX_CACHED_VARIABLES) {
+				cache.clear();
+			}
+			cache.put(variable, positions);
+		}
+		return positions;
+	}
+
+}
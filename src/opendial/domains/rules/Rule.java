@@ -23,11 +23,17 @@
 
 package opendial.domains.rules;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -35,11 +41,18 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 import opendial.arch.Logger;
+import opendial.arch.Settings;
+import opendial.bn.values.ListVal;
+import opendial.bn.values.Value;
 import opendial.datastructs.Assignment;
+import opendial.datastructs.LRUCache;
 import opendial.datastructs.Template;
 import opendial.datastructs.ValueRange;
+import opendial.domains.rules.conditions.BasicCondition;
 import opendial.domains.rules.conditions.ComplexCondition;
+import opendial.domains.rules.conditions.ConditionNetwork;
 import opendial.domains.rules.conditions.Condition;
+import opendial.domains.rules.conditions.NegatedCondition;
 import opendial.domains.rules.conditions.TemplateCondition;
 import opendial.domains.rules.conditions.VoidCondition;
 import opendial.domains.rules.conditions.BasicCondition.Relation;
@@ -55,7 +68,9 @@ import opendial.domains.rules.parameters.Parameter;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public class Rule {
+public class Rule implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	static Logger log = new Logger("Rule", Logger.Level.DEBUG);
 
@@ -70,7 +85,13 @@ public class Rule {
 	RuleType ruleType;
 
 	// cache with the outputs for a given assignment
-	Map<Assignment,RuleOutput> cache;
+	transient LRUCache<Assignment,RuleOutput> cache;
+	
+	// condition network in which the case conditions are compiled (if any)
+	ConditionNetwork network;
+	
+	// compiled conditions for each case (null if no network is set)
+	List<Condition> compiledConditions;
 	
 	// ===================================
 	//  RULE CONSTRUCTION
@@ -88,8 +109,7 @@ public class Rule {
 		this.id = id;
 		this.ruleType = ruleType;
 		cases = new ArrayList<RuleCase>();	
-		cache = new HashMap<Assignment,RuleOutput>(100);
-		cache = Collections.synchronizedMap(cache);
+		cache = new LRUCache<Assignment,RuleOutput>(Settings.ruleCacheCapacity);
 	}
 
 
@@ -106,6 +126,10 @@ public class Rule {
 					" is unreachable (previous case is trivially true)");
 		}
 		cases.add(newCase);
+		if (network != null) {
+			compiledConditions.add(network.compile(newCase.getCondition()));
+		}
+		cache.clear();
 	}
 
 
@@ -124,11 +148,40 @@ public class Rule {
 				for (BasicEffect e2: e.getSubEffects()) {
 					newEffects.add(e2.changePriority(priority));
 				}
-				newCase.addEffect(new Effect(newEffects), param);
+				newCase.addEffect(Effect.create(newEffects), param);
 			}
 			newCases.add(newCase);
 		}
 		cases = newCases;
+		cache.clear();
+	}
+	
+	
+	/**
+	 * Sets the maximum number of outputs cached by the rule (zero to disable
+	 * the cache).  The outputs already cached are discarded.
+	 * 
+	 * @param capacity the capacity of the cache
+	 */
+	public void setCacheCapacity(int capacity) {
+		cache = new LRUCache<Assignment,RuleOutput>(capacity);
+	}
+	
+	
+	/**
+	 * Compiles the conditions of the rule cases into the condition network (which
+	 * is typically shared by all rules of a model).  The compiled conditions are 
+	 * then used to determine the matching case for a given input.
+	 * 
+	 * @param network the condition network
+	 */
+	public void setConditionNetwork(ConditionNetwork network) {
+		List<Condition> conditions = new ArrayList<Condition>();
+		for (RuleCase c : cases) {
+			conditions.add(network.compile(c.getCondition()));
+		}
+		this.network = network;
+		compiledConditions = conditions;
 	}
 
 
@@ -145,6 +198,16 @@ public class Rule {
 	public String getRuleId() {
 		return id;
 	}
+	
+	
+	/**
+	 * Returns the cache of rule outputs, along with its hit and miss statistics.
+	 * 
+	 * @return the cache of rule outputs
+	 */
+	public LRUCache<Assignment,RuleOutput> getOutputCache() {
+		return cache;
+	}
 
 
 
@@ -173,11 +236,9 @@ public class Rule {
 	 */
 	public RuleOutput getOutput (Assignment input) {
 		
-		if (cache != null) {
-			RuleOutput v = cache.get(input);
-			if (v != null) {
-				return v;
-			}
+		RuleOutput v = cache.get(input);
+		if (v != null) {
+			return v;
 		}
 		
 		RuleOutput output = new RuleOutput(ruleType);
@@ -189,21 +250,170 @@ public class Rule {
 			}
 		}
  
-		if (cache != null) {
-			cache.put(input, output);
-			if (cache != null && cache.size() > 100) {
-				cache = null;
-			}			
-		}
+		cache.put(input, output);
 		return output;
 	}
 
 
 	private RuleCase getMatchingCase(Assignment input) {
-		return cases.stream()
-				.filter(c -> c.getCondition().isSatisfiedBy(input))
-				.map(c -> c.ground(input))
-				.findFirst().orElse(new RuleCase());
+		int caseIndex = getMatchingCaseIndex(input);
+		return (caseIndex < cases.size())? cases.get(caseIndex).ground(input) : new RuleCase();
+	}
+	
+	
+	/**
+	 * Returns a subset of the input assignments in the range that is sufficient to
+	 * derive all possible outputs of the rule (that is, the outputs of the rule for 
+	 * the full set of input assignments are identical to the outputs for the subset).
+	 * 
+	 * <p>For probability rules without slots, the output of the rule is solely
+	 * determined by the matching case, which itself only depends on the outcomes
+	 * of the elementary tests in the case conditions.  The values of each input 
+	 * variable are therefore grouped according to the outcomes of the tests on 
+	 * this variable, and only one representative value per group is enumerated
+	 * (variables that are not tested by the rule are thus reduced to a single 
+	 * value). The enumeration stops as soon as all cases have been reached.  For
+	 * other rules, the method returns the full set of input assignments.
+	 * 
+	 * @param inputs the range of input values
+	 * @return the subset of input assignments covering all possible outputs
+	 */
+	public Set<Assignment> getCoveringInputs(ValueRange inputs) {
+		Map<String,Set<Condition>> tests = getElementaryTests();
+		if (tests == null) {
+			return inputs.linearise();
+		}
+
+		// selects one representative value for each group of equivalent values
+		List<String> variables = new ArrayList<String>(inputs.getVariables());
+		List<List<Value>> representatives = new ArrayList<List<Value>>();
+		for (String variable : variables) {
+			Set<Condition> varTests = tests.getOrDefault(variable, Collections.emptySet());
+			Map<List<Boolean>,Value> groups = new LinkedHashMap<List<Boolean>,Value>();
+			for (Value value : inputs.getValues(variable)) {
+				Assignment a = new Assignment(variable, value);
+				List<Boolean> outcomes = varTests.stream()
+						.map(t -> t.isSatisfiedBy(a)).collect(Collectors.toList());
+				groups.putIfAbsent(outcomes, value);
+			}
+			if (groups.isEmpty()) {
+				return inputs.linearise();
+			}
+			representatives.add(new ArrayList<Value>(groups.values()));
+		}
+
+		// enumerates the combinations of representative values, keeping one 
+		// combination for each reachable case
+		Set<Assignment> covering = new HashSet<Assignment>();
+		BitSet reached = new BitSet(cases.size() + 1);
+		int[] counters = new int[variables.size()];
+		while (true) {
+			Assignment combination = new Assignment();
+			for (int i = 0 ; i < counters.length ; i++) {
+				combination.addPair(variables.get(i), representatives.get(i).get(counters[i]));
+			}
+			int caseIndex = getMatchingCaseIndex(combination);
+			if (!reached.get(caseIndex)) {
+				reached.set(caseIndex);
+				covering.add(combination);
+				if (reached.cardinality() == cases.size() + 1) {
+					break;
+				}
+			}
+			int i = 0;
+			while (i < counters.length && ++counters[i] == representatives.get(i).size()) {
+				counters[i] = 0;
+				i++;
+			}
+			if (i == counters.length) {
+				break;
+			}
+		}
+		return covering;
+	}
+	
+	
+	/**
+	 * Returns the index of the first case whose condition is satisfied by the 
+	 * input, or the number of cases if no condition is satisfied.
+	 * 
+	 * @param input the input assignment
+	 * @return the index of the matching case
+	 */
+	private int getMatchingCaseIndex(Assignment input) {
+		List<Condition> conditions = compiledConditions;
+		for (int i = 0 ; i < cases.size() ; i++) {
+			Condition condition = (conditions != null)? conditions.get(i) 
+					: cases.get(i).getCondition();
+			if (condition.isSatisfiedBy(input)) {
+				return i;
+			}
+		}
+		return cases.size();
+	}
+	
+	
+	/**
+	 * Returns the elementary tests (conditions on the value of a single variable) 
+	 * contained in the conditions of the rule, indexed by their variable.  If the 
+	 * rule is not a probability rule, contains slots, or contains conditions that
+	 * cannot be decomposed in such tests, returns null.
+	 * 
+	 * @return the elementary tests for each variable, or null
+	 */
+	private Map<String,Set<Condition>> getElementaryTests() {
+		if (ruleType != RuleType.PROB) {
+			return null;
+		}
+		Map<String,Set<Condition>> tests = new HashMap<String,Set<Condition>>();
+		for (RuleCase c : cases) {
+			if (!addElementaryTests(c.getCondition(), tests) || c.getEffects().stream()
+					.anyMatch(e -> !e.getSlots().isEmpty())) {
+				return null;
+			}
+		}
+		return tests;
+	}
+	
+	
+	/**
+	 * Adds the elementary tests of the condition to the tests indexed by variable,
+	 * and returns false if the condition cannot be decomposed in such tests.
+	 * 
+	 * @param condition the condition
+	 * @param tests the elementary tests indexed by variable
+	 * @return true if the condition is decomposable, false otherwise
+	 */
+	private static boolean addElementaryTests(Condition condition, 
+			Map<String,Set<Condition>> tests) {
+		String variable;
+		if (condition instanceof VoidCondition) {
+			return true;
+		}
+		else if (condition instanceof ComplexCondition) {
+			return ((ComplexCondition)condition).getConditions().stream()
+					.allMatch(c -> addElementaryTests(c, tests));
+		}
+		else if (condition instanceof NegatedCondition) {
+			return addElementaryTests(((NegatedCondition)condition).getInitCondition(), tests);
+		}
+		else if (condition instanceof BasicCondition && 
+				!(((BasicCondition)condition).getRelation() == Relation.IN 
+				&& ((BasicCondition)condition).getValue() instanceof ListVal)) {
+			variable = ((BasicCondition)condition).getVariable();
+		}
+		else if (condition instanceof TemplateCondition && condition.getSlots().isEmpty()
+				&& !((TemplateCondition)condition).getVariable().isUnderspecified()) {
+			variable = ((TemplateCondition)condition).getVariable().getRawString();
+		}
+		else {
+			return false;
+		}
+		if (!tests.containsKey(variable)) {
+			tests.put(variable, new LinkedHashSet<Condition>());
+		}
+		tests.get(variable).add(condition);
+		return true;
 	}
 
 
@@ -285,6 +495,16 @@ public class Rule {
 	}
 
 
+	/**
+	 * Returns the (ordered) list of cases in the rule
+	 * 
+	 * @return the cases
+	 */
+	public List<RuleCase> getCases() {
+		return Collections.unmodifiableList(cases);
+	}
+
+
 	/**
 	 * Returns the list of conditions in the rule
 	 * 
@@ -397,9 +617,16 @@ public class Rule {
 	}
 
 
-
-
-
-
+	/**
+	 * Reads the rule from the stream, and creates an empty output cache.
+	 * 
+	 * @param in the object input stream
+	 * @throws IOException if the rule could not be read
+	 * @throws ClassNotFoundException if a class of the rule is unknown
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		cache = new LRUCache<Assignment,RuleOutput>(Settings.ruleCacheCapacity);
+	}
 
 }
@@ -23,6 +23,7 @@
 
 package opendial.domains.rules;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -48,7 +49,9 @@ import opendial.domains.rules.parameters.Parameter;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public class RuleCase {
+public class RuleCase implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	// logger
 	static Logger log = new Logger("Case", Logger.Level.DEBUG);
@@ -192,7 +195,7 @@ public class RuleCase {
 		inputVariables.addAll(condition.getInputVariables());
 		for (Effect effect : effects.keySet()) {
 			for (String inputVariable: effect.getAdditionalInputVariables()) {
-				inputVariables.add(new Template(inputVariable));
+				inputVariables.add(Template.create(inputVariable));
 			}
 		}
 		return inputVariables;
@@ -49,6 +49,8 @@ import opendial.domains.rules.parameters.Parameter;
  */
 public class RuleOutput extends RuleCase {
 
+	private static final long serialVersionUID = 1L;
+
 
 	// the rule type
 	RuleType type;
@@ -88,7 +90,7 @@ public class RuleOutput extends RuleCase {
 					.map(e -> this.getParameter(e)).filter(e -> e instanceof FixedParameter)
 					.mapToDouble(e -> ((FixedParameter)e).getParameterValue()).sum();
 			if (fixedMass > 0) {
-				addEffect(new Effect(), new FixedParameter(1.0-fixedMass));
+				addEffect(Effect.create(), new FixedParameter(1.0-fixedMass));
 			}
 			for (Effect o : effects.keySet()) {
 				Parameter param = effects.get(o);
@@ -97,7 +99,7 @@ public class RuleOutput extends RuleCase {
 
 					Collection<BasicEffect> effectsList = new ArrayList<BasicEffect>(o.getSubEffects());
 					effectsList.addAll(o2.getSubEffects());
-					Effect newEffect = new Effect(effectsList);
+					Effect newEffect = Effect.create(effectsList);
 					Parameter mergeParam = param.multiplyParameter(newParam);
 					if (!newOutput.containsKey(newEffect)) {
 						newOutput.put(newEffect, mergeParam);
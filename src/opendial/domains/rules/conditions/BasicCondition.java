@@ -42,6 +42,8 @@ import opendial.datastructs.ValueRange;
  */
 public final class BasicCondition implements Condition {
 
+	private static final long serialVersionUID = 1L;
+
 	static Logger log = new Logger("BasicCondition", Logger.Level.DEBUG);
 
 	// possible relations used in a basic condition
@@ -134,7 +136,7 @@ public final class BasicCondition implements Condition {
 	@Override
 	public Set<Template> getInputVariables() {
 		Set<Template> inputVariables = new HashSet<Template>();
-		inputVariables.add(new Template(variable));
+		inputVariables.add(Template.create(variable));
 		return inputVariables;
 	}
 
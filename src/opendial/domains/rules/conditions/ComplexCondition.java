@@ -43,6 +43,8 @@ import opendial.datastructs.ValueRange;
  */
 public final class ComplexCondition implements Condition {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	static Logger log = new Logger("ComplexCondition", Logger.Level.DEBUG);
 
@@ -23,6 +23,7 @@
 
 package opendial.domains.rules.conditions;
 
+import java.io.Serializable;
 import java.util.Set;
 
 import opendial.datastructs.Assignment;
@@ -40,7 +41,7 @@ import opendial.datastructs.ValueRange;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public interface Condition {
+public interface Condition extends Serializable {
 	
 	/**
 	 * Returns the input variables of the condition (as templates).
@@ -0,0 +1,364 @@
+// =================================================================
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person
+// obtaining a copy of this software and associated documentation
+// files (the "Software"), to deal in the Software without restriction,
+// including without limitation the rights to use, copy, modify, merge,
+// publish, distribute, sublicense, and/or sell copies of the Software,
+// and to permit persons to whom the Software is furnished to do so,
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================
+
+package opendial.domains.rules.conditions;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import opendial.arch.Logger;
+import opendial.bn.values.BooleanVal;
+import opendial.bn.values.NoneVal;
+import opendial.bn.values.StringVal;
+import opendial.bn.values.Value;
+import opendial.bn.values.ValueFactory;
+import opendial.datastructs.Assignment;
+import opendial.datastructs.Template;
+import opendial.datastructs.ValueRange;
+import opendial.domains.rules.conditions.BasicCondition.Relation;
+
+/**
+ * Discrimination network shared by the rules of a model, in the spirit of the
+ * alpha network of the Rete algorithm.  The network compiles the rule conditions 
+ * by replacing each elementary test on a single variable (a basic condition, or a 
+ * template condition without slots) by a shared node, such that identical tests 
+ * occurring in several rules or cases are represented by one node.  Each node 
+ * stores the outcome of its test for the values of its variable that have already 
+ * been encountered, such that each distinct test is only evaluated once for a 
+ * given value, and the outcome is propagated to all conditions relying on it.
+ * 
+ * <p>The "contains" tests on plain keywords are additionally evaluated through a
+ * keyword index for their variable, which searches for all the keywords tested on 
+ * the variable in one pass over its value.  The indices belong to the network, and
+ * are therefore discarded together with the model (e.g. when reloading a domain).
+ * 
+ * <p>Conditions that depend on slots to ground (and whose outcome is therefore not 
+ * only determined by the value of one variable) are left unchanged, and evaluated
+ * as usual.
+ *
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ */
+public final class ConditionNetwork implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	// logger
+	static Logger log = new Logger("ConditionNetwork", Logger.Level.DEBUG);
+
+	// maximum number of values whose outcome is stored for each node
+	public static final int MAX_CACHED_VALUES = 1000;
+
+	// the nodes of the network, indexed by the elementary condition they test
+	final Map<Condition,TestNode> nodes;
+
+	// the keyword indices, for each tested variable
+	final Map<String,KeywordIndex> keywordIndices;
+
+
+	/**
+	 * Creates an empty network
+	 */
+	public ConditionNetwork() {
+		nodes = new HashMap<Condition,TestNode>();
+		keywordIndices = new HashMap<String,KeywordIndex>();
+	}
+
+
+	/**
+	 * Compiles the condition into the network, and returns the compiled condition.
+	 * The compiled condition is equivalent to the initial one, but its elementary
+	 * tests are replaced by the (shared) nodes of the network.
+	 * 
+	 * @param condition the condition to compile
+	 * @return the compiled condition
+	 */
+	public synchronized Condition compile(Condition condition) {
+		if (condition instanceof ComplexCondition) {
+			ComplexCondition complex = (ComplexCondition)condition;
+			List<Condition> subconditions = new ArrayList<Condition>();
+			for (Condition subcondition : complex.getConditions()) {
+				subconditions.add(compile(subcondition));
+			}
+			return new ComplexCondition(subconditions, complex.getOperator());
+		}
+		else if (condition instanceof NegatedCondition) {
+			return new NegatedCondition(compile(((NegatedCondition)condition).getInitCondition()));
+		}
+		String variable = getTestedVariable(condition);
+		if (variable == null) {
+			return condition;
+		}
+		TestNode node = nodes.get(condition);
+		if (node == null) {
+			Value keyword = getKeyword(condition);
+			if (keyword != null) {
+				KeywordIndex index = keywordIndices.get(variable);
+				if (index == null) {
+					index = new KeywordIndex();
+					keywordIndices.put(variable, index);
+				}
+				node = new TestNode(condition, variable, index, index.register(keyword));
+			}
+			else {
+				node = new TestNode(condition, variable, null, -1);
+			}
+			nodes.put(condition, node);
+		}
+		return node;
+	}
+
+
+	/**
+	 * Returns the initial (uncompiled) version of the condition, in which the nodes
+	 * of the network are replaced by the elementary conditions they test.
+	 * 
+	 * @param condition the compiled condition
+	 * @return the initial condition
+	 */
+	public static Condition getInitCondition(Condition condition) {
+		if (condition instanceof TestNode) {
+			return ((TestNode)condition).condition;
+		}
+		else if (condition instanceof ComplexCondition) {
+			ComplexCondition complex = (ComplexCondition)condition;
+			List<Condition> subconditions = new ArrayList<Condition>();
+			for (Condition subcondition : complex.getConditions()) {
+				subconditions.add(getInitCondition(subcondition));
+			}
+			return new ComplexCondition(subconditions, complex.getOperator());
+		}
+		else if (condition instanceof NegatedCondition) {
+			return new NegatedCondition(getInitCondition(
+					((NegatedCondition)condition).getInitCondition()));
+		}
+		return condition;
+	}
+
+
+	/**
+	 * Returns the number of nodes in the network (that is, the number of distinct
+	 * elementary tests).
+	 * 
+	 * @return the number of nodes
+	 */
+	public synchronized int getNbNodes() {
+		return nodes.size();
+	}
+
+
+	/**
+	 * Returns the number of keywords registered in the keyword index of the 
+	 * variable (0 if the variable has no index).
+	 * 
+	 * @param variable the variable label
+	 * @return the number of keywords tested on the variable
+	 */
+	public synchronized int getNbKeywords(String variable) {
+		KeywordIndex index = keywordIndices.get(variable);
+		return (index != null)? index.getNbKeywords() : 0;
+	}
+
+
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Returns the variable tested by the condition if the condition is an elementary
+	 * test whose outcome only depends on the value of this variable, and null 
+	 * otherwise.
+	 * 
+	 * @param condition the condition
+	 * @return the tested variable, or null if the condition is not an elementary test
+	 */
+	private static String getTestedVariable(Condition condition) {
+		if (condition instanceof BasicCondition) {
+			return ((BasicCondition)condition).getVariable();
+		}
+		else if (condition instanceof TemplateCondition && condition.getSlots().isEmpty()) {
+			return ((TemplateCondition)condition).getVariable().getRawString();
+		}
+		return null;
+	}
+
+
+	/**
+	 * Returns the keyword searched for by the condition if the condition is a 
+	 * "contains" (or "does not contain") test on a plain keyword, and null 
+	 * otherwise.
+	 * 
+	 * @param condition the elementary condition
+	 * @return the keyword, or null if the condition cannot use a keyword index
+	 */
+	private static Value getKeyword(Condition condition) {
+		Relation relation = getRelation(condition);
+		if (relation != Relation.CONTAINS && relation != Relation.NOT_CONTAINS) {
+			return null;
+		}
+		Value keyword = (condition instanceof BasicCondition)? 
+				((BasicCondition)condition).getValue() 
+				: ValueFactory.create(((TemplateCondition)condition).getValue().getRawString());
+		return (KeywordIndex.isIndexable(keyword))? keyword : null;
+	}
+
+
+	/**
+	 * Returns the relation of the elementary condition (or null if the condition
+	 * is neither a basic nor a template condition).
+	 * 
+	 * @param condition the elementary condition
+	 * @return the relation of the condition
+	 */
+	private static Relation getRelation(Condition condition) {
+		if (condition instanceof BasicCondition) {
+			return ((BasicCondition)condition).getRelation();
+		}
+		else if (condition instanceof TemplateCondition) {
+			return ((TemplateCondition)condition).getRelation();
+		}
+		return null;
+	}
+
+
+	/**
+	 * Node of the network, testing an elementary condition on a single variable.
+	 */
+	static final class TestNode implements Condition {
+
+		private static final long serialVersionUID = 1L;
+
+		// the elementary condition
+		final Condition condition;
+
+		// the tested variable
+		final String variable;
+
+		// outcomes of the test for each value of the variable
+		final Map<Object,Boolean> outcomes;
+
+		// keyword index for "contains" tests on plain keywords (null if not used)
+		final KeywordIndex keywordIndex;
+
+		// position of the keyword in the index
+		final int keywordPosition;
+
+
+		/**
+		 * Creates a new node for the condition on the variable
+		 * 
+		 * @param condition the condition
+		 * @param variable the tested variable
+		 * @param keywordIndex the keyword index (null if the test is not on a keyword)
+		 * @param keywordPosition the position of the keyword in the index
+		 */
+		TestNode(Condition condition, String variable, 
+				KeywordIndex keywordIndex, int keywordPosition) {
+			this.condition = condition;
+			this.variable = variable;
+			this.keywordIndex = keywordIndex;
+			this.keywordPosition = keywordPosition;
+			outcomes = new ConcurrentHashMap<Object,Boolean>();
+		}
+
+
+		/**
+		 * Returns the outcome of the test for the value of the variable in the
+		 * input assignment.  The outcome is only stored for strings, booleans and
+		 * empty values (strings being indexed by their exact, case-sensitive content,
+		 * since string values are compared in a case-insensitive manner).  The 
+		 * "contains" tests on keywords are read from the keyword index instead.
+		 * 
+		 * @param input the input assignment
+		 * @return true if the condition is satisfied, false otherwise
+		 */
+		@Override
+		public boolean isSatisfiedBy(Assignment input) {
+			Value value = input.getValue(variable);
+			Object key;
+			if (keywordIndex != null && value instanceof StringVal) {
+				boolean found = keywordIndex.contains(value.toString(), keywordPosition);
+				return (getRelation(condition) == Relation.CONTAINS)? found : !found;
+			}
+			else if (value instanceof StringVal) {
+				key = value.toString();
+			}
+			else if (value instanceof BooleanVal || value instanceof NoneVal) {
+				key = value;
+			}
+			else {
+				return condition.isSatisfiedBy(input);
+			}
+			Boolean outcome = outcomes.get(key);
+			if (outcome == null) {
+				outcome = condition.isSatisfiedBy(input);
+				if (outcomes.size() >= MAX_CACHED_VALUES) {
+					outcomes.clear();
+				}
+				outcomes.put(key, outcome);
+			}
+			return outcome;
+		}
+
+		@Override
+		public Set<Template> getInputVariables() {
+			return condition.getInputVariables();
+		}
+
+		@Override
+		public ValueRange getGroundings(Assignment input) {
+			return condition.getGroundings(input);
+		}
+
+		@Override
+		public Set<String> getSlots() {
+			return condition.getSlots();
+		}
+
+		@Override
+		public String toString() {
+			return condition.toString();
+		}
+
+		@Override
+		public int hashCode() {
+			return condition.hashCode();
+		}
+
+		/**
+		 * Returns true if the object is a node testing the same condition, false
+		 * otherwise.  A node is never equal to its raw condition (see 
+		 * getInitCondition(...) to unwrap the compiled conditions).
+		 */
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof TestNode && ((TestNode)o).condition.equals(condition);
+		}
+	}
+
+}
@@ -0,0 +1,311 @@
+// =================================================================
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person
+// obtaining a copy of this software and associated documentation
+// files (the "Software"), to deal in the Software without restriction,
+// including without limitation the rights to use, copy, modify, merge,
+// publish, distribute, sublicense, and/or sell copies of the Software,
+// and to permit persons to whom the Software is furnished to do so,
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================
+
+package opendial.domains.rules.conditions;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import opendial.arch.Logger;
+import opendial.bn.values.StringVal;
+import opendial.bn.values.Value;
+import opendial.datastructs.Template;
+
+/**
+ * Multi-pattern matcher for the keywords (i.e. plain strings without slots or 
+ * wildcards) that the "contains" conditions search for in the values of a given 
+ * variable.  All keywords registered for the variable are compiled into one 
+ * Aho-Corasick automaton, which reports in one pass over the value all keywords 
+ * that it contains. The results are cached for each value (in the automaton, such
+ * that results computed before the registration of a new keyword are discarded
+ * with the automaton), and all conditions on the variable can read them without
+ * scanning the value again.  The indices are owned by the condition network of a
+ * model (one index per variable), and are discarded together with the network.
+ * 
+ * <p>The matching is identical to the partial matching of templates: the keywords 
+ * are matched in a case-insensitive manner, and their first occurrence in the value 
+ * must be surrounded by whitespaces, punctuation or the value boundaries.
+ *
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ */
+final class KeywordIndex implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	// logger
+	static Logger log = new Logger("KeywordIndex", Logger.Level.DEBUG);
+
+	// maximum number of values in the cache
+	public static final int MAX_CACHED_VALUES = 1000;
+
+	// the registered keywords (normalised), and their positions in the list
+	final List<String> keywords;
+	final Map<String,Integer> positions;
+
+	// the compiled automaton (null if it must be rebuilt)
+	transient volatile Automaton automaton;
+
+
+	/**
+	 * Creates an empty keyword index.
+	 */
+	KeywordIndex() {
+		keywords = new ArrayList<String>();
+		positions = new HashMap<String,Integer>();
+	}
+
+
+	/**
+	 * Returns true if the value can be searched for with a keyword index, that is,
+	 * if it is a non-empty string value whose template is a plain string.
+	 * 
+	 * @param value the value to search for
+	 * @return true if the value can be indexed, false otherwise
+	 */
+	static boolean isIndexable(Value value) {
+		return value instanceof StringVal && !value.toString().trim().isEmpty()
+				&& Template.create(value.toString()).isPlain();
+	}
+
+
+	/**
+	 * Registers the keyword in the index, and returns its position.  The keyword
+	 * must be indexable (see isIndexable(...)).
+	 * 
+	 * @param keyword the keyword to register
+	 * @return the position of the keyword in the index
+	 */
+	synchronized int register(Value keyword) {
+		String normalised = normalise(keyword.toString().trim());
+		if (!positions.containsKey(normalised)) {
+			positions.put(normalised, keywords.size());
+			keywords.add(normalised);
+			automaton = null;
+		}
+		return positions.get(normalised);
+	}
+
+
+	/**
+	 * Returns the number of keywords registered in the index.
+	 * 
+	 * @return the number of keywords
+	 */
+	synchronized int getNbKeywords() {
+		return keywords.size();
+	}
+
+
+	/**
+	 * Returns true if the value contains the keyword at the given position, and
+	 * false otherwise.
+	 * 
+	 * @param value the value to search
+	 * @param position the position of the keyword
+	 * @return true if the keyword is contained in the value, false otherwise
+	 */
+	boolean contains(String value, int position) {
+		Automaton current = getAutomaton();
+		BitSet found = current.cache.get(value);
+		if (found == null) {
+			found = current.search(value.trim());
+			if (current.cache.size() >= MAX_CACHED_VALUES) {
+				current.cache.clear();
+			}
+			current.cache.put(value, found);
+		}
+		return found.get(position);
+	}
+
+
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Returns the automaton for the registered keywords (building it if necessary).
+	 * 
+	 * @return the automaton
+	 */
+	private Automaton getAutomaton() {
+		Automaton current = automaton;
+		if (current == null) {
+			synchronized (this) {
+				if (automaton == null) {
+					automaton = new Automaton(keywords);
+				}
+				current = automaton;
+			}
+		}
+		return current;
+	}
+
+
+	/**
+	 * Normalises the string for case-insensitive matching (with the same character
+	 * equivalence as String.regionMatches(...)).
+	 * 
+	 * @param str the string
+	 * @return the normalised string
+	 */
+	private static String normalise(String str) {
+		StringBuilder builder = new StringBuilder(str.length());
+		for (int i = 0 ; i < str.length() ; i++) {
+			builder.append(normalise(str.charAt(i)));
+		}
+		return builder.toString();
+	}
+
+
+	/**
+	 * Normalises the character for case-insensitive matching.
+	 * 
+	 * @param c the character
+	 * @return the normalised character
+	 */
+	private static char normalise(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+
+	/**
+	 * Aho-Corasick automaton for a list of keywords.
+	 */
+	static final class Automaton {
+
+		// the keywords
+		final String[] keywords;
+
+		// transitions from each state
+		final List<Map<Character,Integer>> transitions;
+
+		// failure links for each state
+		final int[] failures;
+
+		// keywords recognised in each state (including through failure links)
+		final List<int[]> outputs;
+
+		// positions of the keywords contained in each value
+		final Map<String,BitSet> cache;
+
+
+		/**
+		 * Builds the automaton for the (normalised) keywords.
+		 * 
+		 * @param keywordList the keywords
+		 */
+		Automaton(List<String> keywordList) {
+			keywords = keywordList.toArray(new String[keywordList.size()]);
+			cache = new ConcurrentHashMap<String,BitSet>();
+			transitions = new ArrayList<Map<Character,Integer>>();
+			transitions.add(new HashMap<Character,Integer>());
+			List<List<Integer>> ends = new ArrayList<List<Integer>>();
+			ends.add(new ArrayList<Integer>());
+
+			for (int k = 0 ; k < keywords.length ; k++) {
+				int state = 0;
+				for (int i = 0 ; i < keywords[k].length() ; i++) {
+					Integer next = transitions.get(state).get(keywords[k].charAt(i));
+					if (next == null) {
+						next = transitions.size();
+						transitions.add(new HashMap<Character,Integer>());
+						ends.add(new ArrayList<Integer>());
+						transitions.get(state).put(keywords[k].charAt(i), next);
+					}
+					state = next;
+				}
+				ends.get(state).add(k);
+			}
+
+			// breadth-first computation of the failure links
+			failures = new int[transitions.size()];
+			List<Integer> queue = new ArrayList<Integer>(transitions.get(0).values());
+			for (int i = 0 ; i < queue.size() ; i++) {
+				int state = queue.get(i);
+				for (Map.Entry<Character,Integer> t : transitions.get(state).entrySet()) {
+					int failure = failures[state];
+					while (failure > 0 && !transitions.get(failure).containsKey(t.getKey())) {
+						failure = failures[failure];
+					}
+					Integer target = transitions.get(failure).get(t.getKey());
+					failures[t.getValue()] = (target != null && target != t.getValue())? target : 0;
+					queue.add(t.getValue());
+				}
+			}
+			outputs = new ArrayList<int[]>(transitions.size());
+			for (int state = 0 ; state < transitions.size() ; state++) {
+				List<Integer> out = new ArrayList<Integer>();
+				for (int s = state ; s > 0 ; s = failures[s]) {
+					out.addAll(ends.get(s));
+				}
+				int[] outArray = new int[out.size()];
+				for (int i = 0 ; i < outArray.length ; i++) {
+					outArray[i] = out.get(i);
+				}
+				outputs.add(outArray);
+			}
+		}
+
+
+		/**
+		 * Returns the positions of the keywords contained in the (trimmed) value.
+		 * 
+		 * @param value the value
+		 * @return the positions of the contained keywords
+		 */
+		BitSet search(String value) {
+			BitSet seen = new BitSet(keywords.length);
+			BitSet found = new BitSet(keywords.length);
+			int state = 0;
+			for (int i = 0 ; i < value.length() ; i++) {
+				char c = normalise(value.charAt(i));
+				while (state > 0 && !transitions.get(state).containsKey(c)) {
+					state = failures[state];
+				}
+				Integer next = transitions.get(state).get(c);
+				state = (next != null)? next : 0;
+				for (int k : outputs.get(state)) {
+
+					// only the first occurrence of the keyword is considered
+					if (!seen.get(k)) {
+						seen.set(k);
+						int start = i + 1 - keywords[k].length();
+						if ((start == 0 || Template.isWhitespaceOrPunctuation(value.charAt(start-1)))
+								&& (i+1 == value.length() 
+								|| Template.isWhitespaceOrPunctuation(value.charAt(i+1)))) {
+							found.set(k);
+						}
+					}
+				}
+			}
+			return found;
+		}
+	}
+
+}
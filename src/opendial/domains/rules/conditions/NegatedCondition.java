@@ -39,6 +39,8 @@ import opendial.datastructs.ValueRange;
  */
 public final class NegatedCondition implements Condition {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("NegatedCondition", Logger.Level.NORMAL);
 	
@@ -45,6 +45,8 @@ import opendial.domains.rules.conditions.BasicCondition.Relation;
  */
 public final class TemplateCondition implements Condition {
 
+	private static final long serialVersionUID = 1L;
+
 	static Logger log = new Logger("TemplateCondition", Logger.Level.DEBUG);
 
 	// variable label (can include slots to fill)
@@ -166,8 +168,8 @@ public final class TemplateCondition implements Condition {
 			case UNEQUAL: return !expectedValue2.match(actualValue.toString(), true).isMatching(); 
 			case CONTAINS: return expectedValue2.match(actualValue.toString(), false).isMatching();
 			case NOT_CONTAINS: return !expectedValue2.match(actualValue.toString(), false).isMatching();
-			case IN: return new Template(actualValue.toString()).match(expectedValue2.toString(), false).isMatching();
-			case NOT_IN: return !new Template(actualValue.toString()).match(expectedValue2.toString(), false).isMatching();
+			case IN: return Template.create(actualValue.toString()).match(expectedValue2.toString(), false).isMatching();
+			case NOT_IN: return !Template.create(actualValue.toString()).match(expectedValue2.toString(), false).isMatching();
 			default: return false;
 			}
 		}
@@ -39,6 +39,8 @@ import opendial.datastructs.ValueRange;
  */
 public final class VoidCondition implements Condition {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	static Logger log = new Logger("VoidCondition", Logger.Level.NORMAL);
 
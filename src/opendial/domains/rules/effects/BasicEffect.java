@@ -24,6 +24,7 @@
 package opendial.domains.rules.effects;
 
 
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashSet;
 
@@ -49,7 +50,9 @@ import opendial.domains.rules.conditions.BasicCondition.Relation;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public class BasicEffect {
+public class BasicEffect implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	// logger
 	static Logger log = new Logger("BasicEffect", Logger.Level.DEBUG);
@@ -69,6 +72,9 @@ public class BasicEffect {
 
 	final int priority;
 	
+	// the hashcode for the effect (0 if it must be computed)
+	transient int hash;
+	
 	// ===================================
 	//  EFFECT CONSTRUCTION
 	// ===================================
@@ -230,7 +236,10 @@ public class BasicEffect {
 	 */
 	@Override
 	public int hashCode() {
-		return variableLabel.hashCode() ^ type.hashCode() ^ priority ^ variableValue.hashCode();
+		if (hash == 0) {
+			hash = variableLabel.hashCode() ^ type.hashCode() ^ priority ^ variableValue.hashCode();
+		}
+		return hash;
 	}
 
 	
@@ -243,7 +252,10 @@ public class BasicEffect {
 	 */
 	@Override
 	public boolean equals(Object o) {
-		if (o instanceof BasicEffect) {
+		if (o == this) {
+			return true;
+		}
+		else if (o instanceof BasicEffect) {
 			if (!((BasicEffect)o).getVariable().equals(variableLabel)) {
 				return false;
 			}
@@ -24,11 +24,13 @@
 package opendial.domains.rules.effects;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import opendial.arch.DialException;
@@ -47,17 +49,35 @@ import opendial.domains.rules.effects.BasicEffect.EffectType;
 /**
  * A complex effect, represented as a combination of elementary sub-effects connected
  * via an implicit AND relation.
+ * 
+ * <p>Effects are immutable, and their hashcode is computed only once.  Since effects
+ * are used as keys in the tables of the rule outputs and distributions, the effects 
+ * created with the method create(...) are interned (like templates, see 
+ * Template.create(...)), such that equal effects are most often the same instance
+ * and can be compared by reference.  In particular, grounding a templated effect 
+ * with the same assignment always returns the same instance.
  *
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
 public final class Effect implements Value {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	static Logger log = new Logger("Effect", Logger.Level.DEBUG);
 
 	// the sub-effects included in the effect
 	final Set<BasicEffect> subeffects;
+	
+	// the hashcode for the effect (0 if it must be computed)
+	transient int hash;
+	
+	// interned effects
+	static Map<Effect,Effect> interned = new ConcurrentHashMap<Effect,Effect>();
+	
+	// maximum number of interned effects
+	public static final int MAX_INTERNED_EFFECTS = 10000;
 
 	// ===================================
 	//  EFFECT CONSTRUCTION
@@ -70,7 +90,7 @@ public final class Effect implements Value {
 	 * 
 	 */
 	public Effect() {
-		subeffects = new HashSet<BasicEffect>();
+		subeffects = Collections.emptySet();
 	}
 	
 
@@ -80,7 +100,7 @@ public final class Effect implements Value {
 	 * @param effect the effect to include
 	 */
 	public Effect(BasicEffect effect) {
-		subeffects = new HashSet<BasicEffect>(Arrays.asList(effect));
+		subeffects = Collections.singleton(effect);
 	}
 	
 	/**
@@ -89,7 +109,60 @@ public final class Effect implements Value {
 	 * @param effects the effects to include
 	 */
 	public Effect(Collection<BasicEffect> effects) {
-		subeffects = new HashSet<BasicEffect>(effects);
+		subeffects = Collections.unmodifiableSet(new HashSet<BasicEffect>(effects));
+	}
+	
+	
+	/**
+	 * Returns the (interned) effect with no sub-effect.
+	 * 
+	 * @return the empty effect
+	 */
+	public static Effect create() {
+		return intern(new Effect());
+	}
+	
+	
+	/**
+	 * Returns the (interned) effect with a single sub-effect.
+	 * 
+	 * @param effect the effect to include
+	 * @return the corresponding effect
+	 */
+	public static Effect create(BasicEffect effect) {
+		return intern(new Effect(effect));
+	}
+	
+	
+	/**
+	 * Returns the (interned) effect with the collection of sub-effects.  Contrary to
+	 * the constructor, the method returns the existing instance if an equal effect
+	 * has already been created.
+	 * 
+	 * @param effects the effects to include
+	 * @return the corresponding effect
+	 */
+	public static Effect create(Collection<BasicEffect> effects) {
+		return intern(new Effect(effects));
+	}
+	
+	
+	/**
+	 * Returns the interned instance that is equal to the effect.
+	 * 
+	 * @param effect the effect
+	 * @return the interned effect
+	 */
+	public static Effect intern(Effect effect) {
+		Effect existing = interned.get(effect);
+		if (existing != null) {
+			return existing;
+		}
+		if (interned.size() >= MAX_INTERNED_EFFECTS) {
+			interned.clear();
+		}
+		existing = interned.putIfAbsent(effect, effect);
+		return (existing != null)? existing : effect;
 	}
 
 	
@@ -110,7 +183,8 @@ public final class Effect implements Value {
 	}
 	
 	/**
-	 * Returns all the sub-effect included in the complex effect
+	 * Returns all the sub-effect included in the complex effect (as an unmodifiable
+	 * collection)
 	 * 
 	 * @return the collection of sub-effects
 	 */
@@ -133,7 +207,7 @@ public final class Effect implements Value {
 				.map(e -> e.ground(grounding))
 				.filter(e -> !e.containsSlots())
 				.collect(Collectors.toList());
-		return new Effect(grounded);
+		return create(grounded);
 	}
 	
 	
@@ -142,7 +216,7 @@ public final class Effect implements Value {
 		if (v instanceof Effect) {
 			Collection<BasicEffect> effects = new ArrayList<BasicEffect>(subeffects);
 			effects.addAll(((Effect)v).getSubEffects());
-			return new Effect(effects);
+			return create(effects);
 		}
 		else {
 			throw new DialException("cannot concatenate " + this + " and " + v);
@@ -273,18 +347,26 @@ public final class Effect implements Value {
 	 */
 	@Override
 	public int hashCode() {
-		return subeffects.hashCode();
+		if (hash == 0) {
+			hash = subeffects.hashCode();
+		}
+		return hash;
 	}
 
 	/**
-	 * Returns true if the object is a complex effect with an identical content
+	 * Returns true if the object is a complex effect with an identical content.
+	 * Interned effects are compared by reference.
 	 *
 	 * @param o the object to compare
 	 * @return true if the objects are identical, false otherwise
 	 */
 	@Override
 	public boolean equals(Object o) {
-		return o.hashCode() == hashCode();
+		if (o == this) {
+			return true;
+		}
+		return o instanceof Effect && o.hashCode() == hashCode() 
+				&& ((Effect)o).subeffects.equals(subeffects);
 	}
 
 	
@@ -302,13 +384,13 @@ public final class Effect implements Value {
 
 	
 	/**
-	 * Returns a copy of the effect
+	 * Returns the effect itself, since effects are immutable.
 	 * 
-	 * @return the copy
+	 * @return the effect
 	 */
 	@Override
 	public Effect copy() {
-		return new Effect(subeffects.stream().map(e -> e.copy()).collect(Collectors.toList()));
+		return this;
 	}
 
 	/**
@@ -342,11 +424,11 @@ public final class Effect implements Value {
 				Effect subOutput = parseEffect (split);
 				effects.addAll(subOutput.getSubEffects());
 			}
-			return new Effect(effects);
+			return create(effects);
 		}
 		else {
 			if (str.contains("Void")) {
-				return new Effect(new ArrayList<BasicEffect>());
+				return create();
 			}
 			
 			EffectType type = EffectType.SET;
@@ -368,16 +450,26 @@ public final class Effect implements Value {
 				val = str.split("\\+=")[1];
 				type = EffectType.ADD;
 			}
-			Template tvar = new Template(var);
-			Template tval = new Template(val);
+			Template tvar = Template.create(var);
+			Template tval = Template.create(val);
 			if (tvar.isUnderspecified() || tval.isUnderspecified()) {
-				return new Effect(new TemplateEffect(tvar, tval, type));
+				return create(new TemplateEffect(tvar, tval, type));
 			}
 			else {
-				return new Effect(new BasicEffect(var, val, type));
+				return create(new BasicEffect(var, val, type));
 			}
 		}	
 	}
+	
+	
+	/**
+	 * Returns the interned instance for the deserialized effect.
+	 * 
+	 * @return the interned effect
+	 */
+	private Object readResolve() {
+		return intern(this);
+	}
 
 
 }
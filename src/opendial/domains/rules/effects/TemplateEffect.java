@@ -47,6 +47,8 @@ import opendial.domains.rules.conditions.BasicCondition.Relation;
  */
 public final class TemplateEffect extends BasicEffect {
 
+	private static final long serialVersionUID = 1L;
+
 	static Logger log = new Logger("TemplateEffect", Logger.Level.DEBUG);
 	
 	// variable label for the basic effect (as a template)
@@ -197,7 +199,10 @@ public final class TemplateEffect extends BasicEffect {
 	 */
 	@Override
 	public int hashCode() {
-		return labelTemplate.hashCode() ^ type.hashCode() ^ priority ^ valueTemplate.hashCode();
+		if (hash == 0) {
+			hash = labelTemplate.hashCode() ^ type.hashCode() ^ priority ^ valueTemplate.hashCode();
+		}
+		return hash;
 	}
 
 	
@@ -210,7 +215,10 @@ public final class TemplateEffect extends BasicEffect {
 	 */
 	@Override
 	public boolean equals(Object o) {
-		if (o instanceof TemplateEffect) {
+		if (o == this) {
+			return true;
+		}
+		else if (o instanceof TemplateEffect) {
 			if (!((TemplateEffect)o).labelTemplate.equals(labelTemplate)) {
 				return false;
 			}
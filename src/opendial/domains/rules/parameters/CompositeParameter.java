@@ -43,6 +43,8 @@ import opendial.datastructs.Assignment;
  */
 public class CompositeParameter implements Parameter {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("CompositionParameter", Logger.Level.NORMAL);
 
@@ -54,6 +56,12 @@ public class CompositeParameter implements Parameter {
 
 	Operator operator = Operator.ADD;
 
+	// compiled form of the parameter (null if not yet compiled or modified)
+	volatile ParameterProgram program;
+
+	// whether the compilation was attempted (and failed if the program is null)
+	volatile boolean compiled = false;
+
 	// ===================================
 	//  PARAMETER CONSTRUCTION
 	// ===================================
@@ -95,6 +103,8 @@ public class CompositeParameter implements Parameter {
 		else {
 			parameters.add(param);
 		}
+		program = null;
+		compiled = false;
 	}
 
 
@@ -168,13 +178,35 @@ public class CompositeParameter implements Parameter {
 	/**
 	 * Returns the actual parameter value (as a double) given the particular
 	 * value assignment.  The assignment should contain the actual values for 
-	 * the sub-parameters.
+	 * the sub-parameters.  The composition is compiled on its first evaluation
+	 * into a flat program over its sub-parameters (see ParameterProgram).
 	 * 
 	 * @param input the input assignment
 	 * @return the parameter value
 	 */
 	@Override
 	public double getParameterValue(Assignment input) {
+		ParameterProgram curProgram = program;
+		if (curProgram == null && !compiled) {
+			curProgram = ParameterProgram.compile(this);
+			program = curProgram;
+			compiled = true;
+		}
+		if (curProgram != null) {
+			return curProgram.evaluate(input);
+		}
+		return evaluate(input);
+	}
+	
+	
+	/**
+	 * Returns the parameter value by recursively evaluating the sub-parameters.  
+	 * This method is only used for the compositions that cannot be compiled.
+	 * 
+	 * @param input the input assignment
+	 * @return the parameter value
+	 */
+	private double evaluate(Assignment input) {
 		double totalValue = (operator == Operator.ADD)? 0.0 : 1.0;
 		for (Parameter paramVar : parameters) {
 			double paramVal = paramVar.getParameterValue(input);
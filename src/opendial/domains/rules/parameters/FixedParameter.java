@@ -40,6 +40,8 @@ import opendial.domains.rules.parameters.CompositeParameter.Operator;
  */
 public class FixedParameter implements Parameter {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("FixedParameter", Logger.Level.NORMAL);
 	
@@ -23,6 +23,7 @@
 
 package opendial.domains.rules.parameters;
 
+import java.io.Serializable;
 import java.util.Collection;
 
 import opendial.datastructs.Assignment;
@@ -34,7 +35,7 @@ import opendial.datastructs.Assignment;
  * @author  Pierre Lison (plison@ifi.uio.no)
  *
  */
-public interface Parameter {
+public interface Parameter extends Serializable {
 
 	/**
 	 * Returns the actual parameter value given the inputs provided as arguments.
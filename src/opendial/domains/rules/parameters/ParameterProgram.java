@@ -0,0 +1,229 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+                                                                            
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.domains.rules.parameters;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import opendial.datastructs.Assignment;
+import opendial.domains.rules.parameters.CompositeParameter.Operator;
+
+/**
+ * Flat representation of a composite parameter, compiled into a small sequence of
+ * stack instructions over an array of parameter slots.  Each elementary parameter
+ * (i.e. a given dimension of a parameter variable) occupies one slot, which is 
+ * read only once per evaluation, even if the parameter occurs several times in the
+ * composition.  Nested composite parameters also occupy a slot, and are evaluated
+ * through their own program, such that the modifications of a nested composition
+ * are reflected in the values of the enclosing one.  The instructions follow the 
+ * order of the sub-parameters in the composite parameter, and therefore produce 
+ * exactly the same values as the recursive evaluation of the composition.
+ *
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ */
+final class ParameterProgram {
+
+	// instruction codes
+	static final int PUSH_SLOT = 0;
+	static final int PUSH_CONSTANT = 1;
+	static final int ADD = 2;
+	static final int MULTIPLY = 3;
+
+	// the instructions (with the slot or constant index following PUSH_*)
+	final int[] code;
+
+	// the constants used in the instructions
+	final double[] constants;
+
+	// the elementary (or nested composite) parameters for each slot
+	final Parameter[] slots;
+
+	// maximum size of the stack during the evaluation
+	final int stackSize;
+
+
+	/**
+	 * Creates a new program.
+	 * 
+	 * @param code the instructions
+	 * @param constants the constants
+	 * @param slots the parameters for each slot
+	 * @param stackSize the maximum stack size
+	 */
+	private ParameterProgram(int[] code, double[] constants, 
+			Parameter[] slots, int stackSize) {
+		this.code = code;
+		this.constants = constants;
+		this.slots = slots;
+		this.stackSize = stackSize;
+	}
+
+
+	/**
+	 * Compiles the composite parameter into a program.  If the composition contains 
+	 * parameters that cannot be compiled (i.e. parameters that are not fixed, 
+	 * stochastic or composite), returns null.
+	 * 
+	 * @param param the composite parameter
+	 * @return the compiled program, or null if the parameter cannot be compiled
+	 */
+	static ParameterProgram compile(CompositeParameter param) {
+		Compiler compiler = new Compiler();
+		if (!compiler.emitComposite(param, 0)) {
+			return null;
+		}
+		int[] code = new int[compiler.code.size()];
+		for (int i = 0 ; i < code.length ; i++) {
+			code[i] = compiler.code.get(i);
+		}
+		double[] constants = new double[compiler.constants.size()];
+		for (int i = 0 ; i < constants.length ; i++) {
+			constants[i] = compiler.constants.get(i);
+		}
+		Parameter[] slots = compiler.slots.toArray(new Parameter[compiler.slots.size()]);
+		return new ParameterProgram(code, constants, slots, compiler.maxDepth);
+	}
+
+
+	/**
+	 * Returns the parameter value given the input assignment (which should contain
+	 * the values of the parameter variables).
+	 * 
+	 * @param input the input assignment
+	 * @return the parameter value
+	 */
+	double evaluate(Assignment input) {
+		double[] values = new double[slots.length];
+		for (int i = 0 ; i < slots.length ; i++) {
+			values[i] = slots[i].getParameterValue(input);
+		}
+		double[] stack = new double[stackSize];
+		int top = 0;
+		for (int pc = 0 ; pc < code.length ; pc++) {
+			switch (code[pc]) {
+			case PUSH_SLOT: stack[top++] = values[code[++pc]]; break;
+			case PUSH_CONSTANT: stack[top++] = constants[code[++pc]]; break;
+			case ADD: top--; stack[top-1] += stack[top]; break;
+			case MULTIPLY: top--; stack[top-1] *= stack[top]; break;
+			}
+		}
+		return stack[0];
+	}
+
+
+	/**
+	 * Returns the number of slots (distinct elementary parameters and nested 
+	 * compositions) in the program.
+	 * 
+	 * @return the number of slots
+	 */
+	int getNbSlots() {
+		return slots.length;
+	}
+
+
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Builder for the instructions, constants and slots of a program.
+	 */
+	private static final class Compiler {
+
+		final List<Integer> code = new ArrayList<Integer>();
+		final List<Double> constants = new ArrayList<Double>();
+		final List<Parameter> slots = new ArrayList<Parameter>();
+		final Map<String,Integer> slotIndices = new HashMap<String,Integer>();
+		int maxDepth = 0;
+
+		/**
+		 * Emits the instructions pushing the parameter value on the stack.
+		 * 
+		 * @param param the parameter
+		 * @param depth the current stack depth
+		 * @return true if the parameter could be compiled, false otherwise
+		 */
+		boolean emit(Parameter param, int depth) {
+			maxDepth = Math.max(maxDepth, depth + 1);
+			if (param instanceof FixedParameter) {
+				pushConstant(((FixedParameter)param).getParameterValue());
+				return true;
+			}
+			else if (param instanceof StochasticParameter) {
+				StochasticParameter stochParam = (StochasticParameter)param;
+				String key = stochParam.paramId + "[" + stochParam.dimension + "]";
+				if (!slotIndices.containsKey(key)) {
+					slotIndices.put(key, slots.size());
+					slots.add(stochParam);
+				}
+				code.add(PUSH_SLOT);
+				code.add(slotIndices.get(key));
+				return true;
+			}
+			else if (param instanceof CompositeParameter) {
+				code.add(PUSH_SLOT);
+				code.add(slots.size());
+				slots.add(param);
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Emits the instructions pushing the value of the composite parameter on the 
+		 * stack, by combining the values of its sub-parameters.
+		 * 
+		 * @param composite the composite parameter
+		 * @param depth the current stack depth
+		 * @return true if the parameter could be compiled, false otherwise
+		 */
+		boolean emitComposite(CompositeParameter composite, int depth) {
+			maxDepth = Math.max(maxDepth, depth + 1);
+			pushConstant((composite.operator == Operator.ADD)? 0.0 : 1.0);
+			for (Parameter subparam : composite.parameters) {
+				if (!emit(subparam, depth + 1)) {
+					return false;
+				}
+				code.add((composite.operator == Operator.ADD)? ADD : MULTIPLY);
+			}
+			return true;
+		}
+
+		/**
+		 * Emits the instruction pushing the constant on the stack.
+		 * 
+		 * @param constant the constant
+		 */
+		void pushConstant(double constant) {
+			code.add(PUSH_CONSTANT);
+			code.add(constants.size());
+			constants.add(constant);
+		}
+	}
+
+}
@@ -43,6 +43,8 @@ import opendial.domains.rules.parameters.CompositeParameter.Operator;
  */
 public class StochasticParameter implements Parameter {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("StochasticParameter", Logger.Level.NORMAL);
 	
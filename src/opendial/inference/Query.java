@@ -26,14 +26,14 @@ package opendial.inference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import opendial.arch.Logger;
 import opendial.bn.BNetwork;
+import opendial.bn.ReachabilityIndex;
+import opendial.bn.ReachabilityIndex.RequisiteNodes;
 import opendial.bn.nodes.BNode;
-import opendial.bn.nodes.UtilityNode;
 import opendial.datastructs.Assignment;
 
 /**
@@ -86,6 +86,9 @@ public abstract class Query {
 	BNetwork network;
 	Collection<String> queryVars;
 	Assignment evidence;
+	
+	// requisite nodes for the query (null if not yet computed)
+	RequisiteNodes requisiteNodes;
 
 	public Query(BNetwork network, Collection<String> queryVars, 
 			Assignment evidence) {
@@ -134,55 +137,56 @@ public abstract class Query {
 
 	/**
 	 * Returns a list of nodes sorted according to the ordering in 
-	 * BNetwork.getSortedNodes() and pruned from the irrelevant nodes
+	 * BNetwork.getSortedNodes() and restricted to the requisite probability 
+	 * nodes for the query (see getRequisiteNodes()).
 	 * 
 	 * @return the ordered list of relevant nodes
 	 */
 	public List<BNode> getFilteredSortedNodes() {
 		List<BNode> filteredNodes = new ArrayList<BNode>();
-		Set<String> irrelevantNodes = getIrrelevantNodes();
+		Set<String> relevantNodes = getRequisiteNodes().getProbabilityNodes();
 		for (BNode node : network.getSortedNodes()) {
-			if (!irrelevantNodes.contains(node.getId())) {
+			if (relevantNodes.contains(node.getId())) {
 				filteredNodes.add(node);
 			}
 		}
 		return filteredNodes;
 	}
-
+	
+	
+	/**
+	 * Returns the evidence variables whose values are needed to answer the query.
+	 * Some of these variables may not be part of the filtered nodes (if their 
+	 * distribution is irrelevant for the query), in which case their value is 
+	 * simply used to condition the distributions of their children.
+	 * 
+	 * @return the requisite evidence variables
+	 */
+	public Set<String> getRequisiteObservations() {
+		return getRequisiteNodes().getObservationNodes();
+	}
 
 
 	/**
 	 * Assuming a particular query P(queryVars|evidence) or U(queryVars|evidence) on the 
-	 * provided Bayesian network, determines which nodes is relevant for the inference
-	 * and which one can be discarded without affecting the final result.
+	 * provided Bayesian network, determines which nodes are relevant for the inference.
+	 * The requisite nodes are computed with the Bayes-ball algorithm, which discards
+	 * both the barren nodes and the nodes that are d-separated from the query variables
+	 * by the evidence.  The results are cached in the reachability index of the network,
+	 * for each combination of query and evidence variables.
 	 * 
+	 * @return the requisite nodes for the query
 	 */
-	private Set<String> getIrrelevantNodes() {
-
-		Set<String> irrelevantNodesIds = new HashSet<String>();
-
-		whileLoop : while (true) {
-			for (String nodeId : new ArrayList<String>(network.getNodeIds())) {
-				BNode node = network.getNode(nodeId);
-				if (!irrelevantNodesIds.contains(nodeId) && 
-						irrelevantNodesIds.containsAll(node.getOutputNodesIds()) && 
-						!queryVars.contains(nodeId) && 
-						!evidence.containsVar(nodeId) && 
-						!(node instanceof UtilityNode)) {
-					irrelevantNodesIds.add(nodeId);
-					continue whileLoop;
-				}
-				else if (!(this instanceof UtilQuery)
-						&& !irrelevantNodesIds.contains(nodeId) &&
-						node instanceof UtilityNode) {
-					irrelevantNodesIds.add(nodeId);
-					continue whileLoop;
-				}
+	private RequisiteNodes getRequisiteNodes() {
+		if (requisiteNodes == null) {
+			ReachabilityIndex index = network.getReachabilityIndex();
+			if (index == null) {
+				index = new ReachabilityIndex(network.getNodes());
 			}
-			break whileLoop;
+			requisiteNodes = index.getRequisiteNodes(queryVars, 
+					evidence.getVariables(), this instanceof UtilQuery);
 		}
-
-		return irrelevantNodesIds;
+		return requisiteNodes;
 	}
 
 	/**
@@ -125,7 +125,7 @@ public class SwitchingAlgorithm implements InferenceAlgorithm {
 	public InferenceAlgorithm selectBestAlgorithm (Query query) {
 
 		for (BNode node : query.getFilteredSortedNodes()) {
-			if (node.getInputNodeIds().size() > MAX_BRANCHING_FACTOR) {
+			if (node.getInputNodeIdsView().size() > MAX_BRANCHING_FACTOR) {
 				return lw;
 			}
 			if (node instanceof ChanceNode) {
@@ -133,8 +133,10 @@ public class SwitchingAlgorithm implements InferenceAlgorithm {
 					return lw;
 				}
 				int nbValues = ((ChanceNode) node).getNbValues();
-				for (ChanceNode i : node.getInputNodes(ChanceNode.class)) {
-					nbValues *= i.getNbValues();
+				for (BNode i : node.getInputNodesView()) {
+					if (i instanceof ChanceNode) {
+						nbValues *= ((ChanceNode)i).getNbValues();
+					}
 				}
 				if (nbValues > MAX_NBVALUES) {
 					return lw;
@@ -1,7 +1,9 @@
 package opendial.inference.approximate;
 
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -17,6 +19,7 @@ import opendial.bn.nodes.BNode;
 import opendial.bn.nodes.ChanceNode;
 import opendial.bn.nodes.UtilityNode;
 import opendial.bn.values.Value;
+import opendial.datastructs.Assignment;
 import opendial.datastructs.Intervals;
 import opendial.inference.Query;
 
@@ -43,6 +46,9 @@ public class LikelihoodWeighting {
 
 	// sorted nodes in the network
 	List<BNode> sortedNodes;
+	
+	// requisite evidence for the nodes to sample, whose distribution is not sampled
+	Assignment fixedEvidence;
 
 	// termination status
 	boolean isTerminated = false; 
@@ -69,6 +75,9 @@ public class LikelihoodWeighting {
 		this.nbSamples = nbSamples;
 		sortedNodes = query.getFilteredSortedNodes();
 		Collections.reverse(sortedNodes);
+		Set<String> fixedVars = new HashSet<String>(query.getRequisiteObservations());
+		sortedNodes.stream().forEach(n -> fixedVars.remove(n.getId()));
+		fixedEvidence = query.getEvidence().getTrimmed(fixedVars);
 		
 		service.schedule(() -> isTerminated = true, 
 				maxSamplingTime, TimeUnit.MILLISECONDS);
@@ -118,6 +127,7 @@ public class LikelihoodWeighting {
 			return sample;
 		}
 		try {
+			sample.addAssignment(fixedEvidence);
 			for (BNode n : sortedNodes) {
 
 				// if the value is already part of the sample, skip to next one
@@ -126,7 +136,7 @@ public class LikelihoodWeighting {
 				}
 
 				// if the node is an evidence node and has no input nodes
-				else if (n.getInputNodeIds().isEmpty() 
+				else if (n.getInputNodeIdsView().isEmpty() 
 						&& query.getEvidence().containsVar(n.getId())) {
 					sample.addPair(n.getId(), query.getEvidence().getValue(n.getId()));
 				}
@@ -209,7 +219,7 @@ public class LikelihoodWeighting {
 	private void sampleActionNode(ActionNode n, Sample sample) {
 
 		if (!query.getEvidence().containsVar(n.getId()) && 
-				n.getInputNodeIds().isEmpty()) {
+				n.getInputNodeIdsView().isEmpty()) {
 			Value newVal = n.sample(sample);
 			sample.addPair(n.getId(), newVal);
 		}
@@ -37,6 +37,8 @@ import opendial.datastructs.Assignment;
  */
 public class Sample extends Assignment implements Comparable<Sample> {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("WeightedSample", Logger.Level.NORMAL);
 
@@ -0,0 +1,366 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+                                                                            
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.modules.core;
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import opendial.DialogueSystem;
+import opendial.arch.DialException;
+import opendial.arch.Logger;
+import opendial.domains.Domain;
+import opendial.domains.Model;
+import opendial.domains.rules.Rule;
+import opendial.modules.Module;
+import opendial.readers.XMLDomainReader;
+import opendial.state.DialogueState;
+import opendial.utils.XMLUtils;
+
+/**
+ * Module watching the XML files of the dialogue domain, and reloading the models
+ * of the files that have been modified, without restarting the system.  Only the 
+ * modified files (and the files they newly import) are parsed again.  The models
+ * that are left unchanged by the modification are kept as they are, and the 
+ * modified models are swapped in between two updates of the dialogue state (the
+ * current dialogue state being left in place).  
+ * 
+ * <p>The other parts of the modified files (settings, initial state and parameters)
+ * are not reloaded.  The reload time and the identifiers of the models affected 
+ * by the last reload can be retrieved after each reload.
+ * 
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ */
+public class DomainReloader implements Module {
+
+	// logger
+	public static Logger log = new Logger("DomainReloader", Logger.Level.DEBUG);
+
+	// interval (in milliseconds) between two checks of the domain files
+	public static long POLL_INTERVAL = 1000;
+
+	// service used to check the domain files
+	static ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "DomainReloader");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	DialogueSystem system;
+
+	// checksums of the domain files (when last read)
+	Map<String,Long> checksums;
+
+	// scheduled check of the domain files (null if the module is paused)
+	ScheduledFuture<?> task;
+
+	// duration of the last reload (in milliseconds)
+	double lastReloadTime = 0.0;
+
+	// identifiers of the models affected by the last reload
+	Set<String> lastAffectedModels = Collections.emptySet();
+
+
+	/**
+	 * Creates a new domain reloader for the dialogue system
+	 * 
+	 * @param system the dialogue system
+	 */
+	public DomainReloader(DialogueSystem system) {
+		this.system = system;
+		checksums = new HashMap<String,Long>();
+	}
+
+
+	/**
+	 * Records the checksums of the domain files and starts watching the files
+	 * for modifications.
+	 */
+	@Override
+	public synchronized void start() {
+		checksums.clear();
+		for (String file : system.getDomain().getSourceFiles()) {
+			try {
+				checksums.put(file, XMLUtils.getChecksum(file));
+			}
+			catch (DialException e) {
+				log.warning("cannot watch " + file + ": " + e);
+			}
+		}
+		pause(false);
+	}
+
+
+	/**
+	 * Pauses or resumes the watching of the domain files.
+	 * 
+	 * @param toPause whether to pause or resume the module
+	 */
+	@Override
+	public synchronized void pause(boolean toPause) {
+		if (toPause && task != null) {
+			task.cancel(false);
+			task = null;
+		}
+		else if (!toPause && task == null) {
+			task = service.scheduleWithFixedDelay(() -> {
+				try {
+					reload();
+				}
+				catch (DialException e) {
+					log.warning("could not reload domain: " + e);
+				}
+			}, POLL_INTERVAL, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+	}
+
+
+	/**
+	 * Does nothing.
+	 */
+	@Override
+	public void trigger(DialogueState state, Collection<String> updatedVars) {	}
+
+
+	/**
+	 * Returns true if the module is watching the domain files, and false otherwise.
+	 * 
+	 * @return true if the module is running, false otherwise
+	 */
+	@Override
+	public synchronized boolean isRunning() {
+		return task != null;
+	}
+
+
+	/**
+	 * Reloads the models defined in the domain files that have been modified since
+	 * their last reading, and returns the identifiers of the models that have been
+	 * added, modified or removed.  The models of the files that are no longer 
+	 * imported (directly or indirectly) by the top domain file are removed.  The 
+	 * files are parsed before acquiring the lock on the dialogue state, and the 
+	 * models are then swapped in while holding it.
+	 * 
+	 * @return the identifiers of the affected models (empty if no file was modified)
+	 * @throws DialException if a modified file could not be parsed
+	 */
+	public synchronized Set<String> reload() throws DialException {
+		Domain domain = system.getDomain();
+		List<String> sourceFiles = new ArrayList<String>(domain.getSourceFiles());
+		Map<String,Long> modified = new LinkedHashMap<String,Long>();
+		for (String file : sourceFiles) {
+			long checksum = XMLUtils.getChecksum(file);
+			if (!checksums.containsKey(file) || checksums.get(file) != checksum) {
+				modified.put(file, checksum);
+			}
+		}
+		if (modified.isEmpty()) {
+			return Collections.emptySet();
+		}
+		long startTime = System.nanoTime();
+
+		// finding the files that are no longer imported
+		String rootpath = new File(sourceFiles.get(0)).getParent();
+		Set<String> reachable = getReachableFiles(sourceFiles.get(0), rootpath);
+		List<String> unreachable = new ArrayList<String>(sourceFiles);
+		unreachable.removeAll(reachable);
+
+		// parsing the modified files
+		Map<String,List<Model>> newModels = new LinkedHashMap<String,List<Model>>();
+		for (String file : modified.keySet()) {
+			if (!reachable.contains(file)) {
+				continue;
+			}
+			List<String> filesToSkip = new ArrayList<String>(sourceFiles);
+			filesToSkip.remove(file);
+			Domain partialDomain = XMLDomainReader.extractDomainFile(file, rootpath, filesToSkip);
+			for (String source : partialDomain.getSourceFiles()) {
+				newModels.put(source, partialDomain.getModels(source));
+			}
+		}
+
+		// swapping the models
+		Set<String> affected = new LinkedHashSet<String>();
+		synchronized (system.getState()) {
+			for (String source : newModels.keySet()) {
+				List<Model> oldModels = new ArrayList<Model>(domain.getModels(source));
+				List<Model> models = new ArrayList<Model>();
+				for (Model newModel : newModels.get(source)) {
+					Model oldModel = removeEquivalent(oldModels, newModel);
+					if (oldModel != null) {
+						models.add(oldModel);
+					}
+					else {
+						models.add(newModel);
+						affected.add(newModel.getId());
+					}
+				}
+				oldModels.stream().forEach(m -> affected.add(m.getId()));
+				domain.replaceModels(source, models);
+			}
+			for (String source : unreachable) {
+				domain.getModels(source).stream().forEach(m -> affected.add(m.getId()));
+				domain.removeSourceFile(source);
+				checksums.remove(source);
+			}
+		}
+
+		for (String source : newModels.keySet()) {
+			checksums.put(source, (modified.containsKey(source))? 
+					modified.get(source) : XMLUtils.getChecksum(source));
+		}
+		lastReloadTime = (System.nanoTime() - startTime) / 1000000.0;
+		lastAffectedModels = Collections.unmodifiableSet(affected);
+		log.info("reloaded " + modified.keySet() + " in " + lastReloadTime 
+				+ " ms, affected models: " + affected);
+		return lastAffectedModels;
+	}
+
+
+	/**
+	 * Returns the duration of the last reload, in milliseconds.
+	 * 
+	 * @return the duration of the last reload
+	 */
+	public synchronized double getLastReloadTime() {
+		return lastReloadTime;
+	}
+
+
+	/**
+	 * Returns the identifiers of the models that were added, modified or removed
+	 * during the last reload.
+	 * 
+	 * @return the identifiers of the affected models
+	 */
+	public synchronized Set<String> getLastAffectedModels() {
+		return lastAffectedModels;
+	}
+
+
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Returns the files that are reachable from the top domain file through
+	 * (possibly nested) imports, including the top file itself.
+	 * 
+	 * @param topFile the top domain file
+	 * @param rootpath the root path of the domain (for the imports)
+	 * @return the reachable files
+	 * @throws DialException if a file could not be parsed
+	 */
+	private static Set<String> getReachableFiles(String topFile, String rootpath) 
+			throws DialException {
+		Set<String> reachable = new LinkedHashSet<String>();
+		List<String> toProcess = new ArrayList<String>(Arrays.asList(topFile));
+		while (!toProcess.isEmpty()) {
+			String file = toProcess.remove(0);
+			if (reachable.add(file)) {
+				toProcess.addAll(XMLDomainReader.getImportedFiles(file, rootpath));
+			}
+		}
+		return reachable;
+	}
+
+
+	/**
+	 * Removes from the list of models the first model that is equivalent to the 
+	 * new model (see below), and returns it.  If no such model exists, returns null.
+	 * 
+	 * @param models the models
+	 * @param newModel the new model
+	 * @return the equivalent model that was removed, or null if none was found
+	 */
+	private static Model removeEquivalent(List<Model> models, Model newModel) {
+		Iterator<Model> it = models.iterator();
+		while (it.hasNext()) {
+			Model model = it.next();
+			if (isEquivalent(model, newModel)) {
+				it.remove();
+				return model;
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Returns true if the two models have the same triggers and rules (with the same
+	 * cases, including their effect priorities and parameters), and the same
+	 * identifiers (unless these were automatically generated), and false otherwise.
+	 * 
+	 * @param model1 the first model
+	 * @param model2 the second model
+	 * @return true if the models are equivalent, false otherwise
+	 */
+	private static boolean isEquivalent(Model model1, Model model2) {
+		if (!isSameId(model1.getId(), model2.getId(), "model") 
+				|| !model1.getTriggers().equals(model2.getTriggers())
+				|| model1.getRules().size() != model2.getRules().size()) {
+			return false;
+		}
+		Iterator<Rule> it = model2.getRules().iterator();
+		for (Rule rule1 : model1.getRules()) {
+			Rule rule2 = it.next();
+			if (!isSameId(rule1.getRuleId(), rule2.getRuleId(), "rule")
+					|| rule1.getRuleType() != rule2.getRuleType()
+					|| !rule1.getCases().equals(rule2.getCases())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Returns true if the identifiers are identical or are both automatically 
+	 * generated (i.e. composed of the prefix followed by a number).
+	 * 
+	 * @param id1 the first identifier
+	 * @param id2 the second identifier
+	 * @param prefix the prefix of the generated identifiers
+	 * @return true if the identifiers can be considered the same
+	 */
+	private static boolean isSameId(String id1, String id2, String prefix) {
+		return id1.equals(id2) || (id1.matches(prefix + "\\d+") && id2.matches(prefix + "\\d+"));
+	}
+
+}
@@ -24,10 +24,17 @@
 package opendial.modules.core;
 
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -41,6 +48,7 @@ import opendial.bn.distribs.UtilityTable;
 import opendial.bn.nodes.ActionNode;
 import opendial.bn.nodes.BNode;
 import opendial.datastructs.Assignment;
+import opendial.domains.Domain;
 import opendial.domains.Model;
 import opendial.modules.Module;
 import opendial.state.DialogueState;
@@ -75,16 +83,26 @@ public class ForwardPlanner implements Module {
 	/** Minimum probability for the generated observations */
 	public static double MIN_OBSERVATION_PROB = 0.1;
 	
+	/** Whether to reuse the expected values of the states already explored */
+	public static boolean USE_TRANSPOSITION_TABLE = true;
+	
 	DialogueSystem system;
 	
 	/** Current planning process (if active) */
 	PlannerProcess currentProcess;
 
-	boolean paused = false;
+	/** Expected values of the explored states (shared across planning processes) */
+	volatile TranspositionTable table;
+
+	volatile boolean paused = false;
 
 	//scheduled thread pool to terminate planning once the time limit is reached
 	static ScheduledExecutorService service = Executors.newScheduledThreadPool(2);
 
+	// bounded thread pools to evaluate the candidate actions in parallel (for each 
+	// number of threads, see Settings.parallelActions)
+	static Map<Integer,ExecutorService> evaluators = new ConcurrentHashMap<Integer,ExecutorService>();
+
 	
 	/**
 	 * Constructs a forward planner for the dialogue system.
@@ -122,6 +140,31 @@ public class ForwardPlanner implements Module {
 		return !paused;
 	}
 
+	/**
+	 * Returns the number of expected values cached in the transposition table
+	 * (0 if the table is disabled or not yet created).
+	 * 
+	 * @return the number of cached values
+	 */
+	public int getNbCachedValues() {
+		TranspositionTable curTable = table;
+		return (curTable != null)? curTable.size() : 0;
+	}
+
+
+	/**
+	 * Returns the number of expected values that were retrieved from the 
+	 * transposition table instead of being computed (0 if the table is disabled 
+	 * or not yet created).
+	 * 
+	 * @return the number of reused values
+	 */
+	public int getNbReusedValues() {
+		TranspositionTable curTable = table;
+		return (curTable != null)? curTable.getNbHits() : 0;
+	}
+
+
 	/**
 	 * Triggers the planning process.
 	 */
@@ -149,7 +192,13 @@ public class ForwardPlanner implements Module {
 
 		DialogueState initState;
 
-		boolean isTerminated = false;
+		volatile boolean isTerminated = false;
+
+		// estimated Q-values of the actions (null if the planning failed)
+		UtilityTable evalActions;
+
+		// transposition table used by the process (null if disabled)
+		TranspositionTable processTable;
 
 		/**
 		 * Creates the planning process.  Timeout is set to twice the maximum sampling time. 
@@ -168,9 +217,18 @@ public class ForwardPlanner implements Module {
 			timeout = (initState.hasChanceNode(settings.userSpeech))? timeout/5 : timeout;
 			service.schedule(() -> isTerminated=true, timeout, TimeUnit.MILLISECONDS);
 
+			if (USE_TRANSPOSITION_TABLE) {
+				if (table == null || !table.isValidFor(system.getDomain(), 
+						settings.discountFactor, initState)) {
+					table = new TranspositionTable(system.getDomain(), 
+							settings.discountFactor, initState);
+				}
+				processTable = table;
+			}
+
 			try {
 				// step 1: extract the Q-values
-				UtilityTable evalActions =getQValues(initState, settings.horizon);
+				evalActions = getQValues(initState, settings.horizon, true, null);
 			//	log.debug(" ACTION: " + evalActions);
 
 				// step 2: find the action with highest utility
@@ -199,13 +257,24 @@ public class ForwardPlanner implements Module {
 
 		/**
 		 * Returns the Q-values for the dialogue state, assuming a particular horizon.
+		 * If parallel is set to true, the candidate actions are evaluated concurrently,
+		 * each on its own copy of the dialogue state.  The Q-values are then collected
+		 * in the same order as in the serial evaluation.
+		 * 
+		 * <p>If no scope on the transposition table is provided (i.e. at the root of
+		 * the lookahead tree), each action is evaluated in its own scope, and the 
+		 * scopes are committed in the order of the actions once all evaluations are
+		 * completed.
 		 * 
 		 * @param state the dialogue state
 		 * @param horizon the planning horizon
+		 * @param parallel whether to evaluate the actions in parallel
+		 * @param scope the scope on the transposition table (null at the root)
 		 * @return the estimated utility table for the Q-values
 		 * @throws DialException
 		 */
-		private UtilityTable getQValues (DialogueState state, int horizon) throws DialException {
+		private UtilityTable getQValues (DialogueState state, int horizon, boolean parallel,
+				TranspositionTable.Scope scope) throws DialException {
 			Set<String> actionNodes = state.getActionNodeIds();
 
 			if (actionNodes.isEmpty()) {
@@ -216,46 +285,111 @@ public class ForwardPlanner implements Module {
 				return rewards;
 			}
 
-			UtilityTable qValues = new UtilityTable();
-			double discount = system.getSettings().discountFactor;
+			List<Assignment> actions = new ArrayList<Assignment>(rewards.getRows());
+			int nbThreads = system.getSettings().parallelActions;
+			parallel = parallel && nbThreads > 1 && actions.size() > 1;
 			
-			for (Assignment action : rewards.getRows()) {
-				double reward = rewards.getUtil(action);
-				qValues.setUtil(action, reward);
-
-				if (horizon > 1 && !isTerminated && !paused && hasTransition(action)) {
-
+			List<TranspositionTable.Scope> scopes = new ArrayList<TranspositionTable.Scope>();
+			for (int i = 0 ; i < actions.size() ; i++) {
+				scopes.add((scope == null && processTable != null)? processTable.createScope() : scope);
+			}
+			
+			// the state copies are created in the current thread, since the 
+			// copy operation is not safe against concurrent reads
+			List<Future<Double>> futures = new ArrayList<Future<Double>>(actions.size());
+			for (int i = 0 ; i < actions.size() ; i++) {
+				Assignment action = actions.get(i);
+				TranspositionTable.Scope actionScope = scopes.get(i);
+				if (parallel && isExpandable(action, horizon)) {
 					DialogueState copy = state.copy();
-					copy.addToState(action.removePrimes());
-					updateState(copy);
-					
-					if (!action.isDefault()) {
-						double expected = discount * getExpectedValue(copy, horizon - 1);
-						qValues.setUtil(action, qValues.getUtil(action) + expected);
-					}	
+					futures.add(getEvaluators(nbThreads).submit(
+							() -> getFutureValue(copy, action, horizon, actionScope)));
+				}
+				else {
+					futures.add(null);
+				}
+			}
+			
+			UtilityTable qValues = new UtilityTable();
+			for (int i = 0 ; i < actions.size() ; i++) {
+				Assignment action = actions.get(i);
+				double qValue = rewards.getUtil(action);
+				if (futures.get(i) != null) {
+					qValue += getResult(futures.get(i));
+				}
+				else if (!parallel && isExpandable(action, horizon)) {
+					qValue += getFutureValue(state.copy(), action, horizon, scopes.get(i));
+				}
+				qValues.setUtil(action, qValue);
+			}
+			if (scope == null && processTable != null) {
+				for (TranspositionTable.Scope actionScope : scopes) {
+					actionScope.commit();
 				}
 			}
 			return qValues;
 		}
 
-
+		
 		/**
-		 * Adds a particular content to the dialogue state
-		 * @param state the dialogue state
-		 * @param newContent the content to add
-		 * @throws DialException if the update operation could not be performed
+		 * Returns true if the consequences of the action must be explored further, 
+		 * that is, if the horizon is not yet reached, the planning is neither terminated 
+		 * nor paused, and a transition model is defined for the action.
+		 * 
+		 * @param action the assignment of action values
+		 * @param horizon the planning horizon
+		 * @return true if the action must be explored, false otherwise
 		 */
-		private void updateState(DialogueState state) throws DialException {
-			
-			while (!state.getNewVariables().isEmpty()) {
-				Set<String> toProcess = state.getNewVariables();
-				state.reduce();	
-				for (Model model : system.getDomain().getModels()) {
-					model.trigger(state, toProcess);
+		private boolean isExpandable(Assignment action, int horizon) {
+			return horizon > 1 && !isTerminated && !paused && hasTransition(action);
+		}
+		
+		
+		/**
+		 * Returns the discounted expected value after the execution of the action.
+		 * The dialogue state must be a private copy, since it is updated with the
+		 * action and its consequences.
+		 * 
+		 * @param copy the (copied) dialogue state
+		 * @param action the assignment of action values
+		 * @param horizon the planning horizon
+		 * @param scope the scope on the transposition table (null if disabled)
+		 * @return the discounted expected value (0.0 for the default action)
+		 * @throws DialException if the expected value could not be estimated
+		 */
+		private double getFutureValue(DialogueState copy, Assignment action, int horizon,
+				TranspositionTable.Scope scope) throws DialException {
+			if (action.isDefault()) {
+				return 0.0;
+			}
+			copy.addToState(action.removePrimes());
+			updateState(copy, system.getDomain());
+			return system.getSettings().discountFactor * getExpectedValue(copy, horizon - 1, scope);
+		}
+		
+		
+		/**
+		 * Waits for the completion of the action evaluation and returns its result.
+		 * 
+		 * @param future the action evaluation
+		 * @return the discounted expected value
+		 * @throws DialException if the evaluation has failed or was interrupted
+		 */
+		private double getResult(Future<Double> future) throws DialException {
+			try {
+				return future.get();
+			}
+			catch (ExecutionException e) {
+				if (e.getCause() instanceof DialException) {
+					throw (DialException)e.getCause();
 				}
+				throw new DialException("could not evaluate action: " + e.getCause());
+			}
+			catch (InterruptedException e) {
+				throw new DialException("action evaluation interrupted: " + e);
 			}
 		}
-
+		
 
 		/**
 		 * Returns true if the dialogue domain specifies a transition model for 
@@ -265,26 +399,34 @@ public class ForwardPlanner implements Module {
 		 * @return true if a transition is defined, false otherwise.
 		 */
 		private boolean hasTransition(Assignment action) {
-			for (Model m : system.getDomain().getModels()) {
-				if (m.isTriggered(action.removePrimes().getVariables())) {
-					return true;
-				}
-			}
-			return false;
+			return !system.getDomain().getTriggeredModels(
+					action.removePrimes().getVariables()).isEmpty();
 		}
 
 
 		/**
 		 * Estimates the expected value (V) of the dialogue state in the current planning
-		 * horizon.
+		 * horizon.  The value is retrieved from the transposition table if a state with
+		 * the same fingerprint has already been explored.
 		 * 
 		 * @param state the dialogue state
 		 * @param horizon the planning horizon
+		 * @param scope the scope on the transposition table (null if disabled)
 		 * @return the expected value.
 		 * @throws DialException
 		 */
-		private double getExpectedValue(DialogueState state, int horizon) throws DialException {
-
+		private double getExpectedValue(DialogueState state, int horizon, 
+				TranspositionTable.Scope scope) throws DialException {
+
+			List<Object> fingerprint = null;
+			if (scope != null) {
+				fingerprint = processTable.getFingerprint(state, horizon);
+				Double cached = (fingerprint != null)? scope.get(fingerprint) : null;
+				if (cached != null) {
+					return cached;
+				}
+			}
+			
 			MultivariateTable observations = getObservations(state);
 			MultivariateTable nbestObs = observations.getNBest(NB_BEST_OBSERVATIONS);
 			double expectedValue = 0.0;
@@ -293,9 +435,9 @@ public class ForwardPlanner implements Module {
 				if (obsProb > MIN_OBSERVATION_PROB) {
 					DialogueState copy = state.copy();
 					copy.addToState(obs);
-					updateState(copy);
+					updateState(copy, system.getDomain());
 
-					UtilityTable qValues = getQValues(copy, horizon);
+					UtilityTable qValues = getQValues(copy, horizon, false, scope);
 					if (!qValues.getRows().isEmpty()) {
 						Assignment bestAction = qValues.getBest().getKey();
 						double afterObs = qValues.getUtil(bestAction);
@@ -304,49 +446,91 @@ public class ForwardPlanner implements Module {
 				}
 			}	
 
+			// values estimated after the timeout might be incomplete
+			if (fingerprint != null && !isTerminated && !paused) {
+				scope.put(fingerprint, expectedValue);
+			}
 			return expectedValue;
 		}
 
+	}
 
 
-		/**
-		 * Returns the possible observations that are expected to be perceived
-		 * from the dialogue state
-		 * @param state the dialogue state from which to extract observations
-		 * @return the inferred observations
-		 * @throws DialException
-		 */
-		private MultivariateTable getObservations (DialogueState state) throws DialException {
-			Set<String> predictionNodes = new HashSet<String>();
-			for (String nodeId: state.getChanceNodeIds()) {
-				if (nodeId.contains("^p")) {
-					predictionNodes.add(nodeId);
-				}
+	// ===================================
+	//  UTILITY METHODS
+	// ===================================
+
+
+	/**
+	 * Updates the dialogue state by applying the domain models triggered by its 
+	 * new variables, until no new variable remains.
+	 * 
+	 * @param state the dialogue state
+	 * @param domain the dialogue domain
+	 * @throws DialException if the update operation could not be performed
+	 */
+	static void updateState(DialogueState state, Domain domain) throws DialException {
+		
+		while (state.hasNewVariables()) {
+			Set<String> toProcess = state.getNewVariables();
+			state.reduce();	
+			for (Model model : domain.getTriggeredModels(toProcess)) {
+				model.applyRules(state);
 			}
-			// intermediary observations
-			for (String nodeId: new HashSet<String>(predictionNodes)) {
-				if (state.getChanceNode(nodeId).hasDescendant(predictionNodes)) {
-					predictionNodes.remove(nodeId);
-				}
+		}
+	}
+
+
+	/**
+	 * Returns the possible observations that are expected to be perceived
+	 * from the dialogue state
+	 * @param state the dialogue state from which to extract observations
+	 * @return the inferred observations
+	 * @throws DialException
+	 */
+	static MultivariateTable getObservations (DialogueState state) throws DialException {
+		Set<String> predictionNodes = new HashSet<String>();
+		for (String nodeId: state.getChanceNodeIds()) {
+			if (nodeId.contains("^p")) {
+				predictionNodes.add(nodeId);
+			}
+		}
+		// intermediary observations
+		for (String nodeId: new HashSet<String>(predictionNodes)) {
+			if (state.getChanceNode(nodeId).hasDescendant(predictionNodes)) {
+				predictionNodes.remove(nodeId);
 			}
+		}
 
-			MultivariateTable modified = new MultivariateTable();
-			if (!predictionNodes.isEmpty()) {
-				MultivariateDistribution observations = state.queryProb(predictionNodes);
+		MultivariateTable modified = new MultivariateTable();
+		if (!predictionNodes.isEmpty()) {
+			MultivariateDistribution observations = state.queryProb(predictionNodes);
 
-				for (Assignment a : observations.getValues()) {
-					Assignment newA = new Assignment();
-					for (String var : a.getVariables()) {
-						newA.addPair(var.replace("^p", ""), a.getValue(var));
-					}
-					modified.addRow(newA, observations.getProb(a));
+			for (Assignment a : observations.getValues()) {
+				Assignment newA = new Assignment();
+				for (String var : a.getVariables()) {
+					newA.addPair(var.replace("^p", ""), a.getValue(var));
 				}
+				modified.addRow(newA, observations.getProb(a));
 			}
-			return modified;
 		}
-
+		return modified;
 	}
 
 
-}
+	/**
+	 * Returns the thread pool with the given number of threads for the evaluation
+	 * of the candidate actions (creating it if necessary).
+	 * 
+	 * @param nbThreads the number of threads
+	 * @return the corresponding thread pool
+	 */
+	static ExecutorService getEvaluators(int nbThreads) {
+		return evaluators.computeIfAbsent(nbThreads, n -> Executors.newFixedThreadPool(n, r -> {
+			Thread thread = new Thread(r, "ForwardPlanner");
+			thread.setDaemon(true);
+			return thread;
+		}));
+	}
 
+}
@@ -0,0 +1,454 @@
+// =================================================================
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person
+// obtaining a copy of this software and associated documentation
+// files (the "Software"), to deal in the Software without restriction,
+// including without limitation the rights to use, copy, modify, merge,
+// publish, distribute, sublicense, and/or sell copies of the Software,
+// and to permit persons to whom the Software is furnished to do so,
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================
+
+package opendial.modules.core;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import opendial.DialogueSystem;
+import opendial.arch.DialException;
+import opendial.arch.Logger;
+import opendial.arch.Settings;
+import opendial.bn.distribs.MultivariateTable;
+import opendial.bn.distribs.UtilityTable;
+import opendial.bn.nodes.ActionNode;
+import opendial.datastructs.Assignment;
+import opendial.datastructs.Intervals;
+import opendial.modules.Module;
+import opendial.state.DialogueState;
+
+
+/**
+ * Anytime planner based on Monte-Carlo tree search, which can be used as an
+ * alternative to the forward planner when a deeper lookahead is required.  Instead
+ * of exhaustively expanding every action and its best observations up to the planning
+ * horizon, the planner iteratively grows a search tree over the dialogue states,
+ * following the UCT selection rule for the actions (with an exploration term scaled
+ * to the range of the returns observed in each state) and a progressive widening over
+ * the observations (that is, the number of observations explored after an action
+ * grows with the number of visits of the action). The value of each new state is
+ * estimated by a rollout in which the observations are sampled from the predicted
+ * distribution and the actions greedily selected on their immediate utility.
+ *
+ * <p>The search is stopped when the time budget (derived from the maximum sampling
+ * time, as for the forward planner) or the maximum number of iterations is reached.
+ * Since the actions of the root state are initialised with their immediate utility,
+ * the planner always returns the best action found so far.
+ *
+ * <p>To use this planner in place of the forward planner, the ForwardPlanner module
+ * must be detached from the dialogue system and the MCTSPlanner module attached to it.
+ *
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ */
+public class MCTSPlanner implements Module {
+
+	// logger
+	public static Logger log = new Logger("MCTSPlanner", Logger.Level.DEBUG);
+
+	/** Maximum depth of the search tree */
+	public static int MAX_DEPTH = 8;
+
+	/** Maximum number of search iterations for each planning step */
+	public static int MAX_ITERATIONS = 1000;
+
+	/** Exploration constant of the UCT rule (relative to the range of the returns) */
+	public static double EXPLORATION_CONSTANT = 1.0;
+
+	/** Progressive widening: an action visited n times can be followed by at most
+	 * WIDENING_FACTOR * n^WIDENING_EXPONENT distinct observations */
+	public static double WIDENING_FACTOR = 1.0;
+	public static double WIDENING_EXPONENT = 0.5;
+
+	/** Maximum number of steps in the rollouts */
+	public static int ROLLOUT_DEPTH = 2;
+
+	DialogueSystem system;
+
+	volatile boolean paused = false;
+
+	// number of iterations performed in the last planning step
+	int lastIterations = 0;
+
+
+	/**
+	 * Constructs a Monte-Carlo tree search planner for the dialogue system.
+	 *
+	 * @param system the dialogue system associated with the planner.
+	 */
+	public MCTSPlanner(DialogueSystem system) {
+		this.system = system;
+	}
+
+	/**
+	 * Pauses the planner
+	 */
+	@Override
+	public void pause(boolean shouldBePaused) {
+		paused = shouldBePaused;
+	}
+
+	/**
+	 * Does nothing.
+	 */
+	@Override
+	public void start()  {	}
+
+
+	/**
+	 * Returns true if the planner is not paused.
+	 */
+	@Override
+	public boolean isRunning() {
+		return !paused;
+	}
+
+
+	/**
+	 * Triggers the planning process, and adds the selected action to the
+	 * dialogue state.
+	 */
+	@Override
+	public void trigger(DialogueState state, Collection<String> updatedVars) {
+
+		Settings settings = system.getSettings();
+		if (state.hasChanceNode(settings.userSpeech) && state.hasActionNode(settings.systemOutput+"'")) {
+			ActionNode sysOutNode = state.getActionNode(settings.systemOutput+"'");
+			state.removeNodes(sysOutNode.getOutputNodesIds());
+			state.removeNode(sysOutNode.getId());
+		}
+
+		if (!paused && !state.getActionNodeIds().isEmpty()) {
+			try {
+				UtilityTable evalActions = getQValues(state);
+				Assignment bestAction =  evalActions.getBest().getKey();
+				if (evalActions.getUtil(bestAction) < 0.001) {
+					bestAction = Assignment.createDefault(bestAction.getVariables());
+				}
+				state.removeNodes(state.getUtilityNodeIds());
+				state.removeNodes(new HashSet<String>(state.getActionNodeIds()));
+				state.addToState(bestAction.removePrimes());
+			}
+			catch (DialException e) {
+				log.warning("could not perform planning, aborting action selection: " + e);
+			}
+		}
+	}
+
+
+	/**
+	 * Searches for the best action in the dialogue state until the time budget
+	 * or the maximum number of iterations is reached, and returns the estimated
+	 * Q-values of the actions. Actions that were never explored are associated
+	 * with their immediate utility.
+	 *
+	 * @param state the dialogue state (which is not modified)
+	 * @return the estimated Q-values
+	 * @throws DialException if the search could not be performed
+	 */
+	public UtilityTable getQValues(DialogueState state) throws DialException {
+
+		// setting the time budget (as for the forward planner)
+		long timeout = Settings.maxSamplingTime*2;
+		timeout = (state.hasChanceNode(system.getSettings().userSpeech))? timeout/5 : timeout;
+		long deadline = System.currentTimeMillis() + timeout;
+
+		DecisionNode root = new DecisionNode(state);
+		int iterations = 0;
+		while (!root.edges.isEmpty() && iterations < MAX_ITERATIONS
+				&& System.currentTimeMillis() < deadline && !paused) {
+			search(root, MAX_DEPTH);
+			iterations++;
+		}
+		lastIterations = iterations;
+
+		UtilityTable qValues = new UtilityTable();
+		for (ActionEdge edge : root.edges) {
+			qValues.setUtil(edge.action, (edge.visits > 0)? edge.value : edge.reward);
+		}
+		return qValues;
+	}
+
+
+
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Runs one iteration of the search from the decision node: selects an action,
+	 * follows (or expands) one of its observations, and propagates the return back
+	 * to the action statistics.
+	 *
+	 * @param node the decision node
+	 * @param depth the remaining depth
+	 * @return the return of the iteration
+	 * @throws DialException if the search could not be performed
+	 */
+	private double search(DecisionNode node, int depth) throws DialException {
+		if (node.edges.isEmpty()) {
+			return 0.0;
+		}
+		node.visits++;
+		ActionEdge edge = select(node);
+		double value = edge.reward;
+		if (depth > 1 && edge.hasTransition) {
+			DecisionNode child = getChild(edge);
+			double discount = system.getSettings().discountFactor;
+			if (child.visits == 0) {
+				child.visits++;
+				value += discount * rollout(child.state, child.rewards,
+						Math.min(ROLLOUT_DEPTH, depth - 1));
+			}
+			else {
+				value += discount * search(child, depth - 1);
+			}
+		}
+		edge.visits++;
+		edge.value += (value - edge.value) / edge.visits;
+		node.minReturn = Math.min(node.minReturn, value);
+		node.maxReturn = Math.max(node.maxReturn, value);
+		return value;
+	}
+
+
+	/**
+	 * Selects the action to explore in the decision node. Actions that were never
+	 * explored are selected first (in decreasing order of immediate utility), and
+	 * the UCT rule is applied otherwise.
+	 *
+	 * @param node the decision node
+	 * @return the selected action
+	 */
+	private ActionEdge select(DecisionNode node) {
+		ActionEdge selected = null;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		double exploration = EXPLORATION_CONSTANT * Math.max(1.0, node.maxReturn - node.minReturn);
+		for (ActionEdge edge : node.edges) {
+			if (edge.visits == 0) {
+				return edge;
+			}
+			double score = edge.value + exploration
+					* Math.sqrt(Math.log(node.visits) / edge.visits);
+			if (score > bestScore) {
+				selected = edge;
+				bestScore = score;
+			}
+		}
+		return selected;
+	}
+
+
+	/**
+	 * Returns the decision node reached after the action and one of its observations.
+	 * A new observation is sampled from the predicted distribution as long as the
+	 * progressive widening allows it.  Otherwise, one of the existing observations is
+	 * selected according to its probability.
+	 *
+	 * @param edge the action
+	 * @return the resulting decision node
+	 * @throws DialException if the dialogue state could not be updated
+	 */
+	private DecisionNode getChild(ActionEdge edge) throws DialException {
+		if (edge.nextState == null) {
+			edge.nextState = edge.parent.state.copy();
+			edge.nextState.addToState(edge.action.removePrimes());
+			ForwardPlanner.updateState(edge.nextState, system.getDomain());
+			edge.observations = ForwardPlanner.getObservations(edge.nextState);
+		}
+
+		Assignment obs = new Assignment();
+		if (!edge.observations.isEmpty()) {
+			int maxChildren = (int) Math.ceil(WIDENING_FACTOR
+					* Math.pow(edge.visits + 1, WIDENING_EXPONENT));
+			if (edge.children.size() < maxChildren) {
+				obs = edge.observations.sample();
+			}
+			else {
+				obs = new Intervals<Assignment>(edge.children.keySet(),
+						o -> edge.observations.getProb(o)).sample();
+			}
+		}
+
+		DecisionNode child = edge.children.get(obs);
+		if (child == null) {
+			DialogueState copy = edge.nextState;
+			if (!obs.isEmpty()) {
+				copy = edge.nextState.copy();
+				copy.addToState(obs);
+				ForwardPlanner.updateState(copy, system.getDomain());
+			}
+			child = new DecisionNode(copy);
+			edge.children.put(obs, child);
+		}
+		return child;
+	}
+
+
+	/**
+	 * Estimates the value of the dialogue state by a rollout in which the actions
+	 * are greedily selected on their immediate utility, and the observations are
+	 * sampled from their predicted distribution.
+	 *
+	 * @param state the dialogue state (which is not modified)
+	 * @param rewards the immediate utilities of the actions in the state
+	 * @param depth the remaining rollout depth
+	 * @return the estimated value
+	 * @throws DialException if the dialogue state could not be updated
+	 */
+	private double rollout(DialogueState state, UtilityTable rewards, int depth)
+			throws DialException {
+		if (depth == 0 || rewards.getRows().isEmpty()) {
+			return 0.0;
+		}
+		Assignment action = rewards.getBest().getKey();
+		double value = rewards.getUtil(action);
+		if (depth > 1 && hasTransition(action)) {
+			DialogueState copy = state.copy();
+			copy.addToState(action.removePrimes());
+			ForwardPlanner.updateState(copy, system.getDomain());
+			MultivariateTable observations = ForwardPlanner.getObservations(copy);
+			if (!observations.isEmpty()) {
+				copy.addToState(observations.sample());
+				ForwardPlanner.updateState(copy, system.getDomain());
+			}
+			value += system.getSettings().discountFactor
+					* rollout(copy, getRewards(copy), depth - 1);
+		}
+		return value;
+	}
+
+
+	/**
+	 * Returns the immediate utilities of the actions in the dialogue state.
+	 *
+	 * @param state the dialogue state
+	 * @return the immediate utilities
+	 */
+	private UtilityTable getRewards(DialogueState state) {
+		Set<String> actionNodes = state.getActionNodeIds();
+		return (actionNodes.isEmpty())? new UtilityTable() : state.queryUtil(actionNodes);
+	}
+
+
+	/**
+	 * Returns true if the action is not the default action and the dialogue domain
+	 * specifies a transition model for it.
+	 *
+	 * @param action the assignment of action values
+	 * @return true if a transition is defined, false otherwise.
+	 */
+	private boolean hasTransition(Assignment action) {
+		return !action.isDefault() && !system.getDomain().getTriggeredModels(
+				action.removePrimes().getVariables()).isEmpty();
+	}
+
+
+	/**
+	 * Decision node of the search tree, containing a dialogue state and the
+	 * statistics of its actions.
+	 */
+	final class DecisionNode {
+
+		final DialogueState state;
+
+		// immediate utilities of the actions
+		final UtilityTable rewards;
+
+		// the actions, in decreasing order of immediate utility
+		final List<ActionEdge> edges;
+
+		// lowest and highest returns observed in the node
+		double minReturn = 0.0;
+		double maxReturn = 0.0;
+
+		int visits = 0;
+
+		/**
+		 * Creates a decision node for the dialogue state
+		 *
+		 * @param state the dialogue state
+		 */
+		DecisionNode(DialogueState state) {
+			this.state = state;
+			rewards = getRewards(state);
+			edges = new ArrayList<ActionEdge>();
+			for (Assignment action : rewards.getRows()) {
+				ActionEdge edge = new ActionEdge(this, action, rewards.getUtil(action));
+				edges.add(edge);
+				minReturn = Math.min(minReturn, edge.reward);
+				maxReturn = Math.max(maxReturn, edge.reward);
+			}
+			edges.sort((e1, e2) -> Double.compare(e2.reward, e1.reward));
+		}
+	}
+
+
+	/**
+	 * Action in a decision node, with its estimated value and the decision nodes
+	 * reached after its possible observations.
+	 */
+	final class ActionEdge {
+
+		final DecisionNode parent;
+		final Assignment action;
+		final double reward;
+		final boolean hasTransition;
+
+		int visits = 0;
+
+		// mean return of the action
+		double value;
+
+		// dialogue state after the action, and predicted observations (lazily computed)
+		DialogueState nextState;
+		MultivariateTable observations;
+
+		// decision nodes for the explored observations
+		final Map<Assignment,DecisionNode> children;
+
+		/**
+		 * Creates an action edge in the decision node
+		 *
+		 * @param parent the decision node
+		 * @param action the action
+		 * @param reward the immediate utility of the action
+		 */
+		ActionEdge(DecisionNode parent, Assignment action, double reward) {
+			this.parent = parent;
+			this.action = action;
+			this.reward = reward;
+			this.value = reward;
+			hasTransition = hasTransition(action);
+			children = new LinkedHashMap<Assignment,DecisionNode>();
+		}
+	}
+
+}
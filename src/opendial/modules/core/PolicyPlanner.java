@@ -0,0 +1,444 @@
+// =================================================================
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person
+// obtaining a copy of this software and associated documentation
+// files (the "Software"), to deal in the Software without restriction,
+// including without limitation the rights to use, copy, modify, merge,
+// publish, distribute, sublicense, and/or sell copies of the Software,
+// and to permit persons to whom the Software is furnished to do so,
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================
+
+package opendial.modules.core;
+
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import opendial.DialogueSystem;
+import opendial.arch.DialException;
+import opendial.arch.Logger;
+import opendial.arch.Settings;
+import opendial.bn.distribs.UtilityTable;
+import opendial.bn.nodes.ActionNode;
+import opendial.datastructs.Assignment;
+import opendial.modules.Module;
+import opendial.modules.simulation.Simulator;
+import opendial.readers.BinaryDomainReader;
+import opendial.readers.XMLInteractionReader;
+import opendial.readers.XMLSettingsReader;
+import opendial.state.DialogueState;
+
+
+/**
+ * Planner relying on a precomputed policy table for the recurring belief states,
+ * and on the forward planner for the other states.  At each planning step, the
+ * module computes the fingerprint of the dialogue state (see PolicyTable) and
+ * looks it up in the policy table.  On a confident match (an entry recorded from
+ * at least MIN_COUNT planning runs, which agree on the best action in at least a
+ * proportion MIN_AGREEMENT of the runs), the recorded best action is directly
+ * selected.  Otherwise, the module falls back on online planning.
+ *
+ * <p>The hit rate of the policy table is regularly logged, as well as the
+ * disagreements between the table and the online planner (for the unconfident
+ * matches, and for a proportion VERIFICATION_RATE of the confident ones).
+ *
+ * <p>The policy table is read from the file specified by the "policy" parameter
+ * in the settings.  The module must be attached in place of the ForwardPlanner
+ * module.  The table itself is built offline by running the planner in recording
+ * mode over a corpus or simulated dialogues (see main(...)).
+ *
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ */
+public class PolicyPlanner implements Module {
+
+	// logger
+	public static Logger log = new Logger("PolicyPlanner", Logger.Level.DEBUG);
+
+	/** Minimum number of planning runs recorded for a belief state to be used */
+	public static int MIN_COUNT = 2;
+
+	/** Minimum proportion of the recorded runs agreeing on the best action */
+	public static double MIN_AGREEMENT = 0.8;
+
+	/** Proportion of the confident matches verified against the online planner */
+	public static double VERIFICATION_RATE = 0.1;
+
+	/** Number of lookups between two logs of the hit rate */
+	public static int LOG_INTERVAL = 100;
+
+	DialogueSystem system;
+
+	// planner used for the states not covered by the policy table
+	ForwardPlanner planner;
+
+	// the policy table
+	PolicyTable policy;
+
+	// whether the module records the planning results instead of using them
+	boolean recording = false;
+
+	volatile boolean paused = false;
+
+	// statistics on the lookups (the verifications being run in the background)
+	final AtomicInteger nbLookups = new AtomicInteger();
+	final AtomicInteger nbHits = new AtomicInteger();
+	final AtomicInteger nbVerifications = new AtomicInteger();
+	final AtomicInteger nbDisagreements = new AtomicInteger();
+	final AtomicInteger nbRecorded = new AtomicInteger();
+
+	Random sampler = new Random();
+
+	// whether a verification is currently running
+	final AtomicBoolean verifying = new AtomicBoolean(false);
+
+	// thread running the verifications (distinct from the planner threads, such that 
+	// the verifications cannot delay the planning timeouts)
+	static ExecutorService verifier = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "PolicyPlanner");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+
+	/**
+	 * Constructs a policy planner for the dialogue system.  The policy table is
+	 * read from the file specified by the "policy" parameter when the module is
+	 * started.
+	 *
+	 * @param system the dialogue system associated with the planner.
+	 */
+	public PolicyPlanner(DialogueSystem system) {
+		this(system, new PolicyTable());
+	}
+
+
+	/**
+	 * Constructs a policy planner for the dialogue system, with the provided
+	 * policy table.
+	 *
+	 * @param system the dialogue system associated with the planner.
+	 * @param policy the policy table
+	 */
+	public PolicyPlanner(DialogueSystem system, PolicyTable policy) {
+		this.system = system;
+		this.policy = policy;
+		planner = new ForwardPlanner(system);
+	}
+
+
+	/**
+	 * Sets whether the module should record the results of the online planner
+	 * in the policy table (instead of using the table to select actions).
+	 *
+	 * @param recording whether to record the planning results
+	 */
+	public void setRecording(boolean recording) {
+		this.recording = recording;
+	}
+
+
+	/**
+	 * Reads the policy table from the file specified by the "policy" parameter
+	 * in the settings (if the table is still empty).
+	 */
+	@Override
+	public void start() {
+		String policyFile = system.getSettings().params.getProperty("policy");
+		if (policyFile != null && policy.size() == 0) {
+			try {
+				policy = PolicyTable.readFromFile(policyFile);
+				log.info("Policy from " + policyFile + " successfully extracted: " + policy);
+			}
+			catch (DialException e) {
+				log.warning("could not read policy table: " + e);
+			}
+		}
+		planner.start();
+	}
+
+
+	/**
+	 * Pauses the planner
+	 */
+	@Override
+	public void pause(boolean shouldBePaused) {
+		paused = shouldBePaused;
+		planner.pause(shouldBePaused);
+	}
+
+
+	/**
+	 * Returns true if the planner is not paused.
+	 */
+	@Override
+	public boolean isRunning() {
+		return !paused;
+	}
+
+
+	/**
+	 * Returns the policy table.
+	 *
+	 * @return the policy table
+	 */
+	public PolicyTable getPolicy() {
+		return policy;
+	}
+
+
+	/**
+	 * Returns the proportion of lookups for which the action was selected from
+	 * the policy table.
+	 *
+	 * @return the hit rate
+	 */
+	public double getHitRate() {
+		int lookups = nbLookups.get();
+		return (lookups > 0)? nbHits.get() / (double)lookups : 0.0;
+	}
+
+
+	/**
+	 * Selects the action for the dialogue state, using the policy table if the
+	 * state is a confident match, and the forward planner otherwise.  In recording
+	 * mode, the forward planner is always used, and its results are added to the
+	 * policy table.
+	 */
+	@Override
+	public void trigger(DialogueState state, Collection<String> updatedVars) {
+
+		Settings settings = system.getSettings();
+		if (state.hasChanceNode(settings.userSpeech) && state.hasActionNode(settings.systemOutput+"'")) {
+			ActionNode sysOutNode = state.getActionNode(settings.systemOutput+"'");
+			state.removeNodes(sysOutNode.getOutputNodesIds());
+			state.removeNode(sysOutNode.getId());
+		}
+		if (paused || state.getActionNodeIds().isEmpty()) {
+			return;
+		}
+
+		List<Object> fingerprint = PolicyTable.getFingerprint(state,
+				PolicyTable.getRelevantVariables(system.getDomain()));
+		PolicyTable.Entry entry = (fingerprint != null)? policy.getEntry(fingerprint) : null;
+
+		if (!recording) {
+			nbLookups.incrementAndGet();
+			if (entry != null && entry.getCount() >= MIN_COUNT
+					&& entry.getAgreement() >= MIN_AGREEMENT) {
+				nbHits.incrementAndGet();
+				Assignment action = entry.getBestAction();
+				if (sampler.nextDouble() < VERIFICATION_RATE) {
+					verify(state, entry);
+				}
+				selectAction(state, action, entry.getQValue(action));
+				logStatistics();
+				return;
+			}
+		}
+
+		planner.trigger(state, updatedVars);
+		UtilityTable qValues = (planner.currentProcess != null)?
+				planner.currentProcess.evalActions : null;
+		if (fingerprint != null && qValues != null && !qValues.getRows().isEmpty()) {
+			if (recording) {
+				policy.record(fingerprint, qValues);
+				nbRecorded.incrementAndGet();
+			}
+			else if (entry != null) {
+				checkAgreement(entry, qValues);
+			}
+		}
+		if (!recording) {
+			logStatistics();
+		}
+	}
+
+
+	/**
+	 * Builds a policy table by running the forward planner over a corpus of
+	 * dialogues or simulated dialogues, and writes the table to a file.  The
+	 * parameters are specified through system properties via the -D flag:<ul>
+	 * <li>-Ddomain=path/to/domain/file: dialogue domain file (required)
+	 * <li>-Dpolicy=path/to/policy/file: file in which to write the policy table
+	 * (required, existing tables are extended with the new planning results)
+	 * <li>-Dsettings=path/to/settings/file: settings file
+	 * <li>-Ddialogue=path/to/recorded/dialogue: dialogue corpus to replay
+	 * <li>-Dsimulator=path/to/simulator/domain/file: simulator domain file
+	 * <li>-Dturns=number of planning steps to perform with the simulator (default 100)
+	 * <li>-Dtimeout=maximum duration (in seconds) of the simulation (default 3600)
+	 * <li>-Dartifact=true: use the precompiled artifacts of the XML domain files 
+	 * if they exist and are up-to-date (see BinaryDomainReader)
+	 * </ul>
+	 *
+	 * @param args is ignored.
+	 */
+	public static void main(String[] args) {
+		String domainFile = System.getProperty("domain");
+		String policyFile = System.getProperty("policy");
+		String settingsFile = System.getProperty("settings");
+		String dialogueFile = System.getProperty("dialogue");
+		String simulatorFile = System.getProperty("simulator");
+		int nbTurns = Integer.parseInt(System.getProperty("turns", "100"));
+		long timeout = Long.parseLong(System.getProperty("timeout", "3600"));
+		boolean useArtifact = Boolean.parseBoolean(System.getProperty("artifact", "false"));
+		if (domainFile == null || policyFile == null || (dialogueFile == null && simulatorFile == null)) {
+			log.severe("usage: PolicyPlanner -Ddomain=... -Dpolicy=... (-Ddialogue=... | -Dsimulator=...)");
+			System.exit(1);
+		}
+		try {
+			DialogueSystem system = new DialogueSystem(BinaryDomainReader.extractDomain(domainFile, useArtifact));
+			if (settingsFile != null) {
+				system.getSettings().fillSettings(XMLSettingsReader.extractMapping(settingsFile));
+			}
+			system.getSettings().showGUI = false;
+			system.detachModule(ForwardPlanner.class);
+			PolicyTable policy = (new File(policyFile).exists())?
+					PolicyTable.readFromFile(policyFile) : new PolicyTable();
+			PolicyPlanner recorder = new PolicyPlanner(system, policy);
+			recorder.setRecording(true);
+			system.attachModule(recorder);
+			system.startSystem();
+
+			if (dialogueFile != null) {
+				for (DialogueState turn : XMLInteractionReader.extractInteraction(dialogueFile)) {
+					system.addContent(turn.copy());
+				}
+			}
+			if (simulatorFile != null) {
+				system.attachModule(new Simulator(system, 
+						BinaryDomainReader.extractDomain(simulatorFile, useArtifact)));
+				long deadline = System.currentTimeMillis() + timeout * 1000;
+				while (recorder.nbRecorded.get() < nbTurns && System.currentTimeMillis() < deadline) {
+					Thread.sleep(100);
+				}
+				system.pause(true);
+				if (recorder.nbRecorded.get() < nbTurns) {
+					log.warning("simulation timed out after " + recorder.nbRecorded.get() 
+							+ " planning steps");
+				}
+			}
+			policy.writeToFile(policyFile);
+			log.info("Policy written to " + policyFile + ": " + policy);
+			System.exit(0);
+		}
+		catch (DialException | InterruptedException e) {
+			log.severe("could not build policy table, aborting: " + e);
+			System.exit(1);
+		}
+	}
+
+
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Replaces the action and utility nodes of the dialogue state by the selected
+	 * action (or the default action if its utility is null).
+	 *
+	 * @param state the dialogue state
+	 * @param action the selected action
+	 * @param utility the Q-value of the action
+	 */
+	private void selectAction(DialogueState state, Assignment action, double utility) {
+		if (utility < 0.001) {
+			action = Assignment.createDefault(action.getVariables());
+		}
+		try {
+			state.removeNodes(state.getUtilityNodeIds());
+			state.removeNodes(new HashSet<String>(state.getActionNodeIds()));
+			state.addToState(action.removePrimes());
+		}
+		catch (DialException e) {
+			log.warning("could not add selected action: " + e);
+		}
+	}
+
+
+	/**
+	 * Runs the online planner on a copy of the dialogue state in the background
+	 * (outside of the dialogue thread), and logs whether its result agrees with 
+	 * the entry of the policy table.  The copy is made before returning, as the 
+	 * dialogue state is modified once the action is selected.  The verification 
+	 * is skipped if another one is still running.
+	 *
+	 * @param state the dialogue state
+	 * @param entry the entry of the policy table
+	 */
+	private void verify(DialogueState state, PolicyTable.Entry entry) {
+		if (!verifying.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			DialogueState copy = state.copy();
+			verifier.execute(() -> {
+				try {
+					UtilityTable qValues = planner.new PlannerProcess(copy).evalActions;
+					if (qValues != null && !qValues.getRows().isEmpty()) {
+						nbVerifications.incrementAndGet();
+						checkAgreement(entry, qValues);
+					}
+				}
+				finally {
+					verifying.set(false);
+				}
+			});
+		}
+		catch (DialException e) {
+			verifying.set(false);
+			log.warning("could not verify policy entry: " + e);
+		}
+	}
+
+
+	/**
+	 * Checks whether the best action estimated by the online planner agrees with
+	 * the entry of the policy table, and logs the disagreements.
+	 *
+	 * @param entry the entry of the policy table
+	 * @param qValues the Q-values estimated by the online planner
+	 */
+	private void checkAgreement(PolicyTable.Entry entry, UtilityTable qValues) {
+		Assignment onlineAction = qValues.getBest().getKey();
+		if (!onlineAction.equals(entry.getBestAction())) {
+			nbDisagreements.incrementAndGet();
+			log.info("policy table selects " + entry.getBestAction()
+					+ " but online planner selects " + onlineAction + " (table: " + entry
+					+ ", planner: " + qValues.getTable() + ")");
+		}
+	}
+
+
+	/**
+	 * Logs the hit rate and the number of disagreements every LOG_INTERVAL lookups.
+	 */
+	private void logStatistics() {
+		if (nbLookups.get() % LOG_INTERVAL == 0) {
+			log.info("policy hit rate: " + nbHits + "/" + nbLookups + ", "
+					+ nbDisagreements + " disagreement(s) with the online planner ("
+					+ nbVerifications + " verified hit(s))");
+		}
+	}
+
+}
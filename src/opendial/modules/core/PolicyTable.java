@@ -0,0 +1,360 @@
+// =================================================================
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person
+// obtaining a copy of this software and associated documentation
+// files (the "Software"), to deal in the Software without restriction,
+// including without limitation the rights to use, copy, modify, merge,
+// publish, distribute, sublicense, and/or sell copies of the Software,
+// and to permit persons to whom the Software is furnished to do so,
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================
+
+package opendial.modules.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import opendial.arch.DialException;
+import opendial.arch.Logger;
+import opendial.bn.distribs.IndependentProbDistribution;
+import opendial.bn.distribs.MultivariateDistribution;
+import opendial.bn.distribs.ProbDistribution;
+import opendial.bn.distribs.UtilityTable;
+import opendial.bn.nodes.ChanceNode;
+import opendial.datastructs.Assignment;
+import opendial.datastructs.Template;
+import opendial.domains.Domain;
+import opendial.domains.Model;
+import opendial.domains.rules.Rule;
+import opendial.domains.rules.Rule.RuleType;
+import opendial.state.DialogueState;
+import opendial.utils.SerialisationUtils;
+
+/**
+ * Table of precomputed planning results, mapping recurring belief states to the
+ * Q-values of their actions.  The belief states are identified by a fingerprint
+ * made of the quantised marginal distributions of the action-relevant variables,
+ * that is, the variables in the state that match the input variables of the
+ * utility rules.  Each entry records the averaged Q-values estimated by the planner
+ * for the belief state, together with the number of times each action was selected
+ * as the best one.
+ *
+ * <p>The table is filled offline (see PolicyPlanner.main(...)) and consulted at
+ * runtime by the PolicyPlanner module.  It can be saved to and loaded from a file.
+ *
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ */
+public final class PolicyTable implements Serializable {
+
+	// logger
+	public static Logger log = new Logger("PolicyTable", Logger.Level.DEBUG);
+
+	private static final long serialVersionUID = 1L;
+
+	// the recorded entries, indexed by fingerprint
+	final Map<List<Object>,Entry> entries;
+
+
+	/**
+	 * Creates an empty policy table.
+	 */
+	public PolicyTable() {
+		entries = new ConcurrentHashMap<List<Object>,Entry>();
+	}
+
+
+	/**
+	 * Reads the policy table from the file.  The table is deserialised through a 
+	 * filter restricting the classes that can be instantiated (see SerialisationUtils).
+	 *
+	 * @param policyFile the file containing the policy table
+	 * @return the policy table
+	 * @throws DialException if the table could not be read
+	 */
+	public static PolicyTable readFromFile(String policyFile) throws DialException {
+		try (ObjectInputStream in = SerialisationUtils.createInputStream(
+				new BufferedInputStream(new FileInputStream(policyFile)))) {
+			return (PolicyTable) in.readObject();
+		}
+		catch (IOException | ClassNotFoundException | ClassCastException e) {
+			throw new DialException("could not read policy table " + policyFile + ": " + e);
+		}
+	}
+
+
+	/**
+	 * Writes the policy table to the file.
+	 *
+	 * @param policyFile the file in which to write the policy table
+	 * @throws DialException if the table could not be written
+	 */
+	public void writeToFile(String policyFile) throws DialException {
+		try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+				new FileOutputStream(policyFile)))) {
+			out.writeObject(this);
+		}
+		catch (IOException e) {
+			throw new DialException("could not write policy table " + policyFile + ": " + e);
+		}
+	}
+
+
+	/**
+	 * Returns the action-relevant variables of the domain, that is, the input
+	 * variables of its utility rules.
+	 *
+	 * @param domain the dialogue domain
+	 * @return the action-relevant variables
+	 */
+	public static Set<Template> getRelevantVariables(Domain domain) {
+		Set<Template> relevantVars = new HashSet<Template>();
+		for (Model model : domain.getModels()) {
+			for (Rule rule : model.getRules()) {
+				if (rule.getRuleType() == RuleType.UTIL) {
+					relevantVars.addAll(rule.getInputVariables());
+				}
+			}
+		}
+		return relevantVars;
+	}
+
+
+	/**
+	 * Returns the fingerprint of the dialogue state, made of the quantised marginal
+	 * distributions of its action-relevant variables.  If one of these variables is
+	 * continuous, the method returns null.  The marginals that require inference are
+	 * extracted with a single query on the state.
+	 *
+	 * @param state the dialogue state
+	 * @param relevantVars the action-relevant variables
+	 * @return the fingerprint of the state (or null if it cannot be computed)
+	 */
+	public static List<Object> getFingerprint(DialogueState state, Set<Template> relevantVars) {
+		Set<String> vars = new TreeSet<String>();
+		for (ChanceNode node : state.getMatchingNodes(relevantVars)) {
+			if (!state.getParameterIds().contains(node.getId())) {
+				vars.add(node.getId());
+			}
+		}
+		Map<String,IndependentProbDistribution> marginals = getMarginals(state, vars);
+		List<Object> fingerprint = new ArrayList<Object>();
+		for (String var : vars) {
+			Map<String,Integer> buckets = TranspositionTable.quantise(marginals.get(var));
+			if (buckets == null) {
+				return null;
+			}
+			fingerprint.add(var);
+			fingerprint.add(buckets);
+		}
+		return fingerprint;
+	}
+
+
+	/**
+	 * Records the Q-values estimated by the planner for the belief state with the
+	 * given fingerprint.
+	 *
+	 * @param fingerprint the fingerprint of the belief state
+	 * @param qValues the estimated Q-values
+	 */
+	public void record(List<Object> fingerprint, UtilityTable qValues) {
+		if (qValues.getRows().isEmpty()) {
+			return;
+		}
+		entries.computeIfAbsent(fingerprint, f -> new Entry()).add(qValues);
+	}
+
+
+	/**
+	 * Returns the entry for the belief state with the given fingerprint, or
+	 * null if the belief state has never been recorded.
+	 *
+	 * @param fingerprint the fingerprint of the belief state
+	 * @return the corresponding entry (or null)
+	 */
+	public Entry getEntry(List<Object> fingerprint) {
+		return entries.get(fingerprint);
+	}
+
+
+	/**
+	 * Returns the number of recorded belief states.
+	 *
+	 * @return the size of the table
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+
+	/**
+	 * Returns a short description of the table.
+	 */
+	@Override
+	public String toString() {
+		int nbRuns = 0;
+		for (Entry entry : entries.values()) {
+			nbRuns += entry.count;
+		}
+		return "policy table with " + entries.size() + " belief states (" + nbRuns + " planning runs)";
+	}
+
+
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Returns the marginal distributions of the variables in the dialogue state.  
+	 * The distributions of the variables that are independent from the evidence are 
+	 * directly read from their nodes, and the others are extracted from one joint 
+	 * query on the state.
+	 *
+	 * @param state the dialogue state
+	 * @param vars the variables
+	 * @return the marginal distribution of each variable
+	 */
+	private static Map<String,IndependentProbDistribution> getMarginals(DialogueState state, 
+			Set<String> vars) {
+		Map<String,IndependentProbDistribution> marginals = 
+				new HashMap<String,IndependentProbDistribution>();
+		Set<String> queryVars = new TreeSet<String>();
+		for (String var : vars) {
+			ProbDistribution distrib = state.getChanceNode(var).getDistrib();
+			if (distrib instanceof IndependentProbDistribution && Collections.disjoint(
+					state.getComponentOf(var), state.getEvidenceView().getVariables())) {
+				marginals.put(var, (IndependentProbDistribution)distrib);
+			}
+			else {
+				queryVars.add(var);
+			}
+		}
+		if (!queryVars.isEmpty()) {
+			MultivariateDistribution joint = state.queryProb(queryVars);
+			for (String var : queryVars) {
+				marginals.put(var, joint.getMarginal(var));
+			}
+		}
+		return marginals;
+	}
+
+
+	/**
+	 * Entry of the policy table, with the averaged Q-values of the actions for
+	 * a belief state.
+	 */
+	public static final class Entry implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		// number of planning runs recorded for the belief state
+		int count = 0;
+
+		// averaged Q-values, and number of values for each action
+		final Map<Assignment,Double> qValues = new LinkedHashMap<Assignment,Double>();
+		final Map<Assignment,Integer> nbValues = new LinkedHashMap<Assignment,Integer>();
+
+		// number of planning runs in which each action was the best one
+		final Map<Assignment,Integer> votes = new LinkedHashMap<Assignment,Integer>();
+
+		/**
+		 * Adds the Q-values of a planning run to the entry.
+		 *
+		 * @param table the estimated Q-values
+		 */
+		synchronized void add(UtilityTable table) {
+			count++;
+			for (Assignment action : table.getRows()) {
+				int nb = nbValues.getOrDefault(action, 0) + 1;
+				double average = qValues.getOrDefault(action, 0.0);
+				qValues.put(action, average + (table.getUtil(action) - average) / nb);
+				nbValues.put(action, nb);
+			}
+			votes.merge(table.getBest().getKey(), 1, Integer::sum);
+		}
+
+		/**
+		 * Returns the action with the highest averaged Q-value.
+		 *
+		 * @return the best action
+		 */
+		public synchronized Assignment getBestAction() {
+			Assignment best = null;
+			for (Assignment action : qValues.keySet()) {
+				if (best == null || qValues.get(action) > qValues.get(best)) {
+					best = action;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Returns the averaged Q-value of the action (0.0 if the action was never
+		 * recorded).
+		 *
+		 * @param action the action
+		 * @return the averaged Q-value
+		 */
+		public synchronized double getQValue(Assignment action) {
+			return qValues.getOrDefault(action, 0.0);
+		}
+
+		/**
+		 * Returns the number of planning runs recorded for the belief state.
+		 *
+		 * @return the number of runs
+		 */
+		public synchronized int getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the proportion of planning runs in which the best action (according
+		 * to the averaged Q-values) was selected.
+		 *
+		 * @return the agreement of the runs with the best action
+		 */
+		public synchronized double getAgreement() {
+			Assignment best = getBestAction();
+			return (count > 0 && best != null)? votes.getOrDefault(best, 0) / (double)count : 0.0;
+		}
+
+		/**
+		 * Returns a string representation of the averaged Q-values.
+		 */
+		@Override
+		public synchronized String toString() {
+			return qValues + " (" + count + " runs)";
+		}
+	}
+
+}
@@ -0,0 +1,322 @@
+// =================================================================
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person
+// obtaining a copy of this software and associated documentation
+// files (the "Software"), to deal in the Software without restriction,
+// including without limitation the rights to use, copy, modify, merge,
+// publish, distribute, sublicense, and/or sell copies of the Software,
+// and to permit persons to whom the Software is furnished to do so,
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================
+
+package opendial.modules.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import opendial.arch.Logger;
+import opendial.bn.distribs.ContinuousDistribution;
+import opendial.bn.distribs.IndependentProbDistribution;
+import opendial.bn.values.Value;
+import opendial.datastructs.Template;
+import opendial.domains.Domain;
+import opendial.domains.Model;
+import opendial.state.DialogueState;
+
+/**
+ * Transposition table for the forward planner, caching the expected values of
+ * the dialogue states explored in the lookahead tree.  Dialogue states reached
+ * through different sequences of actions and observations (or across successive
+ * planning calls) often end up with the same belief, and their expected value
+ * can then be reused instead of expanding the same subtree again.
+ *
+ * <p>The states are identified by a canonical fingerprint made of the remaining
+ * horizon and the marginal distributions of the action-relevant variables (i.e.
+ * the variables matching the input variables of the utility rules, see 
+ * PolicyTable), with their probabilities quantised into buckets of size 
+ * QUANTISATION_STEP.  The parameter variables are not part of the fingerprint: 
+ * the table is instead only valid for a given domain, discount factor and 
+ * parameter distributions (see isValidFor(...)).
+ *
+ * <p>The values are read and stored through scopes (one for each candidate action
+ * of a planning step), which are only added to the table once all actions of the
+ * step are evaluated, in the order of the actions.  The values read during the
+ * evaluation of an action therefore do not depend on the timing of the other 
+ * evaluations, and the parallel and serial evaluations of the actions lead to 
+ * the same results.
+ *
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ */
+final class TranspositionTable {
+
+	// logger
+	static Logger log = new Logger("TranspositionTable", Logger.Level.DEBUG);
+
+	// maximum number of entries in the table
+	public static final int MAX_ENTRIES = 10000;
+
+	// size of the buckets used to quantise the probabilities
+	public static final double QUANTISATION_STEP = 0.05;
+
+	// the domain and models (when the table was created)
+	final Domain domain;
+	final Model[] models;
+
+	// the action-relevant variables of the domain
+	final Set<Template> relevantVars;
+
+	// the discount factor (when the table was created)
+	final double discount;
+
+	// signature of the parameter distributions (when the table was created)
+	final String parameters;
+
+	// the cached expected values, indexed by fingerprint
+	final Map<List<Object>,Double> values;
+
+	// number of lookups that found a cached value
+	final AtomicInteger nbHits;
+
+
+	/**
+	 * Creates an empty transposition table for the domain, discount factor and
+	 * parameters of the dialogue state.
+	 *
+	 * @param domain the dialogue domain
+	 * @param discount the discount factor
+	 * @param state the dialogue state
+	 */
+	TranspositionTable(Domain domain, double discount, DialogueState state) {
+		this.domain = domain;
+		models = domain.getModels().toArray(new Model[domain.getModels().size()]);
+		relevantVars = PolicyTable.getRelevantVariables(domain);
+		this.discount = discount;
+		parameters = getParameterSignature(state);
+		values = new ConcurrentHashMap<List<Object>,Double>();
+		nbHits = new AtomicInteger();
+	}
+
+
+	/**
+	 * Returns true if the table is still valid for the domain, discount factor
+	 * and parameters of the dialogue state, false otherwise.
+	 *
+	 * @param domain the dialogue domain
+	 * @param discount the discount factor
+	 * @param state the dialogue state
+	 * @return true if the table is still valid, false otherwise
+	 */
+	boolean isValidFor(Domain domain, double discount, DialogueState state) {
+		if (domain != this.domain || discount != this.discount
+				|| domain.getModels().size() != models.length) {
+			return false;
+		}
+		int i = 0;
+		for (Model model : domain.getModels()) {
+			if (model != models[i++]) {
+				return false;
+			}
+		}
+		return parameters.equals(getParameterSignature(state));
+	}
+
+
+	/**
+	 * Returns the fingerprint of the dialogue state for the given horizon.  If
+	 * one of the action-relevant variables is continuous, the method returns
+	 * null, and the state cannot be cached.
+	 *
+	 * @param state the dialogue state
+	 * @param horizon the remaining planning horizon
+	 * @return the fingerprint of the state (or null if it cannot be computed)
+	 */
+	List<Object> getFingerprint(DialogueState state, int horizon) {
+		List<Object> stateFingerprint = PolicyTable.getFingerprint(state, relevantVars);
+		if (stateFingerprint == null) {
+			return null;
+		}
+		List<Object> fingerprint = new ArrayList<Object>(stateFingerprint.size() + 1);
+		fingerprint.add(horizon);
+		fingerprint.addAll(stateFingerprint);
+		return fingerprint;
+	}
+
+
+	/**
+	 * Creates a new scope on the table, for the evaluation of a candidate action.
+	 * 
+	 * @return the new scope
+	 */
+	Scope createScope() {
+		return new Scope();
+	}
+
+
+	/**
+	 * Returns the expected value cached for the fingerprint, if any.
+	 *
+	 * @param fingerprint the state fingerprint
+	 * @return the cached expected value, or null if no value is cached
+	 */
+	Double get(List<Object> fingerprint) {
+		Double value = values.get(fingerprint);
+		if (value != null) {
+			nbHits.incrementAndGet();
+		}
+		return value;
+	}
+
+
+	/**
+	 * Caches the expected value for the fingerprint.  If the table is full, it
+	 * is emptied before inserting the new value.
+	 *
+	 * @param fingerprint the state fingerprint
+	 * @param value the expected value
+	 */
+	void put(List<Object> fingerprint, double value) {
+		if (values.size() >= MAX_ENTRIES) {
+			values.clear();
+		}
+		values.put(fingerprint, value);
+	}
+
+
+	/**
+	 * Returns the number of cached values.
+	 *
+	 * @return the number of entries
+	 */
+	int size() {
+		return values.size();
+	}
+
+
+	/**
+	 * Returns the number of lookups that found a cached value.
+	 * 
+	 * @return the number of hits
+	 */
+	int getNbHits() {
+		return nbHits.get();
+	}
+
+
+	/**
+	 * Returns the quantised version of the distribution, mapping the string
+	 * representation of each value to its probability bucket (values with a
+	 * null bucket being omitted).  Returns null if the distribution is continuous.
+	 *
+	 * @param marginal the distribution
+	 * @return the quantised distribution (or null if it is continuous)
+	 */
+	static Map<String,Integer> quantise(IndependentProbDistribution marginal) {
+		if (marginal instanceof ContinuousDistribution) {
+			return null;
+		}
+		Map<String,Integer> buckets = new TreeMap<String,Integer>();
+		for (Value value : marginal.getValues()) {
+			int bucket = (int) Math.round(marginal.getProb(value) / QUANTISATION_STEP);
+			if (bucket > 0) {
+				buckets.put(value.toString(), bucket);
+			}
+		}
+		return buckets;
+	}
+
+
+	/**
+	 * Scope on the table for the evaluation of one candidate action.  The scope
+	 * reads the values of the table and the values stored in the scope itself.  The
+	 * values stored in the scope are only added to the table upon commit.  A scope
+	 * must only be used by one thread at a time.
+	 */
+	final class Scope {
+
+		// the values stored in the scope
+		final Map<List<Object>,Double> scopeValues = new LinkedHashMap<List<Object>,Double>();
+
+		/**
+		 * Returns the expected value cached for the fingerprint in the scope or the 
+		 * table, if any.
+		 *
+		 * @param fingerprint the state fingerprint
+		 * @return the cached expected value, or null if no value is cached
+		 */
+		Double get(List<Object> fingerprint) {
+			Double value = scopeValues.get(fingerprint);
+			if (value != null) {
+				nbHits.incrementAndGet();
+				return value;
+			}
+			return TranspositionTable.this.get(fingerprint);
+		}
+
+		/**
+		 * Caches the expected value for the fingerprint in the scope.  If the scope 
+		 * is full, it is emptied before inserting the new value.
+		 *
+		 * @param fingerprint the state fingerprint
+		 * @param value the expected value
+		 */
+		void put(List<Object> fingerprint, double value) {
+			if (scopeValues.size() >= MAX_ENTRIES) {
+				scopeValues.clear();
+			}
+			scopeValues.put(fingerprint, value);
+		}
+
+		/**
+		 * Adds the values stored in the scope to the table (in their insertion order).
+		 */
+		void commit() {
+			for (Map.Entry<List<Object>,Double> entry : scopeValues.entrySet()) {
+				TranspositionTable.this.put(entry.getKey(), entry.getValue());
+			}
+			scopeValues.clear();
+		}
+	}
+
+
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Returns a string representing the current distributions of the parameter
+	 * variables in the dialogue state.
+	 *
+	 * @param state the dialogue state
+	 * @return the signature of the parameters
+	 */
+	private static String getParameterSignature(DialogueState state) {
+		StringBuilder signature = new StringBuilder();
+		for (String param : new TreeSet<String>(state.getParameterIds())) {
+			if (state.hasChanceNode(param)) {
+				signature.append(param + "=" + state.getChanceNode(param).getDistrib() + ";");
+			}
+		}
+		return signature.toString();
+	}
+
+}
@@ -81,9 +81,9 @@ public class WizardLearner implements Module {
 	@Override
 	public void trigger(DialogueState state, Collection<String> updatedVars) {
 		if (!state.getActionNodeIds().isEmpty()) {
-			if (state.getEvidence().containsVars(state.getActionNodeIds())) {
+			if (state.getEvidenceView().containsVars(state.getActionNodeIds())) {
 				try {
-					Assignment wizardAction = state.getEvidence().getTrimmed(state.getActionNodeIds());
+					Assignment wizardAction = state.getEvidenceView().getTrimmed(state.getActionNodeIds());
 					state.clearEvidence(wizardAction.getVariables());
 					learnFromWizardAction(wizardAction);
 					state.addToState(wizardAction.removePrimes());
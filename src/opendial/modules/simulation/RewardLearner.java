@@ -117,7 +117,7 @@ public class RewardLearner implements Module {
 			if (evidenceVar.startsWith("R(") && evidenceVar.endsWith(")")) {
 				Assignment actualAction = Assignment.createFromString
 						(evidenceVar.substring(2, evidenceVar.length()-1));
-				double actualUtility = ((DoubleVal)state.getEvidence().getValue(evidenceVar)).getDouble();
+				double actualUtility = ((DoubleVal)state.getEvidenceView().getValue(evidenceVar)).getDouble();
 
 				if (previousStates.containsKey(actualAction.getVariables())) {
 					DialogueState previousState = previousStates.get(actualAction.getVariables());
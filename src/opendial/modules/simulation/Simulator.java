@@ -182,12 +182,12 @@ public class Simulator implements Module {
 		Assignment systemAssign = new Assignment(system.getSettings().systemOutput, systemAction);
 		simulatorState.addToState(systemAssign);
 
-		while (!simulatorState.getNewVariables().isEmpty()) {
+		while (simulatorState.hasNewVariables()) {
 			Set<String> toProcess = simulatorState.getNewVariables();
 			simulatorState.reduce();	
 
-			for (Model model : domain.getModels()) {
-				model.trigger(simulatorState, toProcess);
+			for (Model model : domain.getTriggeredModels(toProcess)) {
+				model.applyRules(simulatorState);
 			}
 
 			if (!simulatorState.getUtilityNodeIds().isEmpty()) {
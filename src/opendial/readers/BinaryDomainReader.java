@@ -0,0 +1,370 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.readers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import opendial.arch.DialException;
+import opendial.arch.Logger;
+import opendial.domains.Domain;
+import opendial.domains.Model;
+import opendial.domains.rules.Rule;
+import opendial.utils.SerialisationUtils;
+import opendial.utils.XMLUtils;
+
+/**
+ * Reader for precompiled dialogue domains.  A domain can be compiled from its XML
+ * specification into a binary artifact, which contains: <ul>
+ * <li>a header with the format version and the checksums of all XML source files
+ * (the top domain file and the imported files);
+ * <li>the serialised domain (with its settings, initial state, parameters, and 
+ * models with their rules and pre-parsed templates), where all strings are 
+ * interned.
+ * </ul>
+ * 
+ * <p>Loading the artifact avoids parsing the XML files and rebuilding the domain
+ * from scratch.  The artifact is only used if it is up-to-date, i.e. if it has 
+ * the current format version and the checksums of the XML sources are unchanged.
+ * Otherwise, the domain is extracted from its XML specification.  The checksums
+ * only serve to detect stale artifacts, and do not protect the artifact against 
+ * modifications.  Artifacts are therefore only read when explicitly requested
+ * (by passing the artifact file, or by activating the use of artifacts), and the 
+ * domain is deserialised through a filter restricting the classes that can be 
+ * instantiated (see SerialisationUtils).
+ *
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ */
+public class BinaryDomainReader {
+
+	public static Logger log = new Logger("BinaryDomainReader", Logger.Level.DEBUG);
+
+	// identifier at the start of the artifacts
+	public static final int MAGIC_NUMBER = 0x4F44444D;
+
+	// version of the binary format (to increment when the domain classes change)
+	public static final int FORMAT_VERSION = 6;
+
+	// file extension for the artifacts
+	public static final String EXTENSION = ".bin";
+
+
+	// ===================================
+	// DOMAIN EXTRACTION
+	// ===================================
+
+
+	/**
+	 * Extracts the dialogue domain.  If the file is an up-to-date artifact, the domain
+	 * is read from the artifact.  Otherwise, the domain is extracted from its XML 
+	 * specification.
+	 * 
+	 * @param domainFile the filename of the top XML file or of the artifact
+	 * @return the extracted dialogue domain
+	 * @throws DialException if the domain could not be extracted
+	 */
+	public static Domain extractDomain(String domainFile) throws DialException {
+		return extractDomain(domainFile, false);
+	}
+
+
+	/**
+	 * Extracts the dialogue domain.  If the file is an artifact, or if the use of
+	 * artifacts is activated and an up-to-date artifact exists for the XML domain 
+	 * file, the domain is read from the artifact.  Otherwise, the domain is extracted
+	 * from its XML specification.
+	 * 
+	 * @param domainFile the filename of the top XML file or of the artifact
+	 * @param useArtifact whether to read the artifact of the XML domain file (if any)
+	 * @return the extracted dialogue domain
+	 * @throws DialException if the domain could not be extracted
+	 */
+	public static Domain extractDomain(String domainFile, boolean useArtifact) throws DialException {
+		String artifactFile = (domainFile.endsWith(EXTENSION))? domainFile : getArtifactFile(domainFile);
+		if ((useArtifact || domainFile.endsWith(EXTENSION)) && new File(artifactFile).exists()) {
+			try {
+				return readArtifact(artifactFile);
+			}
+			catch (DialException e) {
+				log.info("artifact " + artifactFile + " cannot be used (" + e.getMessage() 
+						+ "), extracting domain from XML");
+			}
+		}
+		if (domainFile.endsWith(EXTENSION)) {
+			return XMLDomainReader.extractDomain(readHeader(artifactFile).topFile);
+		}
+		return XMLDomainReader.extractDomain(domainFile);
+	}
+
+
+	/**
+	 * Compiles the XML domain into a binary artifact.
+	 * 
+	 * @param domainFile the filename of the top XML file
+	 * @param artifactFile the filename of the artifact
+	 * @return the extracted domain
+	 * @throws DialException if the domain could not be extracted or written
+	 */
+	public static Domain compileDomain(String domainFile, String artifactFile) throws DialException {
+		Domain domain = XMLDomainReader.extractDomain(domainFile);
+		Map<String,Long> sources = new LinkedHashMap<String,Long>();
+		for (String source : domain.getSourceFiles()) {
+			sources.put(source, XMLUtils.getChecksum(source));
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(artifactFile)))) {
+			out.writeInt(MAGIC_NUMBER);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(domainFile);
+			out.writeInt(sources.size());
+			for (String source : sources.keySet()) {
+				out.writeUTF(source);
+				out.writeLong(sources.get(source));
+			}
+			ObjectOutputStream objectOut = new InterningOutputStream(out);
+			objectOut.writeObject(domain);
+			objectOut.flush();
+		}
+		catch (IOException e) {
+			throw new DialException("cannot write artifact " + artifactFile + ": " + e);
+		}
+		log.info("domain " + domainFile + " compiled into " + artifactFile);
+		return domain;
+	}
+
+
+	/**
+	 * Reads the domain from the artifact.  
+	 * 
+	 * @param artifactFile the filename of the artifact
+	 * @return the domain
+	 * @throws DialException if the artifact is invalid or stale
+	 */
+	public static Domain readArtifact(String artifactFile) throws DialException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(artifactFile)))) {
+			Header header = readHeader(in);
+			for (String source : header.sources.keySet()) {
+				if (XMLUtils.getChecksum(source) != header.sources.get(source)) {
+					throw new DialException("source " + source + " has changed");
+				}
+			}
+			Domain domain = (Domain) SerialisationUtils.createInputStream(in).readObject();
+			updateCounters(domain);
+			return domain;
+		}
+		catch (IOException | ClassNotFoundException | ClassCastException e) {
+			throw new DialException("cannot read artifact " + artifactFile + ": " + e);
+		}
+	}
+
+
+	/**
+	 * Returns true if the artifact exists, has the current format version, and is
+	 * up-to-date with respect to its XML sources.
+	 * 
+	 * @param artifactFile the filename of the artifact
+	 * @return true if the artifact is valid, else false
+	 */
+	public static boolean isValid(String artifactFile) {
+		try {
+			Header header = readHeader(artifactFile);
+			for (String source : header.sources.keySet()) {
+				if (XMLUtils.getChecksum(source) != header.sources.get(source)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		catch (DialException e) {
+			return false;
+		}
+	}
+
+
+	/**
+	 * Returns the default filename of the artifact for the XML domain file.
+	 * 
+	 * @param domainFile the filename of the top XML file
+	 * @return the filename of the artifact
+	 */
+	public static String getArtifactFile(String domainFile) {
+		return domainFile + EXTENSION;
+	}
+
+
+	/**
+	 * Compiles the XML domain given as first argument into an artifact (whose 
+	 * filename is either given as second argument, or derived from the domain file).
+	 * 
+	 * @param args the domain file and (optionally) the artifact file
+	 */
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			log.severe("usage: BinaryDomainReader domain.xml [artifact" + EXTENSION + "]");
+			return;
+		}
+		try {
+			compileDomain(args[0], (args.length > 1)? args[1] : getArtifactFile(args[0]));
+		}
+		catch (DialException e) {
+			log.severe("could not compile domain: " + e);
+		}
+	}
+
+
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Header of an artifact, with the top domain file and the checksums of the 
+	 * XML sources.
+	 */
+	private static final class Header {
+		String topFile;
+		Map<String,Long> sources = new LinkedHashMap<String,Long>();
+	}
+
+
+	/**
+	 * Reads the header of the artifact file.
+	 * 
+	 * @param artifactFile the filename of the artifact
+	 * @return the header
+	 * @throws DialException if the header could not be read
+	 */
+	private static Header readHeader(String artifactFile) throws DialException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(artifactFile)))) {
+			return readHeader(in);
+		}
+		catch (IOException e) {
+			throw new DialException("cannot read artifact " + artifactFile + ": " + e);
+		}
+	}
+
+
+	/**
+	 * Reads the header from the input stream.
+	 * 
+	 * @param in the input stream
+	 * @return the header
+	 * @throws IOException if the stream could not be read
+	 * @throws DialException if the header is invalid
+	 */
+	private static Header readHeader(DataInputStream in) throws IOException, DialException {
+		if (in.readInt() != MAGIC_NUMBER) {
+			throw new DialException("not a domain artifact");
+		}
+		int version = in.readInt();
+		if (version != FORMAT_VERSION) {
+			throw new DialException("format version " + version + " is outdated");
+		}
+		Header header = new Header();
+		header.topFile = in.readUTF();
+		int nbSources = in.readInt();
+		for (int i = 0 ; i < nbSources ; i++) {
+			header.sources.put(in.readUTF(), in.readLong());
+		}
+		return header;
+	}
+
+
+	/**
+	 * Moves the identifier counters for the models and rules past the identifiers
+	 * of the domain read from the artifact, to avoid any clash with the 
+	 * identifiers of the domains extracted afterwards.
+	 * 
+	 * @param domain the domain read from the artifact
+	 */
+	private static void updateCounters(Domain domain) {
+		for (Model model : domain.getModels()) {
+			Model.idCounter = Math.max(Model.idCounter, getIdNumber(model.getId(), "model") + 1);
+			for (Rule rule : model.getRules()) {
+				XMLRuleReader.idCounter = Math.max(XMLRuleReader.idCounter, 
+						getIdNumber(rule.getRuleId(), "rule") + 1);
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the number in the identifier with the given prefix (e.g. 3 for 
+	 * "rule3"), or -1 if the identifier does not follow this pattern.
+	 * 
+	 * @param id the identifier
+	 * @param prefix the prefix
+	 * @return the number in the identifier, or -1
+	 */
+	private static int getIdNumber(String id, String prefix) {
+		if (id.startsWith(prefix) && id.length() > prefix.length() 
+				&& id.substring(prefix.length()).chars().allMatch(Character::isDigit)
+				&& id.length() - prefix.length() < 10) {
+			return Integer.parseInt(id.substring(prefix.length()));
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Object output stream where all strings are interned, such that identical 
+	 * strings are only written once in the artifact (and shared after reading).
+	 */
+	private static final class InterningOutputStream extends ObjectOutputStream {
+
+		/**
+		 * Creates the stream.
+		 * 
+		 * @param out the underlying output stream
+		 * @throws IOException if the stream could not be created
+		 */
+		InterningOutputStream(OutputStream out) throws IOException {
+			super(out);
+			enableReplaceObject(true);
+		}
+
+		/**
+		 * Returns the interned string if the object is a string, and the object 
+		 * itself otherwise.
+		 */
+		@Override
+		protected Object replaceObject(Object obj) {
+			return (obj instanceof String)? ((String)obj).intern() : obj;
+		}
+	}
+
+}
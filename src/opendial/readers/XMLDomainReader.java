@@ -24,7 +24,10 @@
 package opendial.readers;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
 
 import opendial.arch.DialException;
@@ -74,6 +77,7 @@ public class XMLDomainReader {
 		// determine the root path and filename
 		File f = new File(topDomainFile);
 		String rootpath = f.getParent();		
+		domain.addSourceFile(topDomainFile);
 
 		if (mainNode.hasAttributes() && 
 				mainNode.getAttributes().getNamedItem("name") != null) {
@@ -87,13 +91,65 @@ public class XMLDomainReader {
 		for (int j = 0 ; j < firstElements.getLength() ; j++) {
 
 			Node node = firstElements.item(j);	
-			domain = extractPartialDomain(node, domain, rootpath);
+			domain = extractPartialDomain(node, domain, rootpath, topDomainFile, null);
+		}
+		return domain;
+	}
+
+
+	/**
+	 * Extracts the content of a single XML file of a domain (for instance, after 
+	 * a modification of the file).  The imported files that are listed among the 
+	 * files to skip are not extracted.  The other imported files are extracted as 
+	 * usual, and are added to the source files of the returned domain.
+	 * 
+	 * @param domainFile the XML file to extract
+	 * @param rootpath the root path of the domain (for the imports)
+	 * @param filesToSkip the imported files that must not be extracted
+	 * @return a domain with the content of the file
+	 * @throws DialException if a format error occurs
+	 */
+	public static Domain extractDomainFile(String domainFile, String rootpath, 
+			Collection<String> filesToSkip) throws DialException {
+		Domain domain = new Domain();
+		domain.addSourceFile(domainFile);
+		Document doc = XMLUtils.getXMLDocument(domainFile);
+		Node mainNode = XMLUtils.getMainNode(doc);
+		NodeList firstElements = mainNode.getChildNodes();
+		for (int j = 0 ; j < firstElements.getLength() ; j++) {
+			Node node = firstElements.item(j);	
+			domain = extractPartialDomain(node, domain, rootpath, domainFile, filesToSkip);
 		}
 		return domain;
 	}
 
 
 
+	/**
+	 * Returns the files directly imported by the XML file of the domain.
+	 * 
+	 * @param domainFile the XML file
+	 * @param rootpath the root path of the domain (for the imports)
+	 * @return the imported files
+	 * @throws DialException if a format error occurs
+	 */
+	public static List<String> getImportedFiles(String domainFile, String rootpath) 
+			throws DialException {
+		List<String> importedFiles = new ArrayList<String>();
+		Node mainNode = XMLUtils.getMainNode(XMLUtils.getXMLDocument(domainFile));
+		NodeList firstElements = mainNode.getChildNodes();
+		for (int j = 0 ; j < firstElements.getLength() ; j++) {
+			Node node = firstElements.item(j);
+			if (node.getNodeName().equals("import") && node.hasAttributes() && 
+					node.getAttributes().getNamedItem("href") != null) {
+				String fileName = node.getAttributes().getNamedItem("href").getNodeValue();
+				importedFiles.add(rootpath + File.separator + fileName);
+			}
+		}
+		return importedFiles;
+	}
+
+
 	/**
 	 * Extracts a partially specified domain from the XML node and add its content
 	 * to the dialogue domain.
@@ -101,11 +157,14 @@ public class XMLDomainReader {
 	 * @param mainNode main XML node
 	 * @param domain dialogue domain
 	 * @param rootpath rooth path (necessary to handle references)
+	 * @param sourceFile the XML file containing the node
+	 * @param filesToSkip imported files that must not be extracted (can be null)
 	 * @return the augmented dialogue domain
 	 * @throws DialException
 	 */
 	private static Domain extractPartialDomain (Node mainNode, Domain domain, 
-			String rootpath) throws DialException {
+			String rootpath, String sourceFile, Collection<String> filesToSkip) 
+					throws DialException {
 
 		// extracting rule-based probabilistic model
 		if (mainNode.getNodeName().equals("domain")) {
@@ -113,7 +172,7 @@ public class XMLDomainReader {
 			NodeList firstElements = mainNode.getChildNodes();
 			for (int j = 0 ; j < firstElements.getLength() ; j++) {	
 				Node node = firstElements.item(j);	
-				domain = extractPartialDomain(node, domain, rootpath);
+				domain = extractPartialDomain(node, domain, rootpath, sourceFile, filesToSkip);
 			}
 		}
 
@@ -134,7 +193,7 @@ public class XMLDomainReader {
 		else if (mainNode.getNodeName().equals("model")) {
 			Model model = createModel(mainNode);
 			//		log.debug(model);
-			domain.addModel(model);
+			domain.addModel(model, sourceFile);
 		}
 
 		// extracting parameters
@@ -148,8 +207,13 @@ public class XMLDomainReader {
 				mainNode.getAttributes().getNamedItem("href") != null) {
 
 			String fileName = mainNode.getAttributes().getNamedItem("href").getNodeValue();	
-			Document subdoc = XMLUtils.getXMLDocument(rootpath+ File.separator + fileName);
-			domain = extractPartialDomain(XMLUtils.getMainNode(subdoc), domain, rootpath);		
+			String importedFile = rootpath + File.separator + fileName;
+			if (filesToSkip == null || !filesToSkip.contains(importedFile)) {
+				Document subdoc = XMLUtils.getXMLDocument(importedFile);
+				domain.addSourceFile(importedFile);
+				domain = extractPartialDomain(XMLUtils.getMainNode(subdoc), domain, 
+						rootpath, importedFile, filesToSkip);	
+			}
 		}
 
 
@@ -215,8 +215,8 @@ public class XMLRuleReader {
 			if (node.getAttributes().getNamedItem("value") != null) {
 				String valueStr = node.getAttributes().getNamedItem("value").getNodeValue();
 				Relation relation = getRelation(node);
-				if ((new Template(variable)).isUnderspecified() || (new Template(valueStr)).isUnderspecified()) {
-					condition = new TemplateCondition(new Template(variable), new Template(valueStr), relation);
+				if (Template.create(variable).isUnderspecified() || Template.create(valueStr).isUnderspecified()) {
+					condition = new TemplateCondition(Template.create(variable), Template.create(valueStr), relation);
 				}
 				else {
 					condition = new BasicCondition(variable, ValueFactory.create(valueStr), relation);
@@ -226,7 +226,7 @@ public class XMLRuleReader {
 			else if (node.getAttributes().getNamedItem("var2") !=null) {
 				String variable2 = node.getAttributes().getNamedItem("var2").getNodeValue();
 				Relation relation = getRelation(node);		
-				condition = new TemplateCondition(new Template(variable), new Template("{"+variable2+"}"), relation);
+				condition = new TemplateCondition(Template.create(variable), Template.create("{"+variable2+"}"), relation);
 			}
 			else {
 				throw new DialException("unrecognized format for condition ");
@@ -360,7 +360,7 @@ public class XMLRuleReader {
 				effects.add(subeffect);
 			}
 		}
-		return new Effect(effects);		
+		return Effect.create(effects);		
 	}
 
 
@@ -406,8 +406,8 @@ public class XMLRuleReader {
 			}
 		}
 		
-		Template tvar = new Template(var);
-		Template tval = new Template(value);
+		Template tvar = Template.create(var);
+		Template tval = Template.create(value);
 		if (tvar.isUnderspecified() || tval.isUnderspecified()) {
 			return new TemplateEffect(tvar, tval, type);
 		}
@@ -100,13 +100,13 @@ public class AnchoredRule {
 		Set<Template> templates = rule.getInputVariables().stream()
 				.collect(Collectors.toSet());
 		for (ChanceNode inputNode : state.getMatchingNodes(templates)) {
-			inputs.addValues(inputNode.getId(), inputNode.getValues());
+			inputs.addValues(inputNode.getId(), inputNode.getValuesView());
 		}
 
-		Set<Assignment> conditions = inputs.linearise();
+		Set<Assignment> conditions = rule.getCoveringInputs(inputs);
 
 		// determines the set of possible effects, output values and parameters
-		// (for all possible input values)
+		// (for a subset of input values covering all possible outputs)
 		effects = new HashSet<Effect>();
 		outputs = new ValueRange();
 		parameters = new HashSet<String>();
@@ -123,7 +123,7 @@ public class AnchoredRule {
 			}
 		}
 
-		effects.add(new Effect());
+		effects.add(Effect.create());
 
 
 		// special case to handle corner cases with utility rules
@@ -138,6 +138,37 @@ public class AnchoredRule {
 	}
 
 
+	/**
+	 * Returns true if the anchoring of the rule may be affected by changes of the 
+	 * dialogue state on the given nodes (that is, if anchoring the rule again after
+	 * these changes may lead to different results), and false otherwise.  Utility 
+	 * rules and rules with slots in their input variables are considered affected 
+	 * by any change, since their anchoring depends on the full dialogue state.
+	 * 
+	 * @param changedNodes the identifiers of the changed nodes
+	 * @return true if the anchored rule may be affected, false otherwise
+	 */
+	public boolean isAffectedBy(Collection<String> changedNodes) {
+		if (changedNodes.isEmpty()) {
+			return false;
+		}
+		else if (rule.getRuleType() == RuleType.UTIL) {
+			return true;
+		}
+		for (Template t : rule.getInputVariables()) {
+			if (!t.getSlots().isEmpty()) {
+				return true;
+			}
+			for (String changedNode : changedNodes) {
+				if (t.match(changedNode, true).isMatching()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+
 	/**
 	 * Returns true if the anchored rule is relevant (that is, it at least one matching rule
 	 * case is non-empty), and false otherwise.
@@ -28,7 +28,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -76,17 +79,29 @@ import org.w3c.dom.Node;
  */
 public class DialogueState extends BNetwork {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("DialogueState", Logger.Level.DEBUG);
 
 	// evidence values for state variables
 	Assignment evidence;
+	
+	// read-only view on the evidence
+	Assignment evidenceView;
 
 	/** Subset of variables that denote parameters */
 	Set<String> parameterVars;
 
 	/** Subset of variables that are currently incrementally constructed */
 	Set<String> incrementalVars;
+	
+	// ordered log of the updated variables (with a prime ') since the last 
+	// reduction of the state, mapped to the model or module at their origin
+	Map<String,String> updates = new LinkedHashMap<String,String>();
+	
+	// model or module currently updating the state (null if external)
+	String updateOrigin;
 
 	// ===================================
 	//  DIALOGUE STATE CONSTRUCTION
@@ -110,6 +125,7 @@ public class DialogueState extends BNetwork {
 		super();
 		super.reset(network);
 		evidence = new Assignment();
+		evidenceView = evidence.getUnmodifiableView();
 		parameterVars = new HashSet<String>();
 		incrementalVars = new HashSet<String>();
 	}
@@ -125,6 +141,7 @@ public class DialogueState extends BNetwork {
 		super();
 		super.reset(network);
 		this.evidence = new Assignment(evidence);
+		evidenceView = this.evidence.getUnmodifiableView();
 		parameterVars = new HashSet<String>();
 		incrementalVars = new HashSet<String>();
 	}
@@ -141,10 +158,62 @@ public class DialogueState extends BNetwork {
 			return;
 		}
 		evidence.removePairs(getChanceNodeIds());
+		Map<String,String> previousUpdates = new LinkedHashMap<String,String>(updates);
+		if (network instanceof DialogueState) {
+			((DialogueState)network).updates.forEach((k,v) -> previousUpdates.putIfAbsent(k, v));
+		}
+		updates.clear();
 		super.reset(network);
+		restoreUpdates(previousUpdates);
 		if (network instanceof DialogueState) {
-			evidence.addAssignment(((DialogueState)network).getEvidence());
+			evidence.addAssignment(((DialogueState)network).getEvidenceView());
+		}
+	}
+	
+	
+	/**
+	 * Adds a new node to the dialogue state.  If the node is a chance node with
+	 * a prime ' in its label, the variable is recorded as updated.
+	 * 
+	 * @param node the node to add
+	 */
+	@Override
+	public void addNode(BNode node) {
+		super.addNode(node);
+		if (node instanceof ChanceNode && node.getId().contains("'")) {
+			updates.remove(node.getId());
+			updates.put(node.getId(), updateOrigin);
+		}
+	}
+	
+	
+	/**
+	 * Removes a node from the dialogue state, given its identifier
+	 * 
+	 * @param nodeId the node identifier
+	 * @return the value for the node, if it exists
+	 */
+	@Override
+	public BNode removeNode(String nodeId) {
+		BNode node = super.removeNode(nodeId);
+		if (node instanceof ChanceNode) {
+			updates.remove(nodeId);
 		}
+		return node;
+	}
+	
+	
+	/**
+	 * Modifies the node identifier in the dialogue state.  Adding a prime ' to 
+	 * the identifier of a chance node marks the variable as updated.
+	 * 
+	 * @param oldNodeId the old node identifier
+	 * @param newNodeId the new node identifier
+	 */
+	@Override
+	public void modifyVariableId(String oldNodeId, String newNodeId) {
+		updates.remove(oldNodeId);
+		super.modifyVariableId(oldNodeId, newNodeId);
 	}
 
 
@@ -289,7 +358,7 @@ public class DialogueState extends BNetwork {
 	 */
 	public void addToState(DialogueState newState) throws DialException {
 		addToState((BNetwork)newState);
-		evidence.addAssignment(newState.getEvidence().addPrimes());
+		evidence.addAssignment(newState.getEvidenceView().addPrimes());
 	}
 
 
@@ -329,15 +398,36 @@ public class DialogueState extends BNetwork {
 	 * @throws DialException if the rule could not be applied.
 	 */
 	public void applyRule(Rule r) throws DialException {
+		applyRule(new AnchoredRule(r, this));
+	}
+	
+	
+	/**
+	 * Applies a rule that is already anchored in the dialogue state (see 
+	 * applyRule(Rule) for details), and returns the identifiers of the nodes that
+	 * were added, removed or modified by the rule application, together with the
+	 * identifiers of their descendants.
+	 * 
+	 * @param arule the anchored rule to apply
+	 * @return the identifiers of the changed nodes
+	 * @throws DialException if the rule could not be applied
+	 */
+	public Set<String> applyRule(AnchoredRule arule) throws DialException {
 
-		AnchoredRule arule = new AnchoredRule(r, this);
-
+		Rule r = arule.getRule();
+		Set<String> changedNodes = new HashSet<String>();
+		
 		// first case: new probability rule
 		if (r.getRuleType() == RuleType.PROB && arule.isRelevant()) {
+			changedNodes.add(r.getRuleId());
 			if (hasChanceNode(r.getRuleId())) {
-				getChanceNode(r.getRuleId()).getOutputNodes().stream()
-					.filter(n -> !n.getId().endsWith("'") && !hasChanceNode(n.getId()+"'"))
-					.forEach(n -> n.setId(n.getId()+"'"));
+				for (BNode n : getChanceNode(r.getRuleId()).getOutputNodes()) {
+					changedNodes.add(n.getId());
+					if (!n.getId().endsWith("'") && !hasChanceNode(n.getId()+"'")) {
+						n.setId(n.getId()+"'");
+						changedNodes.add(n.getId());
+					}
+				}
 				removeNode(r.getRuleId());
 			}
 			ProbabilityRuleNode ruleNode = new ProbabilityRuleNode(arule);
@@ -345,10 +435,12 @@ public class DialogueState extends BNetwork {
 			arule.getParameters().forEach(n -> ruleNode.addInputNode(n));
 			addNode(ruleNode);
 			addOutputNodes(ruleNode);
+			changedNodes.addAll(ruleNode.getOutputNodesIds());
 		}
 
 		// third case: utility rule
 		else if (r.getRuleType() == RuleType.UTIL && arule.isRelevant()){
+			changedNodes.add(r.getRuleId());
 			if (hasUtilityNode(r.getRuleId())) {
 				removeNode(r.getRuleId());
 			}
@@ -357,7 +449,15 @@ public class DialogueState extends BNetwork {
 			arule.getParameters().forEach(n -> ruleNode.addInputNode(n));
 			addNode(ruleNode);
 			addActionNodes(ruleNode);
+			changedNodes.addAll(ruleNode.getInputNodeIds());
 		}
+		
+		for (String changedNode : new ArrayList<String>(changedNodes)) {
+			if (hasNode(changedNode)) {
+				changedNodes.addAll(getNode(changedNode).getDescendantIds());
+			}
+		}
+		return changedNodes;
 	}
 
 
@@ -386,6 +486,18 @@ public class DialogueState extends BNetwork {
 	public Assignment getEvidence() {
 		return new Assignment(evidence);
 	}
+	
+	
+	/**
+	 * Returns a read-only view on the evidence associated with the dialogue state.
+	 * Contrary to getEvidence(), the assignment is not copied, and reflects the 
+	 * subsequent changes to the evidence.
+	 * 
+	 * @return a view on the assignment of values for the evidence
+	 */
+	public Assignment getEvidenceView() {
+		return evidenceView;
+	}
 
 
 
@@ -415,7 +527,7 @@ public class DialogueState extends BNetwork {
 
 			// if the distribution can be retrieved without inference, we simply return it
 			if (cn.getDistrib() instanceof IndependentProbDistribution
-					&& Collections.disjoint(cn.getClique(), evidence.getVariables())) {
+					&& Collections.disjoint(getComponentOf(variable), evidence.getVariables())) {
 				return (IndependentProbDistribution)cn.getDistrib();
 			}
 
@@ -519,10 +631,8 @@ public class DialogueState extends BNetwork {
 					t = t.fillSlots(new Assignment(slot,bestValue));
 				}
 			}
-			for (String currentVar : getChanceNodeIds()) {
-				if (t.match(currentVar, true).isMatching()) {
-					inputVars.add(getChanceNode(currentVar));
-				}
+			for (String currentVar : getChanceNodeIds(t)) {
+				inputVars.add(getChanceNode(currentVar));
 			}
 		}
 		return inputVars;
@@ -551,19 +661,71 @@ public class DialogueState extends BNetwork {
 
 	/**
 	 * Returns the set of updated variables in the dialogue state (that is, the
-	 * one that have a prime ' in their label.
+	 * one that have a prime ' in their label), in the order of their update.  The 
+	 * variables are directly tracked in the update log of the state, which is
+	 * emptied when the state is reduced.
 	 * 
 	 * @return the list of updated variables
 	 */
 	public Set<String> getNewVariables() {
-		Set<String> newVars = new HashSet<String>();
-		for (String var : getChanceNodeIds()) {
-			if (var.contains("'")) {
-				newVars.add(var.replace("'", ""));
-			}
+		Set<String> newVars = new LinkedHashSet<String>();
+		for (String var : updates.keySet()) {
+			newVars.add(var.replace("'", ""));
 		}
 		return newVars;
 	}
+	
+	
+	/**
+	 * Returns true if the dialogue state contains updated variables (see above),
+	 * and false otherwise.
+	 * 
+	 * @return true if the state has been updated since its last reduction
+	 */
+	public boolean hasNewVariables() {
+		return !updates.isEmpty();
+	}
+	
+	
+	/**
+	 * Returns the ordered log of the variables that have been added or updated since
+	 * the last reduction of the dialogue state.  Each variable (without its prime ')
+	 * is mapped to the identifier of the model or module that produced the update, or 
+	 * to null if the update was made outside of any model or module.
+	 * 
+	 * @return the log of updated variables, in the order of their update
+	 */
+	public Map<String,String> getUpdateLog() {
+		Map<String,String> updateLog = new LinkedHashMap<String,String>();
+		for (String var : updates.keySet()) {
+			String baseVar = var.replace("'", "");
+			updateLog.remove(baseVar);
+			updateLog.put(baseVar, updates.get(var));
+		}
+		return updateLog;
+	}
+	
+	
+	/**
+	 * Sets the model or module that is currently updating the dialogue state.  The
+	 * subsequent updates are recorded with this origin in the update log.
+	 * 
+	 * @param origin the identifier of the model or module (null if none)
+	 */
+	public void setUpdateOrigin(String origin) {
+		this.updateOrigin = origin;
+	}
+	
+	
+	/**
+	 * Returns the model or module that is currently updating the dialogue state (null
+	 * if none).
+	 * 
+	 * @return the identifier of the model or module
+	 */
+	public String getUpdateOrigin() {
+		return updateOrigin;
+	}
 
 
 	public boolean isIncremental(String var) {
@@ -586,7 +748,7 @@ public class DialogueState extends BNetwork {
 	 * 
 	 */
 	public void reduce() {
-		if (!getNewVariables().isEmpty() || !evidence.isEmpty()) {
+		if (hasNewVariables() || !evidence.isEmpty()) {
 			StatePruner.prune(this);
 		}
 	}
@@ -603,6 +765,7 @@ public class DialogueState extends BNetwork {
 		sn.addEvidence(evidence.copy());
 		sn.parameterVars = new HashSet<String>(parameterVars);
 		sn.incrementalVars = new HashSet<String>(incrementalVars);
+		sn.restoreUpdates(updates);
 		return sn;
 	}
 
@@ -738,6 +901,24 @@ public class DialogueState extends BNetwork {
 
 
 
+	/**
+	 * Restores the order and origins of the update log from a previous version 
+	 * of the log, for the updated variables that are still present in the state. 
+	 * 
+	 * @param previousUpdates the previous update log
+	 */
+	private void restoreUpdates(Map<String,String> previousUpdates) {
+		Map<String,String> restored = new LinkedHashMap<String,String>();
+		previousUpdates.forEach((var, origin) -> {
+			if (updates.containsKey(var)) {
+				restored.put(var, origin);
+			}
+		});
+		updates.forEach((var, origin) -> restored.putIfAbsent(var, origin));
+		updates = restored;
+	}
+	
+	
 	/**
 	 * Connects the chance node to its prior predictions (if any).
 	 * 
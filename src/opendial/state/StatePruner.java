@@ -125,13 +125,13 @@ public class StatePruner {
 			else if (ENABLE_PRUNING & node instanceof ProbabilityRuleNode) {
 				continue;
 			}
-			else if (node.getInputNodeIds().size() < 3 
+			else if (node.getInputNodeIdsView().size() < 3 
 					&& node.getNbValues() == 1 
-					&& node.getValues().iterator().next().equals(ValueFactory.none())) {
+					&& node.getValuesView().iterator().next().equals(ValueFactory.none())) {
 				continue;
 			}
 			else if (node.getId().endsWith("^p") && 
-					node.getOutputNodesIds().stream().anyMatch(i -> i.startsWith("=_"))) {
+					node.getOutputNodesIdsView().stream().anyMatch(i -> i.startsWith("=_"))) {
 				continue;
 			}
 			// keeping the newest nodes
@@ -146,7 +146,7 @@ public class StatePruner {
 			}
 
 			if (state.getParameterIds().contains(node.getId())
-					&& !node.hasDescendant(state.getEvidence().getVariables())) {
+					&& !node.hasDescendant(state.getEvidenceView().getVariables())) {
 				nodesToKeep.addAll(node.getOutputNodesIds(ProbabilityRuleNode.class));				
 			} 
 		} 
@@ -174,7 +174,7 @@ public class StatePruner {
 	private static DialogueState reduce(DialogueState state, 
 			Set<String> nodesToKeep) throws DialException {
 
-		Assignment evidence = state.getEvidence();
+		Assignment evidence = state.getEvidenceView();
 		// if the current network can be returned as such, do it
 		if (nodesToKeep.containsAll(state.getNodeIds())) {
 			return state;
@@ -194,7 +194,7 @@ public class StatePruner {
 
 		// if the network can be divided into cliques, extract the cliques
 		// and do a separate reduction for each
-		else if (state.getCliques().size() > 1) {
+		else if (state.getComponents().size() > 1) {
 			DialogueState fullState = new DialogueState();
 			fullState.incrementalVars = state.incrementalVars;
 			for (BNetwork clique : state.createCliques()) {
@@ -218,7 +218,7 @@ public class StatePruner {
 
 
 		// else, select the best reduction algorithm and performs the reduction
-		BNetwork result =new SwitchingAlgorithm().reduce(state, nodesToKeep, state.getEvidence());
+		BNetwork result =new SwitchingAlgorithm().reduce(state, nodesToKeep, state.getEvidenceView());
 		return new DialogueState(result);
 	}
 	
@@ -295,14 +295,14 @@ public class StatePruner {
 		for (ChanceNode node: new HashSet<ChanceNode>(reduced.getChanceNodes())) {
 
 			// if the node only contain a None value, prunes it
-			if (node.getInputNodes().isEmpty() && node.getOutputNodes().isEmpty() 
+			if (node.getInputNodesView().isEmpty() && node.getOutputNodesView().isEmpty() 
 					&& node.getDistrib() instanceof CategoricalTable 
 					&& node.getProb(ValueFactory.none())> 0.99) {
 				reduced.removeNode(node.getId());
 				continue;
 			}
 			else if (node.getDistrib() instanceof EquivalenceDistribution 
-					&& node.getInputNodeIds().isEmpty()) {
+					&& node.getInputNodeIdsView().isEmpty()) {
 				reduced.removeNode(node.getId());
 			}
 			// prune values with a probability below the threshold
@@ -310,15 +310,15 @@ public class StatePruner {
 
 			// if the node only contains a single (non-none) value, remove outgoing dependency
 			// edges (as the dependency relation is in this case superfluous)
-			if (node.getInputNodeIds().isEmpty() && node.getNbValues() == 1
-					&& !node.getOutputNodes().isEmpty() 
+			if (node.getInputNodeIdsView().isEmpty() && node.getNbValues() == 1
+					&& !node.getOutputNodesView().isEmpty() 
 					&& reduced.getUtilityNodeIds().isEmpty()
 					&& !reduced.isIncremental(node.getId())) {
 				Assignment onlyAssign = new Assignment(node.getId(), node.sample());
 				for (ChanceNode outputNode : node.getOutputNodes(ChanceNode.class)) {
 					ProbDistribution curDistrib = outputNode.getDistrib();
 					outputNode.removeInputNode(node.getId());
-					if (outputNode.getInputNodeIds().isEmpty()) {
+					if (outputNode.getInputNodeIdsView().isEmpty()) {
 						outputNode.setDistrib(curDistrib.getProbDistrib(onlyAssign));
 					}
 					else {
@@ -56,6 +56,8 @@ import opendial.datastructs.ValueRange;
  */
 public class EquivalenceDistribution implements ProbDistribution {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("EquivalenceDistribution", Logger.Level.DEBUG);
 
@@ -53,6 +53,8 @@ import opendial.domains.rules.effects.Effect;
  */
 public class OutputDistribution implements ProbDistribution {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("OutputDistribution", Logger.Level.DEBUG);
 
@@ -23,7 +23,10 @@
 
 package opendial.state.distribs;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import opendial.arch.DialException;
@@ -33,6 +36,7 @@ import opendial.bn.distribs.ProbDistribution;
 import opendial.bn.distribs.MarginalDistribution;
 import opendial.bn.values.Value;
 import opendial.datastructs.Assignment;
+import opendial.datastructs.LRUCache;
 import opendial.datastructs.ValueRange;
 import opendial.domains.rules.RuleOutput;
 import opendial.domains.rules.Rule.RuleType;
@@ -49,13 +53,21 @@ import opendial.state.AnchoredRule;
  */
 public class RuleDistribution implements ProbDistribution {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("RuleDistribution", Logger.Level.DEBUG);
 
+	// maximum number of output tables in the cache
+	public static final int MAX_CACHED_TABLES = 200;
+
 	String id;
 
 	AnchoredRule arule;
 
+	// cache of the output tables (without the variable label) for each rule input
+	LRUCache<Assignment,Map<Value,Double>> cache;
+
 	// ===================================
 	//  DISTRIBUTION CONSTRUCTION
 	// ===================================
@@ -76,7 +88,11 @@ public class RuleDistribution implements ProbDistribution {
 					"rule-based probability distribution");
 		}
 		id = rule.getRule().getRuleId();
-
+		
+		// the output tables of rules with stochastic parameters depend on the
+		// (continuous) parameter values, and are therefore not cached
+		int capacity = (rule.getRule().getParameterIds().isEmpty())? MAX_CACHED_TABLES : 0;
+		cache = new LRUCache<Assignment,Map<Value,Double>>(capacity);
 	}
 
 
@@ -179,39 +195,39 @@ public class RuleDistribution implements ProbDistribution {
 	}
 
 
+	/**
+	 * Returns the output table associated with the given input assignment.  For 
+	 * rules without stochastic parameters, the table only depends on the values 
+	 * of the rule inputs, and is cached.
+	 * 
+	 * @param input the input assignment
+	 * @return the output table
+	 * @throws DialException if the table could not be calculated
+	 */
 	@Override
 	public CategoricalTable getProbDistrib(Assignment input) throws DialException {
 
-		// search for the matching case
-
 		Assignment ruleInput = input.getTrimmed(arule.getInputs().getVariables());
-		RuleOutput output = arule.getRule().getOutput(ruleInput);
-
-		// creating the distribution
-		double totalMass = output.getTotalMass(input);
-		CategoricalTable probTable = new CategoricalTable(id, false);
-		if (totalMass < 0.99) {
-			probTable.addRow(new Effect(), 1.0 - totalMass);
-			totalMass = 1.0;
-		}	
-		
-		for (Effect e : output.getEffects()) {
-			double param = output.getParameter(e).getParameterValue(input) / totalMass;
-			if (param > 0) {
-				probTable.addRow(e, param);
-			}
-		}
-
-		if (probTable.isEmpty()) {
-			log.warning("probability table is empty (no effects) for "
-					+ "input " +	input + " and rule " + arule.toString());
-			log.debug("output was " + output + " and effect " + output.getEffects());
+		Map<Value,Double> rows = cache.get(ruleInput);
+		if (rows == null) {
+			rows = getOutputRows(ruleInput, input);
+			cache.put(ruleInput, rows);
 		}
-
+		CategoricalTable probTable = new CategoricalTable(id, false);
+		probTable.addRows(rows);
 		return probTable;
 	}
 
 
+	/**
+	 * Returns the cache of output tables for the distribution.
+	 * 
+	 * @return the cache of output tables
+	 */
+	public LRUCache<Assignment,Map<Value,Double>> getOutputCache() {
+		return cache;
+	}
+
 	// ===================================
 	//  UTILITY METHODS
 	// ===================================
@@ -228,7 +244,8 @@ public class RuleDistribution implements ProbDistribution {
 	}
 
 	/**
-	 * Returns a copy of the distribution
+	 * Returns a copy of the distribution (sharing the cache of output tables, 
+	 * since the anchored rule is the same)
 	 * 
 	 * @return the copy
 	 */
@@ -236,6 +253,7 @@ public class RuleDistribution implements ProbDistribution {
 	public RuleDistribution copy() {
 		try { 
 			RuleDistribution distrib = new RuleDistribution (arule);
+			distrib.cache = cache;
 			return distrib;
 		} 
 		catch (DialException e) { e.printStackTrace(); return null; }
@@ -255,5 +273,48 @@ public class RuleDistribution implements ProbDistribution {
 
 
 
+	// ===================================
+	//  PRIVATE METHODS
+	// ===================================
+
+
+	/**
+	 * Computes the rows of the output table for the rule input (the full input 
+	 * assignment being used to determine the parameter values).
+	 * 
+	 * @param ruleInput the input trimmed to the rule inputs
+	 * @param input the full input assignment
+	 * @return the (unmodifiable) rows of the output table
+	 * @throws DialException if the rows could not be calculated
+	 */
+	private Map<Value,Double> getOutputRows(Assignment ruleInput, Assignment input) 
+			throws DialException {
+
+		// search for the matching case
+		RuleOutput output = arule.getRule().getOutput(ruleInput);
+
+		// creating the distribution
+		double totalMass = output.getTotalMass(input);
+		Map<Value,Double> rows = new HashMap<Value,Double>();
+		if (totalMass < 0.99) {
+			rows.put(Effect.create(), 1.0 - totalMass);
+			totalMass = 1.0;
+		}	
+
+		for (Effect e : output.getEffects()) {
+			double param = output.getParameter(e).getParameterValue(input) / totalMass;
+			if (param > 0) {
+				rows.put(e, param);
+			}
+		}
+
+		if (rows.isEmpty()) {
+			log.warning("probability table is empty (no effects) for "
+					+ "input " +	input + " and rule " + arule.toString());
+			log.debug("output was " + output + " and effect " + output.getEffects());
+		}
+
+		return Collections.unmodifiableMap(rows);
+	}
 
 }
@@ -44,6 +44,8 @@ import opendial.state.AnchoredRule;
  */
 public class RuleUtilDistribution implements UtilityFunction {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("RuleUtilDistribution", Logger.Level.DEBUG);
 
@@ -45,6 +45,8 @@ import opendial.state.distribs.RuleDistribution;
  */
 public class ProbabilityRuleNode extends ChanceNode {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("RuleNode", Logger.Level.DEBUG);
 
@@ -73,13 +75,15 @@ public class ProbabilityRuleNode extends ChanceNode {
 	 */
 	@Override
 	public Set<Value> getValues() {
-		if (cachedValues == null) {
-			cachedValues = new HashSet<Value>();
+		Set<Value> values = cachedValues;
+		if (values == null) {
+			values = new HashSet<Value>();
 			for (Effect e : rule.getEffects()) {
-				cachedValues.add(e);
+				values.add(e);
 			}
+			cachedValues = values;
 		}
-		return cachedValues;
+		return values;
 	}
 
 
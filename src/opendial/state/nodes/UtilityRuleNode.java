@@ -40,6 +40,8 @@ import opendial.state.distribs.RuleUtilDistribution;
  */
 public class UtilityRuleNode extends UtilityNode {
 
+	private static final long serialVersionUID = 1L;
+
 	// logger
 	public static Logger log = new Logger("UtilityRuleNode", Logger.Level.DEBUG);
 
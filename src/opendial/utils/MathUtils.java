@@ -27,6 +27,8 @@ package opendial.utils;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.IntStream;
 
 import javax.script.ScriptEngine;
@@ -46,6 +48,12 @@ public class MathUtils {
 	// logger
 	public static Logger log = new Logger("MathUtils", Logger.Level.DEBUG);
 
+	// maximum number of expressions in the cache
+	public static final int MAX_CACHED_EXPRESSIONS = 1000;
+
+	// cache of the evaluated expressions
+	static Map<String,Double> expressions = new ConcurrentHashMap<String,Double>();
+
 
 	/**
 	 * Returns true is all elements in the array a have a lower value than
@@ -110,19 +118,53 @@ public class MathUtils {
 	
 	/**
 	 * Parse basic mathematical expressions comprised of two numbers joined by
-	 * a binary operator, such as 1+1, 3-2,3*7 or 6/2.
+	 * a binary operator, such as 1+1, 3-2,3*7 or 6/2.  The expressions are 
+	 * parsed once by a small arithmetic parser (with the Javascript engine as
+	 * fallback) and their results are cached.  If the expression cannot be
+	 * evaluated, the method returns 0.0 (and the failure is not cached).
 	 * 
 	 * @param expression the mathematical expression as a string
 	 * @return the result of the evaluation
 	 */
 	public static double evaluateExpression(String expression) {
+		Double result = expressions.get(expression);
+		if (result == null) {
+			result = new ExpressionParser(expression).parse();
+			if (result == null) {
+				result = evaluateScript(expression);
+			}
+			if (result == null) {
+				return 0.0;
+			}
+			if (expressions.size() >= MAX_CACHED_EXPRESSIONS) {
+				expressions.clear();
+			}
+			expressions.put(expression, result);
+		}
+		return result;
+	}
+
+	
+	/**
+	 * Evaluates the expression with the Javascript engine (if available). This 
+	 * is only used for the expressions that are not covered by the arithmetic
+	 * parser.
+	 * 
+	 * @param expression the mathematical expression as a string
+	 * @return the result of the evaluation, or null if it could not be evaluated
+	 */
+	private static Double evaluateScript(String expression) {
 		ScriptEngineManager manager = new ScriptEngineManager();
-	    ScriptEngine engine = manager.getEngineByName("js");        
+	    ScriptEngine engine = manager.getEngineByName("js");   
+	    if (engine == null) {
+	    	log.warning("cannot evaluation expression: " + expression);
+	    	return null;
+	    }
 	    try {
 			return Double.parseDouble(engine.eval(expression).toString());
 		} catch (NumberFormatException | ScriptException e) {
 			log.warning("cannot evaluation expression: " + expression);
-			return 0.0;
+			return null;
 		}
 	}
 
@@ -168,6 +210,154 @@ public class MathUtils {
 		double denum = gamma((dimension/2.0) + 1);
 		double radius2 = Math.pow(radius, dimension);
 		return radius2*numerator/denum;
-	} 
+	}
+	
+	
+	/**
+	 * Recursive-descent parser for arithmetic expressions over numbers, with the 
+	 * operators +, -, *, / and % and parentheses (evaluated as in Javascript).
+	 */
+	private static final class ExpressionParser {
+		
+		// the expression
+		final String expression;
+		
+		// current position in the expression
+		int pos = 0;
+		
+		/**
+		 * Creates a parser for the expression
+		 * 
+		 * @param expression the expression
+		 */
+		ExpressionParser(String expression) {
+			this.expression = expression;
+		}
+		
+		/**
+		 * Returns the value of the expression, or null if the expression could not
+		 * be parsed.
+		 * 
+		 * @return the value of the expression, or null
+		 */
+		Double parse() {
+			if (expression.contains("--") || expression.contains("++")) {
+				return null;
+			}
+			try {
+				double value = parseSum();
+				skipWhitespaces();
+				return (pos == expression.length())? value : null;
+			}
+			catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		
+		/**
+		 * Parses a sequence of additions and subtractions.
+		 * 
+		 * @return the value of the sequence
+		 */
+		double parseSum() {
+			double value = parseProduct();
+			while (true) {
+				if (accept('+')) {
+					value += parseProduct();
+				}
+				else if (accept('-')) {
+					value -= parseProduct();
+				}
+				else {
+					return value;
+				}
+			}
+		}
+		
+		/**
+		 * Parses a sequence of multiplications, divisions and remainders.
+		 * 
+		 * @return the value of the sequence
+		 */
+		double parseProduct() {
+			double value = parseFactor();
+			while (true) {
+				if (accept('*')) {
+					value *= parseFactor();
+				}
+				else if (accept('/')) {
+					value /= parseFactor();
+				}
+				else if (accept('%')) {
+					value %= parseFactor();
+				}
+				else {
+					return value;
+				}
+			}
+		}
+		
+		/**
+		 * Parses a number, a signed factor or a parenthesised expression.
+		 * 
+		 * @return the value of the factor
+		 */
+		double parseFactor() {
+			if (accept('-')) {
+				return -parseFactor();
+			}
+			else if (accept('+')) {
+				return parseFactor();
+			}
+			else if (accept('(')) {
+				double value = parseSum();
+				if (!accept(')')) {
+					throw new NumberFormatException("missing parenthesis");
+				}
+				return value;
+			}
+			int start = pos;
+			while (pos < expression.length() && (Character.isDigit(expression.charAt(pos)) 
+					|| expression.charAt(pos) == '.')) {
+				pos++;
+			}
+			if (pos < expression.length() && (expression.charAt(pos) == 'e' 
+					|| expression.charAt(pos) == 'E') && pos > start) {
+				pos++;
+				if (pos < expression.length() && (expression.charAt(pos) == '+' 
+						|| expression.charAt(pos) == '-')) {
+					pos++;
+				}
+				while (pos < expression.length() && Character.isDigit(expression.charAt(pos))) {
+					pos++;
+				}
+			}
+			return Double.parseDouble(expression.substring(start, pos));
+		}
+		
+		/**
+		 * Skips the whitespaces and moves past the character if it is the next one
+		 * in the expression.
+		 * 
+		 * @param c the character
+		 * @return true if the character was found, false otherwise
+		 */
+		boolean accept(char c) {
+			skipWhitespaces();
+			if (pos < expression.length() && expression.charAt(pos) == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+		
+		/**
+		 * Skips the whitespaces at the current position.
+		 */
+		void skipWhitespaces() {
+			while (pos < expression.length() && Character.isWhitespace(expression.charAt(pos))) {
+				pos++;
+			}
+		}
+	}
 }
-
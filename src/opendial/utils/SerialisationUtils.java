@@ -0,0 +1,83 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+                                                                            
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.utils;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+
+import opendial.arch.Logger;
+
+
+/**
+ * Utilities for reading serialised objects (such as the precompiled domains and
+ * the policy tables).  The objects are read through a filter that only accepts 
+ * the classes of the dialogue system and the standard classes they rely on 
+ * (strings, boxed primitives, collections and patterns), and that bounds the 
+ * depth of the object graph and the length of the arrays.  Any other class in 
+ * the stream is rejected before its instantiation.
+ * 
+ * @author  Pierre Lison (plison@ifi.uio.no)
+ */
+public class SerialisationUtils {
+
+	// logger
+	public static Logger log = new Logger("SerialisationUtils", Logger.Level.DEBUG);
+
+	// maximum depth of the object graph
+	public static final int MAX_DEPTH = 2000;
+
+	// maximum length of the arrays
+	public static final int MAX_ARRAY_LENGTH = 1000000;
+
+	// filter for the accepted classes
+	static final ObjectInputFilter filter = ObjectInputFilter.Config.createFilter(
+			"maxdepth=" + MAX_DEPTH + ";maxarray=" + MAX_ARRAY_LENGTH + ";"
+			+ "opendial.**;"
+			+ "java.lang.Object;java.lang.String;java.lang.Number;java.lang.Enum;java.lang.Boolean;"
+			+ "java.lang.Character;java.lang.Byte;java.lang.Short;java.lang.Integer;"
+			+ "java.lang.Long;java.lang.Float;java.lang.Double;"
+			+ "java.util.*;java.util.concurrent.*;java.util.concurrent.atomic.*;"
+			+ "java.util.concurrent.locks.*;"
+			+ "java.util.regex.Pattern;"
+			+ "!*");
+
+
+	/**
+	 * Creates an object input stream reading from the given stream, where only the
+	 * accepted classes can be deserialised.
+	 * 
+	 * @param in the underlying input stream
+	 * @return the filtered object input stream
+	 * @throws IOException if the stream could not be created
+	 */
+	public static ObjectInputStream createInputStream(InputStream in) throws IOException {
+		ObjectInputStream objectIn = new ObjectInputStream(in);
+		objectIn.setObjectInputFilter(filter);
+		return objectIn;
+	}
+
+}
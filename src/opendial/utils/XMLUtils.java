@@ -31,6 +31,7 @@ import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.net.URL;
 import java.util.Vector;
+import java.util.zip.CRC32;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -101,6 +102,32 @@ public class XMLUtils {
 	}
 	
 
+	/**
+	 * Returns the checksum of the file (which may also be a resource).
+	 * 
+	 * @param file the file
+	 * @return the CRC32 checksum of the file content
+	 * @throws DialException if the file could not be read
+	 */
+	public static long getChecksum(String file) throws DialException {
+		CRC32 crc = new CRC32();
+		try (InputStream is = (new File(file).exists())? new FileInputStream(file) 
+				: XMLUtils.class.getResourceAsStream("/"+file.replace("//", "/"))) {
+			if (is == null) {
+				throw new DialException("Resource cannot be found: " + file);
+			}
+			byte[] buffer = new byte[8192];
+			for (int n = is.read(buffer) ; n >= 0 ; n = is.read(buffer)) {
+				crc.update(buffer, 0, n);
+			}
+		}
+		catch (IOException e) {
+			throw new DialException("cannot read " + file + ": " + e);
+		}
+		return crc.getValue();
+	}
+
+
 	/**
 	 * Opens the XML document referenced by the input source, and returns it
 	 * 
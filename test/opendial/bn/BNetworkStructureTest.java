@@ -28,6 +28,8 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.regex.Pattern;
 
 import opendial.arch.DialException;
 import opendial.arch.Logger;
@@ -40,6 +42,7 @@ import opendial.bn.nodes.UtilityNode;
 import opendial.bn.values.ValueFactory;
 import opendial.common.NetworkExamples;
 import opendial.datastructs.Assignment;
+import opendial.datastructs.Template;
 
 import org.junit.Test;
  
@@ -294,6 +297,23 @@ public class BNetworkStructureTest {
 		assertEquals("a_m.place'", bn2.getSortedNodes().get(0).getId());			
 	}
 	
+	@Test
+	public void testSortedNodesUpdate() throws DialException {
+		BNetwork bn = NetworkExamples.constructBasicNetwork();
+		assertEquals("JohnCalls", bn.getSortedNodesIds().get(1));
+		bn.getNode("JohnCalls").removeInputNode("Alarm");
+		assertEquals("JohnCalls", bn.getSortedNodesIds().get(4));
+		assertEquals("Alarm", bn.getSortedNodesIds().get(3));
+		bn.getNode("JohnCalls").addInputNode(bn.getNode("MaryCalls"));
+		assertEquals("JohnCalls", bn.getSortedNodesIds().get(0));
+		assertEquals("MaryCalls", bn.getSortedNodesIds().get(1));
+		bn.getNode("MaryCalls").setId("MaryCalls2");
+		assertEquals("MaryCalls2", bn.getSortedNodesIds().get(1));
+		bn.removeNode("JohnCalls");
+		assertEquals(7, bn.getSortedNodes().size());
+		assertEquals("MaryCalls2", bn.getSortedNodesIds().get(0));
+	}
+	
 /** 	@throws DialException 
  * @Test
 	public void derivedActionNodes () throws DialException {
@@ -324,4 +344,83 @@ public class BNetworkStructureTest {
 		assertEquals(1, bn.getCliques().get(1).size());
 		assertEquals(1, bn.getCliques().get(0).size());		
 	}
+	
+	@Test
+	public void testViews() throws DialException {
+		BNetwork bn = NetworkExamples.constructBasicNetwork();
+		BNode alarm = bn.getNode("Alarm");
+		assertEquals(alarm.getInputNodeIds(), alarm.getInputNodeIdsView());
+		assertEquals(alarm.getOutputNodesIds(), alarm.getOutputNodesIdsView());
+		assertEquals(2, alarm.getInputNodesView().size());
+		bn.getNode("JohnCalls").removeInputNode("Alarm");
+		assertEquals(1, alarm.getOutputNodesIdsView().size());
+		assertEquals(alarm.getValues(), alarm.getValuesView());
+		try {
+			alarm.getInputNodeIdsView().clear();
+			assertTrue(false);
+		}
+		catch (UnsupportedOperationException e) { }
+		assertEquals(2, alarm.getInputNodesView().size());
+	}
+	
+	@Test
+	public void testComponents() throws DialException {
+		BNetwork bn = NetworkExamples.constructBasicNetwork();
+		assertEquals(1, bn.getComponents().size());
+		assertEquals(8, bn.getComponentOf("MaryCalls").size());
+		bn.getNode("Alarm").removeInputNode("Burglary");
+		bn.getNode("Alarm").removeInputNode("Earthquake");
+		assertEquals(3, bn.getComponents().size());
+		assertEquals(3, bn.getComponentOf("MaryCalls").size());
+		assertTrue(bn.getComponentOf("Earthquake").contains("Earthquake"));
+		bn.getNode("MaryCalls").addInputNode(bn.getNode("Earthquake"));
+		assertEquals(2, bn.getComponents().size());
+		assertEquals(4, bn.getComponentOf("Alarm").size());
+		bn.removeNode("MaryCalls");
+		assertEquals(3, bn.getComponents().size());
+		bn.getNode("Alarm").setId("Alarm2");
+		assertTrue(bn.getComponentOf("JohnCalls").contains("Alarm2"));
+		assertEquals(0, bn.getComponentOf("Alarm").size());
+	}
+	
+	@Test
+	public void testReachability() throws DialException {
+		BNetwork bn = NetworkExamples.constructBasicNetwork();
+		BNode alarm = bn.getNode("Alarm");
+		assertTrue(alarm.hasAncestor(new HashSet<String>(Arrays.asList("Burglary"))));
+		assertFalse(alarm.hasAncestor(new HashSet<String>(Arrays.asList("Action", "MaryCalls"))));
+		assertTrue(bn.getNode("Burglary").hasDescendant(new HashSet<String>(Arrays.asList("JohnCalls"))));
+		assertTrue(bn.getNode("Earthquake").hasDescendant(Pattern.compile("Mary.*")));
+		assertEquals(new HashSet<String>(Arrays.asList("Alarm")), 
+				bn.getNode("JohnCalls").getAncestorsIds(Arrays.asList("Alarm", "Burglary")));
+		assertEquals(new HashSet<String>(Arrays.asList("MaryCalls", "JohnCalls")), 
+				bn.getNode("Earthquake").getDescendantsIds(Arrays.asList("MaryCalls", "JohnCalls")));
+		assertTrue(bn.getReachabilityIndex().covers(alarm));
+		bn.getNode("MaryCalls").removeInputNode("Alarm");
+		assertFalse(bn.getNode("Earthquake").hasDescendant(Pattern.compile("Mary.*")));
+		bn.getNode("MaryCalls").addInputNode(bn.getNode("Earthquake"));
+		assertTrue(bn.getNode("Earthquake").hasDescendant(Pattern.compile("Mary.*")));
+		assertTrue(bn.getNode("JohnCalls").compareTo(bn.getNode("Alarm")) < 0);
+	}
+	
+	@Test
+	public void testNodeIdIndex() throws DialException {
+		BNetwork bn = NetworkExamples.constructBasicNetwork();
+		assertEquals(new HashSet<String>(Arrays.asList("MaryCalls")), 
+				new HashSet<String>(bn.getChanceNodeIds(Template.create("marycalls"))));
+		assertEquals(new HashSet<String>(Arrays.asList("MaryCalls", "JohnCalls")), 
+				new HashSet<String>(bn.getChanceNodeIds(Template.create("{X}Calls"))));
+		assertEquals(new HashSet<String>(Arrays.asList("Alarm")), 
+				new HashSet<String>(bn.getChanceNodeIds(Template.create("Al*"))));
+		bn.getNode("Alarm").setId("Alarm2");
+		bn.addNode(new ChanceNode("Alpha"));
+		assertEquals(new HashSet<String>(Arrays.asList("Alarm2", "Alpha")), 
+				new HashSet<String>(bn.getChanceNodeIds(Template.create("Al*"))));
+		bn.removeNode("MaryCalls");
+		assertEquals(new HashSet<String>(Arrays.asList("JohnCalls")), 
+				new HashSet<String>(bn.getChanceNodeIds(Template.create("{X}Calls"))));
+		assertEquals(0, bn.getChanceNodeIds(Template.create("Alarm")).size());
+		assertEquals("al", Template.create("Al{X}").getLiteralPrefix());
+		assertEquals("", Template.create("(Alarm|Burglary)").getLiteralPrefix());
+	}
 }
@@ -97,6 +97,33 @@ public class ValueTest {
 				-ValueFactory.create(5).compareTo(ValueFactory.create("test")));		
 	}
 	
+	@Test
+	public void testListOperations() {
+		ListVal list = ValueFactory.create(Arrays.asList(ValueFactory.create("a"), 
+				ValueFactory.create("b"), ValueFactory.create("c")));
+		ListVal copy = list.copy();
+		list.add(ValueFactory.create("b"));
+		list.addAll(ValueFactory.create(Arrays.asList(ValueFactory.create(2.0))));
+		assertEquals("[a, b, c, b, 2]", list.toString());
+		assertEquals("[a, b, c]", copy.toString());
+		assertTrue(list.contains(ValueFactory.create(2.0000001)));
+		list.removeAll(new HashSet<Value>(Arrays.asList(ValueFactory.create("b"))));
+		list.remove(ValueFactory.create(2.0));
+		assertEquals(Arrays.asList(ValueFactory.create("a"), ValueFactory.create("c")), list.getList());
+		assertEquals(Arrays.asList(ValueFactory.create("a"), ValueFactory.create("c")).hashCode(), 
+				list.hashCode());
+		assertEquals(ValueFactory.create("[a,c]"), list);
+		assertFalse(list.contains(ValueFactory.create("b")));
+		assertEquals(ValueFactory.create(ValueFactory.create(1.0)), 
+				ValueFactory.create(ValueFactory.create(1.0000001)));
+		assertEquals(ValueFactory.create(ValueFactory.create(new double[]{1})), 
+				ValueFactory.create(ValueFactory.create(new double[]{1})));
+		list.add(ValueFactory.create(new double[]{1}));
+		assertTrue(list.contains(ValueFactory.create(new double[]{1})));
+		list.removeAll(new ArrayList<Value>(Arrays.asList(ValueFactory.create(new double[]{1}))));
+		assertEquals(2, list.getList().size());
+	}
+	
 	
 	public void testClosest() {
 		CategoricalTable table = new CategoricalTable("v");
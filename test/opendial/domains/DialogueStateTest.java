@@ -23,16 +23,37 @@
 
 package opendial.domains;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 import opendial.DialogueSystem;
 import opendial.arch.DialException;
 import opendial.arch.Logger;
 import opendial.common.InferenceChecks;
+import opendial.datastructs.Assignment;
 import opendial.domains.rules.effects.Effect;
 import opendial.modules.core.ForwardPlanner;
+import opendial.readers.BinaryDomainReader;
 import opendial.readers.XMLDomainReader;
 import opendial.state.DialogueState;
 import opendial.state.StatePruner;
+import opendial.utils.SerialisationUtils;
 
 import org.junit.Test;
 
@@ -105,6 +126,121 @@ public class DialogueStateTest {
 		
 		
 	}
+	
+	
+	@Test
+	public void testUpdateLog() throws DialException {
+		
+		DialogueState state = new DialogueState();
+		state.addToState(new Assignment("a_u", "Greet"));
+		state.setUpdateOrigin("model1");
+		state.addToState(new Assignment("a_m", "Greet"));
+		state.addToState(new Assignment("u_m", "Hi"));
+		state.setUpdateOrigin(null);
+		assertEquals(Arrays.asList("a_u", "a_m", "u_m"), new ArrayList<String>(state.getNewVariables()));
+		assertNull(state.getUpdateLog().get("a_u"));
+		assertEquals("model1", state.getUpdateLog().get("u_m"));
+		
+		state.addToState(new Assignment("a_m", "Bye"));
+		assertEquals(Arrays.asList("a_u", "u_m", "a_m"), new ArrayList<String>(state.getNewVariables()));
+		DialogueState copy = state.copy();
+		assertEquals(state.getUpdateLog(), copy.getUpdateLog());
+		assertEquals(new ArrayList<String>(state.getNewVariables()), 
+				new ArrayList<String>(copy.getNewVariables()));
+		
+		state.reduce();
+		assertFalse(state.hasNewVariables());
+		assertTrue(state.getUpdateLog().isEmpty());
+		assertTrue(copy.hasNewVariables());
+		state.getChanceNode("a_u").setId("a_u'");
+		assertEquals(Arrays.asList("a_u"), new ArrayList<String>(state.getNewVariables()));
+	}
+	
+	
+	@Test
+	public void testParallelModels() throws DialException {
+		
+		DialogueSystem serial = new DialogueSystem(domain);
+		DialogueSystem parallel = new DialogueSystem(domain);
+		for (DialogueSystem system : Arrays.asList(serial, parallel)) {
+			system.detachModule(ForwardPlanner.class);
+			system.getSettings().showGUI = false;
+		}
+		parallel.getSettings().parallelModels = true;
+		serial.startSystem();
+		parallel.startSystem();
+		
+		for (String utterance : Arrays.asList("hello", "blabla", "hello hi")) {
+			Assignment input = new Assignment(new Assignment("u_u", utterance), 
+					new Assignment("u_u2", utterance), new Assignment("gaze", 90.0));
+			serial.addContent(input);
+			parallel.addContent(input);
+			assertEquals(serial.getState().getNodeIds(), parallel.getState().getNodeIds());
+			for (String var : serial.getState().getChanceNodeIds()) {
+				assertEquals(serial.getState().getChanceNode(var).getValues(), 
+						parallel.getState().getChanceNode(var).getValues());
+			}
+		}
+	}
+	
+	
+	@Test
+	public void testDomainArtifact() throws DialException, IOException {
+		
+		File artifact = File.createTempFile("domain1", BinaryDomainReader.EXTENSION);
+		artifact.deleteOnExit();
+		BinaryDomainReader.compileDomain(domainFile, artifact.getPath());
+		assertTrue(BinaryDomainReader.isValid(artifact.getPath()));
+		Domain domain2 = BinaryDomainReader.readArtifact(artifact.getPath());
+		assertEquals(domain.getName(), domain2.getName());
+		assertEquals(domain.getModels().size(), domain2.getModels().size());
+		assertEquals(domain.getInitialState().getNodeIds(), domain2.getInitialState().getNodeIds());
+		
+		DialogueSystem system1 = new DialogueSystem(domain);
+		DialogueSystem system2 = new DialogueSystem(domain2);
+		for (DialogueSystem system : Arrays.asList(system1, system2)) {
+			system.detachModule(ForwardPlanner.class);
+			system.getSettings().showGUI = false;
+			system.startSystem();
+		}
+		for (String utterance : Arrays.asList("hello", "blabla", "hello hi")) {
+			Assignment input = new Assignment(new Assignment("u_u", utterance), 
+					new Assignment("u_u2", utterance), new Assignment("gaze", 90.0));
+			system1.addContent(input);
+			system2.addContent(input);
+			assertEquals(system1.getState().getNodeIds(), system2.getState().getNodeIds());
+			for (String var : system1.getState().getChanceNodeIds()) {
+				assertEquals(system1.getState().getChanceNode(var).getValues(), 
+						system2.getState().getChanceNode(var).getValues());
+			}
+		}
+		
+		// stale artifacts are ignored
+		File source = File.createTempFile("domain1", ".xml");
+		source.deleteOnExit();
+		Files.copy(new File(domainFile).toPath(), source.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		BinaryDomainReader.compileDomain(source.getPath(), BinaryDomainReader.getArtifactFile(source.getPath()));
+		new File(BinaryDomainReader.getArtifactFile(source.getPath())).deleteOnExit();
+		assertTrue(BinaryDomainReader.isValid(BinaryDomainReader.getArtifactFile(source.getPath())));
+		Files.write(source.toPath(), "<!-- modified -->".getBytes(), StandardOpenOption.APPEND);
+		assertFalse(BinaryDomainReader.isValid(BinaryDomainReader.getArtifactFile(source.getPath())));
+		assertEquals(domain.getModels().size(), 
+				BinaryDomainReader.extractDomain(source.getPath(), true).getModels().size());
+	}
+	
+	
+	@Test
+	public void testArtifactFilter() throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(new ArrayList<Object>(Arrays.asList("a", 2.0, new File("b"))));
+		}
+		try (ObjectInputStream in = SerialisationUtils.createInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()))) {
+			in.readObject();
+			fail("the deserialisation of java.io.File should be rejected");
+		}
+		catch (InvalidClassException e) { }
+	}
 
 }
-
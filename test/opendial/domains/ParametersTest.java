@@ -28,6 +28,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import opendial.DialogueSystem;
@@ -45,6 +46,8 @@ import opendial.domains.rules.effects.BasicEffect;
 import opendial.domains.rules.effects.BasicEffect.EffectType;
 import opendial.domains.rules.effects.Effect;
 import opendial.domains.rules.parameters.CompositeParameter;
+import opendial.domains.rules.parameters.CompositeParameter.Operator;
+import opendial.domains.rules.parameters.FixedParameter;
 import opendial.domains.rules.parameters.StochasticParameter;
 import opendial.inference.approximate.SamplingAlgorithm;
 import opendial.modules.core.ForwardPlanner;
@@ -231,5 +234,25 @@ public class ParametersTest {
 		
 }
 	
+	
+	@Test
+	public void testCompositeParam() {
+		CompositeParameter param = new CompositeParameter(Arrays.asList(
+				new StochasticParameter("theta_1"), new FixedParameter(0.5)), Operator.MULTIPLY);
+		CompositeParameter nested = new CompositeParameter(Arrays.asList(
+				new StochasticParameter("theta_2", 1), new StochasticParameter("theta_1")), Operator.ADD);
+		param.addParameter(nested);
+		Assignment input = new Assignment(new Assignment("theta_1", 2.0), 
+				new Assignment("theta_2", new double[]{0.1, 0.4}));
+		assertEquals(2.0*0.5*(0.4+2.0), param.getParameterValue(input), 0.0001);
+		assertEquals(3.0*0.5*(0.4+3.0), param.getParameterValue(
+				new Assignment(input, "theta_1", 3.0)), 0.0001);
+		param.addParameter(new FixedParameter(2.0));
+		assertEquals(2.0*0.5*(0.4+2.0)*2.0, param.getParameterValue(input), 0.0001);
+		
+		// modifications of the nested composition are reflected in the outer one
+		nested.addParameter(new FixedParameter(1.0));
+		assertEquals(2.0*0.5*(0.4+2.0+1.0)*2.0, param.getParameterValue(input), 0.0001);
+	}
+	
 }
-
@@ -23,7 +23,11 @@
 
 package opendial.domains;
 
+import static org.junit.Assert.assertEquals;
+
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 import opendial.DialogueSystem;
 import opendial.arch.DialException;
@@ -32,6 +36,15 @@ import opendial.bn.distribs.CategoricalTable;
 import opendial.bn.values.ValueFactory;
 import opendial.common.InferenceChecks;
 import opendial.datastructs.Assignment;
+import opendial.datastructs.ValueRange;
+import opendial.domains.rules.Rule;
+import opendial.domains.rules.Rule.RuleType;
+import opendial.domains.rules.RuleCase;
+import opendial.domains.rules.conditions.BasicCondition;
+import opendial.domains.rules.conditions.BasicCondition.Relation;
+import opendial.domains.rules.effects.BasicEffect;
+import opendial.domains.rules.effects.BasicEffect.EffectType;
+import opendial.domains.rules.effects.Effect;
 import opendial.modules.core.ForwardPlanner;
 import opendial.readers.XMLDomainReader;
 import opendial.state.StatePruner;
@@ -241,5 +254,32 @@ public class RuleTest2 {
 	}
 	
 	
-
+	@Test
+	public void testCoveringInputs() {
+		Rule rule = new Rule("r", RuleType.PROB);
+		RuleCase case1 = new RuleCase(new BasicCondition("a", ValueFactory.create("x"), Relation.EQUAL));
+		case1.addEffect(new Effect(new BasicEffect("o", "1", EffectType.SET)), 0.8);
+		rule.addCase(case1);
+		RuleCase case2 = new RuleCase(new BasicCondition("b", ValueFactory.create(2), Relation.GREATER_THAN));
+		case2.addEffect(new Effect(new BasicEffect("o", "2", EffectType.SET)), 0.6);
+		rule.addCase(case2);
+		ValueRange inputs = new ValueRange();
+		inputs.addValues("a", Arrays.asList(ValueFactory.create("x"), ValueFactory.create("y"), 
+				ValueFactory.create("z")));
+		inputs.addValues("b", Arrays.asList(ValueFactory.create(1), ValueFactory.create(2), 
+				ValueFactory.create(3), ValueFactory.create(4)));
+		inputs.addValues("c", Arrays.asList(ValueFactory.create(true), ValueFactory.create(false)));
+		
+		Set<Assignment> covering = rule.getCoveringInputs(inputs);
+		assertEquals(3, covering.size());
+		Set<Effect> effects = new HashSet<Effect>();
+		for (Assignment input : inputs.linearise()) {
+			effects.addAll(rule.getOutput(input).getEffects());
+		}
+		Set<Effect> coveredEffects = new HashSet<Effect>();
+		for (Assignment input : covering) {
+			coveredEffects.addAll(rule.getOutput(input).getEffects());
+		}
+		assertEquals(effects, coveredEffects);
+	}
 }
@@ -25,21 +25,46 @@ package opendial.domains;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 
 import opendial.DialogueSystem;
 import opendial.arch.DialException;
 import opendial.arch.Logger;
+import opendial.bn.distribs.CategoricalTable;
+import opendial.bn.nodes.ChanceNode;
+import opendial.bn.values.StringVal;
 import opendial.bn.values.ValueFactory;
 import opendial.common.InferenceChecks;
+import opendial.datastructs.Assignment;
+import opendial.datastructs.Template;
+import opendial.domains.rules.Rule;
+import opendial.domains.rules.Rule.RuleType;
+import opendial.domains.rules.RuleCase;
+import opendial.domains.rules.RuleOutput;
+import opendial.domains.rules.conditions.BasicCondition;
+import opendial.domains.rules.conditions.BasicCondition.Relation;
+import opendial.domains.rules.conditions.ComplexCondition;
+import opendial.domains.rules.conditions.ComplexCondition.BinaryOperator;
+import opendial.domains.rules.conditions.Condition;
+import opendial.domains.rules.conditions.ConditionNetwork;
+import opendial.domains.rules.conditions.NegatedCondition;
+import opendial.domains.rules.conditions.TemplateCondition;
 import opendial.domains.rules.effects.BasicEffect;
 import opendial.domains.rules.effects.Effect;
 import opendial.domains.rules.effects.BasicEffect.EffectType;
 import opendial.modules.core.ForwardPlanner;
 import opendial.readers.XMLDomainReader;
+import opendial.state.AnchoredRule;
+import opendial.state.DialogueState;
 import opendial.state.StatePruner;
+import opendial.state.distribs.RuleDistribution;
 
 import org.junit.Test;
 
@@ -148,5 +173,202 @@ public class RuleTest3 {
 	}
 	
 	
+	@Test
+	public void triggerIndexTest() throws DialException {
+		
+		Domain domain = new Domain();
+		Model exact = new Model();
+		exact.addTriggers(Arrays.asList("a_u", "A_M"));
+		exact.addRule(new Rule("r1", RuleType.PROB));
+		Model slots = new Model();
+		slots.addTrigger("{X}_u");
+		slots.addRule(new Rule("r2", RuleType.PROB));
+		Model wildcard = new Model();
+		wildcard.addTrigger("u_*");
+		wildcard.addRule(new Rule("r3", RuleType.PROB));
+		Model noRule = new Model();
+		noRule.addTrigger("a_u");
+		domain.addModel(exact);
+		domain.addModel(slots);
+		domain.addModel(wildcard);
+		domain.addModel(noRule);
 
+		assertEquals(Arrays.asList(exact, slots), domain.getTriggeredModels(Arrays.asList("a_u")));
+		assertEquals(Arrays.asList(exact), domain.getTriggeredModels(Arrays.asList("a_m")));
+		assertEquals(Arrays.asList(slots, wildcard), domain.getTriggeredModels(Arrays.asList("u_u")));
+		assertEquals(Arrays.asList(), domain.getTriggeredModels(Arrays.asList("u", "b_m")));
+		for (String var : Arrays.asList("a_u", "a_m", "u_u", "b_m", "u")) {
+			for (Model model : domain.getModels()) {
+				assertEquals(model.isTriggered(Arrays.asList(var)), 
+						domain.getTriggeredModels(Arrays.asList(var)).contains(model));
+			}
+		}
+		
+		exact.addTrigger("b_m");
+		domain.getModels().remove(slots);
+		assertEquals(Arrays.asList(exact, wildcard), domain.getTriggeredModels(Arrays.asList("b_m", "u_u")));
+		
+		// trigger modified in place (same number of triggers)
+		exact.removeTrigger("b_m");
+		exact.addTrigger("c_m");
+		assertEquals(Arrays.asList(), domain.getTriggeredModels(Arrays.asList("b_m")));
+		assertEquals(Arrays.asList(exact), domain.getTriggeredModels(Arrays.asList("c_m")));
+	}
+	
+	
+	@Test
+	public void keywordConditionTest() {
+		BasicCondition c1 = new BasicCondition("u_u", ValueFactory.create("hello"), Relation.CONTAINS);
+		BasicCondition c2 = new BasicCondition("u_u", ValueFactory.create("the bus"), Relation.NOT_CONTAINS);
+		TemplateCondition c3 = new TemplateCondition(Template.create("u_u"), 
+				Template.create("Bus"), Relation.CONTAINS);
+		ConditionNetwork network = new ConditionNetwork();
+		Condition compiled1 = network.compile(c1);
+		Condition compiled2 = network.compile(c2);
+		Condition compiled3 = network.compile(c3);
+		assertEquals(3, network.getNbKeywords("u_u"));
+		for (String utterance : Arrays.asList("hello, I want the bus", "Hello there", 
+				"the buses", "Othello", "bus 42", "")) {
+			Assignment input = new Assignment("u_u", utterance);
+			StringVal value = (StringVal)ValueFactory.create(utterance);
+			assertEquals(value.contains(ValueFactory.create("hello")), compiled1.isSatisfiedBy(input));
+			assertEquals(!value.contains(ValueFactory.create("the bus")), compiled2.isSatisfiedBy(input));
+			assertEquals(value.contains(ValueFactory.create("Bus")), compiled3.isSatisfiedBy(input));
+			assertEquals(c1.isSatisfiedBy(input), compiled1.isSatisfiedBy(input));
+		}
+		assertTrue(compiled1.isSatisfiedBy(new Assignment("u_u", "HELLO!")));
+		assertFalse(compiled2.isSatisfiedBy(new Assignment("u_u", "take the bus")));
+		assertFalse(compiled3.isSatisfiedBy(new Assignment("u_u", "the buses")));
+		
+		// the keywords of one network are not visible from another
+		ConditionNetwork network2 = new ConditionNetwork();
+		Condition compiled4 = network2.compile(new BasicCondition("u_u", 
+				ValueFactory.create("bus"), Relation.CONTAINS));
+		assertEquals(1, network2.getNbKeywords("u_u"));
+		assertEquals(3, network.getNbKeywords("u_u"));
+		assertTrue(compiled4.isSatisfiedBy(new Assignment("u_u", "hello bus")));
+	}
+	
+	
+	@Test
+	public void outputCacheTest() {
+		Rule rule = new Rule("r", RuleType.PROB);
+		rule.setCacheCapacity(2);
+		Assignment a1 = new Assignment("u_u", "one");
+		Assignment a2 = new Assignment("u_u", "two");
+		RuleOutput o1 = rule.getOutput(a1);
+		assertSame(o1, rule.getOutput(new Assignment("u_u", "one")));
+		rule.getOutput(a2);
+		rule.getOutput(new Assignment("u_u", "three"));
+		assertEquals(2, rule.getOutputCache().size());
+		assertEquals(1, rule.getOutputCache().getHits());
+		assertEquals(3, rule.getOutputCache().getMisses());
+		assertNotSame(o1, rule.getOutput(a1));
+		assertEquals(0.2, rule.getOutputCache().getHitRate(), 0.001);
+		rule.setCacheCapacity(0);
+		assertNotSame(rule.getOutput(a2), rule.getOutput(a2));
+	}
+	
+	
+	@Test
+	public void conditionNetworkTest() {
+		ConditionNetwork network = new ConditionNetwork();
+		Condition c1 = new ComplexCondition(Arrays.asList(
+				new BasicCondition("a_u", ValueFactory.create("yes"), Relation.EQUAL),
+				new BasicCondition("u_u", ValueFactory.create("hi"), Relation.CONTAINS)), 
+				BinaryOperator.AND);
+		Condition c2 = new NegatedCondition(
+				new BasicCondition("a_u", ValueFactory.create("yes"), Relation.EQUAL));
+		Condition c3 = new TemplateCondition(Template.create("u_u"), 
+				Template.create("{X}"), Relation.EQUAL);
+		Condition compiled1 = network.compile(c1);
+		Condition compiled2 = network.compile(c2);
+		assertSame(c3, network.compile(c3));
+		assertEquals(2, network.getNbNodes());
+		assertFalse(compiled2.equals(c2));
+		assertFalse(c2.equals(compiled2));
+		assertEquals(c1, ConditionNetwork.getInitCondition(compiled1));
+		assertEquals(c2, ConditionNetwork.getInitCondition(compiled2));
+		for (String act : Arrays.asList("yes", "Yes", "no")) {
+			for (String utterance : Arrays.asList("hi there", "Hi", "ohio")) {
+				Assignment input = new Assignment(new Assignment("a_u", act), 
+						new Assignment("u_u", utterance));
+				assertEquals(c1.isSatisfiedBy(input), compiled1.isSatisfiedBy(input));
+				assertEquals(c2.isSatisfiedBy(input), compiled2.isSatisfiedBy(input));
+			}
+		}
+	}
+	
+	
+	@Test
+	public void distributionCacheTest() throws DialException {
+		Rule rule = new Rule("r", RuleType.PROB);
+		RuleCase case1 = new RuleCase(new BasicCondition("u_u", 
+				ValueFactory.create("hi"), Relation.CONTAINS));
+		Effect effect = new Effect(new BasicEffect("a_u", "Greet", EffectType.SET));
+		case1.addEffect(effect, 0.8);
+		rule.addCase(case1);
+		DialogueState state = new DialogueState();
+		CategoricalTable table = new CategoricalTable("u_u");
+		table.addRow("hi there", 0.6);
+		table.addRow("bye", 0.4);
+		state.addNode(new ChanceNode("u_u", table));
+		RuleDistribution distrib = new RuleDistribution(new AnchoredRule(rule, state));
+		Assignment input = new Assignment("u_u", "hi there");
+		CategoricalTable output1 = distrib.getProbDistrib(input);
+		CategoricalTable output2 = distrib.getProbDistrib(new Assignment(input, "other", "x"));
+		assertNotSame(output1, output2);
+		assertEquals(0.8, output2.getProb(effect), 0.0001);
+		assertEquals(0.2, output2.getProb(new Effect()), 0.0001);
+		output1.removeRow(effect);
+		assertEquals(0.8, distrib.getProb(input, effect), 0.0001);
+		assertEquals(1.0, distrib.getProb(new Assignment("u_u", "bye"), new Effect()), 0.0001);
+		assertEquals(2, distrib.getOutputCache().size());
+		assertEquals(2, distrib.getOutputCache().getHits());
+		assertSame(distrib.getOutputCache(), distrib.copy().getOutputCache());
+	}
+
+	
+	@Test
+	public void domainAnalysisTest() throws DialException {
+		Domain domain = XMLDomainReader.extractDomain(inconditionFile); 
+		DomainAnalysis analysis = new DomainAnalysis(domain);
+		assertEquals(new HashSet<String>(Arrays.asList("out", "out2")), 
+				analysis.getUnconsumedVariables());
+		assertEquals(2, analysis.getDeadRules().size());
+		assertTrue(analysis.getUntriggerableModels().isEmpty());
+		
+		Model untriggerable = new Model();
+		untriggerable.addTrigger("{X}_v");
+		untriggerable.addRule(new Rule("r1", RuleType.PROB));
+		domain.addModel(untriggerable);
+		domain.getSettings().varsToMonitor.add("out");
+		assertFalse(analysis.isValidFor(domain.getModels()));
+		analysis = new DomainAnalysis(domain);
+		assertEquals(new HashSet<String>(Arrays.asList("out2")), 
+				analysis.getUnconsumedVariables());
+		assertEquals(1, analysis.getDeadRules().size());
+		assertEquals(Arrays.asList(untriggerable), analysis.getUntriggerableModels());
+		
+		domain.getSettings().varsToMonitor.clear();
+		DialogueSystem system = new DialogueSystem(domain);
+		system.getSettings().showGUI = false;
+		system.getSettings().skipDeadRules = true;
+		system.startSystem();
+		assertFalse(system.getState().hasChanceNode("out"));
+		assertFalse(system.getState().hasChanceNode("out2"));
+	}
+	
+	@Test
+	public void effectInterningTest() {
+		Effect templated = Effect.parseEffect("a_{X}:={Y}");
+		Effect grounded1 = templated.ground(new Assignment(new Assignment("X", "m"), "Y", "Greet"));
+		Effect grounded2 = templated.ground(new Assignment(new Assignment("X", "m"), "Y", "Greet"));
+		assertSame(grounded1, grounded2);
+		assertSame(grounded1, Effect.parseEffect("a_m:=Greet"));
+		assertEquals(grounded1, new Effect(new BasicEffect("a_m", "Greet", EffectType.SET)));
+		assertFalse(grounded1.equals(Effect.parseEffect("a_m:=Bye")));
+		assertSame(Effect.create(), Effect.parseEffect("Void"));
+		assertSame(grounded1, grounded1.copy());
+	}
 }
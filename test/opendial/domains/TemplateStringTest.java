@@ -25,6 +25,7 @@ package opendial.domains;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -260,4 +261,20 @@ public class TemplateStringTest {
 		assertTrue(t.match("on the 20th of March", false).isMatching());
 		assertFalse(t.match("20 of March", true).isMatching());
 	}
+	
+	@Test
+	public void testFastMatching() {
+		assertSame(Template.create("hello {X}"), Template.create("hello {X}"));
+		Template t = Template.create("hello {X}!");
+		assertEquals("Pierre", t.match("Hello Pierre!", true).getFilledSlots().getValue("X").toString());
+		assertFalse(t.match("Hello Pierre", true).isMatching());
+		assertFalse(t.match("Hello (Pierre!", true).isMatching());
+		Template t2 = Template.create("hi there");
+		assertTrue(t2.match("oh, HI there!", false).isMatching());
+		assertEquals(4, t2.match("oh, HI there!", false).getBoundaries()[0].intValue());
+		assertFalse(t2.match("chi there", false).isMatching());
+		Template t3 = Template.create("*");
+		assertTrue(t3.match("whatever", true).isMatching());
+		assertTrue(t3.match("", false).isMatching());
+	}
 }
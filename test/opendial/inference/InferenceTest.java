@@ -27,7 +27,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import opendial.arch.DialException;
 import opendial.arch.Logger;
@@ -38,6 +41,7 @@ import opendial.bn.distribs.MultivariateDistribution;
 import opendial.bn.distribs.MultivariateTable;
 import opendial.bn.distribs.densityfunctions.GaussianDensityFunction;
 import opendial.bn.distribs.densityfunctions.UniformDensityFunction;
+import opendial.bn.nodes.BNode;
 import opendial.bn.nodes.ChanceNode;
 import opendial.bn.values.ValueFactory;
 import opendial.common.NetworkExamples;
@@ -328,6 +332,35 @@ public class InferenceTest {
 	}
 	
 	
+	@Test
+	public void testRequisiteNodes() throws DialException {
+		BNetwork bn = NetworkExamples.constructBasicNetwork();
+		Query query = new Query.ProbQuery(bn, Arrays.asList("Burglary"), new Assignment("Alarm", true));
+		assertEquals(new HashSet<String>(Arrays.asList("Burglary", "Earthquake", "Alarm")), 
+				getIds(query.getFilteredSortedNodes()));
+		assertEquals(new HashSet<String>(Arrays.asList("Alarm")), query.getRequisiteObservations());
+		query = new Query.ProbQuery(bn, Arrays.asList("MaryCalls"), new Assignment("Alarm", true));
+		assertEquals(new HashSet<String>(Arrays.asList("MaryCalls")), getIds(query.getFilteredSortedNodes()));
+		query = new Query.UtilQuery(bn, Arrays.asList("Action"), new Assignment("JohnCalls", true));
+		assertEquals(new HashSet<String>(Arrays.asList("Action", "Util1", "Util2", "Burglary", "Alarm", 
+				"Earthquake", "JohnCalls")), getIds(query.getFilteredSortedNodes()));
+		bn.getNode("Util1").removeInputNode("Burglary");
+		bn.getNode("Util2").removeInputNode("Burglary");
+		query = new Query.UtilQuery(bn, Arrays.asList("Action"), new Assignment("JohnCalls", true));
+		assertEquals(new HashSet<String>(Arrays.asList("Action", "Util1", "Util2")), 
+				getIds(query.getFilteredSortedNodes()));
+	}
+	
+	
+	private static Set<String> getIds(List<BNode> nodes) {
+		Set<String> ids = new HashSet<String>();
+		for (BNode node : nodes) {
+			ids.add(node.getId());
+		}
+		return ids;
+	}
+	
+	
 	/** 
 	@Test
 	public void specialUtilQueryTest() throws DialException {
@@ -0,0 +1,111 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2013 Pierre Lison (plison@ifi.uio.no)                                                                            
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import opendial.DialogueSystem;
+import opendial.arch.DialException;
+import opendial.arch.Logger;
+import opendial.domains.Domain;
+import opendial.domains.Model;
+import opendial.modules.core.DomainReloader;
+import opendial.modules.core.ForwardPlanner;
+import opendial.readers.XMLDomainReader;
+
+import org.junit.Test;
+
+public class DomainReloaderTest {
+
+	// logger
+	public static Logger log = new Logger("DomainReloaderTest", Logger.Level.DEBUG);
+
+	public static final String topDomain = "<domain><model trigger=\"u_u\" id=\"nlu\"><rule>"
+			+ "<case><condition><if var=\"u_u\" value=\"hello\"/></condition>"
+			+ "<effect><set var=\"a_u\" value=\"Greet\"/></effect></case></rule></model>"
+			+ "<import href=\"models.xml\"/></domain>";
+
+	public static final String importedDomain = "<domain><model trigger=\"a_u\" id=\"nlg\"><rule>"
+			+ "<case><condition><if var=\"a_u\" value=\"Greet\"/></condition>"
+			+ "<effect><set var=\"a_m\" value=\"%s\"/></effect></case></rule></model></domain>";
+
+
+	@Test
+	public void testReload() throws DialException, IOException, InterruptedException {
+		File dir = Files.createTempDirectory("domain").toFile();
+		dir.deleteOnExit();
+		File top = new File(dir, "domain.xml");
+		File imported = new File(dir, "models.xml");
+		top.deleteOnExit();
+		imported.deleteOnExit();
+		Files.write(top.toPath(), topDomain.getBytes());
+		Files.write(imported.toPath(), String.format(importedDomain, "Hi").getBytes());
+
+		Domain domain = XMLDomainReader.extractDomain(top.getPath());
+		assertEquals(Arrays.asList(top.getPath(), imported.getPath()), domain.getSourceFiles());
+		DialogueSystem system = new DialogueSystem(domain);
+		system.detachModule(ForwardPlanner.class);
+		system.getSettings().showGUI = false;
+		system.attachModule(DomainReloader.class);
+		system.startSystem();
+		DomainReloader reloader = system.getModule(DomainReloader.class);
+		assertTrue(reloader.isRunning());
+		Model nlu = domain.getModels().get(0);
+
+		system.addUserInput("hello");
+		assertEquals(1.0, system.getContent("a_m").getProb("Hi"), 0.01);
+		assertTrue(reloader.reload().isEmpty());
+
+		Files.write(imported.toPath(), String.format(importedDomain, "Hello").getBytes());
+		assertEquals(new HashSet<String>(Arrays.asList("nlg")), reloader.reload());
+		assertEquals(reloader.getLastAffectedModels(), new HashSet<String>(Arrays.asList("nlg")));
+		assertSame(nlu, domain.getModels().get(0));
+		assertEquals(2, domain.getModels().size());
+		assertEquals(1.0, system.getContent("a_m").getProb("Hi"), 0.01);
+		
+		system.addUserInput("hello");
+		assertEquals(1.0, system.getContent("a_m").getProb("Hello"), 0.01);
+		
+		Files.write(top.toPath(), topDomain.replace("<rule>", "<rule priority=\"2\">").getBytes());
+		assertEquals(new HashSet<String>(Arrays.asList("nlu")), reloader.reload());
+		assertEquals(2, domain.getModels().size());
+
+		Files.write(top.toPath(), topDomain.replace("<import href=\"models.xml\"/>", "").getBytes());
+		assertEquals(new HashSet<String>(Arrays.asList("nlu", "nlg")), reloader.reload());
+		assertEquals(1, domain.getModels().size());
+		assertEquals(Arrays.asList(top.getPath()), domain.getSourceFiles());
+		assertTrue(reloader.reload().isEmpty());
+		
+		system.detachModule(DomainReloader.class);
+		assertTrue(!reloader.isRunning());
+	}
+
+}
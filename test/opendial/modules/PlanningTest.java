@@ -26,14 +26,25 @@ package opendial.modules;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import opendial.DialogueSystem;
 import opendial.arch.DialException;
 import opendial.arch.Logger;
 import opendial.bn.distribs.CategoricalTable;
 import opendial.common.InferenceChecks;
+import opendial.modules.core.ForwardPlanner;
+import opendial.modules.core.MCTSPlanner;
+import opendial.modules.core.PolicyPlanner;
+import opendial.modules.core.PolicyTable;
 import opendial.domains.Domain;
 import opendial.readers.XMLDomainReader;
+import opendial.state.DialogueState;
 
 import org.junit.Test;
 
@@ -140,5 +151,162 @@ public class PlanningTest {
 		
 	}
 
-}
+	
+	@Test
+	public void testParallelPlanning() throws DialException, InterruptedException {
+		
+		for (int nbThreads : new int[]{1, Math.max(2, Runtime.getRuntime().availableProcessors())}) {
+			DialogueSystem system = new DialogueSystem(domain2);
+			system.getSettings().showGUI = false;
+			system.getSettings().horizon = 2;
+			system.getSettings().parallelActions = nbThreads;
+			system.startSystem(); 
+			inference.checkProb(system.getState(), "a_m", "AskRepeat", 1.0);
+
+			system = new DialogueSystem(domain3);
+			system.getSettings().showGUI = false;
+			system.getSettings().horizon = 3;
+			system.getSettings().parallelActions = nbThreads;
+			system.startSystem(); 
+			CategoricalTable t1 = new CategoricalTable("a_u");
+			t1.addRow("Ask(Coffee)", 0.95);
+			t1.addRow("Ask(Tea)", 0.02);
+			system.addContent(t1);
+			inference.checkProb(system.getState(), "a_m", "Do(Coffee)", 1.0);
+		}
+	}
+
+	
+	@Test
+	public void testTranspositionTable() throws DialException, InterruptedException {
+		
+		boolean useTable = ForwardPlanner.USE_TRANSPOSITION_TABLE;
+		List<List<String>> selected = new ArrayList<List<String>>();
+		try {
+			for (boolean b : new boolean[]{false, true}) {
+				ForwardPlanner.USE_TRANSPOSITION_TABLE = b;
+				DialogueSystem system = new DialogueSystem(domain3);
+				system.getSettings().showGUI = false;
+				system.getSettings().horizon = 3;
+				system.startSystem(); 
+				List<String> actions = new ArrayList<String>();
+				for (int i = 0 ; i < 4 ; i++) {
+					CategoricalTable t1 = new CategoricalTable("a_u");
+					t1.addRow("Ask(Coffee)", (i%2==0)? 0.95 : 0.3);
+					t1.addRow("Ask(Tea)", (i%2==0)? 0.02 : 0.3);
+					system.addContent(t1);
+					actions.add(system.getState().queryProb("a_m").toDiscrete().getBest().toString());
+				}
+				selected.add(actions);
+				if (b) {
+					checkReuse(system);
+				}
+			}
+			assertEquals("Do(Coffee)", selected.get(1).get(0));
+			assertEquals(selected.get(0), selected.get(1));
+		}
+		finally {
+			ForwardPlanner.USE_TRANSPOSITION_TABLE = useTable;
+		}
+	}
+
+	
+	/**
+	 * Checks that the transposition table of the planner is filled, and that 
+	 * planning again on the same dialogue state reuses its values.
+	 * 
+	 * @param system the dialogue system
+	 * @throws DialException if the content could not be added
+	 */
+	private static void checkReuse(DialogueSystem system) throws DialException {
+		ForwardPlanner planner = system.getModule(ForwardPlanner.class);
+		assertTrue(planner.getNbCachedValues() > 0);
+		planner.pause(true);
+		CategoricalTable t1 = new CategoricalTable("a_u");
+		t1.addRow("Ask(Coffee)", 0.95);
+		t1.addRow("Ask(Tea)", 0.02);
+		system.addContent(t1);
+		DialogueState state = system.getState().copy();
+		planner.pause(false);
+		assertFalse(state.getActionNodeIds().isEmpty());
+		planner.new PlannerProcess(state.copy());
+		int nbCached = planner.getNbCachedValues();
+		int nbReused = planner.getNbReusedValues();
+		planner.new PlannerProcess(state.copy());
+		assertEquals(nbCached, planner.getNbCachedValues());
+		assertTrue(planner.getNbReusedValues() > nbReused);
+	}
+
+
+	@Test
+	public void testMCTSPlanning() throws DialException, InterruptedException {
+
+		DialogueSystem system = new DialogueSystem(domain2);
+		system.getSettings().showGUI = false;
+		system.detachModule(ForwardPlanner.class);
+		system.attachModule(MCTSPlanner.class);
+		system.startSystem(); 
+		inference.checkProb(system.getState(), "a_m", "AskRepeat", 1.0);
+		
+		int maxDepth = MCTSPlanner.MAX_DEPTH;
+		try {
+			MCTSPlanner.MAX_DEPTH = 3;
+			system = new DialogueSystem(domain3);
+			system.getSettings().showGUI = false;
+			system.detachModule(ForwardPlanner.class);
+			system.attachModule(MCTSPlanner.class);
+			system.startSystem(); 
+			CategoricalTable t1 = new CategoricalTable("a_u");
+			t1.addRow("Ask(Coffee)", 0.95);
+			t1.addRow("Ask(Tea)", 0.02);
+			system.addContent(t1);
+			inference.checkProb(system.getState(), "a_m", "Do(Coffee)", 1.0);
+		}
+		finally {
+			MCTSPlanner.MAX_DEPTH = maxDepth;
+		}
+	}
+
+	
+	@Test
+	public void testPolicyPlanner() throws DialException, InterruptedException, IOException {
+
+		PolicyTable policy = new PolicyTable();
+		for (int i = 0 ; i < 2 ; i++) {
+			DialogueSystem system = new DialogueSystem(domain3);
+			system.getSettings().showGUI = false;
+			system.getSettings().horizon = 3;
+			system.detachModule(ForwardPlanner.class);
+			PolicyPlanner recorder = new PolicyPlanner(system, policy);
+			recorder.setRecording(true);
+			system.attachModule(recorder);
+			system.startSystem(); 
+			CategoricalTable t1 = new CategoricalTable("a_u");
+			t1.addRow("Ask(Coffee)", 0.95);
+			t1.addRow("Ask(Tea)", 0.02);
+			system.addContent(t1);
+		}
+		assertEquals(1, policy.size());
+		
+		File policyFile = File.createTempFile("policy", ".bin");
+		policyFile.deleteOnExit();
+		policy.writeToFile(policyFile.getPath());
+		policy = PolicyTable.readFromFile(policyFile.getPath());
+		assertEquals(1, policy.size());
+		
+		DialogueSystem system = new DialogueSystem(domain3);
+		system.getSettings().showGUI = false;
+		system.getSettings().horizon = 3;
+		system.detachModule(ForwardPlanner.class);
+		PolicyPlanner planner = new PolicyPlanner(system, policy);
+		system.attachModule(planner);
+		system.startSystem(); 
+		CategoricalTable t1 = new CategoricalTable("a_u");
+		t1.addRow("Ask(Coffee)", 0.95);
+		t1.addRow("Ask(Tea)", 0.02);
+		system.addContent(t1);
+		inference.checkProb(system.getState(), "a_m", "Do(Coffee)", 1.0);
+		assertEquals(1.0, planner.getHitRate(), 0.0001);
+	}
 
+}